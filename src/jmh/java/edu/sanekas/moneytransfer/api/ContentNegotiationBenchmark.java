@@ -0,0 +1,78 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
+import edu.sanekas.moneytransfer.model.DirectJsonAccountSerializer;
+import edu.sanekas.moneytransfer.storages.AccountsManager;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of GET /accounts/{id} over loopback with JSON and binary responses.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentNegotiationBenchmark {
+    private static final int PORT = 8082;
+
+    @Param({ContentNegotiation.JSON, ContentNegotiation.BINARY})
+    public String accept;
+
+    private Undertow undertow;
+    private HttpClient httpClient;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void startServer() {
+        final AccountsStorage accountsStorage = new SegmentedInMemoryAccountsStorage();
+        accountsStorage.createAccount().debit(9_876_543_210L);
+        final AccountsController accountsController =
+                new AccountsController(new AccountsManager(accountsStorage), DirectJsonAccountSerializer.S);
+        undertow = Undertow.builder()
+                .addHttpListener(PORT, "localhost")
+                .setHandler(Handlers.routing()
+                        .get(AccountsController.GET_ACCOUNT_BY_ID, accountsController::getAccountById))
+                .build();
+        undertow.start();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + PORT + "/accounts/0"))
+                .header("Accept", accept)
+                .GET()
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        undertow.stop();
+    }
+
+    @Benchmark
+    public byte[] getAccount() throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+}
@@ -0,0 +1,112 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.AccountResponseCache;
+import edu.sanekas.moneytransfer.model.DirectJsonAccountSerializer;
+import edu.sanekas.moneytransfer.storages.AccountsManager;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clients polling an account which doesn't change: every poll serialized (plain), served from the response cache
+ * (cached) and answered with 304 by If-None-Match (conditional). Run with -prof gc to see allocations per poll,
+ * responseBytes counts status line, headers and body of responses, divided by polls it is the size of a response.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PollingBenchmark {
+    private static final int PORT = 8082;
+
+    @Param({"plain", "cached", "conditional"})
+    public String mode;
+
+    private Undertow undertow;
+    private HttpClient httpClient;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException, InterruptedException {
+        final AccountsStorage accountsStorage = new SegmentedInMemoryAccountsStorage();
+        accountsStorage.createAccount().debit(9_876_543_210L);
+        final AccountsController accountsController = new AccountsController(new AccountsManager(accountsStorage),
+                DirectJsonAccountSerializer.S, "plain".equals(mode) ? null : new AccountResponseCache(1024));
+        undertow = Undertow.builder()
+                .addHttpListener(PORT, "localhost")
+                .setHandler(Handlers.routing()
+                        .get(AccountsController.GET_ACCOUNT_BY_ID, accountsController::getAccountById))
+                .build();
+        undertow.start();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + PORT
+                + "/accounts/0")).GET();
+        if ("conditional".equals(mode)) {
+            final HttpResponse<byte[]> first = httpClient.send(builder.build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            builder.header("If-None-Match", first.headers().firstValue("ETag").orElseThrow());
+        }
+        request = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        undertow.stop();
+    }
+
+    @Benchmark
+    public byte[] poll(Counters counters) throws IOException, InterruptedException {
+        final HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        /**
+         * "HTTP/1.1 200 OK\r\n", "name: value\r\n" per header, "\r\n" and the body
+         */
+        long bytes = 17 + 2 + response.body().length;
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            for (String value : header.getValue()) {
+                bytes += header.getKey().length() + value.length() + 4;
+            }
+        }
+        counters.responseBytes += bytes;
+        ++counters.polls;
+        return response.body();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long responseBytes;
+        public long polls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            responseBytes = 0;
+            polls = 0;
+        }
+    }
+}
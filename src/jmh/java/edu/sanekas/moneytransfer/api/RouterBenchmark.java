@@ -0,0 +1,107 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.RequestPath;
+import io.undertow.Handlers;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing of a request and parsing of its path parameters without network and controllers,
+ * by Undertow templates with query parameters and by {@link MoneyTransferRouter} with {@link RequestPath}.
+ * Run with -prof gc to see allocations per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouterBenchmark {
+    @Param({"get", "debit", "transfer"})
+    public String route;
+
+    private HttpServerExchange httpServerExchange;
+    private HttpHandler routingHandler;
+    private HttpHandler moneyTransferRouter;
+    private long sum;
+
+    @Setup(Level.Trial)
+    public void createRouters() {
+        final HttpHandler templateGet = exchange -> sum += templateParam(exchange, "accountId");
+        final HttpHandler templateAmount = exchange ->
+                sum += templateParam(exchange, "accountId") + templateParam(exchange, "amount");
+        routingHandler = Handlers.routing()
+                .get(AccountsController.GET_ACCOUNT_BY_ID, templateGet)
+                .delete(AccountsController.DELETE_ACCOUNT, templateGet)
+                .put(FinanceOperationsController.PUT_DEBIT_TO_ACCOUNT, templateAmount)
+                .put(FinanceOperationsController.PUT_WITHDRAW_FROM_ACCOUNT, templateAmount)
+                .post(FinanceOperationsController.POST_TRANSFER, exchange ->
+                        sum += templateParam(exchange, "fromAccountId") + templateParam(exchange, "toAccountId")
+                                + templateParam(exchange, "amount"));
+
+        final HttpHandler get = exchange -> sum += RequestPath.parseAccountId(exchange, PathParams.ACCOUNT_ID);
+        final HttpHandler amount = exchange -> sum += RequestPath.parseAccountId(exchange, PathParams.ACCOUNT_ID)
+                + RequestPath.parseAmount(exchange, PathParams.AMOUNT);
+        moneyTransferRouter = new MoneyTransferRouter(routingHandler)
+                .getAccount(get)
+                .deleteAccount(get)
+                .debit(amount)
+                .withdraw(amount)
+                .transfer(exchange -> sum += RequestPath.parseAccountId(exchange, PathParams.FROM_ACCOUNT_ID)
+                        + RequestPath.parseAccountId(exchange, PathParams.TO_ACCOUNT_ID)
+                        + RequestPath.parseAmount(exchange, PathParams.TRANSFER_AMOUNT));
+
+        switch (route) {
+            case "get":
+                httpServerExchange = exchange(Methods.GET, "/accounts/123456");
+                break;
+            case "debit":
+                httpServerExchange = exchange(Methods.PUT, "/accounts/123456/debit/9876543210");
+                break;
+            default:
+                httpServerExchange = exchange(Methods.POST, "/accounts/from/123456/to/654321/transfer/9876543210");
+        }
+    }
+
+    @Benchmark
+    public long routingHandler() throws Exception {
+        routingHandler.handleRequest(httpServerExchange);
+        /** Templates add path parameters to query parameters of the exchange, a new request has none */
+        httpServerExchange.getQueryParameters().clear();
+        return sum;
+    }
+
+    @Benchmark
+    public long moneyTransferRouter() throws Exception {
+        moneyTransferRouter.handleRequest(httpServerExchange);
+        return sum;
+    }
+
+    private static long templateParam(HttpServerExchange exchange, String name) {
+        return Long.parseLong(exchange.getQueryParameters().get(name).getFirst());
+    }
+
+    private static HttpServerExchange exchange(HttpString method, String path) {
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.setRequestMethod(method);
+        exchange.setRequestPath(path);
+        exchange.setRelativePath(path);
+        return exchange;
+    }
+}
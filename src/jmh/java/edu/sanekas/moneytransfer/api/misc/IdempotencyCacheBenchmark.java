@@ -0,0 +1,82 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of a retried key and registration of a new key in a full cache.
+ * Retained heap per key (UUID key, entry and a typical account response) is printed after filling the cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class IdempotencyCacheBenchmark {
+    private static final String METHOD = "POST";
+    private static final String PATH = "/accounts/123456/debit/100";
+    private static final byte[] RESPONSE = "{\"id\":123456,\"totalMoney\":9876543210}".getBytes();
+
+    @Param({"1000000", "5000000"})
+    private int keys;
+
+    private IdempotencyCache cache;
+    private String[] storedKeys;
+
+    @Setup(Level.Trial)
+    public void fillCache() {
+        storedKeys = new String[keys];
+        for (int i = 0; i < keys; ++i) {
+            storedKeys[i] = UUID.randomUUID().toString();
+        }
+        final long usedBefore = usedHeap();
+        cache = new IdempotencyCache(keys, 1, TimeUnit.HOURS);
+        for (int i = 0; i < keys; ++i) {
+            final IdempotencyCache.Entry entry = new IdempotencyCache.Entry(storedKeys[i], METHOD, PATH);
+            cache.putIfAbsent(entry);
+            cache.complete(entry, new IdempotencyCache.StoredResponse(200, ContentNegotiation.JSON, RESPONSE.clone()));
+        }
+        final long usedAfter = usedHeap();
+        System.out.println();
+        System.out.println("Retained bytes per key without the key itself: " + (usedAfter - usedBefore) / keys);
+    }
+
+    @Benchmark
+    public IdempotencyCache.Entry lookupRetry() {
+        final int i = ThreadLocalRandom.current().nextInt(keys);
+        return cache.putIfAbsent(new IdempotencyCache.Entry(storedKeys[i], METHOD, PATH));
+    }
+
+    @Benchmark
+    public IdempotencyCache.Entry registerNewKey() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String key = new UUID(random.nextLong(), random.nextLong()).toString();
+        final IdempotencyCache.Entry entry = new IdempotencyCache.Entry(key, METHOD, PATH);
+        final IdempotencyCache.Entry existing = cache.putIfAbsent(entry);
+        cache.complete(entry, new IdempotencyCache.StoredResponse(200, ContentNegotiation.JSON, RESPONSE));
+        return existing;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
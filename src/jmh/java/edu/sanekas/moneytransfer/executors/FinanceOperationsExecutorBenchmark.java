@@ -0,0 +1,68 @@
+package edu.sanekas.moneytransfer.executors;
+
+import edu.sanekas.moneytransfer.model.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random transfers between accounts made by the lock-based and the sharded executors.
+ * Number of submitting threads is changed with -t.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class FinanceOperationsExecutorBenchmark {
+
+    @Param({"locking", "sharded"})
+    private String executorType;
+
+    @Param({"1000"})
+    private int accountsCount;
+
+    private FinanceOperationsExecutor executor;
+    private Account[] accounts;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        executor = "sharded".equals(executorType)
+                ? new ShardedFinanceOperationsExecutor(Runtime.getRuntime().availableProcessors(), 1024)
+                : LockingFinanceOperationsExecutor.S;
+        accounts = new Account[accountsCount];
+        for (int i = 0; i < accountsCount; ++i) {
+            accounts[i] = new Account(i);
+            accounts[i].debit(Long.MAX_VALUE / 2);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeExecutor() throws InterruptedException {
+        if (executor instanceof ShardedFinanceOperationsExecutor) {
+            ((ShardedFinanceOperationsExecutor) executor).close();
+        }
+    }
+
+    @Benchmark
+    public boolean transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return executor.transfer(accounts[random.nextInt(accountsCount)], accounts[random.nextInt(accountsCount)], 1);
+    }
+}
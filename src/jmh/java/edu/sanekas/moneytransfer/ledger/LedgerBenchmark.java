@@ -0,0 +1,57 @@
+package edu.sanekas.moneytransfer.ledger;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers with and without recording them into the {@link Ledger}.
+ * Iterations are short and the ledger is recreated for each of them, since it keeps every entry in memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LedgerBenchmark {
+    private static final int ACCOUNTS_COUNT = 1024;
+
+    @Param({"false", "true"})
+    private boolean isLedgerEnabled;
+
+    private Account[] accounts;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void createAccounts() {
+        final Ledger ledger = new Ledger();
+        accounts = new Account[ACCOUNTS_COUNT];
+        for (int i = 0; i < ACCOUNTS_COUNT; ++i) {
+            accounts[i] = isLedgerEnabled
+                    ? new Account(i, new LedgerJournal(ledger, NoOpBalanceJournal.S))
+                    : new Account(i);
+            accounts[i].debit(Long.MAX_VALUE / ACCOUNTS_COUNT);
+        }
+    }
+
+    @Benchmark
+    public boolean transfer() {
+        next = (next + 1) & (ACCOUNTS_COUNT - 1);
+        return new Transaction(accounts[next], accounts[(next * 7 + 1) & (ACCOUNTS_COUNT - 1)], 1).execute();
+    }
+}
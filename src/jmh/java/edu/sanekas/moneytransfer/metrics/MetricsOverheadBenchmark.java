@@ -0,0 +1,70 @@
+package edu.sanekas.moneytransfer.metrics;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the always-on instrumentation: the same concurrent transfers in a JVM with metrics enabled
+ * and in a JVM with -Dmoneytransfer.metrics.enabled=false, plus the raw cost of a histogram record.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+    private static final int ACCOUNTS = 1024;
+
+    private Account[] accounts;
+    private LatencyHistogram histogram;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            accounts[i] = new Account(i);
+            accounts[i].debit(Long.MAX_VALUE / ACCOUNTS);
+        }
+        histogram = new LatencyHistogram();
+    }
+
+    @Benchmark
+    public boolean transferWithMetrics() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dmoneytransfer.metrics.enabled=false")
+    public boolean transferWithoutMetrics() {
+        return transfer();
+    }
+
+    @Benchmark
+    public void recordLatency() {
+        histogram.record(ThreadLocalRandom.current().nextInt(1_000_000));
+    }
+
+    private boolean transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(ACCOUNTS);
+        final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        return new Transaction(accounts[from], accounts[to], 1).execute();
+    }
+}
@@ -0,0 +1,58 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debit, withdraw and getTotalMoney of a single account shared by all threads of the group.
+ * Thread counts per operation are changed with -tg, e.g. ./gradlew jmh -PjmhArgs='AccountContentionBenchmark -tg 2,2,4'
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class AccountContentionBenchmark {
+    private Account account;
+
+    @Setup(Level.Iteration)
+    public void createAccount() {
+        account = new Account(0);
+        account.debit(Long.MAX_VALUE / 2);
+    }
+
+    @Benchmark
+    @Group("sharedAccount")
+    @GroupThreads(2)
+    public boolean debit() {
+        return account.debit(1);
+    }
+
+    @Benchmark
+    @Group("sharedAccount")
+    @GroupThreads(2)
+    public boolean withdraw() {
+        return account.withdraw(1);
+    }
+
+    @Benchmark
+    @Group("sharedAccount")
+    @GroupThreads(2)
+    public long getTotalMoney() {
+        return account.getTotalMoney();
+    }
+}
@@ -0,0 +1,89 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hot account read/write mix: optimistic reads of {@link Account} against the former read-write lock account.
+ * Sample time mode reports p99 per group method, the ratio of readers to writers is changed with -tg,
+ * e.g. ./gradlew jmh -PjmhArgs='AccountReadWriteBenchmark -tg 15,1'
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class AccountReadWriteBenchmark {
+
+    @Param({"stamped", "readWriteLock"})
+    private String lockType;
+
+    private Account account;
+    private ReadWriteLockAccount readWriteLockAccount;
+
+    @Setup(Level.Trial)
+    public void createAccount() {
+        account = new Account(0);
+        readWriteLockAccount = new ReadWriteLockAccount();
+    }
+
+    @Benchmark
+    @Group("hotAccount")
+    @GroupThreads(3)
+    public long read() {
+        return "stamped".equals(lockType) ? account.getTotalMoney() : readWriteLockAccount.getTotalMoney();
+    }
+
+    @Benchmark
+    @Group("hotAccount")
+    @GroupThreads(1)
+    public boolean write() {
+        return "stamped".equals(lockType) ? account.debit(1) : readWriteLockAccount.debit(1);
+    }
+
+    /**
+     * Locking scheme of {@link Account} before optimistic reads.
+     */
+    private static class ReadWriteLockAccount {
+        private final ReentrantReadWriteLock reentrantReadWriteLock = new ReentrantReadWriteLock();
+        private final Lock readLock = reentrantReadWriteLock.readLock();
+        private final Lock writeLock = reentrantReadWriteLock.writeLock();
+        private long totalMoney;
+
+        long getTotalMoney() {
+            readLock.lock();
+            try {
+                return totalMoney;
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        boolean debit(long amount) {
+            writeLock.lock();
+            try {
+                totalMoney = totalMoney + amount;
+                return true;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.apache.juneau.serializer.SerializeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a response account into a pooled direct buffer, as it is done for every response.
+ * Allocation rate is reported with: ./gradlew jmh -PjmhArgs='AccountSerializerBenchmark -prof gc'
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountSerializerBenchmark {
+    private Account account;
+    private ByteBuffer pooledBuffer;
+
+    @Setup(Level.Trial)
+    public void createAccount() {
+        account = new Account(123_456);
+        account.debit(9_876_543_210L);
+        pooledBuffer = ByteBuffer.allocateDirect(16 * 1024);
+    }
+
+    @Benchmark
+    public ByteBuffer juneauHeap() throws SerializeException {
+        return JsonAccountSerializer.S.serialize(account);
+    }
+
+    @Benchmark
+    public ByteBuffer juneau() throws SerializeException {
+        pooledBuffer.clear();
+        JsonAccountSerializer.S.serialize(account, pooledBuffer);
+        return pooledBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer direct() {
+        pooledBuffer.clear();
+        DirectJsonAccountSerializer.S.serialize(account, pooledBuffer);
+        return pooledBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer binary() {
+        pooledBuffer.clear();
+        BinaryAccountSerializer.S.serialize(account, pooledBuffer);
+        return pooledBuffer;
+    }
+}
@@ -0,0 +1,94 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debits of accounts chosen by Zipf distribution, so a few merchant accounts get most of them,
+ * and occasional withdrawals, which fold credit stripes of hot accounts.
+ * "plain" accounts are never hot, "striped" makes the most popular accounts hot upfront.
+ * Contention detection is disabled, so that it doesn't change the mode in the middle of the trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dmoneytransfer.hotAccount.contentionThreshold=0")
+@Threads(4)
+@State(Scope.Benchmark)
+public class HotAccountBenchmark {
+    private static final int ACCOUNTS = 10_000;
+    private static final int HOT_ACCOUNTS = 16;
+    private static final int SAMPLES = 1 << 16;
+    private static final int WITHDRAWAL_PERIOD = 64;
+
+    @Param({"plain", "striped"})
+    public String mode;
+
+    @Param({"1.2"})
+    public double zipfExponent;
+
+    private Account[] accounts;
+    private double[] cdf;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            accounts[i] = new Account(i);
+            if ("striped".equals(mode) && i < HOT_ACCOUNTS) {
+                accounts[i].enableCreditStripes();
+            }
+        }
+        cdf = new double[ACCOUNTS];
+        double sum = 0;
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            sum += 1 / Math.pow(i + 1, zipfExponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            cdf[i] /= sum;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Choice {
+        private int[] accountIndexes;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void sample(HotAccountBenchmark benchmark) {
+            final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+            accountIndexes = new int[SAMPLES];
+            for (int i = 0; i < SAMPLES; ++i) {
+                final int index = Arrays.binarySearch(benchmark.cdf, random.nextDouble());
+                accountIndexes[i] = Math.min(index < 0 ? -index - 1 : index, ACCOUNTS - 1);
+            }
+        }
+
+        int nextAccountIndex() {
+            return accountIndexes[next++ & (SAMPLES - 1)];
+        }
+    }
+
+    @Benchmark
+    public boolean debitOrWithdraw(Choice choice) {
+        final Account account = accounts[choice.nextAccountIndex()];
+        return (choice.next & (WITHDRAWAL_PERIOD - 1)) == 0 ? account.withdraw(1) : account.debit(1);
+    }
+}
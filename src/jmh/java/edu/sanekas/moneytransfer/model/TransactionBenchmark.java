@@ -0,0 +1,102 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent {@link Transaction#execute()} between accounts chosen uniformly or by Zipf distribution (s = 1),
+ * where a few hot accounts take part in most of the transfers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TransactionBenchmark {
+    private static final int PAIRS_PER_THREAD = 1 << 16;
+
+    @Param({"10000"})
+    private int accountsCount;
+
+    @Param({"uniform", "skewed"})
+    private String distribution;
+
+    private Account[] accounts;
+    private double[] zipfCdf;
+
+    @Setup(Level.Trial)
+    public void createAccounts() {
+        accounts = new Account[accountsCount];
+        for (int i = 0; i < accountsCount; ++i) {
+            accounts[i] = new Account(i);
+            accounts[i].debit(Long.MAX_VALUE / accountsCount);
+        }
+        zipfCdf = new double[accountsCount];
+        double sum = 0;
+        for (int i = 0; i < accountsCount; ++i) {
+            sum += 1.0 / (i + 1);
+            zipfCdf[i] = sum;
+        }
+        for (int i = 0; i < accountsCount; ++i) {
+            zipfCdf[i] /= sum;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Pairs {
+        private int[] fromIndexes;
+        private int[] toIndexes;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void choosePairs(TransactionBenchmark benchmark) {
+            final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+            fromIndexes = new int[PAIRS_PER_THREAD];
+            toIndexes = new int[PAIRS_PER_THREAD];
+            for (int i = 0; i < PAIRS_PER_THREAD; ++i) {
+                fromIndexes[i] = benchmark.chooseAccount(random);
+                do {
+                    toIndexes[i] = benchmark.chooseAccount(random);
+                } while (toIndexes[i] == fromIndexes[i]);
+            }
+        }
+
+        int next() {
+            next = (next + 1) & (PAIRS_PER_THREAD - 1);
+            return next;
+        }
+    }
+
+    private int chooseAccount(SplittableRandom random) {
+        if ("uniform".equals(distribution)) {
+            return random.nextInt(accountsCount);
+        }
+        final int index = Arrays.binarySearch(zipfCdf, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, accountsCount - 1);
+    }
+
+    @Benchmark
+    public boolean execute(Pairs pairs) {
+        final int pair = pairs.next();
+        final Account fromAccount = accounts[pairs.fromIndexes[pair]];
+        final Account toAccount = accounts[pairs.toIndexes[pair]];
+        return new Transaction(fromAccount, toAccount, 1).execute();
+    }
+}
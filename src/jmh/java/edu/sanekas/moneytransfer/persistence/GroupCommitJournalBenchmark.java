@@ -0,0 +1,64 @@
+package edu.sanekas.moneytransfer.persistence;
+
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable commits per second at different batch windows.
+ * Every operation appends a record and waits until it is fsynced, as an HTTP request does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class GroupCommitJournalBenchmark {
+
+    @Param({"0", "100", "500", "2000"})
+    private long batchWindowMicros;
+
+    @Param({"4096"})
+    private int maxBatchRecords;
+
+    private Path journalPath;
+    private GroupCommitJournal journal;
+
+    @Setup(Level.Trial)
+    public void openJournal() throws IOException {
+        journalPath = Files.createTempFile("journal-benchmark", ".bin");
+        journal = new GroupCommitJournal(journalPath, batchWindowMicros, TimeUnit.MICROSECONDS, maxBatchRecords);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeJournal() throws IOException {
+        journal.close();
+        Files.deleteIfExists(journalPath);
+    }
+
+    @Benchmark
+    public long commit() {
+        final long sequence = journal.append(BalanceJournal.DEBIT, 0, 0, 1);
+        journal.awaitDurable(sequence);
+        return sequence;
+    }
+}
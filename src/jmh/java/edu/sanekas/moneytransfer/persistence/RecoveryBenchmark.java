@@ -0,0 +1,107 @@
+package edu.sanekas.moneytransfer.persistence;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.Transaction;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time: restoring accounts from the latest snapshot plus journal tail
+ * against replaying the whole journal.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+
+    @Param({"10000000"})
+    private int accounts;
+
+    @Param({"1000000"})
+    private int tailTransfers;
+
+    private Path journalPath;
+    private Path snapshotPath;
+    private GroupCommitJournal journal;
+
+    @Setup(Level.Trial)
+    public void writeJournalAndSnapshot() throws IOException {
+        journalPath = Files.createTempFile("recovery-benchmark", ".journal");
+        snapshotPath = Files.createTempFile("recovery-benchmark", ".snapshot");
+        try (GroupCommitJournal writeJournal = openJournal()) {
+            final Random random = new Random(42);
+            long lastSequence = 0;
+            for (int i = 0; i < accounts; ++i) {
+                writeJournal.append(BalanceJournal.CREATE, i, i, 0);
+                lastSequence = writeJournal.append(BalanceJournal.DEBIT, i, i, 1 + random.nextInt(1_000_000));
+            }
+            writeJournal.awaitDurable(lastSequence);
+            final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(writeJournal);
+            writeJournal.replay(0, new JournalReplayer(storage));
+            new BalanceSnapshot(snapshotPath, storage, writeJournal).write();
+            for (int i = 0; i < tailTransfers; ++i) {
+                final Account fromAccount = storage.getAccountById(random.nextInt(accounts)).orElseThrow();
+                final Account toAccount = storage.getAccountById(random.nextInt(accounts)).orElseThrow();
+                lastSequence = Math.max(lastSequence, new Transaction(fromAccount, toAccount, 1).executeJournaled());
+            }
+            writeJournal.awaitDurable(lastSequence);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openJournalForRecovery() throws IOException {
+        journal = openJournal();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() throws IOException {
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void removeFiles() throws IOException {
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(snapshotPath);
+    }
+
+    @Benchmark
+    public AccountsStorage snapshotAndJournalTail() throws IOException {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal);
+        journal.recover(() -> BalanceSnapshot.restore(snapshotPath, storage), new JournalReplayer(storage));
+        return storage;
+    }
+
+    @Benchmark
+    public AccountsStorage wholeJournal() throws IOException {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal);
+        journal.replay(0, new JournalReplayer(storage));
+        return storage;
+    }
+
+    private GroupCommitJournal openJournal() throws IOException {
+        return new GroupCommitJournal(journalPath, 1, TimeUnit.MILLISECONDS, 65536);
+    }
+}
@@ -0,0 +1,115 @@
+package edu.sanekas.moneytransfer.replication;
+
+import edu.sanekas.moneytransfer.metrics.LatencyHistogram;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Debits on the primary with a follower over loopback: "none" without replication, "async" and "semisync".
+ * Lag of the follower in records is sampled every millisecond and printed with the time the follower needs
+ * to catch up after the trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ReplicationBenchmark {
+    private static final int ACCOUNTS = 10_000;
+
+    @Param({"none", "async", "semisync"})
+    public String mode;
+
+    private Account[] accounts;
+    private ReplicationLog log;
+    private ReplicationNode primary;
+    private ReplicationNode follower;
+    private final LatencyHistogram lagRecords = new LatencyHistogram();
+    private volatile boolean sampling;
+    private Thread sampler;
+
+    @Setup(Level.Trial)
+    public void startReplication() throws Exception {
+        log = "none".equals(mode)
+                ? null
+                : new ReplicationLog(NoOpBalanceJournal.S, 1 << 20, "semisync".equals(mode), 1, TimeUnit.SECONDS);
+        final BalanceJournal journal = log == null ? NoOpBalanceJournal.S : log;
+        final AccountsStorage accountsStorage = new SegmentedInMemoryAccountsStorage(journal);
+        accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            accounts[i] = accountsStorage.createAccount();
+        }
+        if (log == null) {
+            return;
+        }
+        primary = ReplicationNode.primary(log, accountsStorage, 0, 0);
+        follower = ReplicationNode.follower(
+                new ReplicationLog(NoOpBalanceJournal.S, 1, false, 0, TimeUnit.SECONDS),
+                new SegmentedInMemoryAccountsStorage(), 0, "localhost", primary.getServer().getPort());
+        while (follower.getFollower().getAppliedSequence() < log.getLastSequence()) {
+            Thread.sleep(10);
+        }
+        sampling = true;
+        sampler = new Thread(() -> {
+            while (sampling) {
+                lagRecords.record(log.getLastSequence() - follower.getFollower().getAppliedSequence());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }, "lag-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopReplication() throws Exception {
+        if (log == null) {
+            return;
+        }
+        sampling = false;
+        sampler.join();
+        final long startTime = System.nanoTime();
+        while (follower.getFollower().getAppliedSequence() < log.getLastSequence()) {
+            Thread.sleep(1);
+        }
+        System.out.println();
+        System.out.println(mode + " follower lag, records: p50 " + lagRecords.getValueAtPercentile(50) + ", p99 "
+                + lagRecords.getValueAtPercentile(99) + ", max " + lagRecords.getMax() + "; caught up in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms after "
+                + log.getLastSequence() + " records, " + log.getAckTimeouts() + " ack timeouts");
+        follower.close();
+        primary.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Choice {
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    public boolean debit(Choice choice) {
+        return accounts[choice.random.nextInt(ACCOUNTS)].debit(1);
+    }
+}
@@ -0,0 +1,76 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares copy-on-write, segmented and removable storages on already filled storages.
+ * Run: ./gradlew jmh -PjmhArgs='AccountsStorageBenchmark'
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+@State(Scope.Benchmark)
+public class AccountsStorageBenchmark {
+
+    @Param({"1000000", "10000000", "50000000"})
+    private int accounts;
+
+    @Param({"copyOnWrite", "segmented", "removable"})
+    private String storageType;
+
+    private AccountsStorage storage;
+
+    @Setup(Level.Trial)
+    public void fillStorage() {
+        if ("copyOnWrite".equals(storageType)) {
+            storage = new AppendableInMemoryAccountsStorage(accounts);
+        } else {
+            storage = "segmented".equals(storageType)
+                    ? new SegmentedInMemoryAccountsStorage()
+                    : new RemovableInMemoryAccountsStorage();
+            for (int i = 0; i < accounts; ++i) {
+                storage.createAccount();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeStorage() {
+        if (storage instanceof RemovableInMemoryAccountsStorage) {
+            ((RemovableInMemoryAccountsStorage) storage).close();
+        }
+    }
+
+    @Benchmark
+    public Optional<Account> getAccountById() {
+        return storage.getAccountById(ThreadLocalRandom.current().nextInt(accounts));
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3, batchSize = 100)
+    @Measurement(iterations = 5, batchSize = 100)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Account createAccount() {
+        return storage.createAccount();
+    }
+}
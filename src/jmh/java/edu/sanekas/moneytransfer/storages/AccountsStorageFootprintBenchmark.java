@@ -0,0 +1,94 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by a storage per live account, including the accounts, printed before the first iteration,
+ * and lookups of live accounts. "removedMost" is the removable storage after removing 9 of every 10 created
+ * accounts and compaction.
+ * Run: ./gradlew jmh -PjmhArgs='AccountsStorageFootprintBenchmark'
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AccountsStorageFootprintBenchmark {
+    @Param({"1000000"})
+    private int accounts;
+
+    @Param({"copyOnWrite", "segmented", "removable", "removedMost"})
+    private String storageType;
+
+    private AccountsStorage storage;
+
+    @Setup(Level.Trial)
+    public void fillStorage() {
+        final long usedBefore = usedHeap();
+        if ("copyOnWrite".equals(storageType)) {
+            storage = new AppendableInMemoryAccountsStorage(accounts);
+        } else if ("segmented".equals(storageType)) {
+            storage = new SegmentedInMemoryAccountsStorage();
+            for (int i = 0; i < accounts; ++i) {
+                storage.createAccount();
+            }
+        } else {
+            final RemovableInMemoryAccountsStorage removableStorage = new RemovableInMemoryAccountsStorage();
+            for (int i = 0; i < accounts; ++i) {
+                removableStorage.createAccount();
+            }
+            for (int i = 0; "removedMost".equals(storageType) && i < accounts; ++i) {
+                if (i % 10 != 0) {
+                    removableStorage.removeAccountById(i);
+                }
+            }
+            removableStorage.compact();
+            storage = removableStorage;
+        }
+        final long liveAccounts = storage.getAllAccounts().count();
+        System.out.println(storageType + " storage retains " + (usedHeap() - usedBefore) / liveAccounts
+                + " bytes per live account");
+    }
+
+    @TearDown(Level.Trial)
+    public void closeStorage() {
+        if (storage instanceof RemovableInMemoryAccountsStorage) {
+            ((RemovableInMemoryAccountsStorage) storage).close();
+        }
+    }
+
+    /**
+     * Looks up live accounts only, ids of live accounts are multiples of 10 in "removedMost"
+     */
+    @Benchmark
+    public Optional<Account> getAccountById() {
+        final int accountId = ThreadLocalRandom.current().nextInt(accounts);
+        return storage.getAccountById("removedMost".equals(storageType) ? accountId - accountId % 10 : accountId);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,91 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.persistence.GroupCommitJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of a partner's accounts with initial balances one by one, as by POST /accounts and a debit per account,
+ * and in bulk, as by POST /accounts/batch, into an empty storage with and without a fsynced journal.
+ * Run: ./gradlew jmh -PjmhArgs='BulkAccountCreationBenchmark'
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkAccountCreationBenchmark {
+
+    @Param({"10000"})
+    private int accounts;
+
+    @Param({"segmented", "removable"})
+    private String storageType;
+
+    @Param({"none", "fsync"})
+    private String journalType;
+
+    private Path journalPath;
+    private BalanceJournal journal;
+    private AccountsStorage storage;
+
+    @Setup(Level.Invocation)
+    public void createStorage() throws IOException {
+        if ("fsync".equals(journalType)) {
+            journalPath = Files.createTempFile("journal-benchmark", ".bin");
+            journal = new GroupCommitJournal(journalPath, 100, TimeUnit.MICROSECONDS, 4096);
+        } else {
+            journal = NoOpBalanceJournal.S;
+        }
+        storage = "segmented".equals(storageType)
+                ? new SegmentedInMemoryAccountsStorage(journal)
+                : new RemovableInMemoryAccountsStorage(journal);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStorage() throws Exception {
+        if (storage instanceof RemovableInMemoryAccountsStorage) {
+            ((RemovableInMemoryAccountsStorage) storage).close();
+        }
+        if (journal instanceof GroupCommitJournal) {
+            ((GroupCommitJournal) journal).close();
+            Files.deleteIfExists(journalPath);
+        }
+    }
+
+    @Benchmark
+    public int createOneByOne() {
+        int lastAccountId = 0;
+        for (int i = 0; i < accounts; ++i) {
+            final Account account = storage.createAccount();
+            account.debit(100);
+            lastAccountId = account.getId();
+        }
+        return lastAccountId;
+    }
+
+    @Benchmark
+    public int createInBulk() {
+        return storage.createAccounts(accounts, 100);
+    }
+}
@@ -0,0 +1,38 @@
+package edu.sanekas.moneytransfer.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Chooses account ids uniformly or by Zipf distribution, where id 0 is the most popular account.
+ */
+class AccountChooser {
+    private final int accounts;
+    private final double[] cdf;
+
+    AccountChooser(int accounts) {
+        this.accounts = accounts;
+        this.cdf = null;
+    }
+
+    AccountChooser(int accounts, double exponent) {
+        this.accounts = accounts;
+        this.cdf = new double[accounts];
+        double sum = 0;
+        for (int i = 0; i < accounts; ++i) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < accounts; ++i) {
+            cdf[i] /= sum;
+        }
+    }
+
+    int choose(SplittableRandom random) {
+        if (cdf == null) {
+            return random.nextInt(accounts);
+        }
+        final int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, accounts - 1);
+    }
+}
@@ -0,0 +1,446 @@
+package edu.sanekas.moneytransfer.loadtest;
+
+import edu.sanekas.moneytransfer.Main;
+import edu.sanekas.moneytransfer.ServerConfig;
+import edu.sanekas.moneytransfer.cluster.ClusterNode;
+import edu.sanekas.moneytransfer.cluster.Partitioning;
+import edu.sanekas.moneytransfer.cluster.TransferLog;
+import edu.sanekas.moneytransfer.executors.FinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.executors.LockingFinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.executors.ShardedFinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.metrics.LatencyHistogram;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.replication.ReplicationLog;
+import edu.sanekas.moneytransfer.replication.ReplicationNode;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import io.undertow.Undertow;
+import io.undertow.util.StatusCodes;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of the service started in-process.
+ * Requests are scheduled at a fixed rate regardless of responses and are sent over a fixed number of connections.
+ * Latency of every request is measured from its scheduled start, so stalls of the server are not hidden
+ * by a waiting client (coordinated omission).
+ * Run: ./gradlew loadtest -Dmoneytransfer.loadtest.rate=20000 -Dmoneytransfer.loadtest.distribution=zipf
+ * -Dmoneytransfer.dispatch=io
+ */
+public class LoadGenerator {
+    private final static int PORT = Integer.getInteger("moneytransfer.loadtest.port", 8081);
+    private final static int ACCOUNTS = Integer.getInteger("moneytransfer.loadtest.accounts", 10_000);
+    private final static long INITIAL_MONEY = Long.getLong("moneytransfer.loadtest.initialMoney", 1_000_000);
+    /**
+     * Requests per second
+     */
+    private final static int RATE = Integer.getInteger("moneytransfer.loadtest.rate", 10_000);
+    private final static int DURATION_SECONDS = Integer.getInteger("moneytransfer.loadtest.durationSeconds", 30);
+    /**
+     * "uniform" or "zipf"
+     */
+    private final static String DISTRIBUTION = System.getProperty("moneytransfer.loadtest.distribution", "zipf");
+    private final static double ZIPF_EXPONENT =
+            Double.parseDouble(System.getProperty("moneytransfer.loadtest.zipfExponent", "1.0"));
+    /**
+     * Weights of GET, debit, withdraw and transfer requests
+     */
+    private final static String MIX = System.getProperty("moneytransfer.loadtest.mix", "50,15,15,20");
+    private final static int CONNECTIONS = Integer.getInteger("moneytransfer.loadtest.connections", 64);
+    private final static long MAX_AMOUNT = Long.getLong("moneytransfer.loadtest.maxAmount", 100);
+    private final static String EXECUTOR = System.getProperty("moneytransfer.executor", "locking");
+    private final static String DISPATCH = System.getProperty("moneytransfer.dispatch", "worker");
+    /**
+     * In-process followers replicating the service over loopback, their lag is sampled every 10 ms
+     */
+    private final static int FOLLOWERS = Integer.getInteger("moneytransfer.loadtest.followers", 0);
+    private final static String REPLICATION_ACK = System.getProperty("moneytransfer.replication.ack", "async");
+    /**
+     * In-process cluster nodes on consecutive ports, each owning an equal range of accounts. Every request is sent
+     * to the node owning the account, transfers between nodes are coordinated by the node money is taken from.
+     * Followers replicate only a single node.
+     */
+    private final static int NODES = Integer.getInteger("moneytransfer.loadtest.nodes", 1);
+
+    private enum Route {
+        GET, DEBIT, WITHDRAW, TRANSFER
+    }
+
+    private static final ScheduledRequest STOP = new ScheduledRequest(Route.GET, null, 0, 0);
+
+    private final HttpClient httpClient;
+    /**
+     * Base URI of every node
+     */
+    private final String[] baseUris;
+    private final int accountsPerNode;
+    private final AccountChooser accountChooser;
+    private final int[] mixCdf;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Route.values().length];
+    private final AtomicLongArray failures = new AtomicLongArray(Route.values().length);
+    private final AtomicLong debited = new AtomicLong();
+    private final AtomicLong withdrawn = new AtomicLong();
+
+    private LoadGenerator(HttpClient httpClient, String[] baseUris, int accountsPerNode,
+                          AccountChooser accountChooser, int[] mixCdf) {
+        this.httpClient = httpClient;
+        this.baseUris = baseUris;
+        this.accountsPerNode = accountsPerNode;
+        this.accountChooser = accountChooser;
+        this.mixCdf = mixCdf;
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final ReplicationLog replicationLog = FOLLOWERS == 0 || NODES > 1
+                ? null
+                : new ReplicationLog(NoOpBalanceJournal.S, 1 << 20, "semisync".equals(REPLICATION_ACK), 1,
+                        TimeUnit.SECONDS);
+        final int accountsPerNode = (ACCOUNTS + NODES - 1) / NODES;
+        final List<String> nodeAddresses = new ArrayList<>();
+        final String[] baseUris = new String[NODES];
+        for (int node = 0; node < NODES; ++node) {
+            nodeAddresses.add("localhost:" + (PORT + node));
+            baseUris[node] = "http://localhost:" + (PORT + node);
+        }
+        final AccountsStorage[] accountsStorages = new AccountsStorage[NODES];
+        for (int node = 0; node < NODES; ++node) {
+            accountsStorages[node] = new SegmentedInMemoryAccountsStorage(
+                    replicationLog == null ? NoOpBalanceJournal.S : replicationLog, node * accountsPerNode,
+                    accountsPerNode);
+            for (int i = node * accountsPerNode; i < Math.min(ACCOUNTS, (node + 1) * accountsPerNode); ++i) {
+                accountsStorages[node].createAccount().debit(INITIAL_MONEY);
+            }
+        }
+        final ReplicationNode primary = replicationLog == null
+                ? null
+                : ReplicationNode.primary(replicationLog, accountsStorages[0], 0, 0);
+        final LagSampler lagSampler = primary == null ? null : new LagSampler(primary);
+        final FinanceOperationsExecutor operationsExecutor = "sharded".equals(EXECUTOR)
+                ? new ShardedFinanceOperationsExecutor(Runtime.getRuntime().availableProcessors(), 1024)
+                : LockingFinanceOperationsExecutor.S;
+        final ClusterNode[] clusterNodes = new ClusterNode[NODES];
+        final Undertow[] undertows = new Undertow[NODES];
+        for (int node = 0; node < NODES; ++node) {
+            clusterNodes[node] = NODES == 1
+                    ? null
+                    : ClusterNode.start(new Partitioning(node, nodeAddresses, accountsPerNode), accountsStorages[node],
+                            new TransferLog(null), 1, 100, TimeUnit.SECONDS);
+            undertows[node] = Main.startServer(new ServerConfig(PORT + node, accountsStorages[node], operationsExecutor)
+                    .replicationNode(primary)
+                    .clusterNode(clusterNodes[node]));
+        }
+
+        final HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        final AccountChooser accountChooser = "uniform".equals(DISTRIBUTION)
+                ? new AccountChooser(ACCOUNTS)
+                : new AccountChooser(ACCOUNTS, ZIPF_EXPONENT);
+        final LoadGenerator loadGenerator =
+                new LoadGenerator(httpClient, baseUris, accountsPerNode, accountChooser, parseMix(MIX));
+        System.out.println("Sending " + RATE + " requests/s for " + DURATION_SECONDS + " s over " + CONNECTIONS
+                + " connections to " + ACCOUNTS + " " + DISTRIBUTION + " accounts with " + EXECUTOR + " executor and "
+                + DISPATCH + " dispatch" + (primary == null ? "" : " and " + FOLLOWERS + " " + REPLICATION_ACK
+                + " followers") + (NODES == 1 ? "" : " on " + NODES + " nodes"));
+        if (lagSampler != null) {
+            lagSampler.start();
+        }
+        final long elapsedNanos = loadGenerator.run();
+        loadGenerator.report(elapsedNanos);
+        if (NODES > 1) {
+            reportTransfersBetweenNodes(clusterNodes);
+        }
+        boolean isConserved = loadGenerator.checkConservation(accountsStorages);
+        if (lagSampler != null) {
+            isConserved &= lagSampler.stop(accountsStorages[0]);
+            primary.close();
+        }
+
+        for (int node = 0; node < NODES; ++node) {
+            undertows[node].stop();
+            if (clusterNodes[node] != null) {
+                clusterNodes[node].close();
+            }
+        }
+        if (operationsExecutor instanceof AutoCloseable) {
+            ((AutoCloseable) operationsExecutor).close();
+        }
+        System.exit(isConserved ? 0 : 1);
+    }
+
+    /**
+     * Schedules requests at the configured rate and waits for all responses
+     * @return nanoseconds from the first scheduled request till the last response
+     */
+    private long run() throws InterruptedException {
+        final long totalRequests = (long) RATE * DURATION_SECONDS;
+        final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) RATE;
+        final SplittableRandom random = new SplittableRandom(42);
+        final BlockingQueue<ScheduledRequest> schedule = new LinkedBlockingQueue<>();
+        final Thread[] connections = new Thread[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; ++i) {
+            connections[i] = new Thread(() -> send(schedule), "loadtest-connection-" + i);
+            connections[i].start();
+        }
+        final long startTime = System.nanoTime();
+        for (long i = 0; i < totalRequests; ++i) {
+            final long scheduledTime = startTime + (long) (i * intervalNanos);
+            long now;
+            while ((now = System.nanoTime()) < scheduledTime) {
+                LockSupport.parkNanos(scheduledTime - now);
+            }
+            schedule.add(createRequest(random, scheduledTime));
+        }
+        for (int i = 0; i < CONNECTIONS; ++i) {
+            schedule.add(STOP);
+        }
+        for (Thread connection : connections) {
+            connection.join();
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private ScheduledRequest createRequest(SplittableRandom random, long scheduledTime) {
+        final Route route = chooseRoute(random.nextInt(mixCdf[mixCdf.length - 1]));
+        final int accountId = accountChooser.choose(random);
+        final long amount = 1 + random.nextLong(MAX_AMOUNT);
+        switch (route) {
+            case GET:
+                return new ScheduledRequest(route, baseUris[accountId / accountsPerNode] + "/accounts/" + accountId,
+                        amount, scheduledTime);
+            case DEBIT:
+                return new ScheduledRequest(route, baseUris[accountId / accountsPerNode] + "/accounts/" + accountId
+                        + "/debit/" + amount, amount, scheduledTime);
+            case WITHDRAW:
+                return new ScheduledRequest(route, baseUris[accountId / accountsPerNode] + "/accounts/" + accountId
+                        + "/withdraw/" + amount, amount, scheduledTime);
+            default:
+                int toAccountId;
+                do {
+                    toAccountId = accountChooser.choose(random);
+                } while (toAccountId == accountId);
+                return new ScheduledRequest(route, baseUris[accountId / accountsPerNode] + "/accounts/from/"
+                        + accountId + "/to/" + toAccountId + "/transfer/" + amount, amount, scheduledTime);
+        }
+    }
+
+    /**
+     * Sends scheduled requests one by one, as a single keep-alive connection does
+     */
+    private void send(BlockingQueue<ScheduledRequest> schedule) {
+        try {
+            ScheduledRequest request;
+            while ((request = schedule.take()) != STOP) {
+                send(request);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(ScheduledRequest request) throws InterruptedException {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.uri));
+        switch (request.route) {
+            case GET:
+                builder.GET();
+                break;
+            case DEBIT:
+            case WITHDRAW:
+                builder.PUT(HttpRequest.BodyPublishers.noBody());
+                break;
+            default:
+                builder.POST(HttpRequest.BodyPublishers.noBody());
+        }
+        final int route = request.route.ordinal();
+        boolean isSuccessful;
+        try {
+            isSuccessful = httpClient.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode()
+                    == StatusCodes.OK;
+        } catch (IOException e) {
+            isSuccessful = false;
+        }
+        histograms[route].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - request.scheduledTime));
+        if (!isSuccessful) {
+            failures.incrementAndGet(route);
+        } else if (request.route == Route.DEBIT) {
+            debited.addAndGet(request.amount);
+        } else if (request.route == Route.WITHDRAW) {
+            withdrawn.addAndGet(request.amount);
+        }
+    }
+
+    private Route chooseRoute(int weight) {
+        for (int i = 0; i < mixCdf.length; ++i) {
+            if (weight < mixCdf[i]) {
+                return Route.values()[i];
+            }
+        }
+        return Route.TRANSFER;
+    }
+
+    private void report(long elapsedNanos) {
+        final double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("%-9s %10s %8s %10s %10s %10s %10s %10s%n",
+                "route", "requests", "failed", "req/s", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (Route route : Route.values()) {
+            final LatencyHistogram histogram = histograms[route.ordinal()];
+            System.out.printf("%-9s %10d %8d %10.0f %10d %10d %10d %10d%n", route, histogram.getCount(),
+                    failures.get(route.ordinal()), histogram.getCount() / elapsedSeconds,
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMax());
+        }
+    }
+
+    /**
+     * Transfers should not change the total money, so it should differ from the initial one only by
+     * successful debits and withdrawals
+     */
+    private boolean checkConservation(AccountsStorage[] accountsStorages) {
+        final long expected = ACCOUNTS * INITIAL_MONEY + debited.get() - withdrawn.get();
+        final long actual = Arrays.stream(accountsStorages)
+                .flatMap(AccountsStorage::getAllAccounts)
+                .mapToLong(Account::getTotalMoney)
+                .sum();
+        System.out.println("Total money: " + actual + ", expected: " + expected
+                + (actual == expected ? ", conserved" : ", NOT conserved"));
+        return actual == expected;
+    }
+
+    /**
+     * Waits until credits of transfers between nodes are finished, so their money is back in balances
+     */
+    private static void reportTransfersBetweenNodes(ClusterNode[] clusterNodes) throws InterruptedException {
+        long committed = 0;
+        long aborted = 0;
+        for (ClusterNode clusterNode : clusterNodes) {
+            while (clusterNode.getCoordinator().getUnfinishedTransfers() > 0) {
+                Thread.sleep(1);
+            }
+            committed += clusterNode.getCoordinator().getCommittedTransfers();
+            aborted += clusterNode.getCoordinator().getAbortedTransfers();
+        }
+        System.out.println("Transfers between nodes: " + committed + " committed, " + aborted + " aborted");
+    }
+
+    /**
+     * Starts followers of the primary and samples how many records they are behind it
+     */
+    private static class LagSampler {
+        private final ReplicationLog log;
+        private final AccountsStorage[] followerStorages = new AccountsStorage[FOLLOWERS];
+        private final ReplicationNode[] followers = new ReplicationNode[FOLLOWERS];
+        private final LatencyHistogram lagRecords = new LatencyHistogram();
+        private final LatencyHistogram lagMillis = new LatencyHistogram();
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        LagSampler(ReplicationNode primary) throws IOException, InterruptedException {
+            this.log = primary.getLog();
+            for (int i = 0; i < FOLLOWERS; ++i) {
+                followerStorages[i] = new SegmentedInMemoryAccountsStorage();
+                followers[i] = ReplicationNode.follower(
+                        new ReplicationLog(NoOpBalanceJournal.S, 1, false, 0, TimeUnit.SECONDS),
+                        followerStorages[i], 0, "localhost", primary.getServer().getPort());
+            }
+            awaitCaughtUp();
+        }
+
+        void start() {
+            scheduler.scheduleAtFixedRate(() -> {
+                for (ReplicationNode follower : followers) {
+                    lagRecords.record(log.getLastSequence() - follower.getFollower().getAppliedSequence());
+                    lagMillis.record(follower.getFollower().getLagMillis());
+                }
+            }, 10, 10, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Reports lag and checks that followers have the same total money as the primary after catching up
+         */
+        boolean stop(AccountsStorage accountsStorage) throws IOException, InterruptedException {
+            scheduler.shutdown();
+            final long startTime = System.nanoTime();
+            awaitCaughtUp();
+            System.out.printf("%-9s %10s %10s %10s %10s%n", "lag", "p50", "p99", "p99.9", "max");
+            System.out.printf("%-9s %10d %10d %10d %10d%n", "records", lagRecords.getValueAtPercentile(50),
+                    lagRecords.getValueAtPercentile(99), lagRecords.getValueAtPercentile(99.9), lagRecords.getMax());
+            System.out.printf("%-9s %10d %10d %10d %10d%n", "ms", lagMillis.getValueAtPercentile(50),
+                    lagMillis.getValueAtPercentile(99), lagMillis.getValueAtPercentile(99.9), lagMillis.getMax());
+            System.out.println("Followers caught up in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+                    + " ms, " + log.getAckTimeouts() + " ack timeouts");
+            final long expected = accountsStorage.getAllAccounts().mapToLong(Account::getTotalMoney).sum();
+            boolean isReplicated = true;
+            for (int i = 0; i < FOLLOWERS; ++i) {
+                final long actual = followerStorages[i].getAllAccounts().mapToLong(Account::getTotalMoney).sum();
+                isReplicated &= actual == expected;
+                followers[i].close();
+            }
+            System.out.println("Followers " + (isReplicated ? "have" : "do NOT have")
+                    + " the total money of the primary");
+            return isReplicated;
+        }
+
+        private void awaitCaughtUp() throws InterruptedException {
+            for (ReplicationNode follower : followers) {
+                while (follower.getFollower().getAppliedSequence() < log.getLastSequence()) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+    }
+
+    private static class ScheduledRequest {
+        private final Route route;
+        /**
+         * URI of the request at the node owning the account
+         */
+        private final String uri;
+        private final long amount;
+        private final long scheduledTime;
+
+        ScheduledRequest(Route route, String uri, long amount, long scheduledTime) {
+            this.route = route;
+            this.uri = uri;
+            this.amount = amount;
+            this.scheduledTime = scheduledTime;
+        }
+    }
+
+    /**
+     * @param mix comma separated weights of routes in order of {@link Route}
+     * @return cumulative weights
+     */
+    private static int[] parseMix(String mix) {
+        final int[] weights = Arrays.stream(mix.split(",")).mapToInt(weight -> Integer.parseInt(weight.trim()))
+                .toArray();
+        if (weights.length != Route.values().length) {
+            throw new IllegalArgumentException("Mix should contain " + Route.values().length + " weights: " + mix);
+        }
+        for (int i = 1; i < weights.length; ++i) {
+            weights[i] += weights[i - 1];
+        }
+        if (weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("Mix should contain a positive weight: " + mix);
+        }
+        return weights;
+    }
+}
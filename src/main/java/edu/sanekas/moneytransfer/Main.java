@@ -1,41 +1,380 @@
 package edu.sanekas.moneytransfer;
 
 import edu.sanekas.moneytransfer.api.AccountsController;
+import edu.sanekas.moneytransfer.api.AuditController;
+import edu.sanekas.moneytransfer.api.ClusterController;
+import edu.sanekas.moneytransfer.api.ClusterRouter;
 import edu.sanekas.moneytransfer.api.FinanceOperationsController;
-import edu.sanekas.moneytransfer.model.JsonAccountSerializer;
+import edu.sanekas.moneytransfer.api.LedgerController;
+import edu.sanekas.moneytransfer.api.MetricsController;
+import edu.sanekas.moneytransfer.api.MoneyTransferRouter;
+import edu.sanekas.moneytransfer.api.ReplicationController;
+import edu.sanekas.moneytransfer.api.misc.AccountResponseCache;
+import edu.sanekas.moneytransfer.api.misc.DispatchingHandler;
+import edu.sanekas.moneytransfer.api.misc.IdempotencyCache;
+import edu.sanekas.moneytransfer.api.misc.IdempotentHandler;
+import edu.sanekas.moneytransfer.api.misc.InstrumentedHandler;
+import edu.sanekas.moneytransfer.api.misc.ReplicaHandler;
+import edu.sanekas.moneytransfer.cluster.ClusterNode;
+import edu.sanekas.moneytransfer.cluster.Partitioning;
+import edu.sanekas.moneytransfer.cluster.TransferLog;
+import edu.sanekas.moneytransfer.executors.FinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.executors.LockingFinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.executors.ShardHandoffRecovery;
+import edu.sanekas.moneytransfer.executors.ShardedFinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.ledger.Ledger;
+import edu.sanekas.moneytransfer.ledger.LedgerJournal;
+import edu.sanekas.moneytransfer.metrics.Metrics;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.DirectJsonAccountSerializer;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.persistence.BalanceSnapshot;
+import edu.sanekas.moneytransfer.persistence.GroupCommitJournal;
+import edu.sanekas.moneytransfer.persistence.JournalReplayer;
+import edu.sanekas.moneytransfer.replication.ReplicationLog;
+import edu.sanekas.moneytransfer.replication.ReplicationNode;
 import edu.sanekas.moneytransfer.storages.AccountsManager;
 import edu.sanekas.moneytransfer.storages.AccountsStorage;
-import edu.sanekas.moneytransfer.storages.AppendableInMemoryAccountsStorage;
+import edu.sanekas.moneytransfer.storages.RemovableInMemoryAccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
 import io.undertow.Handlers;
 import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
 import io.undertow.server.RoutingHandler;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
 public class Main {
-    private final static int PORT = 8080;
+    private final static int PORT = Integer.getInteger("moneytransfer.port", 8080);
+    /**
+     * Finance operations executor: "locking" (default) or "sharded"
+     */
+    private final static String EXECUTOR = System.getProperty("moneytransfer.executor", "locking");
+    private final static int SHARDS = Integer.getInteger("moneytransfer.shards",
+            Runtime.getRuntime().availableProcessors());
+    private final static int SHARD_QUEUE_CAPACITY = Integer.getInteger("moneytransfer.shardQueueCapacity", 1024);
+    /**
+     * Accounts storage: "segmented" (default) or "removable", which supports DELETE /accounts/{accountId}
+     */
+    private final static String STORAGE = System.getProperty("moneytransfer.storage", "segmented");
+    /**
+     * Journal file, balances are kept only in memory if it is not set
+     */
+    private final static String JOURNAL_PATH = System.getProperty("moneytransfer.journal.path");
+    private final static long JOURNAL_BATCH_WINDOW_MICROS =
+            Long.getLong("moneytransfer.journal.batchWindowMicros", 200);
+    private final static int JOURNAL_MAX_BATCH_RECORDS =
+            Integer.getInteger("moneytransfer.journal.maxBatchRecords", 4096);
+    /**
+     * Snapshot of balances, taken periodically when journal is enabled
+     */
+    private final static String SNAPSHOT_PATH = System.getProperty("moneytransfer.snapshot.path",
+            JOURNAL_PATH + ".snapshot");
+    private final static long SNAPSHOT_INTERVAL_SECONDS = Long.getLong("moneytransfer.snapshot.intervalSeconds", 60);
+    /**
+     * Responses of requests with Idempotency-Key header are kept for retries
+     */
+    private final static int IDEMPOTENCY_MAX_KEYS = Integer.getInteger("moneytransfer.idempotency.maxKeys", 1_000_000);
+    private final static long IDEMPOTENCY_TTL_SECONDS =
+            Long.getLong("moneytransfer.idempotency.ttlSeconds", TimeUnit.HOURS.toSeconds(24));
+    /**
+     * Max time a batch of transfers waits for the locks of its accounts before it is answered with 503
+     */
+    private final static long BATCH_LOCK_TIMEOUT_MILLIS = Long.getLong("moneytransfer.batch.lockTimeoutMillis",
+            FinanceOperationsController.DEFAULT_BATCH_LOCK_TIMEOUT_MILLIS);
+    /**
+     * Slots of serialized GET /accounts/{accountId} responses by account version, 0 disables the cache and ETags
+     */
+    private final static int RESPONSE_CACHE_CAPACITY =
+            Integer.getInteger("moneytransfer.responseCache.capacity", 65536);
+    /**
+     * In-memory ledger of balance mutations served by GET /accounts/{accountId}/transactions
+     */
+    private final static boolean LEDGER_ENABLED =
+            Boolean.parseBoolean(System.getProperty("moneytransfer.ledger.enabled", "true"));
+    /**
+     * Where handlers which may block on account locks or the journal run: "worker" (default) bounded pool,
+     * "virtual" thread per request if the runtime supports it, otherwise the worker pool, or "io" IO threads.
+     * Account lookups always run on IO threads
+     */
+    private final static String DISPATCH = System.getProperty("moneytransfer.dispatch", "worker");
+    private final static int WORKER_THREADS = Integer.getInteger("moneytransfer.workerThreads", 64);
+    private final static int WORKER_QUEUE_CAPACITY = Integer.getInteger("moneytransfer.workerQueueCapacity", 4096);
+    private final static Executor BLOCKING_EXECUTOR = createBlockingExecutor();
+    /**
+     * Replication role: "none" (default), "primary" streams balance mutations to followers from the replication port,
+     * "follower" applies them from the primary, serves reads and keeps balances only in memory
+     */
+    private final static String REPLICATION_ROLE = System.getProperty("moneytransfer.replication.role", "none");
+    private final static int REPLICATION_PORT = Integer.getInteger("moneytransfer.replication.port", 9080);
+    private final static String REPLICATION_PRIMARY =
+            System.getProperty("moneytransfer.replication.primary", "localhost:9080");
+    /**
+     * "async" (default) or "semisync": writes also wait until a follower applies them or the ack timeout elapses
+     */
+    private final static String REPLICATION_ACK = System.getProperty("moneytransfer.replication.ack", "async");
+    private final static long REPLICATION_ACK_TIMEOUT_MILLIS =
+            Long.getLong("moneytransfer.replication.ackTimeoutMillis", 1000);
+    private final static int REPLICATION_LOG_CAPACITY =
+            Integer.getInteger("moneytransfer.replication.logCapacity", 1 << 20);
+    /**
+     * Comma-separated host:port of HTTP listeners of all cluster nodes, there is no cluster if it is not set.
+     * Node i owns account ids from i * accountsPerNode, requests of accounts of other nodes are sent to them
+     */
+    private final static String CLUSTER_NODES = System.getProperty("moneytransfer.cluster.nodes");
+    private final static int CLUSTER_NODE = Integer.getInteger("moneytransfer.cluster.node", 0);
+    private final static int CLUSTER_ACCOUNTS_PER_NODE =
+            Integer.getInteger("moneytransfer.cluster.accountsPerNode", 1 << 24);
+    /**
+     * Log of transfers between nodes, they are forgotten on restart if it is not set
+     */
+    private final static String TRANSFER_LOG_PATH = System.getProperty("moneytransfer.cluster.transferLog.path",
+            JOURNAL_PATH == null ? null : JOURNAL_PATH + ".transfers");
+    private final static int CLUSTER_TIMEOUT_MILLIS = Integer.getInteger("moneytransfer.cluster.timeoutMillis", 1000);
+    private final static long CLUSTER_RETRY_INTERVAL_MILLIS =
+            Long.getLong("moneytransfer.cluster.retryIntervalMillis", 1000);
+
+    public static void main(String[] args) throws IOException {
+        final boolean isFollower = "follower".equals(REPLICATION_ROLE);
+        if (isFollower && JOURNAL_PATH != null) {
+            System.out.println("Follower keeps balances only in memory, journal is not used");
+        }
+        final Partitioning partitioning = CLUSTER_NODES == null
+                ? null
+                : new Partitioning(CLUSTER_NODE, Arrays.asList(CLUSTER_NODES.split(",")), CLUSTER_ACCOUNTS_PER_NODE);
+        final TransferLog transferLog = partitioning == null
+                ? null
+                : new TransferLog(TRANSFER_LOG_PATH == null || isFollower ? null : Paths.get(TRANSFER_LOG_PATH));
+        /**
+         * Transfers between nodes log their records before the mutations of balances, the journal makes them
+         * durable before its own records
+         */
+        final BalanceJournal journal = JOURNAL_PATH == null || isFollower
+                ? NoOpBalanceJournal.S
+                : new GroupCommitJournal(Paths.get(JOURNAL_PATH), JOURNAL_BATCH_WINDOW_MICROS, TimeUnit.MICROSECONDS,
+                        JOURNAL_MAX_BATCH_RECORDS, transferLog == null ? null : transferLog::force);
+        final ReplicationLog replicationLog = !isFollower && !"primary".equals(REPLICATION_ROLE)
+                ? null
+                : new ReplicationLog(journal, REPLICATION_LOG_CAPACITY, "semisync".equals(REPLICATION_ACK),
+                        REPLICATION_ACK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        final BalanceJournal replicatedJournal = replicationLog == null ? journal : replicationLog;
+        /**
+         * Replicated records don't pass the journal of a follower, so a follower has no ledger
+         */
+        final Ledger ledger = LEDGER_ENABLED && !isFollower ? new Ledger() : null;
+        final IntPredicate isLocalAccount = partitioning == null ? accountId -> true : partitioning::isLocal;
+        final BalanceJournal accountsJournal = ledger == null
+                ? replicatedJournal
+                : new LedgerJournal(ledger, replicatedJournal, isLocalAccount);
+        final int firstAccountId = partitioning == null ? 0 : partitioning.getFirstAccountId();
+        final int maxAccounts = partitioning == null ? Integer.MAX_VALUE : partitioning.getAccountsPerNode();
+        final AccountsStorage accountsStorage = "removable".equals(STORAGE)
+                ? new RemovableInMemoryAccountsStorage(accountsJournal, firstAccountId, maxAccounts)
+                : new SegmentedInMemoryAccountsStorage(accountsJournal, firstAccountId, maxAccounts);
+        if (journal instanceof GroupCommitJournal) {
+            recover((GroupCommitJournal) journal, accountsStorage, isLocalAccount);
+        }
+        /**
+         * A follower doesn't coordinate transfers, its cluster routes answer like its other writes
+         */
+        final ClusterNode clusterNode = partitioning == null
+                ? null
+                : ClusterNode.start(partitioning, accountsStorage, transferLog, CLUSTER_TIMEOUT_MILLIS,
+                        CLUSTER_RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        final ReplicationNode replicationNode = createReplicationNode(replicationLog, accountsStorage,
+                journal instanceof GroupCommitJournal ? ((GroupCommitJournal) journal).getLastSequence() : 0);
+        final FinanceOperationsExecutor operationsExecutor = "sharded".equals(EXECUTOR)
+                ? new ShardedFinanceOperationsExecutor(SHARDS, SHARD_QUEUE_CAPACITY)
+                : LockingFinanceOperationsExecutor.S;
+        startServer(new ServerConfig(PORT, accountsStorage, operationsExecutor)
+                .ledger(ledger)
+                .replicationNode(replicationNode)
+                .clusterNode(clusterNode));
+        System.out.println("Application started at port: " + PORT + " with " + EXECUTOR + " executor and "
+                + DISPATCH + " dispatch" + (replicationNode == null ? "" : " as " + REPLICATION_ROLE + " "
+                + REPLICATION_ACK + " replica") + (partitioning == null ? "" : " as node " + CLUSTER_NODE + " of "
+                + partitioning.getNodesCount() + " owning accounts from " + firstAccountId));
+    }
 
-    public static void main(String[] args) {
-        final AccountsStorage accountsStorage = new AppendableInMemoryAccountsStorage();
+    /**
+     * Starts the server with all routes over the storage of the config and the routes of its optional parts
+     */
+    public static Undertow startServer(ServerConfig config) {
+        final AccountsStorage accountsStorage = config.getAccountsStorage();
+        final FinanceOperationsExecutor operationsExecutor = config.getOperationsExecutor();
+        final Ledger ledger = config.getLedger();
+        final ReplicationNode replicationNode = config.getReplicationNode();
+        final ClusterNode clusterNode = config.getClusterNode();
         final AccountsManager accountsManager = new AccountsManager(accountsStorage);
 
-        final AccountsController accountsController =
-                new AccountsController(accountsManager, JsonAccountSerializer.S);
+        final AccountsController accountsController = new AccountsController(accountsManager,
+                DirectJsonAccountSerializer.S,
+                RESPONSE_CACHE_CAPACITY == 0 ? null : new AccountResponseCache(RESPONSE_CACHE_CAPACITY));
 
         final FinanceOperationsController financeOperationsController =
-                new FinanceOperationsController(JsonAccountSerializer.S, accountsManager);
+                new FinanceOperationsController(DirectJsonAccountSerializer.S, accountsManager, operationsExecutor,
+                        BATCH_LOCK_TIMEOUT_MILLIS);
+
+        final MetricsController metricsController = new MetricsController(Metrics.S);
+
+        final AuditController auditController = new AuditController(accountsManager);
+
+        final IdempotencyCache idempotencyCache =
+                new IdempotencyCache(IDEMPOTENCY_MAX_KEYS, IDEMPOTENCY_TTL_SECONDS, TimeUnit.SECONDS);
+
+        final HttpHandler getAccount = InstrumentedHandler.of(AccountsController.GET_ACCOUNT_BY_ID,
+                ReplicaHandler.reading(replicationNode, accountsController::getAccountById));
+        final HttpHandler deleteAccount = InstrumentedHandler.of("DELETE " + AccountsController.DELETE_ACCOUNT,
+                ReplicaHandler.writing(replicationNode,
+                        DispatchingHandler.of(BLOCKING_EXECUTOR, accountsController::deleteAccount)));
+        final HttpHandler debit = InstrumentedHandler.of(FinanceOperationsController.PUT_DEBIT_TO_ACCOUNT,
+                ReplicaHandler.writing(replicationNode, DispatchingHandler.of(BLOCKING_EXECUTOR,
+                        new IdempotentHandler(idempotencyCache, financeOperationsController::debitToAccount))));
+        final HttpHandler withdraw = InstrumentedHandler.of(FinanceOperationsController.PUT_WITHDRAW_FROM_ACCOUNT,
+                ReplicaHandler.writing(replicationNode, DispatchingHandler.of(BLOCKING_EXECUTOR,
+                        new IdempotentHandler(idempotencyCache, financeOperationsController::withdrawFromAccount))));
+        final HttpHandler transfer = InstrumentedHandler.of(FinanceOperationsController.POST_TRANSFER,
+                ReplicaHandler.writing(replicationNode, DispatchingHandler.of(BLOCKING_EXECUTOR,
+                        new IdempotentHandler(idempotencyCache, financeOperationsController::makeTransfer))));
 
-        final RoutingHandler handler = Handlers.routing()
-                .get(AccountsController.GET_ACCOUNT_BY_ID, accountsController::getAccountById)
-                .post(AccountsController.POST_CREATE_ACCOUNT, accountsController::createAccount)
-                .put(FinanceOperationsController.PUT_DEBIT_TO_ACCOUNT, financeOperationsController::debitToAccount)
-                .put(FinanceOperationsController.PUT_WITHDRAW_FROM_ACCOUNT,
-                        financeOperationsController::withdrawFromAccount)
-                .post(FinanceOperationsController.POST_TRANSFER, financeOperationsController::makeTransfer);
+        /**
+         * Templates of the account routes answer requests the router passes on, e.g. with 405 for unknown methods
+         */
+        final RoutingHandler routingHandler = Handlers.routing()
+                .get(AccountsController.GET_ACCOUNT_BY_ID, getAccount)
+                .post(AccountsController.POST_CREATE_ACCOUNT, InstrumentedHandler.of(
+                        AccountsController.POST_CREATE_ACCOUNT, ReplicaHandler.writing(replicationNode,
+                                DispatchingHandler.of(BLOCKING_EXECUTOR, accountsController::createAccount))))
+                .get(AccountsController.GET_ALL_ACCOUNTS, InstrumentedHandler.of(
+                        "GET " + AccountsController.GET_ALL_ACCOUNTS,
+                        ReplicaHandler.reading(replicationNode, accountsController::getAllAccounts)))
+                .post(AccountsController.POST_CREATE_ACCOUNTS, InstrumentedHandler.of(
+                        AccountsController.POST_CREATE_ACCOUNTS, ReplicaHandler.writing(replicationNode,
+                                DispatchingHandler.of(BLOCKING_EXECUTOR, accountsController::createAccounts))))
+                .delete(AccountsController.DELETE_ACCOUNT, deleteAccount)
+                .put(FinanceOperationsController.PUT_DEBIT_TO_ACCOUNT, debit)
+                .put(FinanceOperationsController.PUT_WITHDRAW_FROM_ACCOUNT, withdraw)
+                .post(FinanceOperationsController.POST_TRANSFER, transfer)
+                .post(FinanceOperationsController.POST_BATCH_TRANSFER, InstrumentedHandler.of(
+                        FinanceOperationsController.POST_BATCH_TRANSFER, ReplicaHandler.writing(replicationNode,
+                                DispatchingHandler.of(BLOCKING_EXECUTOR,
+                                        financeOperationsController::makeBatchTransfer))))
+                .get(MetricsController.GET_METRICS, metricsController::getMetrics)
+                .get(AuditController.GET_BALANCES,
+                        DispatchingHandler.of(BLOCKING_EXECUTOR, auditController::getBalances));
+        final MoneyTransferRouter router = new MoneyTransferRouter(routingHandler)
+                .getAccount(getAccount)
+                .deleteAccount(deleteAccount)
+                .debit(debit)
+                .withdraw(withdraw)
+                .transfer(transfer);
+        if (ledger != null) {
+            final LedgerController ledgerController = new LedgerController(accountsManager, ledger);
+            final HttpHandler getTransactions = InstrumentedHandler.of(LedgerController.GET_ACCOUNT_TRANSACTIONS,
+                    ledgerController::getAccountTransactions);
+            routingHandler.get(LedgerController.GET_ACCOUNT_TRANSACTIONS, getTransactions);
+            router.getTransactions(getTransactions);
+        }
+        if (replicationNode != null) {
+            final ReplicationController replicationController = new ReplicationController(replicationNode);
+            routingHandler
+                    .get(ReplicationController.GET_REPLICATION, replicationController::getReplication)
+                    .post(ReplicationController.POST_PROMOTE, replicationController::promote);
+        }
+        HttpHandler rootHandler = router;
+        if (clusterNode != null) {
+            final ClusterController clusterController =
+                    new ClusterController(clusterNode, accountsManager, DirectJsonAccountSerializer.S);
+            final HttpHandler transferToNode = InstrumentedHandler.of(ClusterController.POST_TRANSFER_TO_NODE,
+                    ReplicaHandler.writing(replicationNode, DispatchingHandler.of(BLOCKING_EXECUTOR,
+                            new IdempotentHandler(idempotencyCache, clusterController::makeTransfer))));
+            routingHandler
+                    .get(ClusterController.GET_CLUSTER, clusterController::getCluster)
+                    .post(ClusterController.POST_PREPARE, InstrumentedHandler.of(ClusterController.POST_PREPARE,
+                            ReplicaHandler.writing(replicationNode, clusterController::prepare)))
+                    .put(ClusterController.PUT_CREDIT, InstrumentedHandler.of(ClusterController.PUT_CREDIT,
+                            ReplicaHandler.writing(replicationNode,
+                                    DispatchingHandler.of(BLOCKING_EXECUTOR, clusterController::credit))));
+            /**
+             * Transfers to other nodes are validated by a router of their own
+             */
+            rootHandler = new ClusterRouter(clusterNode.getPartitioning(), router,
+                    new MoneyTransferRouter(routingHandler).transfer(transferToNode), CLUSTER_TIMEOUT_MILLIS);
+        }
 
         final Undertow undertow = Undertow.builder()
-                .addHttpListener(PORT, "localhost")
-                .setHandler(handler)
+                .addHttpListener(config.getPort(), "localhost")
+                .setHandler(rootHandler)
                 .build();
         undertow.start();
-        System.out.println("Application started at port: " + PORT);
+        return undertow;
+    }
+
+    private static Executor createBlockingExecutor() {
+        if ("io".equals(DISPATCH)) {
+            return null;
+        }
+        final Executor virtualThreads = "virtual".equals(DISPATCH) ? DispatchingHandler.virtualThreads() : null;
+        if (virtualThreads != null) {
+            return virtualThreads;
+        }
+        if ("virtual".equals(DISPATCH)) {
+            System.out.println("Virtual threads are not supported by the runtime, worker pool is used instead");
+        }
+        return DispatchingHandler.workerPool(WORKER_THREADS, WORKER_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Starts the log of the primary after the last journal record or starts following the primary
+     * @return null if there is no replication
+     */
+    private static ReplicationNode createReplicationNode(ReplicationLog replicationLog,
+                                                         AccountsStorage accountsStorage,
+                                                         long lastSequence) throws IOException {
+        if (replicationLog == null) {
+            return null;
+        }
+        if ("primary".equals(REPLICATION_ROLE)) {
+            return ReplicationNode.primary(replicationLog, accountsStorage, REPLICATION_PORT, lastSequence);
+        }
+        final int separator = REPLICATION_PRIMARY.lastIndexOf(':');
+        return ReplicationNode.follower(replicationLog, accountsStorage, REPLICATION_PORT,
+                REPLICATION_PRIMARY.substring(0, separator),
+                Integer.parseInt(REPLICATION_PRIMARY.substring(separator + 1)));
+    }
+
+    /**
+     * Maps the latest snapshot, replays the journal tail after it, completes transfers between shards
+     * and schedules periodic snapshots.
+     * A transfer between shards may be started before the snapshot point, so the whole journal is scanned for them.
+     */
+    private static void recover(GroupCommitJournal journal, AccountsStorage accountsStorage,
+                                IntPredicate isLocalAccount) throws IOException {
+        final long startTime = System.nanoTime();
+        final Path snapshotPath = Paths.get(SNAPSHOT_PATH);
+        journal.recover(() -> BalanceSnapshot.restore(snapshotPath, accountsStorage),
+                new JournalReplayer(accountsStorage));
+        final ShardHandoffRecovery handoffRecovery = new ShardHandoffRecovery(accountsStorage, isLocalAccount);
+        journal.replay(0, handoffRecovery);
+        final int handoffs = handoffRecovery.complete();
+        System.out.println("Recovered " + accountsStorage.getAllAccounts().count() + " accounts up to journal record "
+                + journal.getLastSequence() + " and completed " + handoffs + " transfers between shards in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+
+        final ScheduledExecutorService snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "balance-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(new BalanceSnapshot(snapshotPath, accountsStorage, journal),
+                SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
 }
@@ -0,0 +1,76 @@
+package edu.sanekas.moneytransfer;
+
+import edu.sanekas.moneytransfer.cluster.ClusterNode;
+import edu.sanekas.moneytransfer.executors.FinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.ledger.Ledger;
+import edu.sanekas.moneytransfer.replication.ReplicationNode;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+/**
+ * What {@link Main#startServer} serves. The port, storage and executor are required, routes of the optional parts
+ * are served only if they are set.
+ */
+public class ServerConfig {
+    private final int port;
+    private final AccountsStorage accountsStorage;
+    private final FinanceOperationsExecutor operationsExecutor;
+    private Ledger ledger;
+    private ReplicationNode replicationNode;
+    private ClusterNode clusterNode;
+
+    public ServerConfig(int port, AccountsStorage accountsStorage, FinanceOperationsExecutor operationsExecutor) {
+        this.port = port;
+        this.accountsStorage = accountsStorage;
+        this.operationsExecutor = operationsExecutor;
+    }
+
+    /**
+     * @param ledger ledger filled by the journal of the storage, the ledger route is not served if it is null
+     */
+    public ServerConfig ledger(Ledger ledger) {
+        this.ledger = ledger;
+        return this;
+    }
+
+    /**
+     * @param replicationNode role of the service in replication, writes are rejected while it follows the primary;
+     * replication routes are not served if it is null
+     */
+    public ServerConfig replicationNode(ReplicationNode replicationNode) {
+        this.replicationNode = replicationNode;
+        return this;
+    }
+
+    /**
+     * @param clusterNode node of the cluster owning the accounts of the storage, requests of accounts of other nodes
+     * are sent to them; cluster routes are not served if it is null
+     */
+    public ServerConfig clusterNode(ClusterNode clusterNode) {
+        this.clusterNode = clusterNode;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public AccountsStorage getAccountsStorage() {
+        return accountsStorage;
+    }
+
+    public FinanceOperationsExecutor getOperationsExecutor() {
+        return operationsExecutor;
+    }
+
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    public ReplicationNode getReplicationNode() {
+        return replicationNode;
+    }
+
+    public ClusterNode getClusterNode() {
+        return clusterNode;
+    }
+}
@@ -1,43 +1,78 @@
 package edu.sanekas.moneytransfer.api;
 
+import edu.sanekas.moneytransfer.api.misc.AccountResponseCache;
+import edu.sanekas.moneytransfer.api.misc.AccountResponses;
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
 import edu.sanekas.moneytransfer.api.misc.ErrorMessages;
-import edu.sanekas.moneytransfer.api.misc.PathParamExtractor;
+import edu.sanekas.moneytransfer.api.misc.RequestPath;
 import edu.sanekas.moneytransfer.model.Account;
 import edu.sanekas.moneytransfer.model.AccountSerializer;
+import edu.sanekas.moneytransfer.model.BinaryAccountSerializer;
+import edu.sanekas.moneytransfer.model.DirectJsonAccountSerializer;
 import edu.sanekas.moneytransfer.storages.AccountsManager;
 import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
 import jdk.jfr.Label;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.stream.Stream;
 
 public class AccountsController {
 
     public static final String GET_ACCOUNT_BY_ID = "/accounts/{accountId}";
     public static final String POST_CREATE_ACCOUNT = "/accounts";
+    public static final String DELETE_ACCOUNT = "/accounts/{accountId}";
+    public static final String GET_ALL_ACCOUNTS = "/accounts";
+    public static final String POST_CREATE_ACCOUNTS = "/accounts/batch";
+
+    private static final String FROM_ID_QUERY_PARAM = "fromId";
+    private static final String TO_ID_QUERY_PARAM = "toId";
+    private static final String COUNT_QUERY_PARAM = "count";
+    private static final String BALANCE_QUERY_PARAM = "balance";
+    private static final int MAX_CREATED_ACCOUNTS = 1_000_000;
 
     private final AccountsManager accountsManager;
     private final AccountSerializer accountSerializer;
+    private final AccountResponseCache responseCache;
 
     public AccountsController(AccountsManager accountsStorage, AccountSerializer accountSerializer) {
+        this(accountsStorage, accountSerializer, null);
+    }
+
+    /**
+     * @param responseCache responses of account versions for GET, which are sent with ETag and answer
+     * If-None-Match; every GET serializes the account if it is null
+     */
+    public AccountsController(AccountsManager accountsStorage, AccountSerializer accountSerializer,
+                              AccountResponseCache responseCache) {
         this.accountsManager = accountsStorage;
         this.accountSerializer = accountSerializer;
+        this.responseCache = responseCache;
     }
 
     @Label(value = GET_ACCOUNT_BY_ID)
     public void getAccountById(HttpServerExchange httpServerExchange) {
         try {
-            final int accountId = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.ACCOUNT_ID)
-                    .map(Integer::parseUnsignedInt)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.ACCOUNT_ID_IS_UNDEFINED));
-            final Account account = accountsManager.getAccountById(accountId)
-                    .orElseThrow(() -> new NoSuchElementException(
-                            String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, accountId)));
-            final ByteBuffer serializedAccount = accountSerializer.serialize(account);
+            final int accountId = RequestPath.parseAccountId(httpServerExchange, PathParams.ACCOUNT_ID);
+            if (accountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            final Account account = getAccount(accountId);
+            if (responseCache != null) {
+                AccountResponses.sendVersioned(httpServerExchange, accountSerializer, account, responseCache);
+                return;
+            }
             httpServerExchange.setStatusCode(StatusCodes.OK);
-            httpServerExchange.getResponseSender().send(serializedAccount);
+            AccountResponses.send(httpServerExchange, accountSerializer, account);
         } catch (IllegalArgumentException e) {
             httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
             httpServerExchange.getResponseSender().send(e.getMessage());
@@ -54,12 +89,205 @@ public class AccountsController {
     public void createAccount(HttpServerExchange httpServerExchange) {
         try {
             final Account account = accountsManager.createAccount();
-            final ByteBuffer serializedAccount = accountSerializer.serialize(account);
             httpServerExchange.setStatusCode(StatusCodes.CREATED);
-            httpServerExchange.getResponseSender().send(serializedAccount);
+            AccountResponses.send(httpServerExchange, accountSerializer, account);
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates "count" accounts with sequential ids in one step, each with "balance" money (0 by default).
+     * The created accounts are streamed back like by {@link #getAllAccounts}.
+     */
+    @Label(value = POST_CREATE_ACCOUNTS)
+    public void createAccounts(HttpServerExchange httpServerExchange) {
+        try {
+            final long count = getQueryParam(httpServerExchange, COUNT_QUERY_PARAM, RequestPath.INVALID,
+                    MAX_CREATED_ACCOUNTS);
+            if (count == RequestPath.INVALID || count == 0) {
+                throw new IllegalArgumentException(String.format(ErrorMessages.INVALID_ACCOUNTS_COUNT,
+                        MAX_CREATED_ACCOUNTS));
+            }
+            final long initialBalance = getQueryParam(httpServerExchange, BALANCE_QUERY_PARAM, 0, Long.MAX_VALUE);
+            if (initialBalance == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_AMOUNT);
+            }
+            final int firstAccountId = accountsManager.createAccounts((int) count, initialBalance);
+            final boolean isBinary = ContentNegotiation.acceptsBinary(httpServerExchange);
+            httpServerExchange.setStatusCode(StatusCodes.CREATED);
+            httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
+                    isBinary ? ContentNegotiation.BINARY : ContentNegotiation.NDJSON);
+            new ExportWriter(httpServerExchange, isBinary ? BinaryAccountSerializer.S : accountSerializer, isBinary,
+                    accountsManager.getAccountsFrom(firstAccountId), firstAccountId + count).writeNext();
+        } catch (IllegalArgumentException e) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the account if its balance is zero, otherwise responds with 409
+     */
+    @Label(value = DELETE_ACCOUNT)
+    public void deleteAccount(HttpServerExchange httpServerExchange) {
+        try {
+            final int accountId = RequestPath.parseAccountId(httpServerExchange, PathParams.ACCOUNT_ID);
+            if (accountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            getAccount(accountId);
+            if (accountsManager.removeAccountById(accountId)) {
+                httpServerExchange.setStatusCode(StatusCodes.NO_CONTENT);
+                httpServerExchange.endExchange();
+            } else {
+                httpServerExchange.setStatusCode(StatusCodes.CONFLICT);
+                httpServerExchange.getResponseSender().send(
+                        String.format(ErrorMessages.ACCOUNT_BALANCE_IS_NOT_ZERO, accountId));
+            }
+        } catch (IllegalArgumentException e) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (NoSuchElementException e) {
+            httpServerExchange.setStatusCode(StatusCodes.NOT_FOUND);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (UnsupportedOperationException e) {
+            httpServerExchange.setStatusCode(StatusCodes.METHOD_NOT_ALLOWED);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    /**
+     * Streams accounts with ids from "fromId" (0 by default) to "toId" exclusive (all by default) in ascending order
+     * of ids, as NDJSON or, if the client accepts binary responses, as concatenated binary accounts. Every account is
+     * read when its chunk is written, for a consistent sum of balances see {@link AuditController}.
+     */
+    @Label(value = GET_ALL_ACCOUNTS)
+    public void getAllAccounts(HttpServerExchange httpServerExchange) {
+        try {
+            final long fromAccountId = getQueryParam(httpServerExchange, FROM_ID_QUERY_PARAM, 0, Integer.MAX_VALUE);
+            final long toAccountId = getQueryParam(httpServerExchange, TO_ID_QUERY_PARAM, Integer.MAX_VALUE + 1L,
+                    Integer.MAX_VALUE + 1L);
+            if (fromAccountId == RequestPath.INVALID || toAccountId == RequestPath.INVALID
+                    || toAccountId < fromAccountId) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID_RANGE);
+            }
+            final boolean isBinary = ContentNegotiation.acceptsBinary(httpServerExchange);
+            httpServerExchange.setStatusCode(StatusCodes.OK);
+            httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
+                    isBinary ? ContentNegotiation.BINARY : ContentNegotiation.NDJSON);
+            new ExportWriter(httpServerExchange, isBinary ? BinaryAccountSerializer.S : accountSerializer, isBinary,
+                    accountsManager.getAccountsFrom((int) fromAccountId), toAccountId).writeNext();
+        } catch (IllegalArgumentException e) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(e.getMessage());
         } catch (Exception e) {
             httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
             httpServerExchange.getResponseSender().send(e.getMessage());
         }
     }
+
+    /**
+     * @return value of the query parameter from 0 to max, the default value if it is absent or
+     * {@link RequestPath#INVALID}
+     */
+    private static long getQueryParam(HttpServerExchange httpServerExchange, String name, long defaultValue,
+                                      long max) {
+        final Deque<String> values = httpServerExchange.getQueryParameters().get(name);
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        final String value = values.peekFirst();
+        return RequestPath.parseNumber(value, 0, value.length(), max);
+    }
+
+    /**
+     * Account lookup without capturing lambdas, which would be allocated on every request
+     */
+    private Account getAccount(int accountId) {
+        final Account account = accountsManager.getAccountById(accountId).orElse(null);
+        if (account == null) {
+            throw new NoSuchElementException(String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, accountId));
+        }
+        return account;
+    }
+
+    /**
+     * Writes accounts chunk by chunk into a pooled buffer of the connection, the next chunk is written when
+     * the previous one is sent, so a slow client holds one buffer and the accounts are never collected.
+     */
+    private static class ExportWriter implements IoCallback {
+        private static final int MAX_RECORD_SIZE = DirectJsonAccountSerializer.MAX_SERIALIZED_SIZE + 1;
+
+        private final HttpServerExchange httpServerExchange;
+        private final AccountSerializer serializer;
+        private final boolean isBinary;
+        private final Stream<Account> accounts;
+        private final Iterator<Account> iterator;
+        private final long toAccountId;
+        private final PooledByteBuffer pooledBuffer;
+        private boolean isFinished;
+
+        ExportWriter(HttpServerExchange httpServerExchange, AccountSerializer serializer, boolean isBinary,
+                     Stream<Account> accounts, long toAccountId) {
+            this.httpServerExchange = httpServerExchange;
+            this.serializer = serializer;
+            this.isBinary = isBinary;
+            this.accounts = accounts;
+            this.iterator = accounts.iterator();
+            this.toAccountId = toAccountId;
+            this.pooledBuffer = httpServerExchange.getConnection().getByteBufferPool().allocate();
+        }
+
+        void writeNext() {
+            final ByteBuffer buffer = pooledBuffer.getBuffer();
+            buffer.clear();
+            try {
+                while (buffer.remaining() >= MAX_RECORD_SIZE) {
+                    final Account account = iterator.hasNext() ? iterator.next() : null;
+                    if (account == null || account.getId() >= toAccountId) {
+                        isFinished = true;
+                        break;
+                    }
+                    serializer.serialize(account, buffer);
+                    if (!isBinary) {
+                        buffer.put((byte) '\n');
+                    }
+                }
+            } catch (Exception e) {
+                onException(httpServerExchange, httpServerExchange.getResponseSender(), new IOException(e));
+                return;
+            }
+            buffer.flip();
+            httpServerExchange.getResponseSender().send(buffer, this);
+        }
+
+        @Override
+        public void onComplete(HttpServerExchange exchange, Sender sender) {
+            if (isFinished) {
+                close();
+                IoCallback.END_EXCHANGE.onComplete(exchange, sender);
+            } else {
+                writeNext();
+            }
+        }
+
+        @Override
+        public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
+            close();
+            IoCallback.END_EXCHANGE.onException(exchange, sender, exception);
+        }
+
+        private void close() {
+            accounts.close();
+            pooledBuffer.close();
+        }
+    }
 }
@@ -0,0 +1,173 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceVisitor;
+import edu.sanekas.moneytransfer.model.ConsistentSnapshot;
+import edu.sanekas.moneytransfer.model.DirectJsonAccountSerializer;
+import edu.sanekas.moneytransfer.storages.AccountsManager;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.io.BufferWritableOutputStream;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import jdk.jfr.Label;
+import org.xnio.IoUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.LongSummaryStatistics;
+
+public class AuditController {
+    public static final String GET_BALANCES = "/admin/balances";
+
+    private static final String BALANCES_QUERY_PARAM = "balances";
+
+    private final AccountsManager accountsManager;
+
+    public AuditController(AccountsManager accountsManager) {
+        this.accountsManager = accountsManager;
+    }
+
+    /**
+     * Sums balances of all accounts as of one point in time while transfers go on, in parallel.
+     * With "balances=true" the response also contains balance and journal sequence number of every account.
+     * The response is written chunk by chunk with blocking writes, since the snapshot stays open until the last
+     * balance is written and must be closed by the thread which opened it. The handler has to be dispatched
+     * to a blocking executor, without one it is dispatched to the XNIO worker.
+     */
+    @Label(value = GET_BALANCES)
+    public void getBalances(HttpServerExchange httpServerExchange) {
+        if (httpServerExchange.isInIoThread()) {
+            httpServerExchange.dispatch(this::getBalances);
+            return;
+        }
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            final LongSummaryStatistics statistics = accountsManager.getAllAccounts()
+                    .parallel()
+                    .mapToLong(snapshot::getTotalMoney)
+                    .summaryStatistics();
+            httpServerExchange.setStatusCode(StatusCodes.OK);
+            httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentNegotiation.JSON);
+            httpServerExchange.startBlocking();
+            try (BalancesWriter writer = new BalancesWriter(httpServerExchange)) {
+                writer.writeTotals(snapshot.getEpoch(), statistics);
+                if (isBalancesRequested(httpServerExchange)) {
+                    writer.writeBalancesStart();
+                    accountsManager.getAllAccounts().forEachOrdered(account -> snapshot.visitBalance(account, writer));
+                    writer.writeBalancesEnd();
+                }
+                writer.writeEnd();
+            }
+        } catch (Exception e) {
+            if (httpServerExchange.isResponseStarted()) {
+                IoUtils.safeClose(httpServerExchange.getConnection());
+                return;
+            }
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    private static boolean isBalancesRequested(HttpServerExchange httpServerExchange) {
+        final Deque<String> values = httpServerExchange.getQueryParameters().get(BALANCES_QUERY_PARAM);
+        return values != null && Boolean.parseBoolean(values.peekFirst());
+    }
+
+    /**
+     * Writes the response into a pooled buffer of the connection, the buffer is sent when the next balance
+     * might not fit into it, so the whole list is never collected.
+     */
+    private static class BalancesWriter implements BalanceVisitor, AutoCloseable {
+        /**
+         * Max length of ,{"id":..,"totalMoney":..,"journalSequence":..}
+         */
+        private static final int MAX_BALANCE_SIZE = 128;
+
+        private static final byte[] EPOCH_PREFIX = "{\"epoch\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] ACCOUNTS_PREFIX = ",\"accounts\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] TOTAL_MONEY_PREFIX = ",\"totalMoney\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] BALANCES_PREFIX = ",\"balances\":[".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] ID_PREFIX = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] JOURNAL_SEQUENCE_PREFIX =
+                ",\"journalSequence\":".getBytes(StandardCharsets.US_ASCII);
+
+        private final OutputStream outputStream;
+        private final PooledByteBuffer pooledBuffer;
+        private final ByteBuffer buffer;
+        private boolean isFirstBalance = true;
+
+        BalancesWriter(HttpServerExchange httpServerExchange) {
+            this.outputStream = httpServerExchange.getOutputStream();
+            this.pooledBuffer = httpServerExchange.getConnection().getByteBufferPool().allocate();
+            this.buffer = pooledBuffer.getBuffer();
+            buffer.clear();
+        }
+
+        void writeTotals(long epoch, LongSummaryStatistics statistics) {
+            buffer.put(EPOCH_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, epoch);
+            buffer.put(ACCOUNTS_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, statistics.getCount());
+            buffer.put(TOTAL_MONEY_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, statistics.getSum());
+        }
+
+        void writeBalancesStart() {
+            buffer.put(BALANCES_PREFIX);
+        }
+
+        @Override
+        public void visit(Account account, long totalMoney, long journalSequence) {
+            if (buffer.remaining() < MAX_BALANCE_SIZE) {
+                flush();
+            }
+            if (!isFirstBalance) {
+                buffer.put((byte) ',');
+            }
+            isFirstBalance = false;
+            buffer.put(ID_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, account.getId());
+            buffer.put(TOTAL_MONEY_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, totalMoney);
+            buffer.put(JOURNAL_SEQUENCE_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, journalSequence);
+            buffer.put((byte) '}');
+        }
+
+        void writeBalancesEnd() {
+            buffer.put((byte) ']');
+        }
+
+        void writeEnd() throws IOException {
+            buffer.put((byte) '}');
+            flush();
+            outputStream.close();
+        }
+
+        private void flush() {
+            buffer.flip();
+            try {
+                if (outputStream instanceof BufferWritableOutputStream) {
+                    ((BufferWritableOutputStream) outputStream).write(buffer);
+                } else {
+                    while (buffer.hasRemaining()) {
+                        outputStream.write(buffer.get());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() {
+            pooledBuffer.close();
+        }
+    }
+}
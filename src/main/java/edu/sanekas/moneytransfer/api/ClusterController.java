@@ -0,0 +1,174 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.AccountResponses;
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
+import edu.sanekas.moneytransfer.api.misc.ErrorMessages;
+import edu.sanekas.moneytransfer.api.misc.RequestPath;
+import edu.sanekas.moneytransfer.cluster.ClusterClient;
+import edu.sanekas.moneytransfer.cluster.ClusterNode;
+import edu.sanekas.moneytransfer.cluster.Partitioning;
+import edu.sanekas.moneytransfer.cluster.TransferCoordinator;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.AccountSerializer;
+import edu.sanekas.moneytransfer.storages.AccountsManager;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import jdk.jfr.Label;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+public class ClusterController {
+    public static final String GET_CLUSTER = "/admin/cluster";
+    public static final String POST_PREPARE = "/cluster/accounts/{accountId}/prepare";
+    public static final String PUT_CREDIT =
+            "/cluster/transfers/{transferId}/from/{fromAccountId}/to/{toAccountId}/credit/{amount}";
+    /**
+     * Label of transfers to accounts of other nodes, they share the route with local transfers
+     */
+    public static final String POST_TRANSFER_TO_NODE = FinanceOperationsController.POST_TRANSFER + " to another node";
+
+    private final ClusterNode node;
+    private final AccountsManager accountsManager;
+    private final AccountSerializer accountSerializer;
+
+    public ClusterController(ClusterNode node, AccountsManager accountsManager, AccountSerializer accountSerializer) {
+        this.node = node;
+        this.accountsManager = accountsManager;
+        this.accountSerializer = accountSerializer;
+    }
+
+    /**
+     * Transfer from an account of this node to an account of another node, 503 if the other node doesn't answer
+     * before the transfer is committed, then the money stays on the account
+     */
+    @Label(value = POST_TRANSFER_TO_NODE)
+    public void makeTransfer(HttpServerExchange httpServerExchange) {
+        final int toAccountId = RequestPath.parseAccountId(httpServerExchange, PathParams.TO_ACCOUNT_ID);
+        try {
+            final int fromAccountId = RequestPath.parseAccountId(httpServerExchange, PathParams.FROM_ACCOUNT_ID);
+            if (fromAccountId == RequestPath.INVALID || toAccountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            final Account fromAccount = accountsManager.getAccountById(fromAccountId).orElse(null);
+            if (fromAccount == null) {
+                throw new NoSuchElementException(String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND,
+                        fromAccountId));
+            }
+            final long amount = RequestPath.parseAmount(httpServerExchange, PathParams.TRANSFER_AMOUNT);
+            if (amount == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_AMOUNT);
+            }
+            final boolean isTransactionSuccessful = node.getCoordinator().transfer(fromAccount, toAccountId, amount);
+            if (isTransactionSuccessful) {
+                httpServerExchange.setStatusCode(StatusCodes.OK);
+                AccountResponses.send(httpServerExchange, accountSerializer, fromAccount);
+            } else {
+                httpServerExchange.setStatusCode(StatusCodes.UNPROCESSABLE_ENTITY);
+                httpServerExchange.getResponseSender().send("Transaction is failed, fromAccId: " +
+                        fromAccount.getId() + " toAccId: " + toAccountId + " amount: " + amount);
+            }
+        } catch (IllegalArgumentException e) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (NoSuchElementException e) {
+            httpServerExchange.setStatusCode(StatusCodes.NOT_FOUND);
+            httpServerExchange.getResponseSender().send(e.getMessage() != null
+                    ? e.getMessage()
+                    : String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, toAccountId));
+        } catch (IOException e) {
+            httpServerExchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+            httpServerExchange.getResponseSender().send(String.format(ErrorMessages.NODE_IS_UNAVAILABLE,
+                    node.getPartitioning().getOwner(toAccountId)));
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    /**
+     * Vote of the participant of a transfer, 404 if the node doesn't have the account
+     */
+    @Label(value = POST_PREPARE)
+    public void prepare(HttpServerExchange httpServerExchange) {
+        final int accountId = RequestPath.parseAccountId(httpServerExchange, PathParams.CLUSTER_ACCOUNT_ID);
+        if (accountId == RequestPath.INVALID) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(ErrorMessages.INVALID_ACCOUNT_ID);
+        } else if (node.getParticipant().prepare(accountId)) {
+            httpServerExchange.setStatusCode(StatusCodes.OK);
+            httpServerExchange.endExchange();
+        } else {
+            httpServerExchange.setStatusCode(StatusCodes.NOT_FOUND);
+            httpServerExchange.getResponseSender().send(String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND,
+                    accountId));
+        }
+    }
+
+    /**
+     * Credit of a committed transfer, applied once however many times it is repeated,
+     * 410 if the account is removed after prepare
+     */
+    @Label(value = PUT_CREDIT)
+    public void credit(HttpServerExchange httpServerExchange) {
+        try {
+            final long transferId = RequestPath.parseAmount(httpServerExchange, PathParams.TRANSFER_ID);
+            if (transferId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.TRANSFER_ID_IS_INVALID);
+            }
+            final int fromAccountId = RequestPath.parseAccountId(httpServerExchange, PathParams.CREDIT_FROM_ACCOUNT_ID);
+            final int toAccountId = RequestPath.parseAccountId(httpServerExchange, PathParams.CREDIT_TO_ACCOUNT_ID);
+            if (fromAccountId == RequestPath.INVALID || toAccountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            final long amount = RequestPath.parseAmount(httpServerExchange, PathParams.CREDIT_AMOUNT);
+            if (amount == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_AMOUNT);
+            }
+            final Deque<String> values =
+                    httpServerExchange.getQueryParameters().get(ClusterClient.FINISHED_BELOW_QUERY_PARAM);
+            final long finishedBelow = values == null || values.isEmpty() ? 0 : Long.parseLong(values.peekFirst());
+            if (node.getParticipant().credit(transferId, fromAccountId, toAccountId, amount, finishedBelow)) {
+                httpServerExchange.setStatusCode(StatusCodes.OK);
+                httpServerExchange.endExchange();
+            } else {
+                httpServerExchange.setStatusCode(StatusCodes.GONE);
+                httpServerExchange.getResponseSender().send(String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND,
+                        toAccountId));
+            }
+        } catch (IllegalArgumentException e) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    /**
+     * Partition of the node and its transfers to and from other nodes
+     */
+    @Label(value = GET_CLUSTER)
+    public void getCluster(HttpServerExchange httpServerExchange) {
+        final Partitioning partitioning = node.getPartitioning();
+        final TransferCoordinator coordinator = node.getCoordinator();
+        final StringBuilder sb = new StringBuilder(256)
+                .append("{\"node\":").append(partitioning.getNodeIndex())
+                .append(",\"nodes\":").append(partitioning.getNodesCount())
+                .append(",\"firstAccountId\":").append(partitioning.getFirstAccountId())
+                .append(",\"accountsPerNode\":").append(partitioning.getAccountsPerNode())
+                .append(",\"unfinishedTransfers\":").append(coordinator.getUnfinishedTransfers())
+                .append(",\"committedTransfers\":").append(coordinator.getCommittedTransfers())
+                .append(",\"abortedTransfers\":").append(coordinator.getAbortedTransfers())
+                .append(",\"creditRetries\":").append(coordinator.getCreditRetries())
+                .append(",\"failedRetries\":").append(coordinator.getFailedRetries())
+                .append(",\"pendingRefunds\":").append(coordinator.getPendingRefunds())
+                .append(",\"rememberedCredits\":").append(node.getParticipant().getRememberedCredits())
+                .append('}');
+        httpServerExchange.setStatusCode(StatusCodes.OK);
+        httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentNegotiation.JSON);
+        httpServerExchange.getResponseSender().send(sb.toString());
+    }
+}
@@ -0,0 +1,88 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.RequestPath;
+import edu.sanekas.moneytransfer.cluster.Partitioning;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.proxy.LoadBalancingProxyClient;
+import io.undertow.server.handlers.proxy.ProxyHandler;
+
+import java.net.URI;
+
+/**
+ * Sends requests of accounts owned by other cluster nodes to their owners: account routes by the account id and
+ * transfers by the account money is taken from. Transfers from an account of this node to an account of another
+ * node go to the handler of transfers between nodes, other requests go to the next handler.
+ * Ids are matched in place like in {@link MoneyTransferRouter}, invalid ones are left to the next handler.
+ */
+public class ClusterRouter implements HttpHandler {
+    private static final String ACCOUNTS = "/accounts/";
+    private static final String FROM = "from/";
+    private static final String TO = "/to/";
+
+    private final Partitioning partitioning;
+    private final HttpHandler next;
+    private final HttpHandler transferBetweenNodes;
+    /**
+     * Proxies by node index, null for this node
+     */
+    private final HttpHandler[] proxies;
+
+    /**
+     * @param transferBetweenNodes handler of transfers to accounts of other nodes, it validates the request itself
+     * @param maxRequestTimeMillis max time of a request proxied to another node
+     */
+    public ClusterRouter(Partitioning partitioning, HttpHandler next, HttpHandler transferBetweenNodes,
+                         int maxRequestTimeMillis) {
+        this.partitioning = partitioning;
+        this.next = next;
+        this.transferBetweenNodes = transferBetweenNodes;
+        this.proxies = new HttpHandler[partitioning.getNodesCount()];
+        for (int node = 0; node < proxies.length; ++node) {
+            if (node != partitioning.getNodeIndex()) {
+                proxies[node] = ProxyHandler.builder()
+                        .setProxyClient(new LoadBalancingProxyClient()
+                                .addHost(URI.create("http://" + partitioning.getNodeAddress(node))))
+                        .setMaxRequestTime(maxRequestTimeMillis)
+                        .build();
+            }
+        }
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange httpServerExchange) throws Exception {
+        final String path = httpServerExchange.getRequestPath();
+        if (!path.startsWith(ACCOUNTS)) {
+            next.handleRequest(httpServerExchange);
+        } else if (path.startsWith(FROM, ACCOUNTS.length())) {
+            final int fromStart = ACCOUNTS.length() + FROM.length();
+            final int fromEnd = RequestPath.segmentEnd(path, fromStart);
+            final int fromAccountId = parseAccountId(path, fromStart, fromEnd);
+            if (fromAccountId != RequestPath.INVALID && !partitioning.isLocal(fromAccountId)) {
+                proxies[partitioning.getOwner(fromAccountId)].handleRequest(httpServerExchange);
+                return;
+            }
+            final int toStart = fromEnd + TO.length();
+            final int toAccountId = path.startsWith(TO, fromEnd)
+                    ? parseAccountId(path, toStart, RequestPath.segmentEnd(path, toStart))
+                    : RequestPath.INVALID;
+            if (toAccountId != RequestPath.INVALID && !partitioning.isLocal(toAccountId)) {
+                transferBetweenNodes.handleRequest(httpServerExchange);
+            } else {
+                next.handleRequest(httpServerExchange);
+            }
+        } else {
+            final int accountId = parseAccountId(path, ACCOUNTS.length(),
+                    RequestPath.segmentEnd(path, ACCOUNTS.length()));
+            if (accountId != RequestPath.INVALID && !partitioning.isLocal(accountId)) {
+                proxies[partitioning.getOwner(accountId)].handleRequest(httpServerExchange);
+            } else {
+                next.handleRequest(httpServerExchange);
+            }
+        }
+    }
+
+    private static int parseAccountId(String path, int start, int end) {
+        return (int) RequestPath.parseNumber(path, start, end, Integer.MAX_VALUE);
+    }
+}
@@ -1,49 +1,88 @@
 package edu.sanekas.moneytransfer.api;
 
+import edu.sanekas.moneytransfer.api.misc.AccountResponses;
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
+import edu.sanekas.moneytransfer.api.misc.DispatchingHandler;
 import edu.sanekas.moneytransfer.api.misc.ErrorMessages;
-import edu.sanekas.moneytransfer.api.misc.PathParamExtractor;
+import edu.sanekas.moneytransfer.api.misc.RequestPath;
+import edu.sanekas.moneytransfer.api.misc.TransferLegsParser;
+import edu.sanekas.moneytransfer.executors.FinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.executors.LockingFinanceOperationsExecutor;
 import edu.sanekas.moneytransfer.model.Account;
 import edu.sanekas.moneytransfer.model.AccountSerializer;
-import edu.sanekas.moneytransfer.model.Transaction;
+import edu.sanekas.moneytransfer.model.BatchTransaction;
 import edu.sanekas.moneytransfer.storages.AccountsManager;
 import edu.sanekas.moneytransfer.storages.AccountsStorage;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
 import jdk.jfr.Label;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class FinanceOperationsController {
     public static final String PUT_DEBIT_TO_ACCOUNT = "/accounts/{accountId}/debit/{amount}";
     public static final String PUT_WITHDRAW_FROM_ACCOUNT = "/accounts/{accountId}/withdraw/{amount}";
     public static final String POST_TRANSFER = "/accounts/from/{fromAccountId}/to/{toAccountId}/transfer/{amount}";
+    public static final String POST_BATCH_TRANSFER = "/transfers/batch";
+
+    /**
+     * Batches give up with 503 if their accounts are not locked in so many milliseconds
+     */
+    public static final long DEFAULT_BATCH_LOCK_TIMEOUT_MILLIS = 1000;
+
+    private static final String ATOMIC_QUERY_PARAM = "atomic";
+    private static final String TIMEOUT_MILLIS_QUERY_PARAM = "timeoutMillis";
+    private static final int MAX_BATCH_LEGS = 10_000;
+    private static final String RETRY_AFTER_SECONDS = "1";
 
     private final AccountSerializer accountSerializer;
     private final AccountsManager accountsManager;
+    private final FinanceOperationsExecutor operationsExecutor;
+    private final long batchLockTimeoutMillis;
 
     public FinanceOperationsController(AccountSerializer accountSerializer, AccountsManager accountsManager) {
+        this(accountSerializer, accountsManager, LockingFinanceOperationsExecutor.S);
+    }
+
+    public FinanceOperationsController(AccountSerializer accountSerializer, AccountsManager accountsManager,
+                                       FinanceOperationsExecutor operationsExecutor) {
+        this(accountSerializer, accountsManager, operationsExecutor, DEFAULT_BATCH_LOCK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param batchLockTimeoutMillis max time a batch waits for the locks of its accounts,
+     * requests may ask for less with "timeoutMillis"
+     */
+    public FinanceOperationsController(AccountSerializer accountSerializer, AccountsManager accountsManager,
+                                       FinanceOperationsExecutor operationsExecutor, long batchLockTimeoutMillis) {
         this.accountSerializer = accountSerializer;
         this.accountsManager = accountsManager;
+        this.operationsExecutor = operationsExecutor;
+        this.batchLockTimeoutMillis = batchLockTimeoutMillis;
     }
 
     @Label(value = PUT_DEBIT_TO_ACCOUNT)
     public void debitToAccount(HttpServerExchange httpServerExchange) {
         try {
-            final int accountId = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.ACCOUNT_ID)
-                    .map(Integer::parseUnsignedInt)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.ACCOUNT_ID_IS_UNDEFINED));
-            final Account account = accountsManager.getAccountById(accountId)
-                    .orElseThrow(() -> new NoSuchElementException(
-                            String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, accountId)));
-            final long amount = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.AMOUNT)
-                    .map(Long::parseUnsignedLong)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.AMOUNT_IS_UNDEFINED));
-            final boolean isDebitSuccessful = account.debit(amount);
+            final int accountId = RequestPath.parseAccountId(httpServerExchange, PathParams.ACCOUNT_ID);
+            if (accountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            final Account account = getAccount(accountId);
+            final long amount = RequestPath.parseAmount(httpServerExchange, PathParams.AMOUNT);
+            if (amount == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_AMOUNT);
+            }
+            final boolean isDebitSuccessful = operationsExecutor.debit(account, amount);
             if (isDebitSuccessful) {
                 httpServerExchange.setStatusCode(StatusCodes.OK);
-                final ByteBuffer serializedAccount = accountSerializer.serialize(account);
-                httpServerExchange.getResponseSender().send(serializedAccount);
+                AccountResponses.send(httpServerExchange, accountSerializer, account);
             } else {
                 httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
                 httpServerExchange.getResponseSender().send("Debit for accountId: " + accountId + " with amount: "
@@ -64,20 +103,19 @@ public class FinanceOperationsController {
     @Label(value = PUT_WITHDRAW_FROM_ACCOUNT)
     public void withdrawFromAccount(HttpServerExchange httpServerExchange) {
         try {
-            final int accountId = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.ACCOUNT_ID)
-                    .map(Integer::parseUnsignedInt)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.ACCOUNT_ID_IS_UNDEFINED));
-            final Account account = accountsManager.getAccountById(accountId)
-                    .orElseThrow(() -> new NoSuchElementException(
-                            String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, accountId)));
-            final long amount = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.AMOUNT)
-                    .map(Long::parseUnsignedLong)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.AMOUNT_IS_UNDEFINED));
-            final boolean isWithdrawingSuccessful = account.withdraw(amount);
+            final int accountId = RequestPath.parseAccountId(httpServerExchange, PathParams.ACCOUNT_ID);
+            if (accountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            final Account account = getAccount(accountId);
+            final long amount = RequestPath.parseAmount(httpServerExchange, PathParams.AMOUNT);
+            if (amount == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_AMOUNT);
+            }
+            final boolean isWithdrawingSuccessful = operationsExecutor.withdraw(account, amount);
             if (isWithdrawingSuccessful) {
                 httpServerExchange.setStatusCode(StatusCodes.OK);
-                final ByteBuffer serializedAccount = accountSerializer.serialize(account);
-                httpServerExchange.getResponseSender().send(serializedAccount);
+                AccountResponses.send(httpServerExchange, accountSerializer, account);
             } else {
                 httpServerExchange.setStatusCode(StatusCodes.UNPROCESSABLE_ENTITY);
                 httpServerExchange.getResponseSender().send("Withdrawing for accountId: " + accountId +
@@ -98,26 +136,24 @@ public class FinanceOperationsController {
     @Label(value = POST_TRANSFER)
     public void makeTransfer(HttpServerExchange httpServerExchange) {
         try {
-            final int fromAccountId = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.FROM_ACCOUNT_ID)
-                    .map(Integer::parseUnsignedInt)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.ACCOUNT_ID_IS_UNDEFINED));
-            final Account fromAccount = accountsManager.getAccountById(fromAccountId)
-                    .orElseThrow(() -> new NoSuchElementException(
-                            String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, fromAccountId)));
-            final int toAccountId = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.TO_ACCOUNT_ID)
-                    .map(Integer::parseUnsignedInt)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.ACCOUNT_ID_IS_UNDEFINED));
-            final Account toAccount = accountsManager.getAccountById(toAccountId)
-                    .orElseThrow(() -> new NoSuchElementException(
-                            String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, fromAccountId)));
-            final long amount = PathParamExtractor.extractPathParam(httpServerExchange, PathParams.AMOUNT)
-                    .map(Long::parseUnsignedLong)
-                    .orElseThrow(() -> new IllegalArgumentException(ErrorMessages.AMOUNT_IS_UNDEFINED));
-            final boolean isTransactionSuccessful = new Transaction(fromAccount, toAccount, amount).execute();
+            final int fromAccountId = RequestPath.parseAccountId(httpServerExchange, PathParams.FROM_ACCOUNT_ID);
+            if (fromAccountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            final Account fromAccount = getAccount(fromAccountId);
+            final int toAccountId = RequestPath.parseAccountId(httpServerExchange, PathParams.TO_ACCOUNT_ID);
+            if (toAccountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            final Account toAccount = getAccount(toAccountId);
+            final long amount = RequestPath.parseAmount(httpServerExchange, PathParams.TRANSFER_AMOUNT);
+            if (amount == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_AMOUNT);
+            }
+            final boolean isTransactionSuccessful = operationsExecutor.transfer(fromAccount, toAccount, amount);
             if (isTransactionSuccessful) {
-                final ByteBuffer serializedAccount = accountSerializer.serialize(fromAccount);
                 httpServerExchange.setStatusCode(StatusCodes.OK);
-                httpServerExchange.getResponseSender().send(serializedAccount);
+                AccountResponses.send(httpServerExchange, accountSerializer, fromAccount);
             } else {
                 httpServerExchange.setStatusCode(StatusCodes.UNPROCESSABLE_ENTITY);
                 httpServerExchange.getResponseSender().send("Transaction is failed, fromAccId: " +
@@ -134,4 +170,116 @@ public class FinanceOperationsController {
             httpServerExchange.getResponseSender().send(e.getMessage());
         }
     }
+
+    /**
+     * Body contains one leg per line: "fromAccountId,toAccountId,amount".
+     * With atomic=true (default) either all legs are applied or none, with atomic=false each leg is applied
+     * independently. Response contains result of every leg.
+     * Binary body (Content-Type: application/octet-stream) contains fixed-width legs instead of lines,
+     * binary response (Accept: application/octet-stream) contains one byte per leg: 1 if it is applied, 0 otherwise.
+     * If the accounts of the batch are not locked in "timeoutMillis" (the configured max by default),
+     * no legs are applied and the response is 503 with Retry-After.
+     */
+    @Label(value = POST_BATCH_TRANSFER)
+    public void makeBatchTransfer(HttpServerExchange httpServerExchange) {
+        httpServerExchange.getRequestReceiver().receiveFullBytes((exchange, body) ->
+                DispatchingHandler.resume(exchange, () -> makeBatchTransfer(exchange, body)));
+    }
+
+    private void makeBatchTransfer(HttpServerExchange httpServerExchange, byte[] body) {
+        try {
+            final Deque<String> atomicParam = httpServerExchange.getQueryParameters().get(ATOMIC_QUERY_PARAM);
+            final boolean isAtomic = atomicParam == null || !"false".equals(atomicParam.peekFirst());
+            final long lockTimeoutMillis = getLockTimeoutMillis(httpServerExchange);
+            final BatchTransaction batchTransaction = new BatchTransaction();
+            final TransferLegsParser.LegConsumer legConsumer = (fromAccountId, toAccountId, amount) ->
+                    batchTransaction.addLeg(getAccount(fromAccountId), getAccount(toAccountId), amount);
+            if (ContentNegotiation.hasBinaryContent(httpServerExchange)) {
+                TransferLegsParser.parseBinary(body, MAX_BATCH_LEGS, legConsumer);
+            } else {
+                TransferLegsParser.parse(body, MAX_BATCH_LEGS, legConsumer);
+            }
+            if (isAtomic) {
+                final int failedLeg = batchTransaction.executeAtomically(lockTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (failedLeg < 0) {
+                    final boolean[] results = new boolean[batchTransaction.size()];
+                    Arrays.fill(results, true);
+                    httpServerExchange.setStatusCode(StatusCodes.OK);
+                    sendResults(httpServerExchange, results);
+                } else {
+                    httpServerExchange.setStatusCode(StatusCodes.UNPROCESSABLE_ENTITY);
+                    httpServerExchange.getResponseSender().send("Batch is failed at leg: " + (failedLeg + 1) +
+                            ", no legs are applied");
+                }
+            } else {
+                httpServerExchange.setStatusCode(StatusCodes.OK);
+                sendResults(httpServerExchange, batchTransaction.execute(lockTimeoutMillis, TimeUnit.MILLISECONDS));
+            }
+        } catch (IllegalArgumentException e) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (NoSuchElementException e) {
+            httpServerExchange.setStatusCode(StatusCodes.NOT_FOUND);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (TimeoutException e) {
+            httpServerExchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+            httpServerExchange.getResponseHeaders().put(Headers.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            httpServerExchange.getResponseSender().send(ErrorMessages.ACCOUNTS_ARE_BUSY);
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    /**
+     * @return "timeoutMillis" of the request, but not more than the configured max
+     */
+    private long getLockTimeoutMillis(HttpServerExchange httpServerExchange) {
+        final Deque<String> values = httpServerExchange.getQueryParameters().get(TIMEOUT_MILLIS_QUERY_PARAM);
+        if (values == null || values.isEmpty()) {
+            return batchLockTimeoutMillis;
+        }
+        final String value = values.peekFirst();
+        final long timeoutMillis = RequestPath.parseNumber(value, 0, value.length(), Long.MAX_VALUE);
+        if (timeoutMillis == RequestPath.INVALID) {
+            throw new IllegalArgumentException(ErrorMessages.INVALID_TIMEOUT);
+        }
+        return Math.min(timeoutMillis, batchLockTimeoutMillis);
+    }
+
+    /**
+     * Account lookup without capturing lambdas, which would be allocated on every request
+     */
+    private Account getAccount(int accountId) {
+        final Account account = accountsManager.getAccountById(accountId).orElse(null);
+        if (account == null) {
+            throw new NoSuchElementException(String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, accountId));
+        }
+        return account;
+    }
+
+    private static void sendResults(HttpServerExchange httpServerExchange, boolean[] results) {
+        if (ContentNegotiation.acceptsBinary(httpServerExchange)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(results.length);
+            for (boolean result : results) {
+                buffer.put(result ? (byte) 1 : (byte) 0);
+            }
+            httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentNegotiation.BINARY);
+            httpServerExchange.getResponseSender().send(buffer.flip());
+        } else {
+            httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentNegotiation.JSON);
+            httpServerExchange.getResponseSender().send(serializeResults(results));
+        }
+    }
+
+    private static String serializeResults(boolean[] results) {
+        final StringBuilder sb = new StringBuilder(16 + results.length * 6).append("{\"results\":[");
+        for (int i = 0; i < results.length; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(results[i]);
+        }
+        return sb.append("]}").toString();
+    }
 }
@@ -0,0 +1,194 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
+import edu.sanekas.moneytransfer.api.misc.ErrorMessages;
+import edu.sanekas.moneytransfer.api.misc.RequestPath;
+import edu.sanekas.moneytransfer.ledger.AccountHistory;
+import edu.sanekas.moneytransfer.ledger.Ledger;
+import edu.sanekas.moneytransfer.model.DirectJsonAccountSerializer;
+import edu.sanekas.moneytransfer.storages.AccountsManager;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import jdk.jfr.Label;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+public class LedgerController {
+    public static final String GET_ACCOUNT_TRANSACTIONS = "/accounts/{accountId}/transactions";
+
+    private static final String AFTER_QUERY_PARAM = "after";
+    private static final String LIMIT_QUERY_PARAM = "limit";
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    private final AccountsManager accountsManager;
+    private final Ledger ledger;
+
+    public LedgerController(AccountsManager accountsManager, Ledger ledger) {
+        this.accountsManager = accountsManager;
+        this.ledger = ledger;
+    }
+
+    /**
+     * Streams ledger entries of the account with sequence number greater than "after" (0 by default),
+     * at most "limit" of them. Response contains "after" for the next page or null if there are no more entries.
+     */
+    @Label(value = GET_ACCOUNT_TRANSACTIONS)
+    public void getAccountTransactions(HttpServerExchange httpServerExchange) {
+        try {
+            final int accountId = RequestPath.parseAccountId(httpServerExchange, PathParams.ACCOUNT_ID);
+            if (accountId == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_ACCOUNT_ID);
+            }
+            if (!accountsManager.getAccountById(accountId).isPresent()) {
+                throw new NoSuchElementException(String.format(ErrorMessages.ACCOUNT_WITH_ID_NOT_FOUND, accountId));
+            }
+            final long afterSequence = getQueryParam(httpServerExchange, AFTER_QUERY_PARAM, 0, Long.MAX_VALUE);
+            if (afterSequence == RequestPath.INVALID) {
+                throw new IllegalArgumentException(ErrorMessages.INVALID_AFTER_SEQUENCE);
+            }
+            final long limit = getQueryParam(httpServerExchange, LIMIT_QUERY_PARAM, DEFAULT_LIMIT, MAX_LIMIT);
+            if (limit == RequestPath.INVALID || limit == 0) {
+                throw new IllegalArgumentException(String.format(ErrorMessages.INVALID_LIMIT, MAX_LIMIT));
+            }
+            final AccountHistory history = ledger.getHistory(accountId);
+            final int size = history == null ? 0 : history.size();
+            final int fromIndex = history == null ? 0 : history.indexAfter(afterSequence, size);
+            final int toIndex = (int) Math.min(size, fromIndex + limit);
+            httpServerExchange.setStatusCode(StatusCodes.OK);
+            httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentNegotiation.JSON);
+            new PageWriter(httpServerExchange, ledger, history, fromIndex, toIndex, toIndex < size).writeNext();
+        } catch (IllegalArgumentException e) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (NoSuchElementException e) {
+            httpServerExchange.setStatusCode(StatusCodes.NOT_FOUND);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    private static long getQueryParam(HttpServerExchange httpServerExchange, String name, long defaultValue,
+                                      long max) {
+        final Deque<String> values = httpServerExchange.getQueryParameters().get(name);
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        final String value = values.peekFirst();
+        return RequestPath.parseNumber(value, 0, value.length(), max);
+    }
+
+    /**
+     * Writes the page chunk by chunk into a pooled buffer of the connection,
+     * the next chunk is written when the previous one is sent.
+     */
+    private static class PageWriter implements IoCallback {
+        private static final int MAX_ENTRY_SIZE = 160;
+        private static final byte[] PAGE_START = "{\"transactions\":[".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] SEQ_PREFIX = "{\"seq\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] FROM_PREFIX = ",\"from\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] TO_PREFIX = ",\"to\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] AMOUNT_PREFIX = ",\"amount\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] TIMESTAMP_PREFIX = ",\"timestamp\":".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] NEXT_PREFIX = "],\"next\":".getBytes(StandardCharsets.US_ASCII);
+
+        private final HttpServerExchange httpServerExchange;
+        private final Ledger ledger;
+        private final AccountHistory history;
+        private final int fromIndex;
+        private final int toIndex;
+        private final boolean hasMore;
+        private final PooledByteBuffer pooledBuffer;
+        private int index;
+        private boolean isStarted;
+        private boolean isFinished;
+
+        PageWriter(HttpServerExchange httpServerExchange, Ledger ledger, AccountHistory history, int fromIndex,
+                   int toIndex, boolean hasMore) {
+            this.httpServerExchange = httpServerExchange;
+            this.ledger = ledger;
+            this.history = history;
+            this.fromIndex = fromIndex;
+            this.index = fromIndex;
+            this.toIndex = toIndex;
+            this.hasMore = hasMore;
+            this.pooledBuffer = httpServerExchange.getConnection().getByteBufferPool().allocate();
+        }
+
+        void writeNext() {
+            final ByteBuffer buffer = pooledBuffer.getBuffer();
+            buffer.clear();
+            if (!isStarted) {
+                buffer.put(PAGE_START);
+                isStarted = true;
+            }
+            while (index < toIndex && buffer.remaining() >= MAX_ENTRY_SIZE) {
+                if (index > fromIndex) {
+                    buffer.put((byte) ',');
+                }
+                putEntry(buffer, history.sequenceAt(index++));
+            }
+            if (index == toIndex && buffer.remaining() >= MAX_ENTRY_SIZE) {
+                buffer.put(NEXT_PREFIX);
+                if (hasMore) {
+                    DirectJsonAccountSerializer.putDecimal(buffer, history.sequenceAt(toIndex - 1));
+                } else {
+                    buffer.put(NULL);
+                }
+                buffer.put((byte) '}');
+                isFinished = true;
+            }
+            buffer.flip();
+            httpServerExchange.getResponseSender().send(buffer, this);
+        }
+
+        private void putEntry(ByteBuffer buffer, long sequence) {
+            buffer.put(SEQ_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, sequence);
+            buffer.put(FROM_PREFIX);
+            putAccountId(buffer, ledger.getFromAccountId(sequence));
+            buffer.put(TO_PREFIX);
+            putAccountId(buffer, ledger.getToAccountId(sequence));
+            buffer.put(AMOUNT_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, ledger.getAmount(sequence));
+            buffer.put(TIMESTAMP_PREFIX);
+            DirectJsonAccountSerializer.putDecimal(buffer, ledger.getTimestamp(sequence));
+            buffer.put((byte) '}');
+        }
+
+        private static void putAccountId(ByteBuffer buffer, int accountId) {
+            if (accountId == Ledger.NO_ACCOUNT) {
+                buffer.put(NULL);
+            } else {
+                DirectJsonAccountSerializer.putDecimal(buffer, accountId);
+            }
+        }
+
+        @Override
+        public void onComplete(HttpServerExchange exchange, Sender sender) {
+            if (isFinished) {
+                pooledBuffer.close();
+                IoCallback.END_EXCHANGE.onComplete(exchange, sender);
+            } else {
+                writeNext();
+            }
+        }
+
+        @Override
+        public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
+            pooledBuffer.close();
+            IoCallback.END_EXCHANGE.onException(exchange, sender, exception);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.metrics.Metrics;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import jdk.jfr.Label;
+
+public class MetricsController {
+    public static final String GET_METRICS = "/metrics";
+
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    private final Metrics metrics;
+
+    public MetricsController(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Label(value = GET_METRICS)
+    public void getMetrics(HttpServerExchange httpServerExchange) {
+        final StringBuilder sb = new StringBuilder(4096);
+        metrics.write(sb);
+        httpServerExchange.setStatusCode(StatusCodes.OK);
+        httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, PROMETHEUS_CONTENT_TYPE);
+        httpServerExchange.getResponseSender().send(sb.toString());
+    }
+}
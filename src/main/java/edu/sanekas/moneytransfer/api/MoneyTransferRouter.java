@@ -0,0 +1,159 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.ErrorMessages;
+import edu.sanekas.moneytransfer.api.misc.RequestPath;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Routes requests of the account routes by matching the request path in place, without templates,
+ * path parameter maps and substrings. Ids and amounts are validated here, invalid ones are answered with
+ * preallocated responses, so handlers parse them again with {@link RequestPath} knowing that they are valid.
+ * Other requests, and requests of routes without handlers, go to the fallback handler.
+ */
+public class MoneyTransferRouter implements HttpHandler {
+    private static final String ACCOUNTS = "/accounts/";
+    private static final String FROM = "from/";
+    private static final String TO = "/to/";
+    private static final String TRANSFER = "/transfer/";
+    private static final String DEBIT = "/debit/";
+    private static final String WITHDRAW = "/withdraw/";
+    private static final String TRANSACTIONS = "/transactions";
+
+    private static final ByteBuffer INVALID_ACCOUNT_ID = preallocate(ErrorMessages.INVALID_ACCOUNT_ID);
+    private static final ByteBuffer INVALID_AMOUNT = preallocate(ErrorMessages.INVALID_AMOUNT);
+
+    private final HttpHandler fallback;
+    private HttpHandler getAccount;
+    private HttpHandler deleteAccount;
+    private HttpHandler debit;
+    private HttpHandler withdraw;
+    private HttpHandler transfer;
+    private HttpHandler getTransactions;
+
+    public MoneyTransferRouter(HttpHandler fallback) {
+        this.fallback = fallback;
+    }
+
+    public MoneyTransferRouter getAccount(HttpHandler handler) {
+        this.getAccount = handler;
+        return this;
+    }
+
+    public MoneyTransferRouter deleteAccount(HttpHandler handler) {
+        this.deleteAccount = handler;
+        return this;
+    }
+
+    public MoneyTransferRouter debit(HttpHandler handler) {
+        this.debit = handler;
+        return this;
+    }
+
+    public MoneyTransferRouter withdraw(HttpHandler handler) {
+        this.withdraw = handler;
+        return this;
+    }
+
+    public MoneyTransferRouter transfer(HttpHandler handler) {
+        this.transfer = handler;
+        return this;
+    }
+
+    public MoneyTransferRouter getTransactions(HttpHandler handler) {
+        this.getTransactions = handler;
+        return this;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange httpServerExchange) throws Exception {
+        final String path = httpServerExchange.getRequestPath();
+        final HttpString method = httpServerExchange.getRequestMethod();
+        if (!path.startsWith(ACCOUNTS)) {
+            fallback.handleRequest(httpServerExchange);
+        } else if (path.startsWith(FROM, ACCOUNTS.length())) {
+            routeTransfer(httpServerExchange, path, method);
+        } else {
+            routeAccount(httpServerExchange, path, method);
+        }
+    }
+
+    /**
+     * /accounts/from/{fromAccountId}/to/{toAccountId}/transfer/{amount}
+     */
+    private void routeTransfer(HttpServerExchange httpServerExchange, String path, HttpString method)
+            throws Exception {
+        final int fromStart = ACCOUNTS.length() + FROM.length();
+        final int fromEnd = RequestPath.segmentEnd(path, fromStart);
+        final int toStart = fromEnd + TO.length();
+        final int toEnd = path.startsWith(TO, fromEnd) ? RequestPath.segmentEnd(path, toStart) : -1;
+        final int amountStart = toEnd + TRANSFER.length();
+        if (toEnd < 0 || !path.startsWith(TRANSFER, toEnd)
+                || RequestPath.segmentEnd(path, amountStart) != path.length()
+                || transfer == null || !Methods.POST.equals(method)) {
+            fallback.handleRequest(httpServerExchange);
+        } else if (!isNumber(path, fromStart, fromEnd, Integer.MAX_VALUE)
+                || !isNumber(path, toStart, toEnd, Integer.MAX_VALUE)) {
+            reject(httpServerExchange, INVALID_ACCOUNT_ID);
+        } else if (!isNumber(path, amountStart, path.length(), Long.MAX_VALUE)) {
+            reject(httpServerExchange, INVALID_AMOUNT);
+        } else {
+            transfer.handleRequest(httpServerExchange);
+        }
+    }
+
+    /**
+     * /accounts/{accountId}, /accounts/{accountId}/debit/{amount}, /accounts/{accountId}/withdraw/{amount}
+     * and /accounts/{accountId}/transactions
+     */
+    private void routeAccount(HttpServerExchange httpServerExchange, String path, HttpString method)
+            throws Exception {
+        final int idStart = ACCOUNTS.length();
+        final int idEnd = RequestPath.segmentEnd(path, idStart);
+        final HttpHandler handler;
+        int amountStart = -1;
+        if (idEnd == path.length()) {
+            handler = Methods.GET.equals(method) ? getAccount : Methods.DELETE.equals(method) ? deleteAccount : null;
+        } else if (path.startsWith(DEBIT, idEnd) && Methods.PUT.equals(method)) {
+            handler = debit;
+            amountStart = idEnd + DEBIT.length();
+        } else if (path.startsWith(WITHDRAW, idEnd) && Methods.PUT.equals(method)) {
+            handler = withdraw;
+            amountStart = idEnd + WITHDRAW.length();
+        } else if (idEnd + TRANSACTIONS.length() == path.length() && path.startsWith(TRANSACTIONS, idEnd)
+                && Methods.GET.equals(method)) {
+            handler = getTransactions;
+        } else {
+            handler = null;
+        }
+        if (handler == null || amountStart >= 0 && RequestPath.segmentEnd(path, amountStart) != path.length()) {
+            fallback.handleRequest(httpServerExchange);
+        } else if (!isNumber(path, idStart, idEnd, Integer.MAX_VALUE)) {
+            reject(httpServerExchange, INVALID_ACCOUNT_ID);
+        } else if (amountStart >= 0 && !isNumber(path, amountStart, path.length(), Long.MAX_VALUE)) {
+            reject(httpServerExchange, INVALID_AMOUNT);
+        } else {
+            handler.handleRequest(httpServerExchange);
+        }
+    }
+
+    private static boolean isNumber(String path, int start, int end, long max) {
+        return RequestPath.parseNumber(path, start, end, max) != RequestPath.INVALID;
+    }
+
+    private static void reject(HttpServerExchange httpServerExchange, ByteBuffer response) {
+        httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+        httpServerExchange.getResponseSender().send(response.duplicate());
+    }
+
+    private static ByteBuffer preallocate(String message) {
+        final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().asReadOnlyBuffer();
+    }
+}
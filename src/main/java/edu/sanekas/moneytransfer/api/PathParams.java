@@ -1,11 +1,20 @@
 package edu.sanekas.moneytransfer.api;
 
+/**
+ * Segments of the request path containing path parameters, counted from 0,
+ * e.g. accountId is segment 1 of /accounts/{accountId}/debit/{amount}
+ */
 public class PathParams {
     private PathParams() {}
 
-    public static final String ACCOUNT_ID = "accountId";
-    public static final String AMOUNT = "amount";
-    public static final String FROM_ACCOUNT_ID = "fromAccountId";
-    public static final String TO_ACCOUNT_ID = "toAccountId";
-
+    public static final int ACCOUNT_ID = 1;
+    public static final int AMOUNT = 3;
+    public static final int FROM_ACCOUNT_ID = 2;
+    public static final int TO_ACCOUNT_ID = 4;
+    public static final int TRANSFER_AMOUNT = 6;
+    public static final int CLUSTER_ACCOUNT_ID = 2;
+    public static final int TRANSFER_ID = 2;
+    public static final int CREDIT_FROM_ACCOUNT_ID = 4;
+    public static final int CREDIT_TO_ACCOUNT_ID = 6;
+    public static final int CREDIT_AMOUNT = 8;
 }
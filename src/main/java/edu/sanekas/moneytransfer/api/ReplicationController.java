@@ -0,0 +1,92 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
+import edu.sanekas.moneytransfer.api.misc.ErrorMessages;
+import edu.sanekas.moneytransfer.replication.Follower;
+import edu.sanekas.moneytransfer.replication.ReplicationLog;
+import edu.sanekas.moneytransfer.replication.ReplicationNode;
+import edu.sanekas.moneytransfer.replication.ReplicationServer;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import jdk.jfr.Label;
+
+public class ReplicationController {
+    public static final String GET_REPLICATION = "/admin/replication";
+    public static final String POST_PROMOTE = "/admin/replication/promote";
+
+    private final ReplicationNode node;
+
+    public ReplicationController(ReplicationNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Role of the node, its position in the log and how far followers of the primary
+     * or the follower itself are behind
+     */
+    @Label(value = GET_REPLICATION)
+    public void getReplication(HttpServerExchange httpServerExchange) {
+        sendStatus(httpServerExchange);
+    }
+
+    /**
+     * Makes the follower the primary, 409 if the node is already the primary
+     */
+    @Label(value = POST_PROMOTE)
+    public void promote(HttpServerExchange httpServerExchange) {
+        if (httpServerExchange.isInIoThread()) {
+            httpServerExchange.dispatch(this::promote);
+            return;
+        }
+        try {
+            node.promote();
+            sendStatus(httpServerExchange);
+        } catch (IllegalStateException e) {
+            httpServerExchange.setStatusCode(StatusCodes.CONFLICT);
+            httpServerExchange.getResponseSender().send(ErrorMessages.NODE_IS_PRIMARY);
+        } catch (Exception e) {
+            httpServerExchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+            httpServerExchange.getResponseSender().send(e.getMessage());
+        }
+    }
+
+    private void sendStatus(HttpServerExchange httpServerExchange) {
+        final StringBuilder sb = new StringBuilder(128);
+        final Follower follower = node.getFollower();
+        if (follower != null) {
+            sb.append("{\"role\":\"follower\"")
+                    .append(",\"connected\":").append(follower.isConnected())
+                    .append(",\"failures\":").append(follower.getFailures())
+                    .append(",\"appliedSequence\":").append(follower.getAppliedSequence())
+                    .append(",\"primarySequence\":").append(follower.getPrimarySequence())
+                    .append(",\"lagRecords\":").append(follower.getLagRecords())
+                    .append(",\"lagMillis\":").append(follower.getLagMillis());
+        } else {
+            final ReplicationLog log = node.getLog();
+            final ReplicationServer server = node.getServer();
+            sb.append("{\"role\":\"primary\"")
+                    .append(",\"semiSync\":").append(log.isSemiSync())
+                    .append(",\"lastSequence\":").append(log.getLastSequence())
+                    .append(",\"ackedSequence\":").append(log.getAckedSequence())
+                    .append(",\"ackTimeouts\":").append(log.getAckTimeouts())
+                    .append(",\"failedAccepts\":").append(server.getFailedAccepts())
+                    .append(",\"disconnects\":").append(server.getDisconnects())
+                    .append(",\"sentSnapshots\":").append(server.getSentSnapshots())
+                    .append(",\"followers\":[");
+            for (long ackedSequence : server.getAckedSequences()) {
+                sb.append("{\"ackedSequence\":").append(ackedSequence)
+                        .append(",\"lagRecords\":").append(Math.max(0, log.getLastSequence() - ackedSequence))
+                        .append("},");
+            }
+            if (sb.charAt(sb.length() - 1) == ',') {
+                sb.setLength(sb.length() - 1);
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+        httpServerExchange.setStatusCode(StatusCodes.OK);
+        httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentNegotiation.JSON);
+        httpServerExchange.getResponseSender().send(sb.toString());
+    }
+}
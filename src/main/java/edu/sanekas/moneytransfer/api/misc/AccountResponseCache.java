@@ -0,0 +1,134 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Serialized responses of GET /accounts/{accountId} by account version, so polling an account which doesn't change
+ * neither serializes nor locks it. Direct-mapped: the response of an account takes the slot of its id and format,
+ * accounts whose ids collide evict each other. Entries are immutable, so a reader sees either a whole entry or
+ * another one without synchronization.
+ * ETags contain the version and a random id of the process, so they don't match after restart, when versions
+ * start over.
+ */
+public class AccountResponseCache {
+    private static final String INSTANCE = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+    private static final String BINARY_SUFFIX = "b";
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public AccountResponseCache(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity should be from 1 to " + (1 << 30));
+        }
+        this.entries = new Entry[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = entries.length - 1;
+    }
+
+    /**
+     * @return response of the account in the format as of the version or null
+     */
+    public Entry get(int accountId, long version, boolean isBinary) {
+        final Entry entry = entries[slot(accountId, isBinary)];
+        return entry != null && entry.accountId == accountId && entry.version == version && entry.isBinary == isBinary
+                ? entry
+                : null;
+    }
+
+    /**
+     * Keeps a heap copy of the serialized response from its position till its limit, as entries are replaced
+     * on every change of an account and direct buffers are expensive to allocate and are freed late
+     * @return the kept entry
+     */
+    public Entry put(int accountId, long version, boolean isBinary, ByteBuffer body) {
+        final byte[] copy = new byte[body.remaining()];
+        body.duplicate().get(copy);
+        final Entry entry = new Entry(accountId, version, isBinary, formatETag(version, isBinary),
+                ByteBuffer.wrap(copy).asReadOnlyBuffer());
+        entries[slot(accountId, isBinary)] = entry;
+        return entry;
+    }
+
+    /**
+     * @return strong entity tag of the account version in the format, e.g. "k3x9z1-42"
+     */
+    public static String formatETag(long version, boolean isBinary) {
+        return '"' + INSTANCE + '-' + version + (isBinary ? BINARY_SUFFIX : "") + '"';
+    }
+
+    /**
+     * Checks If-None-Match without allocation: "*" or a list of entity tags, weak ones are compared by value
+     * @return true if the header matches the entity tag of the account version in the format
+     */
+    public static boolean matches(String ifNoneMatch, long version, boolean isBinary) {
+        int start = 0;
+        while (start < ifNoneMatch.length()) {
+            while (start < ifNoneMatch.length()
+                    && (ifNoneMatch.charAt(start) == ' ' || ifNoneMatch.charAt(start) == ',')) {
+                ++start;
+            }
+            if (ifNoneMatch.startsWith("*", start)) {
+                return true;
+            }
+            if (ifNoneMatch.startsWith("W/", start)) {
+                start += 2;
+            }
+            final int end = ifNoneMatch.indexOf('"', start + 1);
+            if (!ifNoneMatch.startsWith("\"", start) || end < 0) {
+                return false;
+            }
+            if (matches(ifNoneMatch, start + 1, end, version, isBinary)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Compares the opaque tag between the quotes with INSTANCE-version[b]
+     */
+    private static boolean matches(String tags, int start, int end, long version, boolean isBinary) {
+        final int versionStart = start + INSTANCE.length() + 1;
+        final int versionEnd = isBinary ? end - BINARY_SUFFIX.length() : end;
+        return versionStart < versionEnd
+                && tags.startsWith(INSTANCE, start) && tags.charAt(versionStart - 1) == '-'
+                && (!isBinary || tags.startsWith(BINARY_SUFFIX, versionEnd))
+                && RequestPath.parseNumber(tags, versionStart, versionEnd, Long.MAX_VALUE) == version;
+    }
+
+    private int slot(int accountId, boolean isBinary) {
+        return (accountId << 1 | (isBinary ? 1 : 0)) & mask;
+    }
+
+    public static final class Entry {
+        private final int accountId;
+        private final long version;
+        private final boolean isBinary;
+        private final String eTag;
+        private final ByteBuffer body;
+
+        Entry(int accountId, long version, boolean isBinary, String eTag, ByteBuffer body) {
+            this.accountId = accountId;
+            this.version = version;
+            this.isBinary = isBinary;
+            this.eTag = eTag;
+            this.body = body;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return read-only buffer of the response, the caller sends its duplicate
+         */
+        public ByteBuffer getBody() {
+            return body;
+        }
+    }
+}
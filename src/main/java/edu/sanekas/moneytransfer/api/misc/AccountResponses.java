@@ -0,0 +1,119 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import edu.sanekas.moneytransfer.metrics.Metrics;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.AccountSerializer;
+import edu.sanekas.moneytransfer.model.BinaryAccountSerializer;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import org.apache.juneau.serializer.SerializeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class AccountResponses {
+    private AccountResponses() {}
+
+    /**
+     * Serializes account into a pooled direct buffer of the connection and sends it.
+     * The buffer is returned to the pool when sending is completed.
+     * @param accountSerializer JSON serializer, binary one is used if client accepts binary responses
+     */
+    public static void send(HttpServerExchange httpServerExchange, AccountSerializer accountSerializer,
+                            Account account) throws SerializeException {
+        final boolean isBinary = ContentNegotiation.acceptsBinary(httpServerExchange);
+        final AccountSerializer serializer = isBinary ? BinaryAccountSerializer.S : accountSerializer;
+        httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
+                isBinary ? ContentNegotiation.BINARY : ContentNegotiation.JSON);
+        final PooledByteBuffer pooledBuffer = httpServerExchange.getConnection().getByteBufferPool().allocate();
+        boolean isSending = false;
+        try {
+            final ByteBuffer buffer = pooledBuffer.getBuffer();
+            serialize(serializer, account, buffer);
+            httpServerExchange.getResponseSender().send(buffer, new ReleasingCallback(pooledBuffer));
+            isSending = true;
+        } finally {
+            if (!isSending) {
+                pooledBuffer.close();
+            }
+        }
+    }
+
+    /**
+     * Sends the account with the ETag of its version, or 304 without body if If-None-Match contains the ETag.
+     * The response of a version is serialized once and is sent from the cache afterwards,
+     * neither of them locks the account.
+     * @param accountSerializer JSON serializer, binary one is used if client accepts binary responses
+     */
+    public static void sendVersioned(HttpServerExchange httpServerExchange, AccountSerializer accountSerializer,
+                                     Account account, AccountResponseCache responseCache) throws SerializeException {
+        final boolean isBinary = ContentNegotiation.acceptsBinary(httpServerExchange);
+        /**
+         * The balance is read after the version, so the response is at least as new as the version
+         */
+        final long version = account.getVersion();
+        AccountResponseCache.Entry entry = responseCache.get(account.getId(), version, isBinary);
+        final HeaderMap responseHeaders = httpServerExchange.getResponseHeaders();
+        responseHeaders.put(Headers.VARY, Headers.ACCEPT_STRING);
+        final String ifNoneMatch = httpServerExchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH);
+        if (ifNoneMatch != null && AccountResponseCache.matches(ifNoneMatch, version, isBinary)) {
+            responseHeaders.put(Headers.ETAG,
+                    entry == null ? AccountResponseCache.formatETag(version, isBinary) : entry.getETag());
+            httpServerExchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+            httpServerExchange.endExchange();
+            return;
+        }
+        if (entry == null) {
+            try (PooledByteBuffer pooledBuffer = httpServerExchange.getConnection().getByteBufferPool().allocate()) {
+                final ByteBuffer buffer = pooledBuffer.getBuffer();
+                serialize(isBinary ? BinaryAccountSerializer.S : accountSerializer, account, buffer);
+                entry = responseCache.put(account.getId(), version, isBinary, buffer);
+            }
+        }
+        responseHeaders.put(Headers.CONTENT_TYPE, isBinary ? ContentNegotiation.BINARY : ContentNegotiation.JSON);
+        responseHeaders.put(Headers.ETAG, entry.getETag());
+        httpServerExchange.setStatusCode(StatusCodes.OK);
+        httpServerExchange.getResponseSender().send(entry.getBody().duplicate());
+    }
+
+    /**
+     * Serializes the account from the start of the buffer and flips it
+     */
+    private static void serialize(AccountSerializer serializer, Account account, ByteBuffer buffer)
+            throws SerializeException {
+        buffer.clear();
+        if (Metrics.ENABLED) {
+            final long startTime = System.nanoTime();
+            serializer.serialize(account, buffer);
+            Metrics.S.recordSerialization(System.nanoTime() - startTime);
+        } else {
+            serializer.serialize(account, buffer);
+        }
+        buffer.flip();
+    }
+
+    private static class ReleasingCallback implements IoCallback {
+        private final PooledByteBuffer pooledBuffer;
+
+        ReleasingCallback(PooledByteBuffer pooledBuffer) {
+            this.pooledBuffer = pooledBuffer;
+        }
+
+        @Override
+        public void onComplete(HttpServerExchange exchange, Sender sender) {
+            pooledBuffer.close();
+            IoCallback.END_EXCHANGE.onComplete(exchange, sender);
+        }
+
+        @Override
+        public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
+            pooledBuffer.close();
+            IoCallback.END_EXCHANGE.onException(exchange, sender, exception);
+        }
+    }
+}
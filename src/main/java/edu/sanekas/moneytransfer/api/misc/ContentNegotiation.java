@@ -0,0 +1,35 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+
+/**
+ * Chooses between JSON and fixed-width binary format by Accept and Content-Type headers.
+ * JSON is used unless binary is requested explicitly.
+ */
+public class ContentNegotiation {
+    private ContentNegotiation() {}
+
+    public static final String JSON = "application/json";
+    public static final String BINARY = "application/octet-stream";
+    /**
+     * Newline-delimited JSON of streamed lists, one object per line
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * @return true if client accepts binary responses
+     */
+    public static boolean acceptsBinary(HttpServerExchange httpServerExchange) {
+        final String accept = httpServerExchange.getRequestHeaders().getFirst(Headers.ACCEPT);
+        return accept != null && accept.startsWith(BINARY);
+    }
+
+    /**
+     * @return true if request body is binary
+     */
+    public static boolean hasBinaryContent(HttpServerExchange httpServerExchange) {
+        final String contentType = httpServerExchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE);
+        return contentType != null && contentType.startsWith(BINARY);
+    }
+}
@@ -0,0 +1,86 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a handler which may block on account locks or the journal off the IO thread,
+ * so a contended account does not stall other connections served by the same IO thread.
+ */
+public class DispatchingHandler implements HttpHandler {
+    private static final AttachmentKey<Executor> EXECUTOR = AttachmentKey.create(Executor.class);
+
+    private final Executor executor;
+    private final HttpHandler handler;
+
+    private DispatchingHandler(Executor executor, HttpHandler handler) {
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    /**
+     * @return handler dispatched to the executor or the handler itself if the executor is null,
+     * then it runs on the IO thread
+     */
+    public static HttpHandler of(Executor executor, HttpHandler handler) {
+        return executor == null ? handler : new DispatchingHandler(executor, handler);
+    }
+
+    /**
+     * Bounded pool of daemon threads, requests are rejected with 503 when all threads are busy and the queue is full
+     */
+    public static ExecutorService workerPool(int threads, int queueCapacity) {
+        final AtomicInteger threadsCount = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    final Thread thread = new Thread(runnable, "request-worker-" + threadsCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return executor starting a virtual thread per request or null if the runtime does not support virtual threads
+     */
+    public static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Continues the exchange in the executor of its dispatching handler if the task is called back
+     * on the IO thread, e.g. by the request receiver; otherwise the task runs in place
+     */
+    public static void resume(HttpServerExchange httpServerExchange, Runnable task) {
+        final Executor executor = httpServerExchange.getAttachment(EXECUTOR);
+        if (executor != null && httpServerExchange.isInIoThread()) {
+            httpServerExchange.dispatch(executor, task);
+        } else {
+            task.run();
+        }
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange httpServerExchange) throws Exception {
+        if (httpServerExchange.isInIoThread()) {
+            httpServerExchange.putAttachment(EXECUTOR, executor);
+            httpServerExchange.dispatch(executor, handler);
+        } else {
+            handler.handleRequest(httpServerExchange);
+        }
+    }
+}
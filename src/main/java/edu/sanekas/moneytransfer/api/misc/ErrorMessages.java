@@ -3,7 +3,24 @@ package edu.sanekas.moneytransfer.api.misc;
 public class ErrorMessages {
     private ErrorMessages() {}
 
-    public final static String ACCOUNT_ID_IS_UNDEFINED = "Account id is undefined";
     public final static String ACCOUNT_WITH_ID_NOT_FOUND = "Account with id: %d is not found";
-    public final static String AMOUNT_IS_UNDEFINED = "Amount is undefined";
+    public final static String ACCOUNT_BALANCE_IS_NOT_ZERO = "Account with id: %d has non-zero balance";
+    public final static String INVALID_ACCOUNT_ID = "Account id should be a decimal number from 0 to 2147483647";
+    public final static String INVALID_AMOUNT = "Amount should be a decimal number from 0 to 9223372036854775807";
+    public final static String BATCH_IS_EMPTY = "Batch is empty";
+    public final static String BATCH_IS_TOO_BIG = "Batch should contain at most %d legs";
+    public final static String INVALID_BATCH_LEG = "Invalid batch leg at line: %d";
+    public final static String INVALID_ACCOUNT_ID_RANGE =
+            "fromId should be an account id, toId should be a decimal number from fromId to 2147483648";
+    public final static String INVALID_ACCOUNTS_COUNT = "Count of accounts should be from 1 to %d";
+    public final static String INVALID_TIMEOUT = "timeoutMillis should be a decimal number of milliseconds";
+    public final static String ACCOUNTS_ARE_BUSY = "Accounts are busy, try again later";
+    public final static String INVALID_LIMIT = "Limit should be from 1 to %d";
+    public final static String INVALID_AFTER_SEQUENCE = "after should be a decimal sequence number";
+    public final static String INVALID_IDEMPOTENCY_KEY = "Idempotency-Key should contain from 1 to %d characters";
+    public final static String NODE_IS_FOLLOWER = "Node follows the primary, writes are served by the primary";
+    public final static String NODE_IS_PRIMARY = "Node is already the primary";
+    public final static String NODE_IS_UNAVAILABLE = "Node %d owning the account is unavailable, try again later";
+    public final static String TRANSFER_ID_IS_INVALID = "Transfer id should be a decimal number";
+    public final static String IDEMPOTENCY_KEY_IS_REUSED = "Idempotency-Key is already used for another request";
 }
@@ -0,0 +1,158 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of responses by idempotency key.
+ * All entries live for the same time, so the insertion queue is also the expiration queue:
+ * the oldest entries are evicted when they are expired or when the cache is full.
+ * Entries still executed are moved behind newer ones, so they are evicted later than their time.
+ */
+public class IdempotencyCache {
+    private final int maxKeys;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final ConcurrentLinkedQueue<Entry> insertionQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public IdempotencyCache(int maxKeys, long ttl, TimeUnit timeUnit) {
+        this.maxKeys = maxKeys;
+        this.ttlNanos = timeUnit.toNanos(ttl);
+        this.entries = new ConcurrentHashMap<>(Math.min(maxKeys, 1 << 16));
+    }
+
+    /**
+     * Response of a completed request, replayed to retries.
+     */
+    public static class StoredResponse {
+        private final int statusCode;
+        private final String contentType;
+        private final byte[] body;
+
+        public StoredResponse(int statusCode, String contentType, byte[] body) {
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Request with idempotency key, completed with its response by the first execution.
+     */
+    public static class Entry extends CompletableFuture<StoredResponse> {
+        private final String key;
+        private final String method;
+        private final String path;
+        private final long createdAt;
+
+        public Entry(String key, String method, String path) {
+            this.key = key;
+            this.method = method;
+            this.path = path;
+            this.createdAt = System.nanoTime();
+        }
+
+        /**
+         * @return true if the request is the one of this entry, as all retries should be
+         */
+        public boolean isSameRequest(String method, String path) {
+            return this.method.equals(method) && this.path.equals(path);
+        }
+    }
+
+    /**
+     * Registers the first execution of a request, expired entries of the same key are replaced.
+     * @return null if the entry is registered and the caller must execute the request and {@link #complete} it,
+     * otherwise the entry of the first execution
+     */
+    public Entry putIfAbsent(Entry entry) {
+        evict(entry.createdAt);
+        while (true) {
+            final Entry existing = entries.putIfAbsent(entry.key, entry);
+            if (existing == null) {
+                enqueue(entry);
+                return null;
+            }
+            if (!isExpired(existing, entry.createdAt)) {
+                return existing;
+            }
+            if (entries.replace(entry.key, existing, entry)) {
+                enqueue(entry);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stores the response for retries. Server errors are not stored, so retries execute the request again,
+     * but concurrent duplicates waiting for this execution get the same response.
+     */
+    public void complete(Entry entry, StoredResponse response) {
+        if (response.getStatusCode() >= 500) {
+            entries.remove(entry.key, entry);
+        }
+        entry.complete(response);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAt > ttlNanos && entry.isDone();
+    }
+
+    private void enqueue(Entry entry) {
+        insertionQueue.add(entry);
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Only one thread evicts at a time, others go on without waiting.
+     * An entry which is still executed is never evicted, so that its duplicates never execute the request again:
+     * it is moved to the end of the queue and eviction goes on behind it. The cache exceeds its bound
+     * by the number of requests in progress at most.
+     */
+    private void evict(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int skipped = 0;
+            Entry oldest;
+            while ((oldest = insertionQueue.peek()) != null
+                    && (queued.get() >= maxKeys || now - oldest.createdAt > ttlNanos)) {
+                insertionQueue.poll();
+                if (oldest.isDone()) {
+                    queued.decrementAndGet();
+                    entries.remove(oldest.key, oldest);
+                } else {
+                    insertionQueue.add(oldest);
+                    if (++skipped >= queued.get()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+}
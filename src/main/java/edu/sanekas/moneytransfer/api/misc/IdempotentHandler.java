@@ -0,0 +1,182 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.SameThreadExecutor;
+import io.undertow.util.StatusCodes;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.StreamSinkConduit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Executes a request with Idempotency-Key header only once: the response of the first execution is captured
+ * and replayed to retries without calling the handler. Duplicates arriving while the first execution is
+ * in progress wait for its response without blocking the IO thread.
+ * Requests without the header are passed to the handler as is.
+ */
+public class IdempotentHandler implements HttpHandler {
+    public static final HttpString IDEMPOTENCY_KEY = new HttpString("Idempotency-Key");
+    public static final HttpString IDEMPOTENT_REPLAYED = new HttpString("Idempotent-Replayed");
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyCache cache;
+    private final HttpHandler handler;
+
+    public IdempotentHandler(IdempotencyCache cache, HttpHandler handler) {
+        this.cache = cache;
+        this.handler = handler;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange httpServerExchange) throws Exception {
+        final HeaderValues keys = httpServerExchange.getRequestHeaders().get(IDEMPOTENCY_KEY);
+        if (keys == null || keys.isEmpty()) {
+            handler.handleRequest(httpServerExchange);
+            return;
+        }
+        final String key = keys.getFirst();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            httpServerExchange.setStatusCode(StatusCodes.BAD_REQUEST);
+            httpServerExchange.getResponseSender().send(String.format(ErrorMessages.INVALID_IDEMPOTENCY_KEY,
+                    MAX_KEY_LENGTH));
+            return;
+        }
+        final String method = httpServerExchange.getRequestMethod().toString();
+        final String path = httpServerExchange.getRequestPath();
+        final IdempotencyCache.Entry entry = new IdempotencyCache.Entry(key, method, path);
+        final IdempotencyCache.Entry firstExecution = cache.putIfAbsent(entry);
+        if (firstExecution == null) {
+            final CapturingConduit[] conduit = new CapturingConduit[1];
+            httpServerExchange.addResponseWrapper((factory, exchange) ->
+                    conduit[0] = new CapturingConduit(factory.create()));
+            httpServerExchange.addExchangeCompleteListener(new CompletionListener(cache, entry, conduit));
+            handler.handleRequest(httpServerExchange);
+        } else if (!firstExecution.isSameRequest(method, path)) {
+            httpServerExchange.setStatusCode(StatusCodes.UNPROCESSABLE_ENTITY);
+            httpServerExchange.getResponseSender().send(ErrorMessages.IDEMPOTENCY_KEY_IS_REUSED);
+        } else if (firstExecution.isDone()) {
+            replay(httpServerExchange, firstExecution.join());
+        } else {
+            httpServerExchange.dispatch(SameThreadExecutor.INSTANCE, () ->
+                    firstExecution.thenAccept(response -> replay(httpServerExchange, response)));
+        }
+    }
+
+    private static void replay(HttpServerExchange httpServerExchange, IdempotencyCache.StoredResponse response) {
+        httpServerExchange.setStatusCode(response.getStatusCode());
+        if (response.getContentType() != null) {
+            httpServerExchange.getResponseHeaders().put(Headers.CONTENT_TYPE, response.getContentType());
+        }
+        httpServerExchange.getResponseHeaders().put(IDEMPOTENT_REPLAYED, "true");
+        httpServerExchange.getResponseSender().send(ByteBuffer.wrap(response.getBody()));
+    }
+
+    private static class CompletionListener implements ExchangeCompletionListener {
+        private final IdempotencyCache cache;
+        private final IdempotencyCache.Entry entry;
+        private final CapturingConduit[] conduit;
+
+        CompletionListener(IdempotencyCache cache, IdempotencyCache.Entry entry, CapturingConduit[] conduit) {
+            this.cache = cache;
+            this.entry = entry;
+            this.conduit = conduit;
+        }
+
+        @Override
+        public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+            try {
+                final byte[] body = conduit[0] == null ? new byte[0] : conduit[0].getCaptured();
+                cache.complete(entry, new IdempotencyCache.StoredResponse(exchange.getStatusCode(),
+                        exchange.getResponseHeaders().getFirst(Headers.CONTENT_TYPE), body));
+            } finally {
+                nextListener.proceed();
+            }
+        }
+    }
+
+    /**
+     * Copies response bytes as they are written.
+     */
+    private static class CapturingConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+        private byte[] captured = new byte[64];
+        private int size;
+
+        CapturingConduit(StreamSinkConduit next) {
+            super(next);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            final int position = src.position();
+            final int written = super.write(src);
+            capture(src, position, written);
+            return written;
+        }
+
+        @Override
+        public int writeFinal(ByteBuffer src) throws IOException {
+            final int position = src.position();
+            final int written = super.writeFinal(src);
+            capture(src, position, written);
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offs, int len) throws IOException {
+            final int[] positions = positions(srcs, offs, len);
+            final long written = super.write(srcs, offs, len);
+            capture(srcs, offs, len, positions, written);
+            return written;
+        }
+
+        @Override
+        public long writeFinal(ByteBuffer[] srcs, int offs, int len) throws IOException {
+            final int[] positions = positions(srcs, offs, len);
+            final long written = super.writeFinal(srcs, offs, len);
+            capture(srcs, offs, len, positions, written);
+            return written;
+        }
+
+        byte[] getCaptured() {
+            return Arrays.copyOf(captured, size);
+        }
+
+        private static int[] positions(ByteBuffer[] srcs, int offs, int len) {
+            final int[] positions = new int[len];
+            for (int i = 0; i < len; ++i) {
+                positions[i] = srcs[offs + i].position();
+            }
+            return positions;
+        }
+
+        private void capture(ByteBuffer[] srcs, int offs, int len, int[] positions, long written) {
+            long remaining = written;
+            for (int i = 0; i < len && remaining > 0; ++i) {
+                final int bytes = (int) Math.min(remaining, srcs[offs + i].position() - positions[i]);
+                capture(srcs[offs + i], positions[i], bytes);
+                remaining -= bytes;
+            }
+        }
+
+        private void capture(ByteBuffer src, int position, int bytes) {
+            if (bytes <= 0) {
+                return;
+            }
+            if (size + bytes > captured.length) {
+                captured = Arrays.copyOf(captured, Math.max(captured.length * 2, size + bytes));
+            }
+            final ByteBuffer written = src.duplicate();
+            written.limit(position + bytes).position(position);
+            written.get(captured, size, bytes);
+            size += bytes;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import edu.sanekas.moneytransfer.metrics.Metrics;
+import edu.sanekas.moneytransfer.metrics.RouteMetrics;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Records service time and status code of a route when the exchange is completed,
+ * so handlers which finish the response asynchronously are measured too.
+ */
+public class InstrumentedHandler implements HttpHandler {
+    private final RouteMetrics routeMetrics;
+    private final HttpHandler handler;
+
+    private InstrumentedHandler(RouteMetrics routeMetrics, HttpHandler handler) {
+        this.routeMetrics = routeMetrics;
+        this.handler = handler;
+    }
+
+    /**
+     * @return handler recording metrics of the route or the handler itself if metrics are disabled
+     */
+    public static HttpHandler of(String route, HttpHandler handler) {
+        return Metrics.ENABLED ? new InstrumentedHandler(Metrics.S.route(route), handler) : handler;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange httpServerExchange) throws Exception {
+        httpServerExchange.addExchangeCompleteListener(new CompletionListener(routeMetrics, System.nanoTime()));
+        handler.handleRequest(httpServerExchange);
+    }
+
+    private static class CompletionListener implements ExchangeCompletionListener {
+        private final RouteMetrics routeMetrics;
+        private final long startTime;
+
+        CompletionListener(RouteMetrics routeMetrics, long startTime) {
+            this.routeMetrics = routeMetrics;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+            routeMetrics.record(System.nanoTime() - startTime, exchange.getStatusCode());
+            nextListener.proceed();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import edu.sanekas.moneytransfer.replication.Follower;
+import edu.sanekas.moneytransfer.replication.ReplicationNode;
+import io.undertow.server.HttpHandler;
+import io.undertow.util.HttpString;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Handlers of a follower: writes are rejected until the follower is promoted, reads tell how stale they may be.
+ */
+public class ReplicaHandler {
+    public static final HttpString REPLICATION_LAG_RECORDS = new HttpString("Replication-Lag-Records");
+    public static final HttpString REPLICATION_LAG_MILLIS = new HttpString("Replication-Lag-Millis");
+
+    private ReplicaHandler() {}
+
+    /**
+     * @return handler rejecting requests with 503 while the node follows the primary
+     * or the handler itself if there is no replication
+     */
+    public static HttpHandler writing(ReplicationNode node, HttpHandler handler) {
+        if (node == null) {
+            return handler;
+        }
+        return httpServerExchange -> {
+            if (node.isFollowing()) {
+                httpServerExchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+                httpServerExchange.getResponseSender().send(ErrorMessages.NODE_IS_FOLLOWER);
+            } else {
+                handler.handleRequest(httpServerExchange);
+            }
+        };
+    }
+
+    /**
+     * @return handler adding lag of the follower to the response headers
+     * or the handler itself if there is no replication
+     */
+    public static HttpHandler reading(ReplicationNode node, HttpHandler handler) {
+        if (node == null) {
+            return handler;
+        }
+        return httpServerExchange -> {
+            final Follower follower = node.getFollower();
+            if (follower != null) {
+                httpServerExchange.getResponseHeaders()
+                        .put(REPLICATION_LAG_RECORDS, follower.getLagRecords())
+                        .put(REPLICATION_LAG_MILLIS, follower.getLagMillis());
+            }
+            handler.handleRequest(httpServerExchange);
+        };
+    }
+}
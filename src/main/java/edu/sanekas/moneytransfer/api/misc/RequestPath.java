@@ -0,0 +1,66 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Parses numeric path parameters right from the request path by position of their segment,
+ * without substrings, boxing and exceptions. Segments are counted from 0,
+ * e.g. the amount is segment 3 of /accounts/{accountId}/debit/{amount}.
+ */
+public class RequestPath {
+    /**
+     * Returned instead of a number if the segment is missing or empty, is not a decimal number or is too big
+     */
+    public static final int INVALID = -1;
+
+    private RequestPath() {}
+
+    /**
+     * @return account id from 0 to {@link Integer#MAX_VALUE} or {@link #INVALID}
+     */
+    public static int parseAccountId(HttpServerExchange httpServerExchange, int segment) {
+        return (int) parseNumber(httpServerExchange.getRequestPath(), segment, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return amount from 0 to {@link Long#MAX_VALUE} or {@link #INVALID}
+     */
+    public static long parseAmount(HttpServerExchange httpServerExchange, int segment) {
+        return parseNumber(httpServerExchange.getRequestPath(), segment, Long.MAX_VALUE);
+    }
+
+    static long parseNumber(String path, int segment, long max) {
+        int start = 0;
+        for (int i = 0; i <= segment && start >= 0; ++i) {
+            final int slash = path.indexOf('/', start);
+            start = slash < 0 ? -1 : slash + 1;
+        }
+        return start < 0 ? INVALID : parseNumber(path, start, segmentEnd(path, start), max);
+    }
+
+    /**
+     * @return index of the slash after the segment starting at the index or length of the path
+     */
+    public static int segmentEnd(String path, int start) {
+        final int slash = path.indexOf('/', start);
+        return slash < 0 ? path.length() : slash;
+    }
+
+    /**
+     * Parses decimal digits of the path from start inclusive till end exclusive
+     */
+    public static long parseNumber(String path, int start, int end, long max) {
+        if (start >= end) {
+            return INVALID;
+        }
+        long number = 0;
+        for (int i = start; i < end; ++i) {
+            final int digit = path.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || number > (max - digit) / 10) {
+                return INVALID;
+            }
+            number = number * 10 + digit;
+        }
+        return number;
+    }
+}
@@ -0,0 +1,106 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses batch body: one transfer leg per line in form "fromAccountId,toAccountId,amount".
+ * Numbers are parsed straight from the body bytes.
+ * Binary body is a sequence of fixed-width big-endian legs: fromAccountId (4), toAccountId (4), amount (8).
+ */
+public class TransferLegsParser {
+    private TransferLegsParser() {}
+
+    public static final int BINARY_LEG_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    @FunctionalInterface
+    public interface LegConsumer {
+        void accept(int fromAccountId, int toAccountId, long amount);
+    }
+
+    /**
+     * @return number of parsed legs
+     * @throws IllegalArgumentException if body is malformed or contains more than maxLegs legs
+     */
+    public static int parse(byte[] body, int maxLegs, LegConsumer consumer) {
+        int legs = 0;
+        int position = 0;
+        while (position < body.length) {
+            if (body[position] == '\n' || body[position] == '\r') {
+                ++position;
+                continue;
+            }
+            if (legs == maxLegs) {
+                throw new IllegalArgumentException(String.format(ErrorMessages.BATCH_IS_TOO_BIG, maxLegs));
+            }
+            final int line = legs + 1;
+            final long fromAccountId = parseUnsigned(body, position, ',', Integer.MAX_VALUE, line);
+            position = skipNumber(body, position) + 1;
+            final long toAccountId = parseUnsigned(body, position, ',', Integer.MAX_VALUE, line);
+            position = skipNumber(body, position) + 1;
+            final long amount = parseUnsigned(body, position, '\n', Long.MAX_VALUE, line);
+            position = skipNumber(body, position);
+            consumer.accept((int) fromAccountId, (int) toAccountId, amount);
+            ++legs;
+        }
+        if (legs == 0) {
+            throw new IllegalArgumentException(ErrorMessages.BATCH_IS_EMPTY);
+        }
+        return legs;
+    }
+
+    /**
+     * @return number of parsed legs
+     * @throws IllegalArgumentException if body is malformed or contains more than maxLegs legs
+     */
+    public static int parseBinary(byte[] body, int maxLegs, LegConsumer consumer) {
+        if (body.length == 0) {
+            throw new IllegalArgumentException(ErrorMessages.BATCH_IS_EMPTY);
+        }
+        final int legs = body.length / BINARY_LEG_SIZE;
+        if (legs > maxLegs) {
+            throw new IllegalArgumentException(String.format(ErrorMessages.BATCH_IS_TOO_BIG, maxLegs));
+        }
+        if (body.length % BINARY_LEG_SIZE != 0) {
+            throw new IllegalArgumentException(String.format(ErrorMessages.INVALID_BATCH_LEG, legs + 1));
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(body);
+        for (int leg = 1; leg <= legs; ++leg) {
+            final int fromAccountId = buffer.getInt();
+            final int toAccountId = buffer.getInt();
+            final long amount = buffer.getLong();
+            if (fromAccountId < 0 || toAccountId < 0 || amount < 0) {
+                throw new IllegalArgumentException(String.format(ErrorMessages.INVALID_BATCH_LEG, leg));
+            }
+            consumer.accept(fromAccountId, toAccountId, amount);
+        }
+        return legs;
+    }
+
+    private static long parseUnsigned(byte[] body, int from, char separator, long max, int line) {
+        long value = 0;
+        int position = from;
+        while (position < body.length && body[position] >= '0' && body[position] <= '9') {
+            final int digit = body[position] - '0';
+            if (value > (max - digit) / 10) {
+                throw new IllegalArgumentException(String.format(ErrorMessages.INVALID_BATCH_LEG, line));
+            }
+            value = value * 10 + digit;
+            ++position;
+        }
+        final boolean isSeparated = position == body.length
+                ? separator == '\n'
+                : body[position] == separator || (separator == '\n' && body[position] == '\r');
+        if (position == from || !isSeparated) {
+            throw new IllegalArgumentException(String.format(ErrorMessages.INVALID_BATCH_LEG, line));
+        }
+        return value;
+    }
+
+    private static int skipNumber(byte[] body, int from) {
+        int position = from;
+        while (position < body.length && body[position] >= '0' && body[position] <= '9') {
+            ++position;
+        }
+        return position;
+    }
+}
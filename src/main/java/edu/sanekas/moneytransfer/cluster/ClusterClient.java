@@ -0,0 +1,82 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends prepare and credit requests of transfers between nodes to the participant node over HTTP
+ */
+public class ClusterClient {
+    public static final String CLUSTER_ACCOUNTS = "/cluster/accounts/";
+    public static final String PREPARE = "/prepare";
+    public static final String CLUSTER_TRANSFERS = "/cluster/transfers/";
+    public static final String FINISHED_BELOW_QUERY_PARAM = "finishedBelow";
+
+    private static final int OK = 200;
+    private static final int NOT_FOUND = 404;
+    private static final int GONE = 410;
+
+    private final Partitioning partitioning;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    /**
+     * @param timeout max time to wait for the response of a node
+     */
+    public ClusterClient(Partitioning partitioning, long timeout, TimeUnit unit) {
+        this.partitioning = partitioning;
+        this.timeout = Duration.ofNanos(unit.toNanos(timeout));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(this.timeout)
+                .build();
+    }
+
+    /**
+     * @return true if the account can be credited, false if the node doesn't have it
+     * @throws IOException if the node doesn't answer
+     */
+    public boolean prepare(int node, int accountId) throws IOException {
+        final int status = send(node, "POST", CLUSTER_ACCOUNTS + accountId + PREPARE);
+        if (status == OK || status == NOT_FOUND) {
+            return status == OK;
+        }
+        throw new IOException("Node " + node + " answered prepare of account " + accountId + " with " + status);
+    }
+
+    /**
+     * Repeated credits of the same transfer are applied once
+     * @param finishedBelow every transfer of the coordinator with a lower id is finished and is not credited again
+     * @return true if the account is credited, false if the account is removed after prepare
+     * @throws IOException if the node doesn't answer
+     */
+    public boolean credit(int node, long transferId, int fromAccountId, int toAccountId, long amount,
+                          long finishedBelow) throws IOException {
+        final int status = send(node, "PUT", CLUSTER_TRANSFERS + transferId + "/from/" + fromAccountId
+                + "/to/" + toAccountId + "/credit/" + amount + "?" + FINISHED_BELOW_QUERY_PARAM + "=" + finishedBelow);
+        if (status == OK || status == GONE) {
+            return status == OK;
+        }
+        throw new IOException("Node " + node + " answered credit of transfer " + transferId + " with " + status);
+    }
+
+    private int send(int node, String method, String pathAndQuery) throws IOException {
+        final HttpRequest request = HttpRequest
+                .newBuilder(URI.create("http://" + partitioning.getNodeAddress(node) + pathAndQuery))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .timeout(timeout)
+                .build();
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request to node " + node + " is interrupted");
+        }
+    }
+}
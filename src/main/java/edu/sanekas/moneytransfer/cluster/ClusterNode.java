@@ -0,0 +1,60 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node of a cluster owning a partition of accounts: coordinates transfers from its accounts to accounts of other
+ * nodes and takes part in transfers to its accounts
+ */
+public class ClusterNode implements AutoCloseable {
+    private final Partitioning partitioning;
+    private final TransferLog log;
+    private final TransferCoordinator coordinator;
+    private final TransferParticipant participant;
+
+    private ClusterNode(Partitioning partitioning, TransferLog log, TransferCoordinator coordinator,
+                        TransferParticipant participant) {
+        this.partitioning = partitioning;
+        this.log = log;
+        this.coordinator = coordinator;
+        this.participant = participant;
+    }
+
+    /**
+     * Finishes transfers left by the previous run, should be called after balances are recovered
+     * @param log log of transfers of this node, it is compacted and is closed with the node
+     * @param timeout max time to wait for the response of another node
+     * @param retryInterval interval of repeating credits of committed transfers to nodes which don't answer
+     */
+    public static ClusterNode start(Partitioning partitioning, AccountsStorage accountsStorage, TransferLog log,
+                                    long timeout, long retryInterval, TimeUnit unit) throws IOException {
+        final TransferCoordinator coordinator = new TransferCoordinator(partitioning, accountsStorage, log,
+                new ClusterClient(partitioning, timeout, unit), retryInterval, unit);
+        final TransferParticipant participant = new TransferParticipant(accountsStorage, log);
+        log.compact();
+        participant.recover();
+        coordinator.recover();
+        return new ClusterNode(partitioning, log, coordinator, participant);
+    }
+
+    public Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    public TransferCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    public TransferParticipant getParticipant() {
+        return participant;
+    }
+
+    @Override
+    public void close() throws IOException {
+        coordinator.close();
+        log.close();
+    }
+}
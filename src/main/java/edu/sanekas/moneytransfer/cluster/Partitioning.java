@@ -0,0 +1,67 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import java.util.List;
+
+/**
+ * Range partitioning of account ids between cluster nodes: node i owns ids from i * accountsPerNode
+ * till (i + 1) * accountsPerNode exclusive and creates its accounts there, so every node keeps sequential ids
+ * and its own journal, snapshots and replication.
+ */
+public class Partitioning {
+    private final int nodeIndex;
+    private final List<String> nodeAddresses;
+    private final int accountsPerNode;
+
+    /**
+     * @param nodeIndex index of this node in the list
+     * @param nodeAddresses host:port of the HTTP listener of every node
+     */
+    public Partitioning(int nodeIndex, List<String> nodeAddresses, int accountsPerNode) {
+        if (nodeIndex < 0 || nodeIndex >= nodeAddresses.size()) {
+            throw new IllegalArgumentException("Node index should be from 0 to " + (nodeAddresses.size() - 1));
+        }
+        if (accountsPerNode <= 0 || (long) accountsPerNode * nodeAddresses.size() - 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Account ids of " + nodeAddresses.size() + " nodes with "
+                    + accountsPerNode + " accounts per node don't fit into int");
+        }
+        this.nodeIndex = nodeIndex;
+        this.nodeAddresses = List.copyOf(nodeAddresses);
+        this.accountsPerNode = accountsPerNode;
+    }
+
+    public int getNodeIndex() {
+        return nodeIndex;
+    }
+
+    public int getNodesCount() {
+        return nodeAddresses.size();
+    }
+
+    public String getNodeAddress(int node) {
+        return nodeAddresses.get(node);
+    }
+
+    public int getAccountsPerNode() {
+        return accountsPerNode;
+    }
+
+    /**
+     * @return id of the first account of this node
+     */
+    public int getFirstAccountId() {
+        return nodeIndex * accountsPerNode;
+    }
+
+    /**
+     * @return index of the node owning the account, ids beyond the last node are owned by this node,
+     * which doesn't find them
+     */
+    public int getOwner(int accountId) {
+        final int owner = accountId / accountsPerNode;
+        return owner < nodeAddresses.size() ? owner : nodeIndex;
+    }
+
+    public boolean isLocal(int accountId) {
+        return getOwner(accountId) == nodeIndex;
+    }
+}
@@ -0,0 +1,353 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coordinator side of transfers from accounts of this node to accounts of other nodes, with two-phase commit.
+ * <ol>
+ * <li>BEGIN is logged under the write lock of the account money is taken from, right before the withdrawing,
+ * which is the vote of the coordinator, so after a crash the withdrawing is applied if the account has journal
+ * records after the logged journal sequence. The log is forced after the lock is released, so transfers from
+ * the account don't wait for each other's fsync. The withdrawing is not durable before BEGIN, as long as
+ * the journal forces the log before writing its records.</li>
+ * <li>the participant node is asked to prepare, it votes for commit if it has the account</li>
+ * <li>COMMIT is logged durably, from now on the transfer is repeated until the participant credits the account</li>
+ * <li>END is logged when the participant answers</li>
+ * </ol>
+ * If the participant doesn't have the account or doesn't answer the prepare request, the money is returned
+ * after REFUND is logged the same way as BEGIN. Transfers found without COMMIT during recovery
+ * are aborted. Money on its way to the participant is not in balances of either node.
+ */
+public class TransferCoordinator implements AutoCloseable {
+    /**
+     * Transfer ids of a node start from its index shifted by so many bits
+     */
+    private static final int NODE_SHIFT = 48;
+
+    private final Partitioning partitioning;
+    private final AccountsStorage accountsStorage;
+    private final TransferLog log;
+    private final ClusterClient client;
+    private final ScheduledExecutorService retryScheduler;
+    /**
+     * Transfers without END by id. Ids are allocated and transfers are added under the lock of the map,
+     * so every transfer which is not in the map yet has a greater id than any transfer in it.
+     */
+    private final ConcurrentSkipListMap<Long, Transfer> unfinishedTransfers = new ConcurrentSkipListMap<>();
+    private long lastTransferId;
+    private final LongAdder committedTransfers = new LongAdder();
+    private final LongAdder abortedTransfers = new LongAdder();
+    private final LongAdder creditRetries = new LongAdder();
+    private final LongAdder failedRetries = new LongAdder();
+
+    /**
+     * @param retryInterval interval of repeating credits and refunds which are not done yet
+     */
+    public TransferCoordinator(Partitioning partitioning, AccountsStorage accountsStorage, TransferLog log,
+                               ClusterClient client, long retryInterval, TimeUnit unit) {
+        this.partitioning = partitioning;
+        this.accountsStorage = accountsStorage;
+        this.log = log;
+        this.client = client;
+        this.lastTransferId = (long) partitioning.getNodeIndex() << NODE_SHIFT;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "transfer-retries");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retryScheduler.scheduleWithFixedDelay(this::retry, retryInterval, retryInterval, unit);
+    }
+
+    /**
+     * @return the first transfer id of the node which coordinated the transfer
+     */
+    public static long firstTransferId(long transferId) {
+        return transferId >>> NODE_SHIFT << NODE_SHIFT;
+    }
+
+    /**
+     * @return true if the mutation logged with the journal sequence of the account is applied to it,
+     * which is the case if the account has later journal records or is removed after the mutation
+     */
+    static boolean isApplied(AccountsStorage accountsStorage, int accountId, long accountSequence) {
+        final Account account = accountsStorage.getAccountById(accountId).orElse(null);
+        if (account == null) {
+            return true;
+        }
+        final long[] journalSequence = new long[1];
+        account.visitBalance((visitedAccount, totalMoney, sequence) -> journalSequence[0] = sequence);
+        return journalSequence[0] > accountSequence;
+    }
+
+    /**
+     * Finishes transfers left by the previous run, should be called after balances are recovered
+     */
+    public void recover() throws IOException {
+        final Map<Long, Transfer> transfers = new HashMap<>();
+        log.replay((transferId, kind, accountId, counterpartyId, amount, accountSequence) -> {
+            switch (kind) {
+                case TransferLog.BEGIN:
+                    transfers.put(transferId, new Transfer(transferId, accountId, counterpartyId, amount));
+                    transfers.get(transferId).beginSequence = accountSequence;
+                    lastTransferId = Math.max(lastTransferId, transferId);
+                    break;
+                case TransferLog.COMMIT:
+                    transfers.get(transferId).isCommitted = true;
+                    break;
+                case TransferLog.REFUND:
+                    transfers.get(transferId).refundSequence = accountSequence;
+                    break;
+                case TransferLog.END:
+                    transfers.remove(transferId);
+                    break;
+                default:
+                    break;
+            }
+        });
+        /**
+         * Mutations are checked before any refund, which adds journal records, and finished transfers are logged
+         * durably, so they are not checked again after later mutations
+         */
+        for (Transfer transfer : transfers.values()) {
+            /**
+             * Either the money is returned or it is not taken at all
+             */
+            final boolean isFinished = transfer.refundSequence >= 0
+                    ? isApplied(accountsStorage, transfer.fromAccountId, transfer.refundSequence)
+                    : !transfer.isCommitted
+                            && !isApplied(accountsStorage, transfer.fromAccountId, transfer.beginSequence);
+            if (isFinished) {
+                log.appendDurable(transfer.id, TransferLog.END, transfer.fromAccountId, transfer.toAccountId,
+                        transfer.amount, 0);
+            } else {
+                unfinishedTransfers.put(transfer.id, transfer);
+            }
+        }
+        for (Transfer transfer : unfinishedTransfers.values()) {
+            if (transfer.isCommitted && transfer.refundSequence < 0) {
+                transfer.isCreditPending = true;
+            } else {
+                refund(transfer);
+            }
+        }
+    }
+
+    /**
+     * Moves money to the account of another node, returns when the withdrawing is durable and the transfer
+     * is committed. The participant credits the account before return unless it doesn't answer,
+     * then the credit is repeated in background.
+     * @return false if there is not enough money
+     * @throws NoSuchElementException without message if the participant doesn't have the account,
+     * the money is returned
+     * @throws IOException if the participant doesn't answer the prepare request, the money is returned
+     * @throws UncheckedIOException if the log or the journal is not writable, the money is returned
+     * if it isn't taken yet, otherwise the transfer is finished by recovery
+     */
+    public boolean transfer(Account fromAccount, int toAccountId, long amount) throws IOException {
+        final Transfer transfer;
+        synchronized (unfinishedTransfers) {
+            transfer = new Transfer(++lastTransferId, fromAccount.getId(), toAccountId, amount);
+            unfinishedTransfers.put(transfer.id, transfer);
+        }
+        final long[] beginEnd = new long[1];
+        final long sequence;
+        try {
+            sequence = fromAccount.transferOutJournaled(toAccountId, amount, accountSequence -> beginEnd[0] =
+                    log.append(transfer.id, TransferLog.BEGIN, transfer.fromAccountId, toAccountId, amount,
+                            accountSequence));
+        } catch (RuntimeException e) {
+            unfinishedTransfers.remove(transfer.id);
+            throw e;
+        }
+        if (sequence == Account.NOT_APPLIED) {
+            unfinishedTransfers.remove(transfer.id);
+            return false;
+        }
+        log.force(beginEnd[0]);
+        fromAccount.getJournal().awaitDurable(sequence);
+        final boolean isPrepared;
+        try {
+            isPrepared = client.prepare(partitioning.getOwner(toAccountId), toAccountId);
+        } catch (IOException e) {
+            refund(transfer);
+            throw e;
+        }
+        if (!isPrepared) {
+            refund(transfer);
+            throw new NoSuchElementException();
+        }
+        log.appendDurable(transfer.id, TransferLog.COMMIT, transfer.fromAccountId, toAccountId, amount, 0);
+        transfer.isCommitted = true;
+        committedTransfers.increment();
+        credit(transfer);
+        return true;
+    }
+
+    public int getNodeIndex() {
+        return partitioning.getNodeIndex();
+    }
+
+    /**
+     * @return transfers which are begun, but are not finished yet
+     */
+    public int getUnfinishedTransfers() {
+        return unfinishedTransfers.size();
+    }
+
+    public long getCommittedTransfers() {
+        return committedTransfers.sum();
+    }
+
+    /**
+     * @return transfers whose money is returned
+     */
+    public long getAbortedTransfers() {
+        return abortedTransfers.sum();
+    }
+
+    /**
+     * @return repeated credits of committed transfers
+     */
+    public long getCreditRetries() {
+        return creditRetries.sum();
+    }
+
+    /**
+     * @return repeated credits and refunds which failed with an error, not counting unanswered credits
+     */
+    public long getFailedRetries() {
+        return failedRetries.sum();
+    }
+
+    /**
+     * @return transfers whose money is not returned yet, e.g. because the account is removed
+     */
+    public int getPendingRefunds() {
+        int pendingRefunds = 0;
+        for (Transfer transfer : unfinishedTransfers.values()) {
+            if (transfer.isRefundPending) {
+                ++pendingRefunds;
+            }
+        }
+        return pendingRefunds;
+    }
+
+    @Override
+    public void close() {
+        retryScheduler.shutdownNow();
+    }
+
+    /**
+     * Asks the participant to credit the account, the credit is repeated in background if it doesn't answer.
+     * The money is returned if the account is removed after prepare.
+     */
+    private void credit(Transfer transfer) {
+        final boolean isCredited;
+        try {
+            isCredited = client.credit(partitioning.getOwner(transfer.toAccountId), transfer.id,
+                    transfer.fromAccountId, transfer.toAccountId, transfer.amount, unfinishedTransfers.firstKey());
+        } catch (IOException e) {
+            transfer.isCreditPending = true;
+            return;
+        }
+        transfer.isCreditPending = false;
+        if (isCredited) {
+            finish(transfer);
+        } else {
+            refund(transfer);
+        }
+    }
+
+    /**
+     * Returns the money to the account it is taken from, the refund is repeated in background if the account
+     * can't take it. Once the money is returned, the refund is not repeated even if it doesn't become durable,
+     * then the transfer is finished by recovery.
+     */
+    private void refund(Transfer transfer) {
+        final Account account = accountsStorage.getAccountById(transfer.fromAccountId).orElse(null);
+        final long[] refundEnd = new long[1];
+        final long sequence;
+        try {
+            sequence = account == null
+                    ? Account.NOT_APPLIED
+                    : account.transferInJournaled(transfer.toAccountId, transfer.amount, accountSequence ->
+                            refundEnd[0] = log.append(transfer.id, TransferLog.REFUND, transfer.fromAccountId,
+                                    transfer.toAccountId, transfer.amount, accountSequence));
+        } catch (UncheckedIOException e) {
+            transfer.isRefundPending = true;
+            throw e;
+        }
+        if (sequence == Account.NOT_APPLIED) {
+            transfer.isRefundPending = true;
+            return;
+        }
+        transfer.isRefundPending = false;
+        log.force(refundEnd[0]);
+        account.getJournal().awaitDurable(sequence);
+        abortedTransfers.increment();
+        finish(transfer);
+    }
+
+    /**
+     * END is durable before the transfer leaves the map, because the participant forgets credits of transfers
+     * below the first unfinished one and would credit a transfer again if END were lost
+     */
+    private void finish(Transfer transfer) {
+        log.appendDurable(transfer.id, TransferLog.END, transfer.fromAccountId, transfer.toAccountId, transfer.amount,
+                0);
+        unfinishedTransfers.remove(transfer.id);
+    }
+
+    /**
+     * Repeats credits and refunds which failed, a request thread doesn't touch the transfer after it fails
+     */
+    private void retry() {
+        for (Transfer transfer : unfinishedTransfers.values()) {
+            try {
+                if (transfer.isCreditPending) {
+                    creditRetries.increment();
+                    credit(transfer);
+                } else if (transfer.isRefundPending) {
+                    refund(transfer);
+                }
+            } catch (RuntimeException e) {
+                failedRetries.increment();
+            }
+        }
+    }
+
+    private static class Transfer {
+        private final long id;
+        private final int fromAccountId;
+        private final int toAccountId;
+        private final long amount;
+        /**
+         * Journal sequences of the account money is taken from, logged before the withdrawing and the refund,
+         * used only during recovery
+         */
+        private long beginSequence;
+        private long refundSequence = -1;
+        private volatile boolean isCommitted;
+        private volatile boolean isCreditPending;
+        private volatile boolean isRefundPending;
+
+        Transfer(long id, int fromAccountId, int toAccountId, long amount) {
+            this.id = id;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amount = amount;
+        }
+    }
+}
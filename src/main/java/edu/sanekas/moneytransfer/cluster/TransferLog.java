@@ -0,0 +1,263 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only log of transfers between cluster nodes, kept by the coordinator and by the participant of a transfer.
+ * Records are fixed-width: transfer id (8 bytes), kind (1 byte), accountId (4 bytes), counterpartyId (4 bytes),
+ * amount (8 bytes), account sequence (8 bytes), the sequence number of the last balance journal record applied
+ * to the account before the logged mutation of its balance.
+ * Threads forcing the log at the same time share one fsync.
+ * Records of finished transfers are dropped by {@link #compact()} on start.
+ * Without a file records are not kept at all, like balances without the journal.
+ */
+public class TransferLog implements AutoCloseable {
+    public static final int RECORD_SIZE = 33;
+
+    /**
+     * Coordinator is about to take money from accountId for counterpartyId of another node
+     */
+    public static final byte BEGIN = 1;
+    /**
+     * Participant has prepared, money is going to be put to counterpartyId
+     */
+    public static final byte COMMIT = 2;
+    /**
+     * Coordinator is about to return money to accountId, the transfer is aborted
+     */
+    public static final byte REFUND = 3;
+    /**
+     * Transfer is finished by the coordinator, or the participant forgets the credit, because the coordinator
+     * has finished the transfer or the credit is found not applied during recovery
+     */
+    public static final byte END = 4;
+    /**
+     * Participant is about to put money to accountId from counterpartyId of another node
+     */
+    public static final byte CREDIT = 5;
+
+    private final Path path;
+    private FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocateDirect(RECORD_SIZE);
+    private final Object forceLock = new Object();
+    private long position;
+    private volatile long durablePosition;
+
+    /**
+     * Opens existing log or creates new one, incomplete record at the end of the file is dropped
+     * @param path file of the log or null if records are not kept
+     */
+    public TransferLog(Path path) throws IOException {
+        this.path = path;
+        if (path == null) {
+            this.channel = null;
+            return;
+        }
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.position = channel.size() / RECORD_SIZE * RECORD_SIZE;
+        this.durablePosition = position;
+    }
+
+    /**
+     * Passes every record to the handler in order of appending.
+     * Should be called before the log is used by anything else.
+     */
+    public void replay(RecordHandler handler) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 4096);
+        long readPosition = 0;
+        while (readPosition < position) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), position - readPosition));
+            while (buffer.hasRemaining()) {
+                readPosition += channel.read(buffer, readPosition);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                handler.handle(buffer.getLong(), buffer.get(), buffer.getInt(), buffer.getInt(), buffer.getLong(),
+                        buffer.getLong());
+            }
+        }
+    }
+
+    /**
+     * Replaces the log with a copy without records of finished transfers, except the latest transfer of every
+     * coordinating node, which keeps its transfer ids growing after restart.
+     * Should be called before the log is used by anything else.
+     */
+    public void compact() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        final Set<Long> finishedTransfers = new HashSet<>();
+        final Map<Long, Long> lastTransferIds = new HashMap<>();
+        replay((transferId, kind, accountId, counterpartyId, amount, accountSequence) -> {
+            if (kind == END) {
+                finishedTransfers.add(transferId);
+            }
+            lastTransferIds.merge(TransferCoordinator.firstTransferId(transferId), transferId, Math::max);
+        });
+        finishedTransfers.removeAll(lastTransferIds.values());
+        if (finishedTransfers.isEmpty()) {
+            return;
+        }
+        final Path compactedPath = path.resolveSibling(path.getFileName() + ".compacted");
+        try (FileChannel compacted = FileChannel.open(compactedPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 4096);
+            try {
+                replay((transferId, kind, accountId, counterpartyId, amount, accountSequence) -> {
+                    if (finishedTransfers.contains(transferId)) {
+                        return;
+                    }
+                    if (!buffer.hasRemaining()) {
+                        write(compacted, buffer);
+                    }
+                    buffer.putLong(transferId).put(kind).putInt(accountId).putInt(counterpartyId).putLong(amount)
+                            .putLong(accountSequence);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            write(compacted, buffer);
+            compacted.force(false);
+        }
+        /**
+         * The journal may force the log from its writer thread
+         */
+        synchronized (forceLock) {
+            synchronized (this) {
+                channel.close();
+                Files.move(compactedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                forceDirectory(path.toAbsolutePath().getParent());
+                this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.position = channel.size();
+                this.durablePosition = position;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(long transferId, byte kind, int accountId, int counterpartyId, long amount,
+                    long accountSequence);
+    }
+
+    /**
+     * Appends record, doesn't wait for durability
+     * @return position after the record, which is durable after {@link #force(long)} with it
+     * @throws UncheckedIOException if the record is not written
+     */
+    public long append(long transferId, byte kind, int accountId, int counterpartyId, long amount,
+                       long accountSequence) {
+        return appendRecord(transferId, kind, accountId, counterpartyId, amount, accountSequence);
+    }
+
+    /**
+     * Appends record and returns when it is durable
+     * @throws UncheckedIOException if the record is not written
+     */
+    public void appendDurable(long transferId, byte kind, int accountId, int counterpartyId, long amount,
+                              long accountSequence) {
+        force(appendRecord(transferId, kind, accountId, counterpartyId, amount, accountSequence));
+    }
+
+    /**
+     * Returns when every record appended so far is durable
+     * @throws UncheckedIOException if the records are not written
+     */
+    public void force() {
+        final long end;
+        synchronized (this) {
+            end = position;
+        }
+        force(end);
+    }
+
+    /**
+     * Returns when records before the position are durable
+     * @throws UncheckedIOException if the records are not written
+     */
+    public void force(long end) {
+        if (channel == null || durablePosition >= end) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (durablePosition >= end) {
+                return;
+            }
+            final long forcedPosition;
+            synchronized (this) {
+                forcedPosition = position;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            durablePosition = forcedPosition;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes the renaming of a file in the directory durable, otherwise records appended to the renamed file
+     * could be lost with it after a crash
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return position after the record
+     */
+    private synchronized long appendRecord(long transferId, byte kind, int accountId, int counterpartyId,
+                                           long amount, long accountSequence) {
+        if (channel == null) {
+            return 0;
+        }
+        record.clear().putLong(transferId).put(kind).putInt(accountId).putInt(counterpartyId).putLong(amount)
+                .putLong(accountSequence).flip();
+        try {
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,130 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Participant side of transfers between nodes: answers prepare requests and credits accounts of this node.
+ * The coordinator repeats a credit until it gets the answer, so every credit is applied once by transfer id.
+ * Before the account is credited, the credit is logged with the journal sequence of the account under its write
+ * lock, so after a crash the credit is applied if the account has journal records after that sequence. The log is
+ * forced after the lock is released, like BEGIN of the coordinator.
+ * Credits of transfers finished by the coordinator are forgotten and logged as finished, so they are neither
+ * restored after restart nor kept by {@link TransferLog#compact()}.
+ */
+public class TransferParticipant {
+    private static final CompletableFuture<Boolean> CREDITED = CompletableFuture.completedFuture(true);
+
+    private final AccountsStorage accountsStorage;
+    private final TransferLog log;
+    /**
+     * Results of credits by transfer id, until the coordinator reports that they are finished
+     */
+    private final ConcurrentSkipListMap<Long, CompletableFuture<Boolean>> credits = new ConcurrentSkipListMap<>();
+
+    public TransferParticipant(AccountsStorage accountsStorage, TransferLog log) {
+        this.accountsStorage = accountsStorage;
+        this.log = log;
+    }
+
+    /**
+     * Restores applied credits from the log, should be called after balances are recovered and before
+     * they are mutated. Credits which are not applied are logged durably as finished, so they are not checked
+     * again after later mutations and are applied when the coordinator repeats them.
+     */
+    public void recover() throws IOException {
+        final Map<Long, long[]> loggedCredits = new HashMap<>();
+        log.replay((transferId, kind, accountId, counterpartyId, amount, accountSequence) -> {
+            if (kind == TransferLog.CREDIT) {
+                loggedCredits.put(transferId, new long[]{accountId, counterpartyId, amount, accountSequence});
+            } else if (kind == TransferLog.END) {
+                loggedCredits.remove(transferId);
+            }
+        });
+        for (Map.Entry<Long, long[]> entry : loggedCredits.entrySet()) {
+            final long[] credit = entry.getValue();
+            if (TransferCoordinator.isApplied(accountsStorage, (int) credit[0], credit[3])) {
+                credits.put(entry.getKey(), CREDITED);
+            } else {
+                log.appendDurable(entry.getKey(), TransferLog.END, (int) credit[0], (int) credit[1], credit[2], 0);
+            }
+        }
+    }
+
+    /**
+     * @return true if the account exists, so it can be credited
+     */
+    public boolean prepare(int accountId) {
+        return accountsStorage.getAccountById(accountId).isPresent();
+    }
+
+    /**
+     * Credits the account once per transfer, returns when the credit is durable
+     * @param finishedBelow every transfer of the coordinator with a lower id is finished and is not credited again
+     * @return false if the account is removed
+     * @throws java.io.UncheckedIOException if the log or the journal is not writable. If the account is credited
+     * already, the credit is not repeated, its requests fail until the node is restarted and recovers it.
+     */
+    public boolean credit(long transferId, int fromAccountId, int toAccountId, long amount, long finishedBelow) {
+        final long firstTransferId = TransferCoordinator.firstTransferId(transferId);
+        if (finishedBelow > firstTransferId) {
+            forget(credits.subMap(firstTransferId, Math.min(finishedBelow, transferId)));
+        }
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final CompletableFuture<Boolean> previousResult = credits.putIfAbsent(transferId, result);
+        if (previousResult != null) {
+            return previousResult.join();
+        }
+        final Account account = accountsStorage.getAccountById(toAccountId).orElse(null);
+        final long[] creditEnd = new long[1];
+        final long sequence;
+        try {
+            sequence = account == null
+                    ? Account.NOT_APPLIED
+                    : account.transferInJournaled(fromAccountId, amount, accountSequence -> creditEnd[0] =
+                            log.append(transferId, TransferLog.CREDIT, toAccountId, fromAccountId, amount,
+                                    accountSequence));
+        } catch (RuntimeException e) {
+            credits.remove(transferId, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+        try {
+            if (sequence != Account.NOT_APPLIED) {
+                log.force(creditEnd[0]);
+                account.getJournal().awaitDurable(sequence);
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        }
+        result.complete(sequence != Account.NOT_APPLIED);
+        return sequence != Account.NOT_APPLIED;
+    }
+
+    /**
+     * Logs END of the credits without waiting for durability, a lost one only makes the credit restored
+     * after restart
+     */
+    private void forget(NavigableMap<Long, CompletableFuture<Boolean>> finishedCredits) {
+        for (Long transferId : finishedCredits.keySet()) {
+            if (finishedCredits.remove(transferId) != null) {
+                log.append(transferId, TransferLog.END, 0, 0, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * @return number of credits kept for repeated requests
+     */
+    public int getRememberedCredits() {
+        return credits.size();
+    }
+}
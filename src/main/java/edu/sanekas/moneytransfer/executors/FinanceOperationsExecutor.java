@@ -0,0 +1,24 @@
+package edu.sanekas.moneytransfer.executors;
+
+import edu.sanekas.moneytransfer.model.Account;
+
+/**
+ * Interface for different strategies of applying finance operations to accounts.
+ * All operations of an application should go through the same executor.
+ */
+public interface FinanceOperationsExecutor {
+    /**
+     * @return true if amount is added to the account, else - false
+     */
+    boolean debit(Account account, long amount);
+
+    /**
+     * @return true if amount is taken from the account, else - false
+     */
+    boolean withdraw(Account account, long amount);
+
+    /**
+     * @return true if amount is moved from fromAccount to toAccount, else - false
+     */
+    boolean transfer(Account fromAccount, Account toAccount, long amount);
+}
@@ -0,0 +1,26 @@
+package edu.sanekas.moneytransfer.executors;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.Transaction;
+
+/**
+ * Applies operations in the caller thread under account write locks.
+ */
+public enum LockingFinanceOperationsExecutor implements FinanceOperationsExecutor {
+    S;
+
+    @Override
+    public boolean debit(Account account, long amount) {
+        return account.debit(amount);
+    }
+
+    @Override
+    public boolean withdraw(Account account, long amount) {
+        return account.withdraw(amount);
+    }
+
+    @Override
+    public boolean transfer(Account fromAccount, Account toAccount, long amount) {
+        return new Transaction(fromAccount, toAccount, amount).execute();
+    }
+}
@@ -0,0 +1,114 @@
+package edu.sanekas.moneytransfer.executors;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.persistence.JournalRecordHandler;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds transfers between shards of {@link ShardedFinanceOperationsExecutor} which took the money from an account,
+ * but neither put it to the other account nor returned it before the node stopped, and completes them.
+ * Should be passed every journal record from the first one, after the accounts are recovered.
+ * Handoffs between shards complete in the order they are started, so records of a pair of accounts are matched
+ * first in, first out.
+ */
+public class ShardHandoffRecovery implements JournalRecordHandler {
+    private final AccountsStorage accountsStorage;
+    private final IntPredicate isLocalAccount;
+    /**
+     * Sequence numbers of unmatched {@link BalanceJournal#TRANSFER_OUT} records by pair of accounts
+     */
+    private final Map<Long, ArrayDeque<Long>> pendingByAccounts = new HashMap<>();
+    /**
+     * Unmatched {@link BalanceJournal#TRANSFER_OUT} records by sequence number in journal order
+     */
+    private final Map<Long, long[]> pendingBySequence = new LinkedHashMap<>();
+
+    /**
+     * @param isLocalAccount tells accounts of this node, transfers to other nodes are recovered by the cluster
+     */
+    public ShardHandoffRecovery(AccountsStorage accountsStorage, IntPredicate isLocalAccount) {
+        this.accountsStorage = accountsStorage;
+        this.isLocalAccount = isLocalAccount;
+    }
+
+    @Override
+    public void handle(long sequence, byte type, int accountId, int counterpartyId, long amount) {
+        if (!isLocalAccount.test(counterpartyId)) {
+            return;
+        }
+        switch (type) {
+            case BalanceJournal.TRANSFER_OUT:
+                pendingByAccounts.computeIfAbsent(pairOf(accountId, counterpartyId), pair -> new ArrayDeque<>())
+                        .add(sequence);
+                pendingBySequence.put(sequence, new long[] {accountId, counterpartyId, amount});
+                break;
+            case BalanceJournal.TRANSFER_IN:
+                match(sequence, counterpartyId, accountId, amount);
+                break;
+            case BalanceJournal.TRANSFER_RETURN:
+                match(sequence, accountId, counterpartyId, amount);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Puts the money of unmatched transfers to their accounts or returns it, if the account is closed or removed,
+     * and waits until the records are durable
+     * @return number of completed transfers
+     */
+    public int complete() {
+        Account lastAccount = null;
+        long lastSequence = Account.NOT_APPLIED;
+        for (Map.Entry<Long, long[]> pending : pendingBySequence.entrySet()) {
+            final int fromAccountId = (int) pending.getValue()[0];
+            final int toAccountId = (int) pending.getValue()[1];
+            final long amount = pending.getValue()[2];
+            final Optional<Account> toAccount = accountsStorage.getAccountById(toAccountId);
+            lastSequence = toAccount.isPresent()
+                    ? toAccount.get().transferInJournaled(fromAccountId, amount, accountSequence -> { })
+                    : Account.NOT_APPLIED;
+            if (lastSequence != Account.NOT_APPLIED) {
+                lastAccount = toAccount.get();
+            } else {
+                lastAccount = accountsStorage.getAccountById(fromAccountId)
+                        .orElseThrow(() -> new IllegalStateException("Journal record " + pending.getKey() +
+                                " takes money from unknown account " + fromAccountId));
+                lastSequence = lastAccount.transferReturnJournaled(toAccountId, amount);
+            }
+        }
+        if (lastAccount != null) {
+            lastAccount.getJournal().awaitDurable(lastSequence);
+        }
+        final int completed = pendingBySequence.size();
+        pendingByAccounts.clear();
+        pendingBySequence.clear();
+        return completed;
+    }
+
+    private void match(long sequence, int fromAccountId, int toAccountId, long amount) {
+        final Long pair = pairOf(fromAccountId, toAccountId);
+        final ArrayDeque<Long> pending = pendingByAccounts.get(pair);
+        final Long outSequence = pending == null ? null : pending.poll();
+        if (outSequence == null || pendingBySequence.remove(outSequence)[2] != amount) {
+            throw new IllegalStateException("Journal record " + sequence + " completes no transfer from account "
+                    + fromAccountId + " to account " + toAccountId);
+        }
+        if (pending.isEmpty()) {
+            pendingByAccounts.remove(pair);
+        }
+    }
+
+    private static Long pairOf(int fromAccountId, int toAccountId) {
+        return ((long) fromAccountId << 32) | (toAccountId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,294 @@
+package edu.sanekas.moneytransfer.executors;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.Transaction;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Partitions accounts by id across single-threaded shards.
+ * Every mutation of an account is made by the thread of its shard, so operations of one shard never wait
+ * for each other or for other shards on account locks. A transfer within a shard is applied at once and journaled
+ * as one record. A transfer between shards is a handoff: the shard of fromAccount withdraws the money
+ * with {@link edu.sanekas.moneytransfer.model.BalanceJournal#TRANSFER_OUT} record and passes the credit
+ * to the shard of toAccount, which puts it with {@link edu.sanekas.moneytransfer.model.BalanceJournal#TRANSFER_IN}
+ * record, or passes it back, if toAccount is closed, to return it with
+ * {@link edu.sanekas.moneytransfer.model.BalanceJournal#TRANSFER_RETURN} record. Handoffs are never refused,
+ * so shards never block each other, and money withdrawn before a crash is moved by {@link ShardHandoffRecovery}.
+ * The caller waits until the whole operation is applied.
+ */
+public class ShardedFinanceOperationsExecutor implements FinanceOperationsExecutor, AutoCloseable {
+    private final Shard[] shards;
+    /**
+     * Submitters hold the read lock from the check of the state till the request is queued,
+     * so close never misses a queued request
+     */
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    /**
+     * @param shardsCount number of shard threads
+     * @param queueCapacity capacity of the request ring buffer of each shard, submitters block when it is full
+     */
+    public ShardedFinanceOperationsExecutor(int shardsCount, int queueCapacity) {
+        if (shardsCount <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Shards count and queue capacity should be positive");
+        }
+        this.shards = new Shard[shardsCount];
+        for (int i = 0; i < shardsCount; ++i) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    @Override
+    public boolean debit(Account account, long amount) {
+        return submit(account, new Operation() {
+            @Override
+            void apply() {
+                complete(account.debitJournaled(amount));
+            }
+        });
+    }
+
+    @Override
+    public boolean withdraw(Account account, long amount) {
+        return submit(account, new Operation() {
+            @Override
+            void apply() {
+                complete(account.withdrawJournaled(amount));
+            }
+        });
+    }
+
+    @Override
+    public boolean transfer(Account fromAccount, Account toAccount, long amount) {
+        if (fromAccount.getId() == toAccount.getId()) {
+            return false;
+        }
+        final Shard fromShard = shardOf(fromAccount);
+        final Shard toShard = shardOf(toAccount);
+        if (fromShard == toShard) {
+            return submit(fromAccount, new Operation() {
+                @Override
+                void apply() {
+                    complete(new Transaction(fromAccount, toAccount, amount).executeJournaled());
+                }
+            });
+        }
+        return submit(fromAccount, new Operation() {
+            @Override
+            void apply() {
+                final long sequence = fromAccount.transferOutJournaled(toAccount.getId(), amount,
+                        accountSequence -> { });
+                if (sequence == Account.NOT_APPLIED) {
+                    complete(Account.NOT_APPLIED);
+                } else {
+                    toShard.handoff(new Handoff(this) {
+                        @Override
+                        void apply() {
+                            final long sequence = toAccount.transferInJournaled(fromAccount.getId(), amount,
+                                    accountSequence -> { });
+                            if (sequence != Account.NOT_APPLIED) {
+                                transfer.complete(sequence);
+                            } else {
+                                fromShard.handoff(new Handoff(transfer) {
+                                    @Override
+                                    void apply() {
+                                        fromAccount.transferReturnJournaled(toAccount.getId(), amount);
+                                        transfer.complete(Account.NOT_APPLIED);
+                                    }
+                                });
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops shard threads, should be called when no more operations are submitted.
+     * Handoffs are applied by the calling thread after the shards are stopped, so no withdrawn money is left
+     * in flight. Requests which are not applied yet are failed, they have not changed any account.
+     * If the caller is interrupted meanwhile, it still waits for the shards and keeps the interrupt status.
+     */
+    @Override
+    public void close() {
+        stateLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        boolean isInterrupted = false;
+        for (Shard shard : shards) {
+            while (shard.thread.isAlive()) {
+                try {
+                    shard.thread.join();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        }
+        /**
+         * A handoff may pass a return to another shard, so shards are drained till all of them are empty
+         */
+        boolean isApplied = true;
+        while (isApplied) {
+            isApplied = false;
+            for (Shard shard : shards) {
+                isApplied |= shard.applyHandoffs();
+            }
+        }
+        for (Shard shard : shards) {
+            shard.failPending();
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Shard threads only append to the journal, the caller waits for durability,
+     * so a shard is never blocked by the journal flush.
+     */
+    private boolean submit(Account account, Operation operation) {
+        stateLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Executor is closed");
+            }
+            shardOf(account).submit(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while submitting operation", e);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        final long sequence = operation.join();
+        if (sequence == Account.NOT_APPLIED) {
+            return false;
+        }
+        account.getJournal().awaitDurable(sequence);
+        return true;
+    }
+
+    private Shard shardOf(Account account) {
+        return shards[account.getId() % shards.length];
+    }
+
+    /**
+     * Completed with journal sequence number of the operation or {@link Account#NOT_APPLIED}
+     */
+    private abstract static class Operation extends CompletableFuture<Long> {
+        abstract void apply();
+
+        void fail(Throwable e) {
+            completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Part of a transfer between shards, which completes the transfer
+     */
+    private abstract static class Handoff extends Operation {
+        final Operation transfer;
+
+        Handoff(Operation transfer) {
+            this.transfer = transfer;
+        }
+
+        @Override
+        void fail(Throwable e) {
+            transfer.completeExceptionally(e);
+        }
+    }
+
+    private static class Shard implements Runnable {
+        private final BlockingQueue<Operation> requests;
+        /**
+         * Unbounded, so a shard never waits for another one
+         */
+        private final Queue<Operation> handoffs = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        Shard(int index, int queueCapacity) {
+            this.requests = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = new Thread(this, "finance-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void submit(Operation operation) throws InterruptedException {
+            requests.put(operation);
+            LockSupport.unpark(thread);
+        }
+
+        void handoff(Operation operation) {
+            handoffs.add(operation);
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Operation operation = handoffs.poll();
+                if (operation == null) {
+                    operation = requests.poll();
+                }
+                if (operation == null) {
+                    LockSupport.park(this);
+                } else {
+                    apply(operation);
+                }
+            }
+        }
+
+        /**
+         * Called after the shard thread is stopped
+         * @return whether any handoff was applied
+         */
+        boolean applyHandoffs() {
+            boolean isApplied = false;
+            Operation operation;
+            while ((operation = handoffs.poll()) != null) {
+                apply(operation);
+                isApplied = true;
+            }
+            return isApplied;
+        }
+
+        void failPending() {
+            final IllegalStateException closed = new IllegalStateException("Executor is closed");
+            Operation operation;
+            while ((operation = requests.poll()) != null) {
+                operation.fail(closed);
+            }
+        }
+
+        private static void apply(Operation operation) {
+            try {
+                operation.apply();
+            } catch (RuntimeException e) {
+                operation.fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.sanekas.moneytransfer.ledger;
+
+import java.util.Arrays;
+
+/**
+ * Ascending sequence numbers of ledger entries of one account.
+ * Written by one indexing thread at a time, read without locks: the size is published after the sequence number,
+ * so every position below the read size is visible.
+ */
+public class AccountHistory {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[] sequences = new long[INITIAL_CAPACITY];
+    private volatile int size;
+
+    void add(long sequence) {
+        final int currentSize = size;
+        if (currentSize == sequences.length) {
+            sequences = Arrays.copyOf(sequences, currentSize * 2);
+        }
+        sequences[currentSize] = sequence;
+        size = currentSize + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index below a previously read {@link #size()}
+     */
+    public long sequenceAt(int index) {
+        return sequences[index];
+    }
+
+    /**
+     * @param size previously read {@link #size()}
+     * @return index of the first entry with sequence number greater than afterSequence, or size if there is none
+     */
+    public int indexAfter(long afterSequence, int size) {
+        final long[] currentSequences = sequences;
+        final int index = Arrays.binarySearch(currentSequences, 0, size, afterSequence);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+}
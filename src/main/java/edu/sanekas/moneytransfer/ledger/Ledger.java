@@ -0,0 +1,211 @@
+package edu.sanekas.moneytransfer.ledger;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only in-memory ledger of applied balance mutations.
+ * Entries are stored column by column in primitive arrays of fixed-size segments, 24 bytes per entry,
+ * plus 8 bytes per involved account in its {@link AccountHistory}.
+ * Sequence numbers start from 1 and follow the order of appending.
+ * Appending only fills the columns, account histories are indexed by readers: the first reader
+ * after appends scans the new entries in order of sequence numbers and adds them to histories.
+ */
+public class Ledger {
+    /**
+     * Counterparty of debits and withdrawals
+     */
+    public static final int NO_ACCOUNT = -1;
+
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int MAX_SEGMENTS = 1 << 15;
+
+    private static final int HISTORIES_SHIFT = 14;
+    private static final int HISTORIES_SIZE = 1 << HISTORIES_SHIFT;
+    private static final int HISTORIES_MASK = HISTORIES_SIZE - 1;
+    private static final int MAX_HISTORIES_SEGMENTS = (Integer.MAX_VALUE >>> HISTORIES_SHIFT) + 1;
+
+    /**
+     * Timestamp is written the last, so an entry with non-zero timestamp is complete
+     */
+    private static final VarHandle TIMESTAMPS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long maxEntries;
+    private final AtomicLong reservedEntries = new AtomicLong();
+    private final AtomicLong lastSequence = new AtomicLong();
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private volatile long indexedSequence;
+    private final AtomicReferenceArray<Segment> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final AtomicReferenceArray<AtomicReferenceArray<AccountHistory>> histories =
+            new AtomicReferenceArray<>(MAX_HISTORIES_SEGMENTS);
+
+    public Ledger() {
+        this((long) MAX_SEGMENTS * SEGMENT_SIZE);
+    }
+
+    /**
+     * @param maxEntries capacity of the ledger, at most the default one
+     */
+    Ledger(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private static class Segment {
+        private final int[] fromAccountIds = new int[SEGMENT_SIZE];
+        private final int[] toAccountIds = new int[SEGMENT_SIZE];
+        private final long[] amounts = new long[SEGMENT_SIZE];
+        private final long[] timestamps = new long[SEGMENT_SIZE];
+    }
+
+    /**
+     * Reserves space and appends the entry.
+     * Must be called under locks of the involved accounts, so entries of an account follow the order of its
+     * mutations.
+     * @param fromAccountId account money is taken from or {@link #NO_ACCOUNT}
+     * @param toAccountId account money is put to or {@link #NO_ACCOUNT}
+     * @return sequence number of the entry
+     * @throws IllegalStateException if the ledger is full
+     */
+    public long append(int fromAccountId, int toAccountId, long amount) {
+        reserve(1);
+        return appendReserved(fromAccountId, toAccountId, amount);
+    }
+
+    /**
+     * Reserves space for entries of a mutation before it is applied, so appending them never fails afterwards
+     * @throws IllegalStateException if the ledger has no space for all of them, nothing is reserved then
+     */
+    public void reserve(int entries) {
+        long reserved;
+        do {
+            reserved = reservedEntries.get();
+            if (reserved + entries > maxEntries) {
+                throw new IllegalStateException("Ledger is full");
+            }
+        } while (!reservedEntries.compareAndSet(reserved, reserved + entries));
+    }
+
+    /**
+     * Gives back space reserved for entries of a mutation which is not applied
+     */
+    public void release(int entries) {
+        reservedEntries.addAndGet(-entries);
+    }
+
+    /**
+     * Same as {@link #append}, but the space should be reserved by {@link #reserve}.
+     * Sequence numbers never exceed the reserved space, so every taken sequence number gets its entry.
+     */
+    public long appendReserved(int fromAccountId, int toAccountId, long amount) {
+        final long sequence = lastSequence.incrementAndGet();
+        final long position = sequence - 1;
+        final Segment segment = segmentOf(position);
+        final int index = (int) (position & SEGMENT_MASK);
+        segment.fromAccountIds[index] = fromAccountId;
+        segment.toAccountIds[index] = toAccountId;
+        segment.amounts[index] = amount;
+        TIMESTAMPS.setRelease(segment.timestamps, index, System.currentTimeMillis());
+        return sequence;
+    }
+
+    /**
+     * Indexes entries appended so far, unless an earlier entry is still being written.
+     * @return history of the account or null if the account has no entries
+     */
+    public AccountHistory getHistory(int accountId) {
+        if (indexedSequence != lastSequence.get()) {
+            index();
+        }
+        return historyOf(accountId, false);
+    }
+
+    public long getLastSequence() {
+        return lastSequence.get();
+    }
+
+    /**
+     * Entry getters are valid for sequence numbers obtained from an {@link AccountHistory}
+     */
+    public int getFromAccountId(long sequence) {
+        return segments.get(segmentIndex(sequence - 1)).fromAccountIds[(int) ((sequence - 1) & SEGMENT_MASK)];
+    }
+
+    public int getToAccountId(long sequence) {
+        return segments.get(segmentIndex(sequence - 1)).toAccountIds[(int) ((sequence - 1) & SEGMENT_MASK)];
+    }
+
+    public long getAmount(long sequence) {
+        return segments.get(segmentIndex(sequence - 1)).amounts[(int) ((sequence - 1) & SEGMENT_MASK)];
+    }
+
+    public long getTimestamp(long sequence) {
+        return segments.get(segmentIndex(sequence - 1)).timestamps[(int) ((sequence - 1) & SEGMENT_MASK)];
+    }
+
+    private void index() {
+        indexLock.lock();
+        try {
+            final long toSequence = lastSequence.get();
+            long sequence = indexedSequence;
+            while (sequence < toSequence) {
+                final long position = sequence;
+                final Segment segment = segments.get(segmentIndex(position));
+                final int index = (int) (position & SEGMENT_MASK);
+                if (segment == null || (long) TIMESTAMPS.getAcquire(segment.timestamps, index) == 0) {
+                    break;
+                }
+                ++sequence;
+                if (segment.fromAccountIds[index] != NO_ACCOUNT) {
+                    historyOf(segment.fromAccountIds[index], true).add(sequence);
+                }
+                if (segment.toAccountIds[index] != NO_ACCOUNT) {
+                    historyOf(segment.toAccountIds[index], true).add(sequence);
+                }
+            }
+            indexedSequence = sequence;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private static int segmentIndex(long position) {
+        return (int) (position >>> SEGMENT_SHIFT);
+    }
+
+    private Segment segmentOf(long position) {
+        final int segmentIndex = segmentIndex(position);
+        final Segment segment = segments.get(segmentIndex);
+        if (segment != null) {
+            return segment;
+        }
+        final Segment newSegment = new Segment();
+        return segments.compareAndSet(segmentIndex, null, newSegment) ? newSegment : segments.get(segmentIndex);
+    }
+
+    private AccountHistory historyOf(int accountId, boolean isCreated) {
+        final int segmentIndex = accountId >>> HISTORIES_SHIFT;
+        AtomicReferenceArray<AccountHistory> segment = histories.get(segmentIndex);
+        if (segment == null) {
+            if (!isCreated) {
+                return null;
+            }
+            final AtomicReferenceArray<AccountHistory> newSegment = new AtomicReferenceArray<>(HISTORIES_SIZE);
+            segment = histories.compareAndSet(segmentIndex, null, newSegment)
+                    ? newSegment
+                    : histories.get(segmentIndex);
+        }
+        final AccountHistory history = segment.get(accountId & HISTORIES_MASK);
+        if (history != null || !isCreated) {
+            return history;
+        }
+        final AccountHistory newHistory = new AccountHistory();
+        return segment.compareAndSet(accountId & HISTORIES_MASK, null, newHistory)
+                ? newHistory
+                : segment.get(accountId & HISTORIES_MASK);
+    }
+}
@@ -0,0 +1,119 @@
+package edu.sanekas.moneytransfer.ledger;
+
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Records every applied balance mutation into the ledger and passes it to the underlying journal.
+ * Account creation is not a ledger entry, initial balance of accounts created in bulk is a debit.
+ * A transfer moved by two records is one entry: the entry is appended when the money is taken,
+ * a return of the money is the reverse entry.
+ */
+public class LedgerJournal implements BalanceJournal {
+    private final Ledger ledger;
+    private final BalanceJournal journal;
+    private final IntPredicate isLocalAccount;
+
+    /**
+     * For a single node, all accounts are local
+     */
+    public LedgerJournal(Ledger ledger, BalanceJournal journal) {
+        this(ledger, journal, accountId -> true);
+    }
+
+    /**
+     * @param isLocalAccount tells accounts of this node, {@link #TRANSFER_IN} from them is already in the ledger
+     * as {@link #TRANSFER_OUT}
+     */
+    public LedgerJournal(Ledger ledger, BalanceJournal journal, IntPredicate isLocalAccount) {
+        this.ledger = ledger;
+        this.journal = journal;
+        this.isLocalAccount = isLocalAccount;
+    }
+
+    /**
+     * Space for the entries is reserved before the record is journaled, they are appended only when the journal
+     * has the record, so the ledger never has an entry of a mutation which is not applied
+     */
+    @Override
+    public long append(byte type, int accountId, int counterpartyId, long amount) {
+        final int entries = countEntries(type, counterpartyId, amount);
+        if (entries == 0) {
+            return journal.append(type, accountId, counterpartyId, amount);
+        }
+        ledger.reserve(entries);
+        final long sequence;
+        try {
+            sequence = journal.append(type, accountId, counterpartyId, amount);
+        } catch (RuntimeException e) {
+            ledger.release(entries);
+            throw e;
+        }
+        switch (type) {
+            case DEBIT:
+                ledger.appendReserved(Ledger.NO_ACCOUNT, accountId, amount);
+                break;
+            case WITHDRAW:
+                ledger.appendReserved(accountId, Ledger.NO_ACCOUNT, amount);
+                break;
+            case TRANSFER:
+            case TRANSFER_OUT:
+                ledger.appendReserved(accountId, counterpartyId, amount);
+                break;
+            case TRANSFER_IN:
+            case TRANSFER_RETURN:
+                ledger.appendReserved(counterpartyId, accountId, amount);
+                break;
+            case CREATE_RANGE:
+                for (int i = 0; i < counterpartyId; ++i) {
+                    ledger.appendReserved(Ledger.NO_ACCOUNT, accountId + i, amount);
+                }
+                break;
+            default:
+                break;
+        }
+        return sequence;
+    }
+
+    /**
+     * Every transfer of the batch is an entry
+     */
+    @Override
+    public long appendBatch(int[] fromAccountIds, int[] toAccountIds, long[] amounts) {
+        ledger.reserve(fromAccountIds.length);
+        final long sequence;
+        try {
+            sequence = journal.appendBatch(fromAccountIds, toAccountIds, amounts);
+        } catch (RuntimeException e) {
+            ledger.release(fromAccountIds.length);
+            throw e;
+        }
+        for (int i = 0; i < fromAccountIds.length; ++i) {
+            ledger.appendReserved(fromAccountIds[i], toAccountIds[i], amounts[i]);
+        }
+        return sequence;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+        journal.awaitDurable(sequence);
+    }
+
+    private int countEntries(byte type, int counterpartyId, long amount) {
+        switch (type) {
+            case DEBIT:
+            case WITHDRAW:
+            case TRANSFER:
+            case TRANSFER_OUT:
+            case TRANSFER_RETURN:
+                return 1;
+            case TRANSFER_IN:
+                return isLocalAccount.test(counterpartyId) ? 0 : 1;
+            case CREATE_RANGE:
+                return amount > 0 ? counterpartyId : 0;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package edu.sanekas.moneytransfer.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide latency histograms and failure counters, all values are recorded in nanoseconds.
+ * Recording is lock-free and can be switched off with -Dmoneytransfer.metrics.enabled=false.
+ */
+public enum Metrics {
+    S;
+
+    public static final boolean ENABLED =
+            Boolean.parseBoolean(System.getProperty("moneytransfer.metrics.enabled", "true"));
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LatencyHistogram serialization = new LatencyHistogram();
+    private final LongAdder snapshotFailures = new LongAdder();
+
+    /**
+     * Metrics of a route, created once when the route is registered
+     */
+    public RouteMetrics route(String route) {
+        return routes.computeIfAbsent(route, RouteMetrics::new);
+    }
+
+    /**
+     * Time spent waiting for account locks of a transaction
+     */
+    public void recordLockWait(long nanos) {
+        lockWait.record(nanos);
+    }
+
+    public void recordSerialization(long nanos) {
+        serialization.record(nanos);
+    }
+
+    /**
+     * Periodic balance snapshot which is not written
+     */
+    public void recordSnapshotFailure() {
+        snapshotFailures.increment();
+    }
+
+    public long getSnapshotFailures() {
+        return snapshotFailures.sum();
+    }
+
+    public LatencyHistogram getLockWait() {
+        return lockWait;
+    }
+
+    public LatencyHistogram getSerialization() {
+        return serialization;
+    }
+
+    /**
+     * Writes all metrics in Prometheus text exposition format, durations are in seconds
+     */
+    public void write(StringBuilder sb) {
+        sb.append("# TYPE moneytransfer_route_duration_seconds summary\n");
+        routes.values().forEach(route -> writeSummary(sb, "moneytransfer_route_duration_seconds",
+                "route=\"" + route.getRoute() + "\"", route.getServiceTime()));
+        sb.append("# TYPE moneytransfer_route_failures_total counter\n");
+        routes.values().forEach(route -> route.writeFailures(sb, "moneytransfer_route_failures_total"));
+        sb.append("# TYPE moneytransfer_lock_wait_seconds summary\n");
+        writeSummary(sb, "moneytransfer_lock_wait_seconds", null, lockWait);
+        sb.append("# TYPE moneytransfer_serialization_seconds summary\n");
+        writeSummary(sb, "moneytransfer_serialization_seconds", null, serialization);
+        sb.append("# TYPE moneytransfer_snapshot_failures_total counter\n");
+        sb.append("moneytransfer_snapshot_failures_total ").append(snapshotFailures.sum()).append('\n');
+    }
+
+    private static void writeSummary(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            sb.append(name).append('{');
+            if (labels != null) {
+                sb.append(labels).append(',');
+            }
+            sb.append("quantile=\"").append(quantile).append("\"} ")
+                    .append(toSeconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+        }
+        final String suffixLabels = labels == null ? "" : '{' + labels + '}';
+        sb.append(name).append("_sum").append(suffixLabels).append(' ').append(toSeconds(histogram.getSum()))
+                .append('\n');
+        sb.append(name).append("_count").append(suffixLabels).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
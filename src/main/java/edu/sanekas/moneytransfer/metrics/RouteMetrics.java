@@ -0,0 +1,47 @@
+package edu.sanekas.moneytransfer.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Service time and failures of one route.
+ */
+public class RouteMetrics {
+    private static final int MAX_STATUS_CODE = 600;
+
+    private final String route;
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    private final AtomicLongArray failuresByStatus = new AtomicLongArray(MAX_STATUS_CODE);
+
+    RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    public void record(long serviceTimeNanos, int statusCode) {
+        serviceTime.record(serviceTimeNanos);
+        if (statusCode >= 400 && statusCode < MAX_STATUS_CODE) {
+            failuresByStatus.incrementAndGet(statusCode);
+        }
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public LatencyHistogram getServiceTime() {
+        return serviceTime;
+    }
+
+    public long getFailures(int statusCode) {
+        return failuresByStatus.get(statusCode);
+    }
+
+    void writeFailures(StringBuilder sb, String name) {
+        for (int statusCode = 400; statusCode < MAX_STATUS_CODE; ++statusCode) {
+            final long failures = failuresByStatus.get(statusCode);
+            if (failures > 0) {
+                sb.append(name).append("{route=\"").append(route).append("\",status=\"").append(statusCode)
+                        .append("\"} ").append(failures).append('\n');
+            }
+        }
+    }
+}
@@ -3,68 +3,634 @@ package edu.sanekas.moneytransfer.model;
 import org.apache.juneau.annotation.BeanIgnore;
 
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongConsumer;
 
 public class Account {
+    /**
+     * Returned instead of journal sequence number when operation is not applied
+     */
+    public static final long NOT_APPLIED = -1;
 
-    private final ReentrantReadWriteLock reentrantReadWriteLock = new ReentrantReadWriteLock();
-    private final Lock readLock = reentrantReadWriteLock.readLock();
-    private final Lock writeLock = reentrantReadWriteLock.writeLock();
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+
+    private final StampedLock stampedLock = new StampedLock();
+    private final Lock balanceLock = stampedLock.asWriteLock();
+    private final Lock writeLock = new ExclusiveLock();
 
     private final int id;
+    private final BalanceJournal journal;
     private long totalMoney;
+    /**
+     * Sequence number of the last journal record applied to the account
+     */
+    private long journalSequence;
+    /**
+     * Number of balance changes, not counting debits of credit stripes. Bumped under the write lock after
+     * the balance is changed, so a reader which sees the version also sees the balance as of that version.
+     */
+    private volatile long version;
+    /**
+     * Epoch of the latest {@link ConsistentSnapshot} cut this account was mutated after
+     * and its balance and journal sequence number as of that cut
+     */
+    private long snapshotEpoch;
+    private long snapshotMoney;
+    private long snapshotJournalSequence;
+    /**
+     * Closed account can't be debited, so it keeps zero balance after removal from the storage
+     */
+    private boolean closed;
+    /**
+     * Credits of a hot account, null until the account becomes hot. Set under the write lock only
+     */
+    private volatile CreditStripes creditStripes;
+    /**
+     * Grows with contended debits and shrinks with uncontended ones,
+     * the account becomes hot when it reaches {@link CreditStripes#CONTENTION_THRESHOLD}
+     */
+    private int debitContention;
 
     public Account(int id) {
+        this(id, NoOpBalanceJournal.S);
+    }
+
+    public Account(int id, BalanceJournal journal) {
+        this.id = id;
+        this.journal = journal;
+    }
+
+    /**
+     * Account which is created with money, e.g. by {@link BalanceJournal#CREATE_RANGE}.
+     * It didn't exist as of the cut of the current {@link ConsistentSnapshot}, so it is empty as of that cut.
+     * @param journalSequence sequence number of the journal record of the creation
+     */
+    public Account(int id, BalanceJournal journal, long totalMoney, long journalSequence) {
         this.id = id;
+        this.journal = journal;
+        this.totalMoney = totalMoney;
+        this.journalSequence = journalSequence;
+        this.snapshotEpoch = ConsistentSnapshot.currentEpoch();
     }
 
     public int getId() {
         return id;
     }
 
+    /**
+     * Reads balance optimistically without writing to the lock state.
+     * Falls back to the read lock only if writers keep invalidating optimistic reads.
+     * Credits of a hot account are summed stripe by stripe, concurrent debits may be partially included.
+     */
     public long getTotalMoney() {
-        readLock.lock();
+        for (int i = 0; i < OPTIMISTIC_READ_ATTEMPTS; ++i) {
+            final long stamp = stampedLock.tryOptimisticRead();
+            final CreditStripes stripes = creditStripes;
+            final long money = stripes == null ? totalMoney : totalMoney + stripes.getCredits();
+            if (stamp != 0 && stampedLock.validate(stamp)) {
+                return money;
+            }
+        }
+        final long stamp = stampedLock.readLock();
+        try {
+            final CreditStripes stripes = creditStripes;
+            return stripes == null ? totalMoney : totalMoney + stripes.getCredits();
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Version which grows with every change of the balance, read without locking. The balance read after
+     * the version is at least as new as the version, so a response built from it may be cached under the version.
+     */
+    @BeanIgnore
+    public long getVersion() {
+        final CreditStripes stripes = creditStripes;
+        return stripes == null ? version : version + stripes.getVersion();
+    }
+
+    /**
+     * Passes balance and sequence number of the last journal record included in it to the visitor.
+     * Both values are read consistently without blocking writers.
+     */
+    public void visitBalance(BalanceVisitor visitor) {
+        for (int i = 0; i < OPTIMISTIC_READ_ATTEMPTS; ++i) {
+            final long stamp = stampedLock.tryOptimisticRead();
+            final boolean isHot = creditStripes != null;
+            final long money = totalMoney;
+            final long sequence = journalSequence;
+            if (isHot) {
+                break;
+            }
+            if (stamp != 0 && stampedLock.validate(stamp)) {
+                visitor.visit(this, money, sequence);
+                return;
+            }
+        }
+        final long money;
+        final long sequence;
+        final long stamp = stampedLock.readLock();
+        final CreditStripes stripes = creditStripes;
+        if (stripes != null) {
+            stripes.lockAll();
+        }
         try {
-            return totalMoney;
+            money = stripes == null ? totalMoney : totalMoney + stripes.getCreditsUnderLock();
+            sequence = stripes == null ? journalSequence
+                    : Math.max(journalSequence, stripes.getJournalSequenceUnderLock());
         } finally {
-            readLock.unlock();
+            if (stripes != null) {
+                stripes.unlockAll();
+            }
+            stampedLock.unlockRead(stamp);
+        }
+        visitor.visit(this, money, sequence);
+    }
+
+    /**
+     * Passes balance and sequence number of the last journal record included in it as of the cut of the epoch,
+     * ignoring mutations after the cut. The epoch must be the one of the open {@link ConsistentSnapshot}.
+     */
+    void visitBalanceAt(long epoch, BalanceVisitor visitor) {
+        long money = 0;
+        long sequence = 0;
+        boolean isRead = false;
+        for (int i = 0; i < OPTIMISTIC_READ_ATTEMPTS && !isRead; ++i) {
+            final long stamp = stampedLock.tryOptimisticRead();
+            final boolean isHot = creditStripes != null;
+            final boolean isMutatedAfterCut = snapshotEpoch == epoch;
+            money = isMutatedAfterCut ? snapshotMoney : totalMoney;
+            sequence = isMutatedAfterCut ? snapshotJournalSequence : journalSequence;
+            if (isHot) {
+                break;
+            }
+            isRead = stamp != 0 && stampedLock.validate(stamp);
         }
+        if (!isRead) {
+            final long stamp = stampedLock.readLock();
+            final CreditStripes stripes = creditStripes;
+            if (stripes != null) {
+                stripes.lockAll();
+            }
+            try {
+                money = snapshotEpoch == epoch ? snapshotMoney : totalMoney;
+                sequence = snapshotEpoch == epoch ? snapshotJournalSequence : journalSequence;
+                if (stripes != null) {
+                    money += stripes.getCreditsAtUnderLock(epoch);
+                    sequence = Math.max(sequence, stripes.getJournalSequenceAtUnderLock(epoch));
+                }
+            } finally {
+                if (stripes != null) {
+                    stripes.unlockAll();
+                }
+                stampedLock.unlockRead(stamp);
+            }
+        }
+        visitor.visit(this, money, sequence);
     }
 
+    /**
+     * Returns when the debit is durable in the journal
+     */
     public boolean debit(long amount) {
-        writeLock.lock();
+        return awaitDurable(debitJournaled(amount));
+    }
+
+    /**
+     * Returns when the withdrawing is durable in the journal
+     */
+    public boolean withdraw(long amount) {
+        return awaitDurable(withdrawJournaled(amount));
+    }
+
+    /**
+     * Debits and appends the record to the journal without waiting for durability.
+     * @return journal sequence number of the debit or {@link #NOT_APPLIED}
+     */
+    public long debitJournaled(long amount) {
+        final CreditStripes stripes = creditStripes;
+        if (stripes != null) {
+            return debitStriped(stripes, amount);
+        }
+        final DebitEvent event = new DebitEvent();
+        event.begin();
+        final long lockStartTime = event.isEnabled() ? System.nanoTime() : 0;
+        final long uncontendedStamp = stampedLock.tryWriteLock();
+        final boolean isContended = uncontendedStamp == 0;
+        final long stamp = isContended ? stampedLock.writeLock() : uncontendedStamp;
+        final long lockWait = event.isEnabled() ? System.nanoTime() - lockStartTime : 0;
+        final long sequence;
         try {
-            if (amount <= 0) {
-                return false;
+            /**
+             * Stripes may be enabled meanwhile, but the balance itself is guarded by the write lock only
+             */
+            preserveBalanceUnderLock(ConsistentSnapshot.currentEpoch());
+            sequence = debitUnderLock(amount)
+                    ? journalOrRevertUnderLock(BalanceJournal.DEBIT, id, amount, amount)
+                    : NOT_APPLIED;
+            detectContentionUnderLock(isContended);
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+        commit(event, amount, lockWait, sequence);
+        return sequence;
+    }
+
+    /**
+     * Credits a stripe of the hot account, concurrent debits lock other stripes
+     */
+    private long debitStriped(CreditStripes stripes, long amount) {
+        final DebitEvent event = new DebitEvent();
+        event.begin();
+        final long lockStartTime = event.isEnabled() ? System.nanoTime() : 0;
+        final CreditStripes.Stripe stripe = stripes.lockAny();
+        final long lockWait = event.isEnabled() ? System.nanoTime() - lockStartTime : 0;
+        final long sequence;
+        try {
+            if (amount <= 0 || closed) {
+                sequence = NOT_APPLIED;
             } else {
-                this.totalMoney = totalMoney + amount;
-                return true;
+                stripe.preserveUnderLock(ConsistentSnapshot.currentEpoch());
+                sequence = journal.append(BalanceJournal.DEBIT, id, id, amount);
+                stripe.money = stripe.money + amount;
+                stripe.version = stripe.version + 1;
+                stripe.journalSequence = sequence;
             }
+        } finally {
+            stripe.unlock();
+        }
+        commit(event, amount, lockWait, sequence);
+        return sequence;
+    }
+
+    /**
+     * Withdraws and appends the record to the journal without waiting for durability.
+     * @return journal sequence number of the withdrawing or {@link #NOT_APPLIED}
+     */
+    public long withdrawJournaled(long amount) {
+        final WithdrawEvent event = new WithdrawEvent();
+        event.begin();
+        final long lockStartTime = event.isEnabled() ? System.nanoTime() : 0;
+        writeLock.lock();
+        final long lockWait = event.isEnabled() ? System.nanoTime() - lockStartTime : 0;
+        final long sequence;
+        try {
+            preserveUnderLock(ConsistentSnapshot.currentEpoch());
+            sequence = withdrawUnderLock(amount)
+                    ? journalOrRevertUnderLock(BalanceJournal.WITHDRAW, id, amount, -amount)
+                    : NOT_APPLIED;
         } finally {
             writeLock.unlock();
         }
+        commit(event, amount, lockWait, sequence);
+        return sequence;
     }
 
-    public boolean withdraw(long amount) {
+    /**
+     * Withdraws money moved to an account of another cluster node and appends {@link BalanceJournal#TRANSFER_OUT}
+     * record without waiting for durability.
+     * @param beforeJournal called under the write lock with the sequence number of the last journal record applied
+     * to the account, when the money is available, right before the balance is changed. If it throws,
+     * the balance is not changed. The next journal record of the account is the one of this transfer.
+     * @return journal sequence number of the withdrawing or {@link #NOT_APPLIED}
+     */
+    public long transferOutJournaled(int toAccountId, long amount, LongConsumer beforeJournal) {
+        writeLock.lock();
+        try {
+            preserveUnderLock(ConsistentSnapshot.currentEpoch());
+            foldUnderLock();
+            if (amount <= 0 || totalMoney < amount) {
+                return NOT_APPLIED;
+            }
+            beforeJournal.accept(journalSequence);
+            final long sequence = journalUnderLock(BalanceJournal.TRANSFER_OUT, toAccountId, amount);
+            this.totalMoney = totalMoney - amount;
+            this.version = version + 1;
+            return sequence;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Puts money moved from an account of another cluster node and appends {@link BalanceJournal#TRANSFER_IN}
+     * record without waiting for durability.
+     * @param beforeJournal called under the write lock with the sequence number of the last journal record applied
+     * to the account, when the account is not closed, right before the balance is changed. If it throws,
+     * the balance is not changed. The next journal record of the account is the one of this transfer.
+     * @return journal sequence number of the debit or {@link #NOT_APPLIED}
+     */
+    public long transferInJournaled(int fromAccountId, long amount, LongConsumer beforeJournal) {
+        writeLock.lock();
+        try {
+            preserveUnderLock(ConsistentSnapshot.currentEpoch());
+            foldUnderLock();
+            if (amount <= 0 || closed) {
+                return NOT_APPLIED;
+            }
+            beforeJournal.accept(journalSequence);
+            final long sequence = journalUnderLock(BalanceJournal.TRANSFER_IN, fromAccountId, amount);
+            this.totalMoney = totalMoney + amount;
+            this.version = version + 1;
+            return sequence;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Puts back money taken by {@link #transferOutJournaled} for an account of the same node which is closed,
+     * and appends {@link BalanceJournal#TRANSFER_RETURN} record without waiting for durability.
+     * The money is put back even if this account is closed meanwhile, there is no other place for it.
+     * @return journal sequence number of the return
+     */
+    public long transferReturnJournaled(int toAccountId, long amount) {
+        writeLock.lock();
+        try {
+            preserveUnderLock(ConsistentSnapshot.currentEpoch());
+            foldUnderLock();
+            final long sequence = journalUnderLock(BalanceJournal.TRANSFER_RETURN, toAccountId, amount);
+            this.totalMoney = totalMoney + amount;
+            this.version = version + 1;
+            return sequence;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Changes balance by delta without validation and journaling, if the record is not applied yet.
+     * Used only for restoring accounts from the journal.
+     */
+    public void replay(long sequence, long delta) {
+        writeLock.lock();
+        try {
+            preserveUnderLock(ConsistentSnapshot.currentEpoch());
+            foldUnderLock();
+            if (sequence > journalSequence) {
+                this.totalMoney = totalMoney + delta;
+                this.journalSequence = sequence;
+                this.version = version + 1;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sets balance without journaling. Used only for restoring accounts from a snapshot.
+     */
+    public void restore(long totalMoney, long journalSequence) {
         writeLock.lock();
         try {
-            if (totalMoney < amount || amount <= 0) {
+            preserveUnderLock(ConsistentSnapshot.currentEpoch());
+            foldUnderLock();
+            this.totalMoney = totalMoney;
+            this.journalSequence = journalSequence;
+            this.version = version + 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the account if its balance is zero, so that money can't be moved to it anymore
+     * @return true if the account is closed
+     */
+    public boolean closeIfEmpty() {
+        writeLock.lock();
+        try {
+            preserveUnderLock(ConsistentSnapshot.currentEpoch());
+            foldUnderLock();
+            if (totalMoney != 0) {
                 return false;
-            } else {
-                this.totalMoney = totalMoney - amount;
-                return true;
             }
+            this.closed = true;
+            return true;
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * Spreads further debits of the account over {@link CreditStripes#STRIPES} stripes,
+     * so that they don't wait for each other. Withdrawals and transfers lock all stripes.
+     * An account also becomes hot by itself when its debits keep waiting for each other.
+     */
+    public void enableCreditStripes() {
+        final long stamp = stampedLock.writeLock();
+        try {
+            enableCreditStripesUnderLock();
+        } finally {
+            stampedLock.unlockWrite(stamp);
+        }
+    }
+
+    @BeanIgnore
+    public boolean isHot() {
+        return creditStripes != null;
+    }
+
+    /**
+     * Write lock of the account and all its credit stripes. It is not reentrant,
+     * so the holder must use {@link #debitUnderLock} and {@link #withdrawUnderLock} for changing balance.
+     */
     @BeanIgnore
     public Lock getWriteLock() {
         return writeLock;
     }
 
+    @BeanIgnore
+    public BalanceJournal getJournal() {
+        return journal;
+    }
+
+    private void commit(BalanceEvent event, long amount, long lockWait, long sequence) {
+        if (event.shouldCommit()) {
+            event.accountId = id;
+            event.amount = amount;
+            event.successful = sequence != NOT_APPLIED;
+            event.lockWait = lockWait;
+            event.commit();
+        }
+    }
+
+    /**
+     * Saves balance as of the cut of the epoch before the first mutation after the cut.
+     * The epoch must be read once under the write locks of all accounts of the mutation.
+     */
+    void preserveUnderLock(long epoch) {
+        preserveBalanceUnderLock(epoch);
+        final CreditStripes stripes = creditStripes;
+        if (stripes != null) {
+            stripes.preserveUnderLock(epoch);
+        }
+    }
+
+    private void preserveBalanceUnderLock(long epoch) {
+        if (snapshotEpoch != epoch) {
+            this.snapshotEpoch = epoch;
+            this.snapshotMoney = totalMoney;
+            this.snapshotJournalSequence = journalSequence;
+        }
+    }
+
+    /**
+     * Moves credits of a hot account into its balance, the holder of {@link #getWriteLock} may call it.
+     * The balance must be preserved for the epoch of the mutation first, otherwise the open snapshot would count
+     * the moved credits both in the preserved stripes and in the balance.
+     */
+    private void foldUnderLock() {
+        final CreditStripes stripes = creditStripes;
+        if (stripes != null) {
+            this.journalSequence = Math.max(journalSequence, stripes.getJournalSequenceUnderLock());
+            this.totalMoney = totalMoney + stripes.foldUnderLock();
+        }
+    }
+
+    private void detectContentionUnderLock(boolean isContended) {
+        if (isContended) {
+            if (++debitContention >= CreditStripes.CONTENTION_THRESHOLD && CreditStripes.CONTENTION_THRESHOLD > 0) {
+                enableCreditStripesUnderLock();
+            }
+        } else if (debitContention > 0) {
+            --debitContention;
+        }
+    }
+
+    private void enableCreditStripesUnderLock() {
+        if (creditStripes == null) {
+            this.creditStripes = new CreditStripes(CreditStripes.STRIPES, ConsistentSnapshot.currentEpoch());
+        }
+    }
+
+    boolean debitUnderLock(long amount) {
+        if (amount <= 0 || closed) {
+            return false;
+        } else {
+            this.totalMoney = totalMoney + amount;
+            this.version = version + 1;
+            return true;
+        }
+    }
+
+    boolean withdrawUnderLock(long amount) {
+        if (totalMoney < amount) {
+            foldUnderLock();
+        }
+        if (totalMoney < amount || amount <= 0) {
+            return false;
+        } else {
+            this.totalMoney = totalMoney - amount;
+            this.version = version + 1;
+            return true;
+        }
+    }
+
+    /**
+     * Takes back a change of the balance applied under the lock, which the journal failed to record
+     * @param delta the applied change, positive for a debit and negative for a withdrawing
+     */
+    void revertUnderLock(long delta) {
+        this.totalMoney = totalMoney - delta;
+        this.version = version + 1;
+    }
+
+    /**
+     * Appends record about the mutation of this account and counterparty, remembers its sequence number
+     */
+    long journalUnderLock(byte type, int counterpartyId, long amount) {
+        final long sequence = journal.append(type, id, counterpartyId, amount);
+        this.journalSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Same as {@link #journalUnderLock}, but if the journal fails, reverts the applied change of the balance
+     * before rethrowing, so that the balance never includes a change the journal doesn't have
+     */
+    private long journalOrRevertUnderLock(byte type, int counterpartyId, long amount, long delta) {
+        try {
+            return journalUnderLock(type, counterpartyId, amount);
+        } catch (RuntimeException e) {
+            revertUnderLock(delta);
+            throw e;
+        }
+    }
+
+    void setJournalSequenceUnderLock(long journalSequence) {
+        this.journalSequence = journalSequence;
+    }
+
+    private boolean awaitDurable(long sequence) {
+        if (sequence == NOT_APPLIED) {
+            return false;
+        }
+        journal.awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Write lock of the account, which also locks credit stripes of a hot account.
+     * Stripes are enabled under the write lock of the account only, so they don't change while it is held.
+     */
+    private class ExclusiveLock implements Lock {
+        @Override
+        public void lock() {
+            balanceLock.lock();
+            lockStripes();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            balanceLock.lockInterruptibly();
+            lockStripes();
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (!balanceLock.tryLock()) {
+                return false;
+            }
+            lockStripes();
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (!balanceLock.tryLock(time, unit)) {
+                return false;
+            }
+            lockStripes();
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            final CreditStripes stripes = creditStripes;
+            if (stripes != null) {
+                stripes.unlockAll();
+            }
+            balanceLock.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void lockStripes() {
+            final CreditStripes stripes = creditStripes;
+            if (stripes != null) {
+                stripes.lockAll();
+            }
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
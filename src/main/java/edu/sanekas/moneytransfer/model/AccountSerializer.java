@@ -9,4 +9,11 @@ import java.nio.ByteBuffer;
  */
 public interface AccountSerializer {
     ByteBuffer serialize(Account account) throws SerializeException;
+
+    /**
+     * Writes serialized account into the target buffer starting from its position
+     */
+    default void serialize(Account account, ByteBuffer target) throws SerializeException {
+        target.put(serialize(account));
+    }
 }
@@ -0,0 +1,25 @@
+package edu.sanekas.moneytransfer.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Timespan;
+
+/**
+ * Common fields of flight recorder events about a change of one account balance.
+ */
+@Category({"Money Transfer", "Accounts"})
+abstract class BalanceEvent extends Event {
+    @Label("Account Id")
+    int accountId;
+
+    @Label("Amount")
+    long amount;
+
+    @Label("Successful")
+    boolean successful;
+
+    @Label("Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+}
@@ -0,0 +1,75 @@
+package edu.sanekas.moneytransfer.model;
+
+/**
+ * Interface for journals of balance mutations.
+ * Records are appended under the write locks of the affected accounts, so the order of records
+ * is the order in which mutations of every account are applied.
+ */
+public interface BalanceJournal {
+    byte CREATE = 1;
+    byte DEBIT = 2;
+    byte WITHDRAW = 3;
+    byte TRANSFER = 4;
+    byte REMOVE = 5;
+    /**
+     * Money is taken from the account for a transfer to an account of another cluster node
+     * or of another shard of the sharded executor
+     */
+    byte TRANSFER_OUT = 6;
+    /**
+     * Money is put to the account by a transfer from an account of another cluster node
+     * or of another shard of the sharded executor
+     */
+    byte TRANSFER_IN = 7;
+    /**
+     * Accounts with sequential ids are created together, each with the initial balance as the amount
+     */
+    byte CREATE_RANGE = 8;
+    /**
+     * Money taken by {@link #TRANSFER_OUT} is put back to the account, because the account of the same node
+     * it was moved to is closed
+     */
+    byte TRANSFER_RETURN = 9;
+    /**
+     * Transfers of an atomic batch follow as {@link #BATCH_TRANSFER} records, the number of them is counterpartyId
+     */
+    byte BATCH = 10;
+    /**
+     * Transfer of an atomic batch, replayed as {@link #TRANSFER}
+     */
+    byte BATCH_TRANSFER = 11;
+
+    /**
+     * Appends record, doesn't wait for durability
+     * @param type one of {@link #CREATE}, {@link #DEBIT}, {@link #WITHDRAW}, {@link #TRANSFER}, {@link #REMOVE},
+     * {@link #TRANSFER_OUT}, {@link #TRANSFER_IN}, {@link #CREATE_RANGE}, {@link #TRANSFER_RETURN}, {@link #BATCH},
+     * {@link #BATCH_TRANSFER}
+     * @param accountId changed account, for transfer - account money is taken from, for range - the first account,
+     * for batch - account money is taken from by the first transfer
+     * @param counterpartyId account money is moved to for transfer, the other account for transfers
+     * between nodes or shards and returns, number of accounts for range, number of transfers for batch,
+     * else - accountId
+     * @return sequence number of the record
+     */
+    long append(byte type, int accountId, int counterpartyId, long amount);
+
+    /**
+     * Appends transfers of an atomic batch as one {@link #BATCH} record followed by a {@link #BATCH_TRANSFER}
+     * record for every transfer, doesn't wait for durability.
+     * Records of other mutations are never between them and a durable journal keeps either all of them or none,
+     * so the batch is replayed completely or not at all. This implementation relies on a single writer.
+     * @return sequence number of the last record
+     */
+    default long appendBatch(int[] fromAccountIds, int[] toAccountIds, long[] amounts) {
+        long sequence = append(BATCH, fromAccountIds[0], fromAccountIds.length, 0);
+        for (int i = 0; i < fromAccountIds.length; ++i) {
+            sequence = append(BATCH_TRANSFER, fromAccountIds[i], toAccountIds[i], amounts[i]);
+        }
+        return sequence;
+    }
+
+    /**
+     * Blocks until record with the sequence number and all records before it are durable
+     */
+    void awaitDurable(long sequence);
+}
@@ -0,0 +1,12 @@
+package edu.sanekas.moneytransfer.model;
+
+/**
+ * Receives consistent balance of an account
+ */
+@FunctionalInterface
+public interface BalanceVisitor {
+    /**
+     * @param journalSequence sequence number of the last journal record included in totalMoney
+     */
+    void visit(Account account, long totalMoney, long journalSequence);
+}
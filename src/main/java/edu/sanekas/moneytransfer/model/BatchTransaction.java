@@ -0,0 +1,276 @@
+package edu.sanekas.moneytransfer.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Many transfers executed under the write locks of all their accounts.
+ * Locks are acquired once for the whole batch in ascending account id order, so batches never deadlock
+ * with each other or with {@link Transaction}.
+ * With a timeout a batch never waits for a lock while it holds others: it waits for the busy account alone,
+ * then tries to lock the rest without waiting and backs off if one of them is busy, so batches waiting for
+ * a hot account don't hold the locks of other accounts.
+ * An atomic batch is journaled by {@link BalanceJournal#appendBatch}, so it is replayed completely or not at all;
+ * if the journal fails, all legs are reverted and the failure is rethrown.
+ * Independent legs are journaled one by one; if the journal fails, legs appended before the failure stay applied,
+ * the rest are not applied and the failure is rethrown.
+ */
+public class BatchTransaction {
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<Leg> legs = new ArrayList<>();
+
+    public BatchTransaction addLeg(Account fromAccount, Account toAccount, long amount) {
+        legs.add(new Leg(fromAccount, toAccount, amount));
+        return this;
+    }
+
+    public int size() {
+        return legs.size();
+    }
+
+    /**
+     * Applies all legs or none of them, returns when applied legs are durable in the journal.
+     * @return index of the first failed leg or -1 if all legs are applied
+     */
+    public int executeAtomically() {
+        return executeAtomically(lockAll());
+    }
+
+    /**
+     * Applies all legs or none of them if the accounts are locked in time,
+     * returns when applied legs are durable in the journal.
+     * @return index of the first failed leg or -1 if all legs are applied
+     * @throws TimeoutException if an account is still busy when the timeout expires, no legs are applied then
+     */
+    public int executeAtomically(long timeout, TimeUnit unit) throws TimeoutException {
+        return executeAtomically(lockAll(System.nanoTime() + unit.toNanos(timeout)));
+    }
+
+    /**
+     * Applies every leg independently of others, returns when applied legs are durable in the journal.
+     * @return result of each leg
+     */
+    public boolean[] execute() {
+        return execute(lockAll());
+    }
+
+    /**
+     * Applies every leg independently of others if the accounts are locked in time,
+     * returns when applied legs are durable in the journal.
+     * @return result of each leg
+     * @throws TimeoutException if an account is still busy when the timeout expires, no legs are applied then
+     */
+    public boolean[] execute(long timeout, TimeUnit unit) throws TimeoutException {
+        return execute(lockAll(System.nanoTime() + unit.toNanos(timeout)));
+    }
+
+    private int executeAtomically(List<Account> lockedAccounts) {
+        final long lastSequence;
+        try {
+            for (int i = 0; i < legs.size(); ++i) {
+                if (!legs.get(i).apply()) {
+                    for (int j = i - 1; j >= 0; --j) {
+                        legs.get(j).revert();
+                    }
+                    return i;
+                }
+            }
+            try {
+                lastSequence = journalAll(lockedAccounts);
+            } catch (RuntimeException e) {
+                for (int j = legs.size() - 1; j >= 0; --j) {
+                    legs.get(j).revert();
+                }
+                throw e;
+            }
+        } finally {
+            unlockAll(lockedAccounts);
+        }
+        awaitDurable(lastSequence);
+        return -1;
+    }
+
+    /**
+     * Journals all legs as one batch, every locked account gets the sequence number of the last record
+     * @return sequence number of the last record of the batch
+     */
+    private long journalAll(List<Account> lockedAccounts) {
+        final int[] fromAccountIds = new int[legs.size()];
+        final int[] toAccountIds = new int[legs.size()];
+        final long[] amounts = new long[legs.size()];
+        for (int i = 0; i < legs.size(); ++i) {
+            fromAccountIds[i] = legs.get(i).fromAccount.getId();
+            toAccountIds[i] = legs.get(i).toAccount.getId();
+            amounts[i] = legs.get(i).amount;
+        }
+        final long lastSequence = legs.get(0).fromAccount.getJournal().appendBatch(fromAccountIds, toAccountIds,
+                amounts);
+        for (Account account : lockedAccounts) {
+            account.setJournalSequenceUnderLock(lastSequence);
+        }
+        return lastSequence;
+    }
+
+    private boolean[] execute(List<Account> lockedAccounts) {
+        long lastSequence = Account.NOT_APPLIED;
+        final boolean[] results = new boolean[legs.size()];
+        try {
+            for (int i = 0; i < legs.size(); ++i) {
+                results[i] = legs.get(i).apply();
+                if (results[i]) {
+                    try {
+                        lastSequence = legs.get(i).journal();
+                    } catch (RuntimeException e) {
+                        legs.get(i).revert();
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            unlockAll(lockedAccounts);
+        }
+        awaitDurable(lastSequence);
+        return results;
+    }
+
+    private void awaitDurable(long lastSequence) {
+        if (lastSequence != Account.NOT_APPLIED) {
+            legs.get(0).fromAccount.getJournal().awaitDurable(lastSequence);
+        }
+    }
+
+    private List<Account> lockAll() {
+        final List<Account> accounts = getDistinctAccounts();
+        for (Account account : accounts) {
+            account.getWriteLock().lock();
+        }
+        preserveAll(accounts);
+        return accounts;
+    }
+
+    /**
+     * Waits for one busy account at a time till the deadline and locks the others without waiting
+     */
+    private List<Account> lockAll(long deadline) throws TimeoutException {
+        final List<Account> accounts = getDistinctAccounts();
+        long backoff = MIN_BACKOFF_NANOS;
+        int busyIndex = 0;
+        while (!accounts.isEmpty()) {
+            final Lock busyLock = accounts.get(busyIndex).getWriteLock();
+            final boolean isLocked;
+            try {
+                isLocked = busyLock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted while waiting for account " + accounts.get(busyIndex).getId());
+            }
+            if (!isLocked) {
+                throw new TimeoutException("Account " + accounts.get(busyIndex).getId() + " is busy");
+            }
+            final int lockedIndex = busyIndex;
+            busyIndex = tryLockOthers(accounts, lockedIndex);
+            if (busyIndex < 0) {
+                preserveAll(accounts);
+                return accounts;
+            }
+            busyLock.unlock();
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException("Account " + accounts.get(busyIndex).getId() + " is busy");
+            }
+            LockSupport.parkNanos(Math.min(remaining, ThreadLocalRandom.current().nextLong(backoff) + 1));
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+        }
+        return accounts;
+    }
+
+    /**
+     * Locks accounts except the locked one without waiting, releases the acquired locks if one of them is busy
+     * @return index of the busy account or -1 if all accounts are locked
+     */
+    private static int tryLockOthers(List<Account> accounts, int lockedIndex) {
+        for (int i = 0; i < accounts.size(); ++i) {
+            if (i != lockedIndex && !accounts.get(i).getWriteLock().tryLock()) {
+                for (int j = i - 1; j >= 0; --j) {
+                    if (j != lockedIndex) {
+                        accounts.get(j).getWriteLock().unlock();
+                    }
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private List<Account> getDistinctAccounts() {
+        final Map<Account, Boolean> distinctAccounts = new IdentityHashMap<>();
+        for (Leg leg : legs) {
+            distinctAccounts.put(leg.fromAccount, Boolean.TRUE);
+            distinctAccounts.put(leg.toAccount, Boolean.TRUE);
+        }
+        final List<Account> accounts = new ArrayList<>(distinctAccounts.keySet());
+        accounts.sort(Comparator.comparingInt(Account::getId));
+        return accounts;
+    }
+
+    private static void preserveAll(List<Account> accounts) {
+        final long epoch = ConsistentSnapshot.currentEpoch();
+        for (Account account : accounts) {
+            account.preserveUnderLock(epoch);
+        }
+    }
+
+    private static void unlockAll(List<Account> lockedAccounts) {
+        for (int i = lockedAccounts.size() - 1; i >= 0; --i) {
+            lockedAccounts.get(i).getWriteLock().unlock();
+        }
+    }
+
+    private static class Leg {
+        private final Account fromAccount;
+        private final Account toAccount;
+        private final long amount;
+
+        Leg(Account fromAccount, Account toAccount, long amount) {
+            this.fromAccount = fromAccount;
+            this.toAccount = toAccount;
+            this.amount = amount;
+        }
+
+        boolean apply() {
+            if (fromAccount.getId() == toAccount.getId() || !fromAccount.withdrawUnderLock(amount)) {
+                return false;
+            }
+            if (!toAccount.debitUnderLock(amount)) {
+                fromAccount.debitUnderLock(amount);
+                return false;
+            }
+            return true;
+        }
+
+        long journal() {
+            final long sequence = fromAccount.journalUnderLock(BalanceJournal.TRANSFER, toAccount.getId(), amount);
+            toAccount.setJournalSequenceUnderLock(sequence);
+            return sequence;
+        }
+
+        /**
+         * Restores accounts after successful apply.
+         * Believe that toAccount has the money, because all accounts are still locked.
+         */
+        void revert() {
+            toAccount.withdrawUnderLock(amount);
+            fromAccount.debitUnderLock(amount);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package edu.sanekas.moneytransfer.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width big-endian encoding for service-to-service traffic: id (4 bytes), totalMoney (8 bytes).
+ */
+public enum BinaryAccountSerializer implements AccountSerializer {
+    S;
+
+    public static final int SERIALIZED_SIZE = Integer.BYTES + Long.BYTES;
+
+    @Override
+    public ByteBuffer serialize(Account account) {
+        final ByteBuffer buffer = ByteBuffer.allocate(SERIALIZED_SIZE);
+        serialize(account, buffer);
+        return buffer.flip();
+    }
+
+    @Override
+    public void serialize(Account account, ByteBuffer target) {
+        target.putInt(account.getId()).putLong(account.getTotalMoney());
+    }
+}
@@ -0,0 +1,59 @@
+package edu.sanekas.moneytransfer.model;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Point-in-time view of all balances taken without stopping writers.
+ * Opening a snapshot starts a new epoch, the cut. Every mutation reads the epoch once under the write locks
+ * of all its accounts, and the first mutation of an account after the cut saves the balance it changes,
+ * so a mutation is either entirely before the cut or entirely hidden from the snapshot.
+ * A mutation that has read the previous epoch still holds the locks of its accounts, so readers wait for it.
+ * Only one snapshot is open at a time, it must be closed by the thread which opened it.
+ */
+public class ConsistentSnapshot implements AutoCloseable {
+    private static final ReentrantLock openLock = new ReentrantLock();
+    private static volatile long currentEpoch;
+
+    private final long epoch;
+
+    private ConsistentSnapshot(long epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * Waits for the previous snapshot to be closed and makes the cut
+     */
+    public static ConsistentSnapshot open() {
+        openLock.lock();
+        final long epoch = currentEpoch + 1;
+        currentEpoch = epoch;
+        return new ConsistentSnapshot(epoch);
+    }
+
+    static long currentEpoch() {
+        return currentEpoch;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Passes balance of the account as of the cut, accounts can be visited in parallel.
+     * Accounts created after the cut have zero balance.
+     */
+    public void visitBalance(Account account, BalanceVisitor visitor) {
+        account.visitBalanceAt(epoch, visitor);
+    }
+
+    public long getTotalMoney(Account account) {
+        final long[] money = new long[1];
+        account.visitBalanceAt(epoch, (visitedAccount, totalMoney, journalSequence) -> money[0] = totalMoney);
+        return money[0];
+    }
+
+    @Override
+    public void close() {
+        openLock.unlock();
+    }
+}
@@ -0,0 +1,197 @@
+package edu.sanekas.moneytransfer.model;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Credits of a hot account spread over stripes with their own locks, so concurrent debits of the account
+ * don't wait for each other. A debit locks one stripe, any other mutation of the account locks all of them
+ * and may fold their money into the balance of the account.
+ */
+final class CreditStripes {
+    /**
+     * Number of stripes of a hot account, rounded up to a power of two
+     */
+    static final int STRIPES = Integer.getInteger("moneytransfer.hotAccount.stripes",
+            4 * Runtime.getRuntime().availableProcessors());
+    /**
+     * Contended debits in excess of uncontended ones after which an account becomes hot, 0 disables detection
+     */
+    static final int CONTENTION_THRESHOLD = Integer.getInteger("moneytransfer.hotAccount.contentionThreshold", 64);
+
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * @param epoch current epoch of {@link ConsistentSnapshot}, the stripes had no money as of its cut
+     */
+    CreditStripes(int count, long epoch) {
+        final int size = count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+        this.stripes = new Stripe[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; ++i) {
+            stripes[i] = new Stripe(epoch);
+        }
+    }
+
+    /**
+     * Locks the first free stripe starting from the one of the current thread,
+     * waits for the stripe of the current thread if all of them are locked
+     */
+    Stripe lockAny() {
+        final int home = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        for (int i = 0; i <= mask; ++i) {
+            final Stripe stripe = stripes[(home + i) & mask];
+            if (stripe.lock.tryLock()) {
+                return stripe;
+            }
+        }
+        stripes[home].lock.lock();
+        return stripes[home];
+    }
+
+    void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+    }
+
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; --i) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Sums credits without locking. Each stripe is read consistently, but the stripes are read one by one,
+     * so the sum is between the credits at the start and at the end of the call, as credits only grow.
+     * Caller must make sure that the stripes are not folded meanwhile.
+     */
+    long getCredits() {
+        long credits = 0;
+        for (Stripe stripe : stripes) {
+            credits += stripe.getMoney();
+        }
+        return credits;
+    }
+
+    /**
+     * Sums debit counts of the stripes without locking, the sum only grows as the counts do
+     */
+    long getVersion() {
+        long version = 0;
+        for (Stripe stripe : stripes) {
+            version += stripe.version;
+        }
+        return version;
+    }
+
+    long getCreditsUnderLock() {
+        long credits = 0;
+        for (Stripe stripe : stripes) {
+            credits += stripe.money;
+        }
+        return credits;
+    }
+
+    long getJournalSequenceUnderLock() {
+        long sequence = 0;
+        for (Stripe stripe : stripes) {
+            sequence = Math.max(sequence, stripe.journalSequence);
+        }
+        return sequence;
+    }
+
+    long getCreditsAtUnderLock(long epoch) {
+        long credits = 0;
+        for (Stripe stripe : stripes) {
+            credits += stripe.snapshotEpoch == epoch ? stripe.snapshotMoney : stripe.money;
+        }
+        return credits;
+    }
+
+    long getJournalSequenceAtUnderLock(long epoch) {
+        long sequence = 0;
+        for (Stripe stripe : stripes) {
+            sequence = Math.max(sequence,
+                    stripe.snapshotEpoch == epoch ? stripe.snapshotJournalSequence : stripe.journalSequence);
+        }
+        return sequence;
+    }
+
+    void preserveUnderLock(long epoch) {
+        for (Stripe stripe : stripes) {
+            stripe.preserveUnderLock(epoch);
+        }
+    }
+
+    /**
+     * Moves money out of the stripes
+     * @return moved money
+     */
+    long foldUnderLock() {
+        long credits = 0;
+        for (Stripe stripe : stripes) {
+            credits += stripe.money;
+            stripe.money = 0;
+        }
+        return credits;
+    }
+
+    /**
+     * Money credited to the account by debits which locked this stripe.
+     * Fields are padded, so that stripes locked by different threads don't share a cache line.
+     */
+    static final class Stripe {
+        private final StampedLock stampedLock = new StampedLock();
+        private final Lock lock = stampedLock.asWriteLock();
+        long p1, p2, p3, p4, p5, p6, p7;
+        long money;
+        long journalSequence;
+        /**
+         * Number of debits of the stripe, bumped after its money is changed
+         */
+        volatile long version;
+        long snapshotEpoch;
+        long snapshotMoney;
+        long snapshotJournalSequence;
+        long q1, q2, q3, q4, q5, q6, q7;
+
+        Stripe(long epoch) {
+            this.snapshotEpoch = epoch;
+        }
+
+        void unlock() {
+            lock.unlock();
+        }
+
+        /**
+         * Same as {@link Account#preserveUnderLock} for the money of the stripe
+         */
+        void preserveUnderLock(long epoch) {
+            if (snapshotEpoch != epoch) {
+                this.snapshotEpoch = epoch;
+                this.snapshotMoney = money;
+                this.snapshotJournalSequence = journalSequence;
+            }
+        }
+
+        private long getMoney() {
+            for (int i = 0; i < OPTIMISTIC_READ_ATTEMPTS; ++i) {
+                final long stamp = stampedLock.tryOptimisticRead();
+                final long credits = money;
+                if (stamp != 0 && stampedLock.validate(stamp)) {
+                    return credits;
+                }
+            }
+            final long stamp = stampedLock.readLock();
+            try {
+                return money;
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package edu.sanekas.moneytransfer.model;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("edu.sanekas.moneytransfer.Debit")
+@Label("Debit")
+@Description("Debit of an account, emitted only if it takes longer than the threshold")
+@Threshold("10 ms")
+class DebitEvent extends BalanceEvent {
+}
@@ -0,0 +1,70 @@
+package edu.sanekas.moneytransfer.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes account JSON straight into the target buffer without intermediate objects.
+ * Output is byte-for-byte the same as {@link JsonAccountSerializer} output.
+ */
+public enum DirectJsonAccountSerializer implements AccountSerializer {
+    S;
+
+    /**
+     * Max length of {"id":..,"totalMoney":..}
+     */
+    public static final int MAX_SERIALIZED_SIZE = 64;
+
+    private static final byte[] ID_PREFIX = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TOTAL_MONEY_PREFIX = ",\"totalMoney\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte OBJECT_END = '}';
+
+    @Override
+    public ByteBuffer serialize(Account account) {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_SERIALIZED_SIZE);
+        serialize(account, buffer);
+        return buffer.flip();
+    }
+
+    @Override
+    public void serialize(Account account, ByteBuffer target) {
+        target.put(ID_PREFIX);
+        putDecimal(target, account.getId());
+        target.put(TOTAL_MONEY_PREFIX);
+        putDecimal(target, account.getTotalMoney());
+        target.put(OBJECT_END);
+    }
+
+    /**
+     * Writes digits from the last one to the first one into already reserved space
+     */
+    public static void putDecimal(ByteBuffer target, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                target.put("-9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            target.put((byte) '-');
+            value = -value;
+        }
+        final int digits = digits(value);
+        final int start = target.position();
+        int position = start + digits;
+        target.position(position);
+        do {
+            target.put(--position, (byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+    }
+
+    private static int digits(long value) {
+        long bound = 10;
+        for (int digits = 1; digits < 19; ++digits) {
+            if (value < bound) {
+                return digits;
+            }
+            bound *= 10;
+        }
+        return 19;
+    }
+}
@@ -0,0 +1,17 @@
+package edu.sanekas.moneytransfer.model;
+
+/**
+ * Journal for purely in-memory accounts, nothing is recorded.
+ */
+public enum NoOpBalanceJournal implements BalanceJournal {
+    S;
+
+    @Override
+    public long append(byte type, int accountId, int counterpartyId, long amount) {
+        return 0;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+    }
+}
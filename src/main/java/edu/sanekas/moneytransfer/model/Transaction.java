@@ -1,5 +1,7 @@
 package edu.sanekas.moneytransfer.model;
 
+import edu.sanekas.moneytransfer.metrics.Metrics;
+
 public class Transaction {
     private final Account fromAccount;
     private final Account toAccount;
@@ -11,55 +13,100 @@ public class Transaction {
         this.amount = amount;
     }
 
+    /**
+     * Returns when the transfer is durable in the journal
+     */
     public boolean execute() {
+        final long sequence = executeJournaled();
+        if (sequence == Account.NOT_APPLIED) {
+            return false;
+        }
+        fromAccount.getJournal().awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Transfers and appends the record to the journal without waiting for durability.
+     * Accounts are locked in order of ids, time spent waiting for each lock goes to metrics and the flight recorder.
+     * @return journal sequence number of the transfer or {@link Account#NOT_APPLIED}
+     */
+    public long executeJournaled() {
         final int fromAccId = fromAccount.getId();
         final int toAccId = toAccount.getId();
         if (fromAccId == toAccId) {
-            return false;
+            return Account.NOT_APPLIED;
         }
-        if (fromAccId < toAccId) {
-            fromAccount.getWriteLock().lock();
+        final Account firstAccount = fromAccId < toAccId ? fromAccount : toAccount;
+        final Account secondAccount = fromAccId < toAccId ? toAccount : fromAccount;
+        final TransferEvent event = new TransferEvent();
+        event.begin();
+        final boolean isRecorded = event.isEnabled();
+        final boolean isTimed = Metrics.ENABLED || isRecorded;
+        final long lockStartTime = isTimed ? System.nanoTime() : 0;
+        final long firstLockedTime;
+        final long secondLockedTime;
+        final long sequence;
+        firstAccount.getWriteLock().lock();
+        try {
+            firstLockedTime = isRecorded ? System.nanoTime() : 0;
+            secondAccount.getWriteLock().lock();
             try {
-                toAccount.getWriteLock().lock();
-                try {
-                    return withdrawAndDebit(fromAccount, toAccount, amount);
-                } finally {
-                    toAccount.getWriteLock().unlock();
-                }
+                secondLockedTime = isTimed ? System.nanoTime() : 0;
+                final long epoch = ConsistentSnapshot.currentEpoch();
+                firstAccount.preserveUnderLock(epoch);
+                secondAccount.preserveUnderLock(epoch);
+                sequence = withdrawAndDebit(fromAccount, toAccount, amount);
             } finally {
-                fromAccount.getWriteLock().unlock();
-            }
-        } else {
-            toAccount.getWriteLock().lock();
-            try {
-                fromAccount.getWriteLock().lock();
-                try {
-                    return withdrawAndDebit(fromAccount, toAccount, amount);
-                } finally {
-                    fromAccount.getWriteLock().unlock();
-                }
-            } finally {
-                toAccount.getWriteLock().unlock();
+                secondAccount.getWriteLock().unlock();
             }
+        } finally {
+            firstAccount.getWriteLock().unlock();
         }
+        if (Metrics.ENABLED) {
+            Metrics.S.recordLockWait(secondLockedTime - lockStartTime);
+        }
+        if (event.shouldCommit()) {
+            final long firstLockWait = firstLockedTime - lockStartTime;
+            final long secondLockWait = secondLockedTime - firstLockedTime;
+            event.fromAccountId = fromAccId;
+            event.toAccountId = toAccId;
+            event.amount = amount;
+            event.successful = sequence != Account.NOT_APPLIED;
+            event.fromLockWait = firstAccount == fromAccount ? firstLockWait : secondLockWait;
+            event.toLockWait = firstAccount == fromAccount ? secondLockWait : firstLockWait;
+            event.commit();
+        }
+        return sequence;
     }
 
-    private static boolean withdrawAndDebit(Account fromAccount, Account toAccount, long amount) {
-        final boolean isWithdrawSuccessful = fromAccount.withdraw(amount);
+    private static long withdrawAndDebit(Account fromAccount, Account toAccount, long amount) {
+        final boolean isWithdrawSuccessful = fromAccount.withdrawUnderLock(amount);
         if (isWithdrawSuccessful) {
-            final boolean isDebitSuccessful = toAccount.debit(amount);
+            final boolean isDebitSuccessful = toAccount.debitUnderLock(amount);
             if (isDebitSuccessful) {
-                return true;
+                final long sequence;
+                try {
+                    sequence = fromAccount.journalUnderLock(BalanceJournal.TRANSFER, toAccount.getId(), amount);
+                } catch (RuntimeException e) {
+                    /**
+                     * The journal doesn't have the transfer, so the balances must not have it either
+                     */
+                    toAccount.revertUnderLock(amount);
+                    fromAccount.revertUnderLock(-amount);
+                    throw e;
+                }
+                toAccount.setJournalSequenceUnderLock(sequence);
+                return sequence;
             } else {
                 /**
                  * Restore fromAccount.
                  * Believe that fromAccount is available, because of withdrawing was successful.
                  * There is much to talk.
                  */
-                fromAccount.debit(amount);
-                return false;
+                fromAccount.debitUnderLock(amount);
+                return Account.NOT_APPLIED;
             }
         }
-        return false;
+        return Account.NOT_APPLIED;
     }
 }
@@ -0,0 +1,36 @@
+package edu.sanekas.moneytransfer.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+@Name("edu.sanekas.moneytransfer.Transfer")
+@Label("Transfer")
+@Description("Transfer between two accounts, emitted only if it takes longer than the threshold")
+@Category({"Money Transfer", "Accounts"})
+@Threshold("10 ms")
+class TransferEvent extends Event {
+    @Label("From Account Id")
+    int fromAccountId;
+
+    @Label("To Account Id")
+    int toAccountId;
+
+    @Label("Amount")
+    long amount;
+
+    @Label("Successful")
+    boolean successful;
+
+    @Label("From Account Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long fromLockWait;
+
+    @Label("To Account Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long toLockWait;
+}
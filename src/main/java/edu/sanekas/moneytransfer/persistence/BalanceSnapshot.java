@@ -0,0 +1,181 @@
+package edu.sanekas.moneytransfer.persistence;
+
+import edu.sanekas.moneytransfer.metrics.Metrics;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceVisitor;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory-mapped snapshot of all account balances, written while operations keep running.
+ * File has header: magic (4 bytes), accounts count (4 bytes), journal sequence (8 bytes),
+ * followed by fixed-width entries indexed by account id counted from the first account id of the storage:
+ * balance (8 bytes), last applied journal sequence (8 bytes).
+ * Entries of removed accounts below the accounts count have sequence {@link #REMOVED}.
+ * Every journal record up to the header sequence is included, later records are included only in accounts
+ * whose entry sequence covers them, so the journal tail after the header sequence must be replayed.
+ */
+public class BalanceSnapshot implements Runnable {
+    private static final int MAGIC = 0x4D54424C;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+    private static final int ENTRIES_PER_REGION = 1 << 20;
+    private static final long REGION_SIZE = (long) ENTRIES_PER_REGION * ENTRY_SIZE;
+    private static final long REMOVED = -1;
+
+    private final Path path;
+    private final AccountsStorage accountsStorage;
+    private final GroupCommitJournal journal;
+
+    public BalanceSnapshot(Path path, AccountsStorage accountsStorage, GroupCommitJournal journal) {
+        this.path = path;
+        this.accountsStorage = accountsStorage;
+        this.journal = journal;
+    }
+
+    /**
+     * Writes snapshot, used for periodic snapshots. A failure is counted by {@link Metrics#recordSnapshotFailure},
+     * the previous snapshot stays and the next period tries again.
+     */
+    @Override
+    public void run() {
+        try {
+            write();
+        } catch (IOException | UncheckedIOException e) {
+            Metrics.S.recordSnapshotFailure();
+        }
+    }
+
+    /**
+     * Writes snapshot to a temporary file and atomically replaces the previous one.
+     * The new snapshot is published only when every journal record included in it is durable.
+     * @return journal sequence of the snapshot
+     */
+    public long write() throws IOException {
+        final long journalSequence = journal.getLastSequence();
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final EntriesWriter entriesWriter = new EntriesWriter(channel, accountsStorage.getFirstAccountId());
+            accountsStorage.getAllAccounts().forEachOrdered(account -> account.visitBalance(entriesWriter));
+            entriesWriter.force();
+            /**
+             * Entries are mapped by whole regions, the tail of the last region is not a part of the snapshot
+             */
+            channel.truncate(HEADER_SIZE + (long) entriesWriter.accountsCount * ENTRY_SIZE);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(entriesWriter.accountsCount)
+                    .putLong(journalSequence)
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            }
+            channel.force(true);
+            journal.awaitDurable(entriesWriter.maxSequence);
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return journalSequence;
+    }
+
+    /**
+     * Creates accounts of the snapshot in empty storage.
+     * @return journal sequence of the snapshot or 0 if there is no snapshot
+     */
+    public static long restore(Path path, AccountsStorage accountsStorage) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("File " + path + " is not a balance snapshot");
+            }
+            final int accountsCount = header.getInt();
+            final long journalSequence = header.getLong();
+            final int firstAccountId = accountsStorage.getFirstAccountId();
+            for (int regionStart = 0; regionStart < accountsCount; regionStart += ENTRIES_PER_REGION) {
+                final int regionEntries = Math.min(ENTRIES_PER_REGION, accountsCount - regionStart);
+                final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + regionStart * (long) ENTRY_SIZE, regionEntries * (long) ENTRY_SIZE);
+                for (int i = 0; i < regionEntries; ++i) {
+                    final Account account = accountsStorage.createAccount();
+                    if (account.getId() != firstAccountId + regionStart + i) {
+                        throw new IllegalStateException("Snapshot should be restored into empty storage");
+                    }
+                    final long totalMoney = region.getLong();
+                    final long accountSequence = region.getLong();
+                    if (accountSequence == REMOVED) {
+                        accountsStorage.removeAccountById(account.getId());
+                    } else {
+                        account.restore(totalMoney, accountSequence);
+                    }
+                }
+            }
+            return journalSequence;
+        }
+    }
+
+    private static class EntriesWriter implements BalanceVisitor {
+        private final FileChannel channel;
+        private final List<MappedByteBuffer> regions = new ArrayList<>();
+        private final int firstAccountId;
+        private int accountsCount;
+        private long maxSequence;
+
+        EntriesWriter(FileChannel channel, int firstAccountId) {
+            this.channel = channel;
+            this.firstAccountId = firstAccountId;
+        }
+
+        /**
+         * Accounts are visited in ascending order of ids, so skipped ids are ids of removed accounts
+         */
+        @Override
+        public void visit(Account account, long totalMoney, long journalSequence) {
+            final int index = account.getId() - firstAccountId;
+            for (int removedIndex = accountsCount; removedIndex < index; ++removedIndex) {
+                putEntry(removedIndex, 0, REMOVED);
+            }
+            putEntry(index, totalMoney, journalSequence);
+            accountsCount = Math.max(accountsCount, index + 1);
+            maxSequence = Math.max(maxSequence, journalSequence);
+        }
+
+        private void putEntry(int index, long totalMoney, long journalSequence) {
+            final int entry = (index % ENTRIES_PER_REGION) * ENTRY_SIZE;
+            region(index / ENTRIES_PER_REGION)
+                    .putLong(entry, totalMoney)
+                    .putLong(entry + Long.BYTES, journalSequence);
+        }
+
+        void force() {
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+        }
+
+        private MappedByteBuffer region(int index) {
+            try {
+                while (regions.size() <= index) {
+                    regions.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                            HEADER_SIZE + regions.size() * REGION_SIZE, REGION_SIZE));
+                }
+                return regions.get(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
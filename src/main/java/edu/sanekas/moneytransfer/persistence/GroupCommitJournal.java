@@ -0,0 +1,364 @@
+package edu.sanekas.moneytransfer.persistence;
+
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only binary journal of balance mutations.
+ * Appended records are collected in memory and written by a single writer thread, which makes the whole
+ * batch durable with one fsync. A batch is flushed when the batch window since its first record elapses
+ * or when it reaches the size limit. Records are fixed-width:
+ * sequence (8 bytes), type (1 byte), accountId (4 bytes), counterpartyId (4 bytes), amount (8 bytes).
+ */
+public class GroupCommitJournal implements BalanceJournal, AutoCloseable {
+    public static final int RECORD_SIZE = 25;
+
+    private final FileChannel channel;
+    private final long batchWindowNanos;
+    private final int maxBatchRecords;
+    private final Runnable beforeWrite;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasRecords = lock.newCondition();
+    private final Condition hasSpace = lock.newCondition();
+    private final Condition isDurable = lock.newCondition();
+
+    private ByteBuffer appendBuffer;
+    private ByteBuffer flushBuffer;
+    private long lastSequence;
+    private volatile long durableSequence;
+    private volatile boolean replaying;
+    private volatile boolean running = true;
+    private IOException failure;
+    private Thread batchAppender;
+    private final Thread writer;
+
+    /**
+     * Opens existing journal or creates new one. Incomplete record and incomplete atomic batch
+     * at the end of the file are dropped.
+     * @param batchWindow max time the first record of a batch waits for others before flush
+     * @param maxBatchRecords batch is flushed immediately when it has so many records
+     */
+    public GroupCommitJournal(Path path, long batchWindow, TimeUnit unit, int maxBatchRecords) throws IOException {
+        this(path, batchWindow, unit, maxBatchRecords, null);
+    }
+
+    /**
+     * @param beforeWrite called by the writer before every batch, so records of another log appended before
+     * the records of the batch can be made durable first, or null. If it throws {@link UncheckedIOException},
+     * the journal fails like on its own write error.
+     */
+    public GroupCommitJournal(Path path, long batchWindow, TimeUnit unit, int maxBatchRecords, Runnable beforeWrite)
+            throws IOException {
+        if (maxBatchRecords <= 0) {
+            throw new IllegalArgumentException("Max batch records should be positive");
+        }
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.batchWindowNanos = unit.toNanos(batchWindow);
+        this.maxBatchRecords = maxBatchRecords;
+        this.beforeWrite = beforeWrite;
+        this.appendBuffer = ByteBuffer.allocateDirect(maxBatchRecords * RECORD_SIZE);
+        this.flushBuffer = ByteBuffer.allocateDirect(maxBatchRecords * RECORD_SIZE);
+        this.lastSequence = readLastSequence();
+        this.durableSequence = lastSequence;
+        this.writer = new Thread(this::writeBatches, "journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Passes every record with sequence number after the given one to the handler.
+     * Records appended by the handler are not written, because they are already in the journal.
+     * Should be called before the journal is used by anything else.
+     */
+    public void replay(long afterSequence, JournalRecordHandler handler) throws IOException {
+        replaying = true;
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 4096);
+            long position = Math.max(0, afterSequence) * RECORD_SIZE;
+            final long end = lastSequence * RECORD_SIZE;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                while (buffer.hasRemaining()) {
+                    position += channel.read(buffer, position);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    handler.handle(buffer.getLong(), buffer.get(), buffer.getInt(), buffer.getInt(), buffer.getLong());
+                }
+            }
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * Restores state from a snapshot and the journal tail after it.
+     * Records appended by the loader and the handler are not written, because they are already persisted.
+     * Should be called before the journal is used by anything else.
+     * @param loader restores snapshot and returns sequence number up to which all journal records are included
+     */
+    public void recover(SnapshotLoader loader, JournalRecordHandler handler) throws IOException {
+        final long snapshotSequence;
+        replaying = true;
+        try {
+            snapshotSequence = loader.load();
+        } finally {
+            replaying = false;
+        }
+        replay(snapshotSequence, handler);
+    }
+
+    @FunctionalInterface
+    public interface SnapshotLoader {
+        /**
+         * @return sequence number up to which all journal records are included in the snapshot
+         */
+        long load() throws IOException;
+    }
+
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    @Override
+    public long append(byte type, int accountId, int counterpartyId, long amount) {
+        if (replaying) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            return appendUnderLock(type, accountId, counterpartyId, amount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Other appenders wait while the batch waits for space, so its records are consecutive.
+     * A batch which doesn't fit into one write may be written partially before a crash,
+     * such a batch at the end of the journal is dropped when it is opened.
+     */
+    @Override
+    public long appendBatch(int[] fromAccountIds, int[] toAccountIds, long[] amounts) {
+        if (replaying) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            while (batchAppender != null && failure == null) {
+                hasSpace.awaitUninterruptibly();
+            }
+            checkFailure();
+            batchAppender = Thread.currentThread();
+            try {
+                long sequence = appendUnderLock(BATCH, fromAccountIds[0], fromAccountIds.length, 0);
+                for (int i = 0; i < fromAccountIds.length; ++i) {
+                    sequence = appendUnderLock(BATCH_TRANSFER, fromAccountIds[i], toAccountIds[i], amounts[i]);
+                }
+                return sequence;
+            } finally {
+                batchAppender = null;
+                hasSpace.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long appendUnderLock(byte type, int accountId, int counterpartyId, long amount) {
+        if (!running) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        while ((!appendBuffer.hasRemaining() || (batchAppender != null && batchAppender != Thread.currentThread()))
+                && failure == null) {
+            hasSpace.awaitUninterruptibly();
+        }
+        checkFailure();
+        final boolean isFirstInBatch = appendBuffer.position() == 0;
+        final long sequence = ++lastSequence;
+        appendBuffer.putLong(sequence).put(type).putInt(accountId).putInt(counterpartyId).putLong(amount);
+        if (isFirstInBatch || !appendBuffer.hasRemaining()) {
+            hasRecords.signal();
+        }
+        return sequence;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                checkFailure();
+                isDurable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes appended records and closes the file. If the calling thread is interrupted, the writer is still
+     * awaited, so no appended record is lost, and the interrupt status is restored.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            running = false;
+            hasRecords.signal();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        channel.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatches() {
+        while (true) {
+            final long batchLastSequence;
+            lock.lock();
+            try {
+                while (appendBuffer.position() == 0 && running) {
+                    hasRecords.awaitUninterruptibly();
+                }
+                if (appendBuffer.position() == 0) {
+                    return;
+                }
+                long windowLeft = batchWindowNanos;
+                while (windowLeft > 0 && appendBuffer.hasRemaining() && running) {
+                    windowLeft = hasRecords.awaitNanos(windowLeft);
+                }
+                final ByteBuffer batch = appendBuffer;
+                appendBuffer = flushBuffer;
+                flushBuffer = batch;
+                batchLastSequence = lastSequence;
+                hasSpace.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (beforeWrite != null) {
+                    beforeWrite.run();
+                }
+                flushBuffer.flip();
+                while (flushBuffer.hasRemaining()) {
+                    channel.write(flushBuffer);
+                }
+                channel.force(false);
+                flushBuffer.clear();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            } catch (UncheckedIOException e) {
+                fail(e.getCause());
+                return;
+            }
+            lock.lock();
+            try {
+                durableSequence = batchLastSequence;
+                isDurable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            hasSpace.signalAll();
+            isDurable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal is not writable", failure);
+        }
+    }
+
+    /**
+     * Finds the last complete record, drops incomplete tail and moves the channel to the end of the journal.
+     */
+    private long readLastSequence() throws IOException {
+        final long records = dropIncompleteBatch(channel.size() / RECORD_SIZE);
+        channel.truncate(records * RECORD_SIZE);
+        channel.position(records * RECORD_SIZE);
+        if (records == 0) {
+            return 0;
+        }
+        final ByteBuffer lastRecord = ByteBuffer.allocate(Long.BYTES);
+        channel.read(lastRecord, (records - 1) * RECORD_SIZE);
+        final long sequence = lastRecord.flip().getLong();
+        if (sequence != records) {
+            throw new IOException("Journal is corrupted, last record has sequence " + sequence +
+                    " but journal contains " + records + " records");
+        }
+        return sequence;
+    }
+
+    /**
+     * Looks for the {@link #BATCH} record of the transfers at the end of the journal
+     * @return number of records without the batch, if some of its transfers are missing
+     */
+    private long dropIncompleteBatch(long records) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        for (long index = records - 1; index >= 0; --index) {
+            record.clear();
+            while (record.hasRemaining()) {
+                if (channel.read(record, index * RECORD_SIZE + record.position()) < 0) {
+                    throw new IOException("Journal is truncated while it is opened");
+                }
+            }
+            final byte type = record.get(Long.BYTES);
+            if (type == BATCH) {
+                final int transfers = record.getInt(Long.BYTES + 1 + Integer.BYTES);
+                return index + transfers < records ? records : index;
+            }
+            if (type != BATCH_TRANSFER) {
+                return records;
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,9 @@
+package edu.sanekas.moneytransfer.persistence;
+
+/**
+ * Receives journal records during replay
+ */
+@FunctionalInterface
+public interface JournalRecordHandler {
+    void handle(long sequence, byte type, int accountId, int counterpartyId, long amount);
+}
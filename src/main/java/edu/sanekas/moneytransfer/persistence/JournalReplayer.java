@@ -0,0 +1,86 @@
+package edu.sanekas.moneytransfer.persistence;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.util.Optional;
+
+/**
+ * Restores accounts of the storage from journal records.
+ * Storage should create accounts with sequential ids starting from the same first id as journaled creations did.
+ * Records already included in restored accounts are skipped, so replay may start before the snapshot point.
+ */
+public class JournalReplayer implements JournalRecordHandler {
+    private final AccountsStorage accountsStorage;
+
+    public JournalReplayer(AccountsStorage accountsStorage) {
+        this.accountsStorage = accountsStorage;
+    }
+
+    @Override
+    public void handle(long sequence, byte type, int accountId, int counterpartyId, long amount) {
+        switch (type) {
+            case BalanceJournal.CREATE:
+                createAccount(sequence, accountId);
+                break;
+            case BalanceJournal.CREATE_RANGE:
+                for (int i = 0; i < counterpartyId; ++i) {
+                    final Account account = createAccount(sequence, accountId + i);
+                    if (amount > 0) {
+                        account.replay(sequence, amount);
+                    }
+                }
+                break;
+            case BalanceJournal.DEBIT:
+                getAccount(sequence, accountId).replay(sequence, amount);
+                break;
+            case BalanceJournal.WITHDRAW:
+            case BalanceJournal.TRANSFER_OUT:
+                getAccount(sequence, accountId).replay(sequence, -amount);
+                break;
+            case BalanceJournal.TRANSFER_IN:
+            case BalanceJournal.TRANSFER_RETURN:
+                getAccount(sequence, accountId).replay(sequence, amount);
+                break;
+            case BalanceJournal.TRANSFER:
+            case BalanceJournal.BATCH_TRANSFER:
+                getAccount(sequence, accountId).replay(sequence, -amount);
+                getAccount(sequence, counterpartyId).replay(sequence, amount);
+                break;
+            case BalanceJournal.REMOVE:
+                accountsStorage.removeAccountById(accountId);
+                break;
+            case BalanceJournal.BATCH:
+                break;
+            default:
+                throw new IllegalStateException("Journal record " + sequence + " has unknown type " + type);
+        }
+    }
+
+    private Account createAccount(long sequence, int accountId) {
+        final Optional<Account> existingAccount = accountsStorage.getAccountById(accountId);
+        if (existingAccount.isPresent()) {
+            return existingAccount.get();
+        }
+        Account createdAccount = accountsStorage.createAccount();
+        /**
+         * Accounts removed before the snapshot point after the last account of the snapshot
+         * are neither in the snapshot nor in the replayed journal tail
+         */
+        while (createdAccount.getId() < accountId && accountsStorage.removeAccountById(createdAccount.getId())) {
+            createdAccount = accountsStorage.createAccount();
+        }
+        if (createdAccount.getId() != accountId) {
+            throw new IllegalStateException("Journal record " + sequence + " creates account " + accountId +
+                    ", but storage created account " + createdAccount.getId());
+        }
+        return createdAccount;
+    }
+
+    private Account getAccount(long sequence, int accountId) {
+        return accountsStorage.getAccountById(accountId)
+                .orElseThrow(() -> new IllegalStateException("Journal record " + sequence +
+                        " refers to unknown account " + accountId));
+    }
+}
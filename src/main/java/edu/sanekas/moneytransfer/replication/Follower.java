@@ -0,0 +1,261 @@
+package edu.sanekas.moneytransfer.replication;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies the replication log of the primary to the storage, reconnecting whenever the connection is lost.
+ * Balances are mutated by {@link Account#replay}, so the storage of a follower is changed only by the primary
+ * and every account keeps sequence numbers of the primary.
+ * Every applied message is acknowledged, so the primary knows how far the follower is.
+ */
+public class Follower implements AutoCloseable {
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+
+    private final AccountsStorage accountsStorage;
+    private final InetSocketAddress primaryAddress;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ReplicationProtocol.MESSAGE_BUFFER_SIZE);
+    private final ByteBuffer ack = ByteBuffer.allocate(Long.BYTES);
+    private final Thread applier;
+    private final LongAdder failures = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile SocketChannel channel;
+    private volatile boolean connected;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long caughtUpTime = System.nanoTime();
+    private int nextAccountId;
+
+    /**
+     * Starts following from the first record, the primary sends a snapshot if it doesn't keep it anymore.
+     * Accounts already in the storage are overwritten by the snapshot.
+     */
+    public Follower(AccountsStorage accountsStorage, String primaryHost, int primaryPort) {
+        this.accountsStorage = accountsStorage;
+        this.primaryAddress = new InetSocketAddress(primaryHost, primaryPort);
+        this.nextAccountId = accountsStorage.getAllAccounts().mapToInt(Account::getId).max()
+                .orElse(accountsStorage.getFirstAccountId() - 1) + 1;
+        this.applier = new Thread(this::follow, "replication-follower");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * @return sequence number of the last applied record of the primary
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return the last sequence number of the primary known to the follower
+     */
+    public long getPrimarySequence() {
+        return primarySequence;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return connections to the primary which failed or were lost, each is followed by reconnection
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getLagRecords() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * @return 0 if the follower has applied every record the primary had when it sent the last message,
+     * otherwise milliseconds since the follower was caught up last time
+     */
+    public long getLagMillis() {
+        return connected && appliedSequence >= primarySequence
+                ? 0
+                : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - caughtUpTime);
+    }
+
+    /**
+     * Stops following, the storage is not changed after return. If the calling thread is interrupted,
+     * the applier is still awaited and the interrupt status is restored.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        final SocketChannel currentChannel = channel;
+        if (currentChannel != null) {
+            currentChannel.close();
+        }
+        ReplicationProtocol.joinUninterruptibly(applier);
+    }
+
+    private void follow() {
+        while (running) {
+            try (SocketChannel socketChannel = SocketChannel.open()) {
+                this.channel = socketChannel;
+                if (!running) {
+                    return;
+                }
+                socketChannel.connect(primaryAddress);
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connected = true;
+                acknowledge(appliedSequence);
+                while (running) {
+                    applyMessage();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    failures.increment();
+                }
+            } finally {
+                connected = false;
+                this.channel = null;
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void applyMessage() throws IOException {
+        ReplicationProtocol.readFully(channel, buffer.clear().limit(ReplicationProtocol.HEADER_SIZE));
+        final byte kind = buffer.get(0);
+        final long sequence = buffer.getLong(1);
+        final int count = buffer.getInt(9);
+        switch (kind) {
+            case ReplicationProtocol.RECORDS:
+                read(count, ReplicationProtocol.RECORD_SIZE);
+                for (int i = 0; i < count; ++i) {
+                    applyRecord(buffer.getLong(), buffer.get(), buffer.getInt(), buffer.getInt(), buffer.getLong());
+                }
+                this.primarySequence = sequence;
+                break;
+            case ReplicationProtocol.SNAPSHOT_ENTRIES:
+                read(count, ReplicationProtocol.ENTRY_SIZE);
+                for (int i = 0; i < count; ++i) {
+                    restoreAccount(buffer.getInt(), buffer.getLong(), buffer.getLong());
+                }
+                return;
+            case ReplicationProtocol.SNAPSHOT_END:
+                this.appliedSequence = sequence;
+                this.primarySequence = Math.max(primarySequence, sequence);
+                break;
+            default:
+                throw new IOException("Replication message has unknown kind " + kind);
+        }
+        if (appliedSequence >= primarySequence) {
+            this.caughtUpTime = System.nanoTime();
+        }
+        acknowledge(appliedSequence);
+    }
+
+    private void read(int count, int itemSize) throws IOException {
+        if (count < 0 || count > (buffer.capacity() - ReplicationProtocol.HEADER_SIZE) / itemSize) {
+            throw new IOException("Replication message has " + count + " items");
+        }
+        ReplicationProtocol.readFully(channel, buffer.limit(ReplicationProtocol.HEADER_SIZE + count * itemSize));
+        buffer.position(ReplicationProtocol.HEADER_SIZE);
+    }
+
+    private void acknowledge(long sequence) throws IOException {
+        ReplicationProtocol.writeFully(channel, ack.clear().putLong(sequence).flip());
+    }
+
+    /**
+     * Records of accounts which are removed by the time of a snapshot are skipped,
+     * the snapshot already includes their effect on other accounts
+     */
+    private void applyRecord(long sequence, byte type, int accountId, int counterpartyId, long amount) {
+        switch (type) {
+            case BalanceJournal.CREATE:
+                while (nextAccountId <= accountId) {
+                    createAccount();
+                }
+                break;
+            case BalanceJournal.CREATE_RANGE:
+                while (nextAccountId - (long) accountId < counterpartyId) {
+                    createAccount();
+                }
+                for (int i = 0; i < counterpartyId && amount > 0; ++i) {
+                    replay(sequence, accountId + i, amount);
+                }
+                break;
+            case BalanceJournal.DEBIT:
+                replay(sequence, accountId, amount);
+                break;
+            case BalanceJournal.WITHDRAW:
+            case BalanceJournal.TRANSFER_OUT:
+                replay(sequence, accountId, -amount);
+                break;
+            case BalanceJournal.TRANSFER_IN:
+            case BalanceJournal.TRANSFER_RETURN:
+                replay(sequence, accountId, amount);
+                break;
+            case BalanceJournal.TRANSFER:
+            case BalanceJournal.BATCH_TRANSFER:
+                replay(sequence, accountId, -amount);
+                replay(sequence, counterpartyId, amount);
+                break;
+            case BalanceJournal.REMOVE:
+                accountsStorage.removeAccountById(accountId);
+                break;
+            case BalanceJournal.BATCH:
+                break;
+            default:
+                throw new IllegalStateException("Replicated record " + sequence + " has unknown type " + type);
+        }
+        this.appliedSequence = sequence;
+    }
+
+    private void replay(long sequence, int accountId, long delta) {
+        final Optional<Account> account = accountsStorage.getAccountById(accountId);
+        if (account.isPresent()) {
+            account.get().replay(sequence, delta);
+        } else if (accountId >= nextAccountId) {
+            throw new IllegalStateException("Replicated record " + sequence + " refers to unknown account "
+                    + accountId);
+        }
+    }
+
+    private void restoreAccount(int accountId, long totalMoney, long sequence) {
+        while (nextAccountId <= accountId) {
+            createAccount();
+        }
+        final Optional<Account> account = accountsStorage.getAccountById(accountId);
+        if (account.isEmpty()) {
+            return;
+        }
+        if (sequence == ReplicationProtocol.REMOVED) {
+            account.get().restore(0, 0);
+            accountsStorage.removeAccountById(accountId);
+        } else {
+            account.get().restore(totalMoney, sequence);
+        }
+    }
+
+    private void createAccount() {
+        final int createdId = accountsStorage.createAccount().getId();
+        if (createdId != nextAccountId) {
+            throw new IllegalStateException("Replicated account " + nextAccountId + " is created with id "
+                    + createdId);
+        }
+        ++nextAccountId;
+    }
+}
@@ -0,0 +1,247 @@
+package edu.sanekas.moneytransfer.replication;
+
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.persistence.GroupCommitJournal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the latest balance mutations for followers in a ring of records of {@link GroupCommitJournal} format
+ * and passes them to the underlying journal.
+ * Records are numbered and passed to the journal under one lock, so the order of the log is the order of the journal
+ * and, as the journal, the order in which mutations of every account are applied. Sequence numbers of a durable
+ * journal are kept, so followers and the journal agree on them.
+ * Appends never wait for followers, a follower which falls behind by more than the capacity gets a snapshot.
+ * In semi-synchronous mode waiting for durability also waits until a follower acknowledges the record.
+ * Records appended before {@link #start} are only passed to the journal, e.g. while it is replayed.
+ */
+public class ReplicationLog implements BalanceJournal {
+    private static final int RECORD_SIZE = GroupCommitJournal.RECORD_SIZE;
+
+    private final BalanceJournal journal;
+    private final int capacity;
+    private final boolean isSemiSync;
+    private final long ackTimeoutNanos;
+    private final ByteBuffer ring;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasRecords = lock.newCondition();
+    private final ReentrantLock ackLock = new ReentrantLock();
+    private final Condition isAcked = ackLock.newCondition();
+
+    private volatile boolean started;
+    private long firstSequence;
+    private volatile long lastSequence;
+    private volatile long ackedSequence;
+    private volatile int followers;
+    private volatile long ackTimeouts;
+
+    /**
+     * @param capacity number of the latest records kept for followers
+     * @param isSemiSync waiting for durability also waits for an acknowledgement of a follower
+     * @param ackTimeout max time to wait for an acknowledgement, then the write completes without it
+     */
+    public ReplicationLog(BalanceJournal journal, int capacity, boolean isSemiSync, long ackTimeout, TimeUnit unit) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive");
+        }
+        this.journal = journal;
+        this.capacity = capacity;
+        this.isSemiSync = isSemiSync;
+        this.ackTimeoutNanos = unit.toNanos(ackTimeout);
+        this.ring = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, RECORD_SIZE));
+    }
+
+    /**
+     * Starts keeping records, the next one gets the sequence number after the given one
+     * @param sequence sequence number of the last record of the journal or the last record applied by a follower
+     */
+    public void start(long sequence) {
+        lock.lock();
+        try {
+            if (started) {
+                throw new IllegalStateException("Replication log is already started");
+            }
+            this.firstSequence = sequence + 1;
+            this.lastSequence = sequence;
+            this.ackedSequence = sequence;
+            this.started = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public long append(byte type, int accountId, int counterpartyId, long amount) {
+        if (!started) {
+            return journal.append(type, accountId, counterpartyId, amount);
+        }
+        lock.lock();
+        try {
+            final long journalSequence = journal.append(type, accountId, counterpartyId, amount);
+            putUnderLock(journalSequence == 0 ? lastSequence + 1 : journalSequence, type, accountId, counterpartyId,
+                    amount);
+            hasRecords.signalAll();
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records of the batch are put to the ring under one lock, so followers never get only a part of them
+     * from the primary which keeps running
+     */
+    @Override
+    public long appendBatch(int[] fromAccountIds, int[] toAccountIds, long[] amounts) {
+        if (!started) {
+            return journal.appendBatch(fromAccountIds, toAccountIds, amounts);
+        }
+        lock.lock();
+        try {
+            final long journalSequence = journal.appendBatch(fromAccountIds, toAccountIds, amounts);
+            long sequence = journalSequence == 0 ? lastSequence + 1 : journalSequence - fromAccountIds.length;
+            putUnderLock(sequence, BATCH, fromAccountIds[0], fromAccountIds.length, 0);
+            for (int i = 0; i < fromAccountIds.length; ++i) {
+                putUnderLock(++sequence, BATCH_TRANSFER, fromAccountIds[i], toAccountIds[i], amounts[i]);
+            }
+            hasRecords.signalAll();
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putUnderLock(long sequence, byte type, int accountId, int counterpartyId, long amount) {
+        final int position = (int) (sequence % capacity) * RECORD_SIZE;
+        ring.putLong(position, sequence)
+                .put(position + 8, type)
+                .putInt(position + 9, accountId)
+                .putInt(position + 13, counterpartyId)
+                .putLong(position + 17, amount);
+        this.lastSequence = sequence;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+        journal.awaitDurable(sequence);
+        if (!isSemiSync || ackedSequence >= sequence || followers == 0) {
+            return;
+        }
+        ackLock.lock();
+        try {
+            long timeLeft = ackTimeoutNanos;
+            while (ackedSequence < sequence && followers > 0) {
+                if (timeLeft <= 0) {
+                    ++ackTimeouts;
+                    return;
+                }
+                timeLeft = isAcked.awaitNanos(timeLeft);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            ackLock.unlock();
+        }
+    }
+
+    /**
+     * Copies records after the sequence number to the buffer as many as fit,
+     * waits for the next record up to the timeout if there are none
+     * @return false if records after the sequence number are not kept anymore, then the follower needs a snapshot
+     */
+    boolean read(long afterSequence, ByteBuffer buffer, long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            long timeLeft = unit.toNanos(timeout);
+            while (lastSequence == afterSequence && timeLeft > 0) {
+                timeLeft = hasRecords.awaitNanos(timeLeft);
+            }
+            final long last = lastSequence;
+            if (afterSequence + 1 < Math.max(firstSequence, last - capacity + 1) || afterSequence > last) {
+                return false;
+            }
+            long next = afterSequence + 1;
+            final long end = Math.min(last + 1, next + buffer.remaining() / RECORD_SIZE);
+            while (next < end) {
+                final int from = (int) (next % capacity);
+                final int records = (int) Math.min(end - next, capacity - from);
+                buffer.put(ring.duplicate().limit((from + records) * RECORD_SIZE).position(from * RECORD_SIZE));
+                next += records;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void addFollower() {
+        ackLock.lock();
+        try {
+            ++followers;
+        } finally {
+            ackLock.unlock();
+        }
+    }
+
+    void removeFollower() {
+        ackLock.lock();
+        try {
+            --followers;
+            isAcked.signalAll();
+        } finally {
+            ackLock.unlock();
+        }
+    }
+
+    /**
+     * Records up to the sequence number are applied by a follower
+     */
+    void acknowledge(long sequence) {
+        if (ackedSequence >= sequence) {
+            return;
+        }
+        ackLock.lock();
+        try {
+            if (ackedSequence < sequence) {
+                this.ackedSequence = sequence;
+                isAcked.signalAll();
+            }
+        } finally {
+            ackLock.unlock();
+        }
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the last sequence number applied by any follower
+     */
+    public long getAckedSequence() {
+        return ackedSequence;
+    }
+
+    public int getFollowers() {
+        return followers;
+    }
+
+    public boolean isSemiSync() {
+        return isSemiSync;
+    }
+
+    /**
+     * @return number of semi-synchronous writes which completed without an acknowledgement
+     */
+    public long getAckTimeouts() {
+        return ackTimeouts;
+    }
+}
@@ -0,0 +1,100 @@
+package edu.sanekas.moneytransfer.replication;
+
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.io.IOException;
+
+/**
+ * Replication role of the service: the primary streams its log to followers,
+ * a follower applies the log of the primary and serves reads until it is promoted to the primary.
+ */
+public class ReplicationNode implements AutoCloseable {
+    private final ReplicationLog log;
+    private final AccountsStorage accountsStorage;
+    private final int port;
+    private volatile Follower follower;
+    private volatile ReplicationServer server;
+
+    private ReplicationNode(ReplicationLog log, AccountsStorage accountsStorage, int port) {
+        this.log = log;
+        this.accountsStorage = accountsStorage;
+        this.port = port;
+    }
+
+    /**
+     * Starts the log after the last record of the journal and listens for followers on the port.
+     * Accounts created without a journal have no records, then the log starts after a missing record,
+     * so that followers get a snapshot of them first.
+     * @param log log which the storage appends to
+     */
+    public static ReplicationNode primary(ReplicationLog log, AccountsStorage accountsStorage, int port,
+                                          long lastSequence) throws IOException {
+        final ReplicationNode node = new ReplicationNode(log, accountsStorage, port);
+        final boolean hasAccountsWithoutRecords = lastSequence == 0
+                && accountsStorage.getAllAccounts().findAny().isPresent();
+        log.start(hasAccountsWithoutRecords ? 1 : lastSequence);
+        node.server = new ReplicationServer(log, accountsStorage, port);
+        return node;
+    }
+
+    /**
+     * Follows the primary, the port is used for followers after promotion
+     * @param log log which the storage appends to, it is started on promotion
+     */
+    public static ReplicationNode follower(ReplicationLog log, AccountsStorage accountsStorage, int port,
+                                           String primaryHost, int primaryPort) {
+        final ReplicationNode node = new ReplicationNode(log, accountsStorage, port);
+        node.follower = new Follower(accountsStorage, primaryHost, primaryPort);
+        return node;
+    }
+
+    /**
+     * Writes are rejected while the node follows the primary
+     */
+    public boolean isFollowing() {
+        return follower != null;
+    }
+
+    /**
+     * @return follower or null if the node is the primary
+     */
+    public Follower getFollower() {
+        return follower;
+    }
+
+    public ReplicationLog getLog() {
+        return log;
+    }
+
+    /**
+     * @return server for followers or null if the node follows the primary
+     */
+    public ReplicationServer getServer() {
+        return server;
+    }
+
+    /**
+     * Stops following and makes the node the primary, which continues the log after the last applied record
+     * @throws IllegalStateException if the node is already the primary
+     */
+    public synchronized void promote() throws IOException {
+        final Follower currentFollower = follower;
+        if (currentFollower == null) {
+            throw new IllegalStateException("Node is already the primary");
+        }
+        currentFollower.close();
+        log.start(currentFollower.getAppliedSequence());
+        this.server = new ReplicationServer(log, accountsStorage, port);
+        this.follower = null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (follower != null) {
+            follower.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package edu.sanekas.moneytransfer.replication;
+
+import edu.sanekas.moneytransfer.persistence.GroupCommitJournal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Binary protocol between the primary and a follower, all numbers are big-endian.
+ * The follower connects and sends the sequence number of the last record it has applied (8 bytes),
+ * then acknowledges every applied message with the sequence number of its last record (8 bytes).
+ * The primary sends messages: kind (1 byte), sequence number (8 bytes), count (4 bytes) and count items:
+ * <ul>
+ * <li>{@link #RECORDS}: the last sequence number of the primary and journal records after the last sent one,
+ * no records is a heartbeat</li>
+ * <li>{@link #SNAPSHOT_ENTRIES}: sequence number of the snapshot and entries of accounts in ascending order of ids:
+ * id (4 bytes), balance (8 bytes), last applied sequence number or {@link #REMOVED} (8 bytes)</li>
+ * <li>{@link #SNAPSHOT_END}: sequence number of the snapshot, records after it follow</li>
+ * </ul>
+ * Snapshot is taken while the primary keeps running, as {@link edu.sanekas.moneytransfer.persistence.BalanceSnapshot},
+ * so the follower applies a record after the snapshot sequence number only to accounts whose entry doesn't cover it.
+ */
+final class ReplicationProtocol {
+    static final byte RECORDS = 1;
+    static final byte SNAPSHOT_ENTRIES = 2;
+    static final byte SNAPSHOT_END = 3;
+
+    static final int HEADER_SIZE = 13;
+    static final int RECORD_SIZE = GroupCommitJournal.RECORD_SIZE;
+    static final int ENTRY_SIZE = 20;
+    static final long REMOVED = -1;
+
+    static final int MAX_MESSAGE_RECORDS = 4096;
+    static final int MESSAGE_BUFFER_SIZE = HEADER_SIZE + MAX_MESSAGE_RECORDS * RECORD_SIZE;
+    static final long HEARTBEAT_MILLIS = 100;
+
+    private ReplicationProtocol() {}
+
+    static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Replication connection is closed");
+            }
+        }
+    }
+
+    /**
+     * Waits for the thread to finish even if the calling thread is interrupted, then restores its interrupt status
+     */
+    static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
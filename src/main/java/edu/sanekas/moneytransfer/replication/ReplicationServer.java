@@ -0,0 +1,255 @@
+package edu.sanekas.moneytransfer.replication;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceVisitor;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams the replication log of the primary to followers over TCP.
+ * Every follower is served by a sender thread, which writes records as soon as they are appended,
+ * and by a thread reading its acknowledgements.
+ * Lost followers are counted, a follower reconnects by itself.
+ */
+public class ReplicationServer implements AutoCloseable {
+    private final ReplicationLog log;
+    private final AccountsStorage accountsStorage;
+    private final ServerSocketChannel serverChannel;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private final LongAdder failedAccepts = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder sentSnapshots = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Listens on the port of localhost, the log should be started
+     */
+    public ReplicationServer(ReplicationLog log, AccountsStorage accountsStorage, int port) throws IOException {
+        if (!log.isStarted()) {
+            throw new IllegalStateException("Replication log is not started");
+        }
+        this.log = log;
+        this.accountsStorage = accountsStorage;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress("localhost", port));
+        this.acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @return the last sequence numbers acknowledged by connected followers
+     */
+    public long[] getAckedSequences() {
+        return sessions.stream().mapToLong(session -> session.ackedSequence).toArray();
+    }
+
+    /**
+     * @return connections of followers which failed before their sessions started
+     */
+    public long getFailedAccepts() {
+        return failedAccepts.sum();
+    }
+
+    /**
+     * @return sessions of followers which ended with an error while the server was running
+     */
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    /**
+     * @return snapshots sent to followers which were behind the records kept by the log
+     */
+    public long getSentSnapshots() {
+        return sentSnapshots.sum();
+    }
+
+    /**
+     * Stops accepting followers and disconnects connected ones. If the calling thread is interrupted,
+     * the acceptor is still awaited and the interrupt status is restored.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        ReplicationProtocol.joinUninterruptibly(acceptor);
+        for (Session session : sessions) {
+            session.close();
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                final SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                final Session session = new Session(channel);
+                sessions.add(session);
+                session.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                failedAccepts.increment();
+            }
+        }
+    }
+
+    private class Session {
+        private final SocketChannel channel;
+        private final String name;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(ReplicationProtocol.MESSAGE_BUFFER_SIZE);
+        private volatile long ackedSequence;
+
+        Session(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.name = String.valueOf(channel.getRemoteAddress());
+        }
+
+        void start() {
+            log.addFollower();
+            final Thread sender = new Thread(this::send, "replication-sender-" + name);
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                /**
+                 * The follower is disconnected anyway
+                 */
+            }
+        }
+
+        private void send() {
+            try {
+                final ByteBuffer hello = ByteBuffer.allocate(Long.BYTES);
+                ReplicationProtocol.readFully(channel, hello);
+                long sentSequence = hello.flip().getLong();
+                this.ackedSequence = sentSequence;
+                final Thread ackReader = new Thread(this::readAcks, "replication-acks-" + name);
+                ackReader.setDaemon(true);
+                ackReader.start();
+                while (running) {
+                    buffer.clear().position(ReplicationProtocol.HEADER_SIZE);
+                    if (!log.read(sentSequence, buffer, ReplicationProtocol.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        sentSequence = sendSnapshot();
+                        continue;
+                    }
+                    final int records = (buffer.position() - ReplicationProtocol.HEADER_SIZE)
+                            / ReplicationProtocol.RECORD_SIZE;
+                    sentSequence += records;
+                    buffer.put(0, ReplicationProtocol.RECORDS)
+                            .putLong(1, Math.max(log.getLastSequence(), sentSequence))
+                            .putInt(9, records)
+                            .flip();
+                    ReplicationProtocol.writeFully(channel, buffer);
+                }
+            } catch (IOException | UncheckedIOException e) {
+                if (running) {
+                    disconnects.increment();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+                sessions.remove(this);
+                log.removeFollower();
+            }
+        }
+
+        /**
+         * Sends balances of all accounts, records up to the returned sequence number are included
+         */
+        private long sendSnapshot() throws IOException {
+            final long snapshotSequence = log.getLastSequence();
+            final EntriesWriter entriesWriter = new EntriesWriter(snapshotSequence);
+            accountsStorage.getAllAccounts().forEachOrdered(account -> account.visitBalance(entriesWriter));
+            entriesWriter.flush();
+            final int accountsCount = entriesWriter.nextAccountId - accountsStorage.getFirstAccountId();
+            buffer.clear();
+            buffer.put(ReplicationProtocol.SNAPSHOT_END).putLong(snapshotSequence).putInt(accountsCount).flip();
+            ReplicationProtocol.writeFully(channel, buffer);
+            sentSnapshots.increment();
+            return snapshotSequence;
+        }
+
+        private void readAcks() {
+            final ByteBuffer ack = ByteBuffer.allocate(Long.BYTES);
+            try {
+                while (running) {
+                    ReplicationProtocol.readFully(channel, ack.clear());
+                    final long sequence = ack.flip().getLong();
+                    this.ackedSequence = sequence;
+                    log.acknowledge(sequence);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Accounts are visited in ascending order of ids, so skipped ids are ids of removed accounts
+         */
+        private class EntriesWriter implements BalanceVisitor {
+            private final long snapshotSequence;
+            private int nextAccountId = accountsStorage.getFirstAccountId();
+
+            EntriesWriter(long snapshotSequence) {
+                this.snapshotSequence = snapshotSequence;
+                buffer.clear().position(ReplicationProtocol.HEADER_SIZE);
+            }
+
+            @Override
+            public void visit(Account account, long totalMoney, long journalSequence) {
+                for (int removedId = nextAccountId; removedId < account.getId(); ++removedId) {
+                    putEntry(removedId, 0, ReplicationProtocol.REMOVED);
+                }
+                putEntry(account.getId(), totalMoney, journalSequence);
+                nextAccountId = account.getId() + 1;
+            }
+
+            private void putEntry(int accountId, long totalMoney, long journalSequence) {
+                if (buffer.remaining() < ReplicationProtocol.ENTRY_SIZE) {
+                    flush();
+                }
+                buffer.putInt(accountId).putLong(totalMoney).putLong(journalSequence);
+            }
+
+            void flush() {
+                final int entries = (buffer.position() - ReplicationProtocol.HEADER_SIZE)
+                        / ReplicationProtocol.ENTRY_SIZE;
+                buffer.put(0, ReplicationProtocol.SNAPSHOT_ENTRIES)
+                        .putLong(1, snapshotSequence)
+                        .putInt(9, entries)
+                        .flip();
+                try {
+                    ReplicationProtocol.writeFully(channel, buffer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                buffer.clear().position(ReplicationProtocol.HEADER_SIZE);
+            }
+        }
+    }
+}
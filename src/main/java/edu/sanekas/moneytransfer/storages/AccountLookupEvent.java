@@ -0,0 +1,21 @@
+package edu.sanekas.moneytransfer.storages;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("edu.sanekas.moneytransfer.AccountLookup")
+@Label("Account Lookup")
+@Description("Lookup of an account by id, emitted only if it takes longer than the threshold")
+@Category({"Money Transfer", "Accounts"})
+@Threshold("1 ms")
+class AccountLookupEvent extends Event {
+    @Label("Account Id")
+    int accountId;
+
+    @Label("Found")
+    boolean found;
+}
@@ -14,7 +14,15 @@ public class AccountsManager implements AccountsStorage {
 
     @Override
     public Optional<Account> getAccountById(int accountId) {
-        return accountsStorage.getAccountById(accountId);
+        final AccountLookupEvent event = new AccountLookupEvent();
+        event.begin();
+        final Optional<Account> account = accountsStorage.getAccountById(accountId);
+        if (event.shouldCommit()) {
+            event.accountId = accountId;
+            event.found = account.isPresent();
+            event.commit();
+        }
+        return account;
     }
 
     @Override
@@ -22,6 +30,11 @@ public class AccountsManager implements AccountsStorage {
         return accountsStorage.createAccount();
     }
 
+    @Override
+    public int createAccounts(int count, long initialBalance) {
+        return accountsStorage.createAccounts(count, initialBalance);
+    }
+
     @Override
     public boolean removeAccountById(int accountId) {
         return accountsStorage.removeAccountById(accountId);
@@ -31,4 +44,14 @@ public class AccountsManager implements AccountsStorage {
     public Stream<Account> getAllAccounts() {
         return accountsStorage.getAllAccounts();
     }
+
+    @Override
+    public Stream<Account> getAccountsFrom(int fromAccountId) {
+        return accountsStorage.getAccountsFrom(fromAccountId);
+    }
+
+    @Override
+    public int getFirstAccountId() {
+        return accountsStorage.getFirstAccountId();
+    }
 }
@@ -22,6 +22,27 @@ public interface AccountsStorage {
      */
     Account createAccount();
 
+    /**
+     * Creates accounts with sequential ids in one step, every account becomes visible with its initial balance
+     * @param count number of accounts, either all or none of them are created
+     * @param initialBalance money debited to every new account, 0 for empty accounts
+     * @return id of the first created account
+     */
+    int createAccounts(int count, long initialBalance);
+
+    /**
+     * Checks arguments of {@link #createAccounts}
+     * @throws IllegalArgumentException if count is not positive or balance is negative
+     */
+    static void checkCreatedAccounts(int count, long initialBalance) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Count of accounts should be positive");
+        }
+        if (initialBalance < 0) {
+            throw new IllegalArgumentException("Initial balance should not be negative");
+        }
+    }
+
     /**
      * @param accountId
      * @return true if account is found and successfully deleted, else - false
@@ -32,4 +53,19 @@ public interface AccountsStorage {
      * @return stream with all accounts
      */
     Stream<Account> getAllAccounts();
+
+    /**
+     * Accounts are not collected, so the stream may be read while accounts are created and removed
+     * @return stream of accounts with ids from the given one in ascending order of ids
+     */
+    default Stream<Account> getAccountsFrom(int fromAccountId) {
+        return getAllAccounts().filter(account -> account.getId() >= fromAccountId);
+    }
+
+    /**
+     * @return id of the first created account, the next ones get sequential ids
+     */
+    default int getFirstAccountId() {
+        return 0;
+    }
 }
@@ -1,7 +1,9 @@
 package edu.sanekas.moneytransfer.storages;
 
 import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -13,7 +15,23 @@ import java.util.stream.Stream;
  */
 public class AppendableInMemoryAccountsStorage implements AccountsStorage {
 
-    private final List<Account> accounts = new CopyOnWriteArrayList<>();
+    private final List<Account> accounts;
+
+    public AppendableInMemoryAccountsStorage() {
+        this.accounts = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Creates storage which already contains accounts with ids from 0 until initialAccounts.
+     * Used by benchmarks, because filling the storage account by account is quadratic.
+     */
+    AppendableInMemoryAccountsStorage(int initialAccounts) {
+        final List<Account> initial = new ArrayList<>(initialAccounts);
+        for (int i = 0; i < initialAccounts; ++i) {
+            initial.add(new Account(i));
+        }
+        this.accounts = new CopyOnWriteArrayList<>(initial);
+    }
 
     @Override
     public Optional<Account> getAccountById(int accountId) {
@@ -35,6 +53,23 @@ public class AppendableInMemoryAccountsStorage implements AccountsStorage {
         }
     }
 
+    /**
+     * Accounts are appended by one copy of the list
+     */
+    @Override
+    public int createAccounts(int count, long initialBalance) {
+        AccountsStorage.checkCreatedAccounts(count, initialBalance);
+        synchronized (accounts) {
+            final int firstAccountId = accounts.size();
+            final List<Account> newAccounts = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                newAccounts.add(new Account(firstAccountId + i, NoOpBalanceJournal.S, initialBalance, 0));
+            }
+            accounts.addAll(newAccounts);
+            return firstAccountId;
+        }
+    }
+
     @Override
     public boolean removeAccountById(int accountId) {
         throw new UnsupportedOperationException("Storage is just appendable");
@@ -0,0 +1,222 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open-addressing map from non-negative int keys to accounts with linear probing.
+ * Reads are lock-free, writes must be serialized by the caller. A key may be put only once.
+ * Removal leaves a tombstone: the key stays in its slot, so probing goes on past it, and the value is cleared.
+ * Tombstones are dropped when the table is rebuilt. Rebuilding is incremental: live entries are moved
+ * from the old table to the new one by steps of {@link #MIGRATION_STEP} slots, readers look up the new table
+ * and then the old one until the migration ends.
+ */
+class IntAccountMap {
+    private static final int EMPTY = 0;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    /**
+     * Table is rebuilt when more than 3/4 of its slots hold keys, including tombstones
+     */
+    private static final int MAX_LOAD_PERCENT = 75;
+    static final int MIGRATION_STEP = 4096;
+
+    private volatile Table table;
+    /**
+     * Table whose entries are being moved to the current table, or null
+     */
+    private volatile Table migratingTable;
+    private int migratedSlots;
+    private int size;
+
+    IntAccountMap() {
+        this.table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * @return account or null if the key is not found or removed
+     */
+    Account get(int key) {
+        final Table currentTable = table;
+        final Table oldTable = migratingTable;
+        final Account account = currentTable.get(key);
+        return account != null || oldTable == null ? account : oldTable.get(key);
+    }
+
+    /**
+     * Puts account with the key that has never been put before, makes a migration step if it is in progress
+     */
+    void put(int key, Account account) {
+        migrateStep();
+        if (table.isFull(1)) {
+            finishMigration();
+            startMigration();
+            migrateStep();
+        }
+        table.insert(key, account);
+        ++size;
+    }
+
+    /**
+     * @return removed account or null if the key is not found
+     */
+    Account remove(int key) {
+        final Account removed = table.remove(key);
+        final Table oldTable = migratingTable;
+        final Account removedFromOldTable = oldTable == null ? null : oldTable.remove(key);
+        if (removed != null || removedFromOldTable != null) {
+            --size;
+            return removed != null ? removed : removedFromOldTable;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Starts rebuilding the table without tombstones if they take more slots than live entries,
+     * otherwise continues the migration in progress.
+     * @return true if a migration is still in progress
+     */
+    boolean compactStep() {
+        if (migratingTable == null) {
+            if (table.getUsedSlots() - size <= Math.max(size, MIN_CAPACITY)) {
+                return false;
+            }
+            startMigration();
+        }
+        migrateStep();
+        return migratingTable != null;
+    }
+
+    private void startMigration() {
+        final Table oldTable = table;
+        migratingTable = oldTable;
+        migratedSlots = 0;
+        table = new Table(capacityFor(size));
+    }
+
+    private void migrateStep() {
+        final Table oldTable = migratingTable;
+        if (oldTable == null) {
+            return;
+        }
+        final int toSlot = Math.min(oldTable.capacity(), migratedSlots + MIGRATION_STEP);
+        for (int slot = migratedSlots; slot < toSlot; ++slot) {
+            oldTable.moveTo(slot, table);
+        }
+        migratedSlots = toSlot;
+        if (toSlot == oldTable.capacity()) {
+            migratingTable = null;
+        }
+    }
+
+    private void finishMigration() {
+        while (migratingTable != null) {
+            migrateStep();
+        }
+    }
+
+    /**
+     * @return capacity holding the entries at a quarter to a half of its slots
+     */
+    private static int capacityFor(int entries) {
+        final long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, (long) entries * 2 - 1)) << 1);
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Map is full");
+        }
+        return (int) capacity;
+    }
+
+    private static class Table {
+        /**
+         * Key + 1, so a fresh array contains only empty slots
+         */
+        private final AtomicIntegerArray keys;
+        /**
+         * Null for a tombstone
+         */
+        private final AtomicReferenceArray<Account> values;
+        private final int shift;
+        private final int mask;
+        private int usedSlots;
+
+        Table(int capacity) {
+            this.keys = new AtomicIntegerArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+            this.mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        int getUsedSlots() {
+            return usedSlots;
+        }
+
+        boolean isFull(int newEntries) {
+            return (long) (usedSlots + newEntries) * 100 > (long) capacity() * MAX_LOAD_PERCENT;
+        }
+
+        Account get(int key) {
+            final int storedKey = key + 1;
+            for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+                final int slotKey = keys.get(slot);
+                if (slotKey == storedKey) {
+                    return values.get(slot);
+                }
+                if (slotKey == EMPTY) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * The value is published before the key, so a reader finding the key finds the account too
+         */
+        void insert(int key, Account account) {
+            int slot = slotOf(key);
+            while (keys.get(slot) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            values.set(slot, account);
+            keys.set(slot, key + 1);
+            ++usedSlots;
+        }
+
+        Account remove(int key) {
+            final int storedKey = key + 1;
+            for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+                final int slotKey = keys.get(slot);
+                if (slotKey == storedKey) {
+                    final Account removed = values.get(slot);
+                    values.set(slot, null);
+                    return removed;
+                }
+                if (slotKey == EMPTY) {
+                    return null;
+                }
+            }
+        }
+
+        void moveTo(int slot, Table table) {
+            final Account account = values.get(slot);
+            if (account != null) {
+                table.insert(keys.get(slot) - 1, account);
+            }
+        }
+
+        /**
+         * Fibonacci hashing, so that ids removed by a regular pattern don't gather into a few clusters
+         */
+        private int slotOf(int key) {
+            return (key * 0x9E3779B9) >>> shift;
+        }
+    }
+}
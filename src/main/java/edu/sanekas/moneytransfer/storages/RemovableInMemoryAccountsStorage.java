@@ -0,0 +1,181 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * In memory storage for accounts which supports removal, built on an open-addressing map from account id.
+ * Ids are sequential and never reused. Reads are lock-free, creation and removal are serialized.
+ * Only accounts with zero balance are removed, they are closed so money can't be moved to them afterwards.
+ * Slots of removed accounts are reclaimed by a background thread rebuilding the map step by step,
+ * each step holds the lock of writers for a bounded time.
+ */
+public class RemovableInMemoryAccountsStorage implements AccountsStorage, AutoCloseable {
+    private static final long COMPACTION_INTERVAL_MILLIS = 100;
+
+    private final IntAccountMap accounts = new IntAccountMap();
+    private final Object writeLock = new Object();
+    private final BalanceJournal journal;
+    private final int firstAccountId;
+    private final int maxAccountId;
+    private final ScheduledExecutorService compactionScheduler;
+    /**
+     * Id of the next created account.
+     * Written after the account is stored, so every account below it is visible.
+     */
+    private volatile int nextId;
+
+    public RemovableInMemoryAccountsStorage() {
+        this(NoOpBalanceJournal.S);
+    }
+
+    /**
+     * @param journal journal of created and removed accounts, also used by them for their balance mutations
+     */
+    public RemovableInMemoryAccountsStorage(BalanceJournal journal) {
+        this(journal, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param journal journal of created and removed accounts, also used by them for their balance mutations
+     * @param firstAccountId id of the first account, e.g. the first id of the partition of a cluster node
+     * @param maxAccounts storage is full when so many accounts are created, including removed ones
+     */
+    public RemovableInMemoryAccountsStorage(BalanceJournal journal, int firstAccountId, int maxAccounts) {
+        if (firstAccountId < 0 || maxAccounts < 0 || maxAccounts > Integer.MAX_VALUE - firstAccountId) {
+            throw new IllegalArgumentException("Account ids should be from 0 to " + Integer.MAX_VALUE);
+        }
+        this.journal = journal;
+        this.firstAccountId = firstAccountId;
+        this.maxAccountId = firstAccountId + maxAccounts;
+        this.nextId = firstAccountId;
+        this.compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "accounts-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionScheduler.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL_MILLIS,
+                COMPACTION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Optional<Account> getAccountById(int accountId) {
+        return accountId < 0 ? Optional.empty() : Optional.ofNullable(accounts.get(accountId));
+    }
+
+    /**
+     * Returns when creation of the account is durable in the journal
+     */
+    @Override
+    public Account createAccount() {
+        final Account newAccount;
+        final long sequence;
+        synchronized (writeLock) {
+            final int newAccountId = nextId;
+            if (newAccountId == maxAccountId) {
+                throw new IllegalStateException("Storage is full");
+            }
+            newAccount = new Account(newAccountId, journal);
+            accounts.put(newAccountId, newAccount);
+            sequence = journal.append(BalanceJournal.CREATE, newAccountId, newAccountId, 0);
+            nextId = newAccountId + 1;
+        }
+        journal.awaitDurable(sequence);
+        return newAccount;
+    }
+
+    /**
+     * Accounts are journaled by one {@link BalanceJournal#CREATE_RANGE} record before any of them is stored,
+     * returns when the record is durable in the journal
+     */
+    @Override
+    public int createAccounts(int count, long initialBalance) {
+        AccountsStorage.checkCreatedAccounts(count, initialBalance);
+        final int firstAccountId;
+        final long sequence;
+        synchronized (writeLock) {
+            firstAccountId = nextId;
+            if (count > maxAccountId - firstAccountId) {
+                throw new IllegalStateException("Storage is full");
+            }
+            sequence = journal.append(BalanceJournal.CREATE_RANGE, firstAccountId, count, initialBalance);
+            for (int newAccountId = firstAccountId; newAccountId < firstAccountId + count; ++newAccountId) {
+                accounts.put(newAccountId, new Account(newAccountId, journal, initialBalance, sequence));
+            }
+            nextId = firstAccountId + count;
+        }
+        journal.awaitDurable(sequence);
+        return firstAccountId;
+    }
+
+    /**
+     * Removes the account if its balance is zero, returns when the removal is durable in the journal
+     * @return true if account is found and removed, false if it is not found or its balance is not zero
+     */
+    @Override
+    public boolean removeAccountById(int accountId) {
+        final long sequence;
+        synchronized (writeLock) {
+            final Account account = accountId < 0 ? null : accounts.get(accountId);
+            if (account == null || !account.closeIfEmpty()) {
+                return false;
+            }
+            accounts.remove(accountId);
+            sequence = journal.append(BalanceJournal.REMOVE, accountId, accountId, 0);
+        }
+        journal.awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * @return stream of accounts in ascending order of ids
+     */
+    @Override
+    public Stream<Account> getAllAccounts() {
+        return IntStream.range(firstAccountId, nextId).mapToObj(accounts::get).filter(Objects::nonNull);
+    }
+
+    @Override
+    public Stream<Account> getAccountsFrom(int fromAccountId) {
+        return IntStream.range(Math.max(firstAccountId, fromAccountId), nextId).mapToObj(accounts::get)
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public int getFirstAccountId() {
+        return firstAccountId;
+    }
+
+    public int size() {
+        synchronized (writeLock) {
+            return accounts.size();
+        }
+    }
+
+    /**
+     * Rebuilds the map without slots of removed accounts if they take too much of it, releasing the lock
+     * between steps
+     */
+    void compact() {
+        boolean isMigrating = true;
+        while (isMigrating) {
+            synchronized (writeLock) {
+                isMigrating = accounts.compactStep();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        compactionScheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,150 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Appendable in memory storage for accounts built on fixed-size segments indexed directly by account id
+ * counted from the first one.
+ * Appending never copies already stored accounts, reads are lock-free.
+ * Removement account by unique identifier is not supported.
+ */
+public class SegmentedInMemoryAccountsStorage implements AccountsStorage {
+    private static final int SEGMENT_SHIFT = 14;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int MAX_SEGMENTS = (Integer.MAX_VALUE >>> SEGMENT_SHIFT) + 1;
+
+    private final Account[][] segments = new Account[MAX_SEGMENTS][];
+    private final Object appendLock = new Object();
+    private final BalanceJournal journal;
+    private final int firstAccountId;
+    private final int maxAccounts;
+    /**
+     * Number of published accounts.
+     * Written after the account is stored, so reading it first makes every slot below it visible.
+     */
+    private volatile int size;
+
+    public SegmentedInMemoryAccountsStorage() {
+        this(NoOpBalanceJournal.S);
+    }
+
+    /**
+     * @param journal journal of created accounts, also used by them for their balance mutations
+     */
+    public SegmentedInMemoryAccountsStorage(BalanceJournal journal) {
+        this(journal, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param journal journal of created accounts, also used by them for their balance mutations
+     * @param firstAccountId id of the first account, e.g. the first id of the partition of a cluster node
+     * @param maxAccounts storage is full when it has so many accounts
+     */
+    public SegmentedInMemoryAccountsStorage(BalanceJournal journal, int firstAccountId, int maxAccounts) {
+        if (firstAccountId < 0 || maxAccounts < 0 || maxAccounts > Integer.MAX_VALUE - firstAccountId) {
+            throw new IllegalArgumentException("Account ids should be from 0 to " + Integer.MAX_VALUE);
+        }
+        this.journal = journal;
+        this.firstAccountId = firstAccountId;
+        this.maxAccounts = maxAccounts;
+    }
+
+    @Override
+    public Optional<Account> getAccountById(int accountId) {
+        final int index = accountId - firstAccountId;
+        if (accountId < firstAccountId || index >= size) {
+            return Optional.empty();
+        } else {
+            return Optional.of(accountAt(index));
+        }
+    }
+
+    /**
+     * Returns when creation of the account is durable in the journal
+     */
+    @Override
+    public Account createAccount() {
+        final Account newAccount;
+        final long sequence;
+        synchronized (appendLock) {
+            final int index = size;
+            if (index == maxAccounts) {
+                throw new IllegalStateException("Storage is full");
+            }
+            Account[] segment = segments[index >>> SEGMENT_SHIFT];
+            if (segment == null) {
+                segment = new Account[SEGMENT_SIZE];
+                segments[index >>> SEGMENT_SHIFT] = segment;
+            }
+            final int newAccountId = firstAccountId + index;
+            newAccount = new Account(newAccountId, journal);
+            segment[index & SEGMENT_MASK] = newAccount;
+            sequence = journal.append(BalanceJournal.CREATE, newAccountId, newAccountId, 0);
+            size = index + 1;
+        }
+        journal.awaitDurable(sequence);
+        return newAccount;
+    }
+
+    /**
+     * Accounts are journaled by one {@link BalanceJournal#CREATE_RANGE} record before any of them is stored,
+     * then published together by one write of the size. Returns when the record is durable in the journal.
+     */
+    @Override
+    public int createAccounts(int count, long initialBalance) {
+        AccountsStorage.checkCreatedAccounts(count, initialBalance);
+        final int firstIndex;
+        final long sequence;
+        synchronized (appendLock) {
+            firstIndex = size;
+            if (count > maxAccounts - firstIndex) {
+                throw new IllegalStateException("Storage is full");
+            }
+            sequence = journal.append(BalanceJournal.CREATE_RANGE, firstAccountId + firstIndex, count,
+                    initialBalance);
+            for (int index = firstIndex; index < firstIndex + count; ++index) {
+                Account[] segment = segments[index >>> SEGMENT_SHIFT];
+                if (segment == null) {
+                    segment = new Account[SEGMENT_SIZE];
+                    segments[index >>> SEGMENT_SHIFT] = segment;
+                }
+                segment[index & SEGMENT_MASK] = new Account(firstAccountId + index, journal, initialBalance,
+                        sequence);
+            }
+            size = firstIndex + count;
+        }
+        journal.awaitDurable(sequence);
+        return firstAccountId + firstIndex;
+    }
+
+    @Override
+    public boolean removeAccountById(int accountId) {
+        throw new UnsupportedOperationException("Storage is just appendable");
+    }
+
+    @Override
+    public Stream<Account> getAllAccounts() {
+        return IntStream.range(0, size).mapToObj(this::accountAt);
+    }
+
+    @Override
+    public Stream<Account> getAccountsFrom(int fromAccountId) {
+        return IntStream.range(Math.max(0, fromAccountId - firstAccountId), size).mapToObj(this::accountAt);
+    }
+
+    @Override
+    public int getFirstAccountId() {
+        return firstAccountId;
+    }
+
+    private Account accountAt(int index) {
+        return segments[index >>> SEGMENT_SHIFT][index & SEGMENT_MASK];
+    }
+}
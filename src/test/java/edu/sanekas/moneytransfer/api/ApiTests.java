@@ -1,7 +1,20 @@
 package edu.sanekas.moneytransfer.api;
 
+import edu.sanekas.moneytransfer.api.misc.AccountResponseCache;
+import edu.sanekas.moneytransfer.api.misc.ContentNegotiation;
+import edu.sanekas.moneytransfer.api.misc.DispatchingHandler;
+import edu.sanekas.moneytransfer.api.misc.IdempotencyCache;
+import edu.sanekas.moneytransfer.api.misc.IdempotentHandler;
+import edu.sanekas.moneytransfer.api.misc.InstrumentedHandler;
+import edu.sanekas.moneytransfer.api.misc.TransferLegsParser;
+import edu.sanekas.moneytransfer.ledger.Ledger;
+import edu.sanekas.moneytransfer.ledger.LedgerJournal;
+import edu.sanekas.moneytransfer.metrics.Metrics;
 import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BinaryAccountSerializer;
 import edu.sanekas.moneytransfer.model.JsonAccountSerializer;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.model.Transaction;
 import edu.sanekas.moneytransfer.storages.AccountsManager;
 import edu.sanekas.moneytransfer.storages.AccountsStorage;
 import io.undertow.Handlers;
@@ -22,7 +35,12 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class ApiTests {
@@ -35,13 +53,29 @@ public class ApiTests {
     private static final FinanceOperationsController financeOperationsController =
             new FinanceOperationsController(JsonAccountSerializer.S, accountsManager);
 
+    private static final Ledger ledger = new Ledger();
+
+    private static final Executor WORKER_POOL = DispatchingHandler.workerPool(4, 16);
+
     private static final RoutingHandler handler = Handlers.routing()
-            .get(AccountsController.GET_ACCOUNT_BY_ID, accountsController::getAccountById)
+            .get(AccountsController.GET_ACCOUNT_BY_ID,
+                    InstrumentedHandler.of(AccountsController.GET_ACCOUNT_BY_ID, accountsController::getAccountById))
             .post(AccountsController.POST_CREATE_ACCOUNT, accountsController::createAccount)
+            .delete(AccountsController.DELETE_ACCOUNT, accountsController::deleteAccount)
+            .get(AccountsController.GET_ALL_ACCOUNTS, accountsController::getAllAccounts)
+            .post(AccountsController.POST_CREATE_ACCOUNTS, accountsController::createAccounts)
             .put(FinanceOperationsController.PUT_DEBIT_TO_ACCOUNT, financeOperationsController::debitToAccount)
             .put(FinanceOperationsController.PUT_WITHDRAW_FROM_ACCOUNT,
                     financeOperationsController::withdrawFromAccount)
-            .post(FinanceOperationsController.POST_TRANSFER, financeOperationsController::makeTransfer);
+            .post(FinanceOperationsController.POST_TRANSFER, DispatchingHandler.of(WORKER_POOL, new IdempotentHandler(
+                    new IdempotencyCache(100, 1, TimeUnit.HOURS), financeOperationsController::makeTransfer)))
+            .post(FinanceOperationsController.POST_BATCH_TRANSFER,
+                    DispatchingHandler.of(WORKER_POOL, financeOperationsController::makeBatchTransfer))
+            .get(MetricsController.GET_METRICS, new MetricsController(Metrics.S)::getMetrics)
+            .get(AuditController.GET_BALANCES,
+                    DispatchingHandler.of(WORKER_POOL, new AuditController(accountsManager)::getBalances))
+            .get(LedgerController.GET_ACCOUNT_TRANSACTIONS,
+                    new LedgerController(accountsManager, ledger)::getAccountTransactions);
 
     private static Undertow undertow = Undertow.builder()
             .addHttpListener(8080, "localhost")
@@ -68,6 +102,35 @@ public class ApiTests {
         Assert.assertEquals("Got invalid account", res, resp.body());
     }
 
+    @Test
+    public void testCreateAccountsInBulk() throws IOException, InterruptedException {
+        Mockito.when(accountsStorage.createAccounts(3, 50)).thenReturn(100);
+        Mockito.when(accountsStorage.getAccountsFrom(100)).thenAnswer(invocation -> IntStream.range(100, 104)
+                .mapToObj(id -> {
+                    final Account account = new Account(id);
+                    account.debit(50);
+                    return account;
+                }));
+        final HttpResponse<String> resp = sendCreateAccounts("?count=3&balance=50");
+        Assert.assertEquals(StatusCodes.CREATED, resp.statusCode());
+        Assert.assertEquals(Optional.of(ContentNegotiation.NDJSON), resp.headers().firstValue("Content-Type"));
+        Assert.assertEquals("Only created accounts should be returned", "{\"id\":100,\"totalMoney\":50}\n"
+                + "{\"id\":101,\"totalMoney\":50}\n{\"id\":102,\"totalMoney\":50}\n", resp.body());
+
+        Assert.assertEquals(StatusCodes.BAD_REQUEST, sendCreateAccounts("").statusCode());
+        Assert.assertEquals(StatusCodes.BAD_REQUEST, sendCreateAccounts("?count=0").statusCode());
+        Assert.assertEquals(StatusCodes.BAD_REQUEST, sendCreateAccounts("?count=1000001").statusCode());
+        Assert.assertEquals(StatusCodes.BAD_REQUEST, sendCreateAccounts("?count=1&balance=-1").statusCode());
+    }
+
+    private static HttpResponse<String> sendCreateAccounts(String query) throws IOException, InterruptedException {
+        final HttpRequest request = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/batch" + query))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
     @Test
     public void testGetAccountById() throws IOException, InterruptedException {
         Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(new Account(0)));
@@ -285,6 +348,427 @@ public class ApiTests {
                 resp.statusCode());
     }
 
+    @Test
+    public void testAtomicBatchTransfer() throws IOException, InterruptedException {
+        final Account fstAccount = new Account(0);
+        final Account sndAccount = new Account(1);
+        fstAccount.debit(1000);
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(fstAccount));
+        Mockito.when(accountsStorage.getAccountById(1)).thenReturn(Optional.of(sndAccount));
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("0,1,700\n1,0,200\n"))
+                .build();
+        final HttpResponse<String> resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("Batch should be applied", StatusCodes.OK, resp.statusCode());
+        Assert.assertEquals("{\"results\":[true,true]}", resp.body());
+        Assert.assertEquals(500, fstAccount.getTotalMoney());
+        Assert.assertEquals(500, sndAccount.getTotalMoney());
+    }
+
+    @Test
+    public void testAtomicBatchTransferToBusyAccount() throws IOException, InterruptedException {
+        final Account fstAccount = new Account(0);
+        final Account sndAccount = new Account(1);
+        fstAccount.debit(1000);
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(fstAccount));
+        Mockito.when(accountsStorage.getAccountById(1)).thenReturn(Optional.of(sndAccount));
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch?timeoutMillis=10"))
+                .POST(HttpRequest.BodyPublishers.ofString("0,1,700\n"))
+                .build();
+        sndAccount.getWriteLock().lock();
+        final HttpResponse<String> resp;
+        try {
+            resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        } finally {
+            sndAccount.getWriteLock().unlock();
+        }
+        Assert.assertEquals("Batch should not wait for the busy account", StatusCodes.SERVICE_UNAVAILABLE,
+                resp.statusCode());
+        Assert.assertEquals(Optional.of("1"), resp.headers().firstValue("Retry-After"));
+        Assert.assertEquals(1000, fstAccount.getTotalMoney());
+        Assert.assertEquals(StatusCodes.OK, httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString())
+                .statusCode());
+        Assert.assertEquals(300, fstAccount.getTotalMoney());
+
+        final HttpRequest invalidTimeoutRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch?timeoutMillis=-1"))
+                .POST(HttpRequest.BodyPublishers.ofString("0,1,700\n"))
+                .build();
+        Assert.assertEquals(StatusCodes.BAD_REQUEST,
+                httpClient.send(invalidTimeoutRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    public void testAtomicBatchTransferRollback() throws IOException, InterruptedException {
+        final Account fstAccount = new Account(0);
+        final Account sndAccount = new Account(1);
+        fstAccount.debit(1000);
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(fstAccount));
+        Mockito.when(accountsStorage.getAccountById(1)).thenReturn(Optional.of(sndAccount));
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("0,1,700\n0,1,700"))
+                .build();
+        final HttpResponse<String> resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("Second leg should fail", StatusCodes.UNPROCESSABLE_ENTITY, resp.statusCode());
+        Assert.assertEquals("First leg should be rolled back", 1000, fstAccount.getTotalMoney());
+        Assert.assertEquals(0, sndAccount.getTotalMoney());
+    }
+
+    @Test
+    public void testNonAtomicBatchTransfer() throws IOException, InterruptedException {
+        final Account fstAccount = new Account(0);
+        final Account sndAccount = new Account(1);
+        fstAccount.debit(1000);
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(fstAccount));
+        Mockito.when(accountsStorage.getAccountById(1)).thenReturn(Optional.of(sndAccount));
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch?atomic=false"))
+                .POST(HttpRequest.BodyPublishers.ofString("0,1,700\n0,1,700\n1,0,100"))
+                .build();
+        final HttpResponse<String> resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("Batch should be applied", StatusCodes.OK, resp.statusCode());
+        Assert.assertEquals("{\"results\":[true,false,true]}", resp.body());
+        Assert.assertEquals(400, fstAccount.getTotalMoney());
+        Assert.assertEquals(600, sndAccount.getTotalMoney());
+    }
+
+    @Test
+    public void testBatchTransferInvalidBody() throws IOException, InterruptedException {
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("0,1\n"))
+                .build();
+        final HttpResponse<String> resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("Invalid batch should fail", StatusCodes.BAD_REQUEST, resp.statusCode());
+    }
+
+    @Test
+    public void testBatchTransferWithUnknownAccount() throws IOException, InterruptedException {
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(new Account(0)));
+        Mockito.when(accountsStorage.getAccountById(1)).thenReturn(Optional.empty());
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("0,1,100"))
+                .build();
+        final HttpResponse<String> resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("Unknown account should not be found", StatusCodes.NOT_FOUND, resp.statusCode());
+    }
+
+    @Test
+    public void testGetAccountByIdBinary() throws IOException, InterruptedException {
+        final Account account = new Account(7);
+        account.debit(1000);
+        Mockito.when(accountsStorage.getAccountById(7)).thenReturn(Optional.of(account));
+        final HttpRequest getAccountRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/7"))
+                .header("Accept", ContentNegotiation.BINARY)
+                .GET()
+                .build();
+        final HttpResponse<byte[]> resp = httpClient.send(getAccountRequest, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals("Account should exist", StatusCodes.OK, resp.statusCode());
+        Assert.assertEquals(Optional.of(ContentNegotiation.BINARY), resp.headers().firstValue("Content-Type"));
+        final ByteBuffer body = ByteBuffer.wrap(resp.body());
+        Assert.assertEquals(BinaryAccountSerializer.SERIALIZED_SIZE, body.remaining());
+        Assert.assertEquals(7, body.getInt());
+        Assert.assertEquals(1000, body.getLong());
+    }
+
+    @Test
+    public void testBinaryBatchTransfer() throws IOException, InterruptedException {
+        final Account fstAccount = new Account(0);
+        final Account sndAccount = new Account(1);
+        fstAccount.debit(1000);
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(fstAccount));
+        Mockito.when(accountsStorage.getAccountById(1)).thenReturn(Optional.of(sndAccount));
+        final ByteBuffer legs = ByteBuffer.allocate(3 * TransferLegsParser.BINARY_LEG_SIZE)
+                .putInt(0).putInt(1).putLong(700)
+                .putInt(0).putInt(1).putLong(700)
+                .putInt(1).putInt(0).putLong(100);
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch?atomic=false"))
+                .header("Content-Type", ContentNegotiation.BINARY)
+                .header("Accept", ContentNegotiation.BINARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(legs.array()))
+                .build();
+        final HttpResponse<byte[]> resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals("Batch should be applied", StatusCodes.OK, resp.statusCode());
+        Assert.assertArrayEquals(new byte[]{1, 0, 1}, resp.body());
+        Assert.assertEquals(400, fstAccount.getTotalMoney());
+        Assert.assertEquals(600, sndAccount.getTotalMoney());
+    }
+
+    @Test
+    public void testBinaryBatchTransferTruncatedLeg() throws IOException, InterruptedException {
+        final HttpRequest batchRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/transfers/batch"))
+                .header("Content-Type", ContentNegotiation.BINARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[TransferLegsParser.BINARY_LEG_SIZE - 1]))
+                .build();
+        final HttpResponse<String> resp = httpClient.send(batchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("Invalid batch should fail", StatusCodes.BAD_REQUEST, resp.statusCode());
+    }
+
+    @Test
+    public void testMetrics() throws IOException, InterruptedException {
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.empty());
+        httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:8080/accounts/0")).GET().build(),
+                HttpResponse.BodyHandlers.discarding());
+        final HttpRequest metricsRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/metrics"))
+                .GET()
+                .build();
+        final HttpResponse<String> resp = httpClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(StatusCodes.OK, resp.statusCode());
+        Assert.assertTrue(resp.body(), resp.body().contains(
+                "moneytransfer_route_failures_total{route=\"/accounts/{accountId}\",status=\"404\"}"));
+    }
+
+    @Test
+    public void testTransferRetryWithIdempotencyKey() throws IOException, InterruptedException {
+        final Account fromAccount = new Account(0);
+        final Account toAccount = new Account(1);
+        fromAccount.debit(1000);
+        Mockito.when(accountsStorage.getAccountById(0)).thenReturn(Optional.of(fromAccount));
+        Mockito.when(accountsStorage.getAccountById(1)).thenReturn(Optional.of(toAccount));
+        final HttpRequest transferRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/from/0/to/1/transfer/300"))
+                .header("Idempotency-Key", "transfer-1")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        final HttpResponse<String> resp = httpClient.send(transferRequest, HttpResponse.BodyHandlers.ofString());
+        final HttpResponse<String> retryResp = httpClient.send(transferRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(StatusCodes.OK, resp.statusCode());
+        Assert.assertEquals("Retry should get the stored response", StatusCodes.OK, retryResp.statusCode());
+        Assert.assertEquals("{\"id\":0,\"totalMoney\":700}", retryResp.body());
+        Assert.assertEquals(Optional.of("true"), retryResp.headers().firstValue("Idempotent-Replayed"));
+        Assert.assertEquals("Transfer should be applied once", 700, fromAccount.getTotalMoney());
+        Assert.assertEquals(300, toAccount.getTotalMoney());
+
+        final HttpRequest otherRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/from/0/to/1/transfer/100"))
+                .header("Idempotency-Key", "transfer-1")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        final HttpResponse<String> otherResp = httpClient.send(otherRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("Key should not be reused for another transfer", StatusCodes.UNPROCESSABLE_ENTITY,
+                otherResp.statusCode());
+        Assert.assertEquals(700, fromAccount.getTotalMoney());
+    }
+
+    @Test
+    public void testGetAccountTransactionsByPages() throws IOException, InterruptedException {
+        final Account account = new Account(2, new LedgerJournal(ledger, NoOpBalanceJournal.S));
+        final Account otherAccount = new Account(3, new LedgerJournal(ledger, NoOpBalanceJournal.S));
+        Mockito.when(accountsStorage.getAccountById(2)).thenReturn(Optional.of(account));
+        account.debit(1000);
+        new Transaction(account, otherAccount, 300).execute();
+        account.withdraw(50);
+        final HttpRequest firstPageRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/2/transactions?limit=2"))
+                .GET()
+                .build();
+        final HttpResponse<String> firstPage = httpClient.send(firstPageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(StatusCodes.OK, firstPage.statusCode());
+        Assert.assertTrue(firstPage.body(), firstPage.body().startsWith(
+                "{\"transactions\":[{\"seq\":1,\"from\":null,\"to\":2,\"amount\":1000,\"timestamp\":"));
+        Assert.assertTrue(firstPage.body(), firstPage.body().contains(
+                "{\"seq\":2,\"from\":2,\"to\":3,\"amount\":300,\"timestamp\":"));
+        Assert.assertTrue(firstPage.body(), firstPage.body().endsWith("],\"next\":2}"));
+
+        final HttpRequest lastPageRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/2/transactions?after=2&limit=2"))
+                .GET()
+                .build();
+        final HttpResponse<String> lastPage = httpClient.send(lastPageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(StatusCodes.OK, lastPage.statusCode());
+        Assert.assertTrue(lastPage.body(), lastPage.body().startsWith(
+                "{\"transactions\":[{\"seq\":3,\"from\":2,\"to\":null,\"amount\":50,\"timestamp\":"));
+        Assert.assertTrue(lastPage.body(), lastPage.body().endsWith("}],\"next\":null}"));
+
+        final HttpRequest invalidLimitRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/2/transactions?limit=0"))
+                .GET()
+                .build();
+        Assert.assertEquals(StatusCodes.BAD_REQUEST,
+                httpClient.send(invalidLimitRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    public void testGetAccountTransactionsWithOutOfRangeParams() throws IOException, InterruptedException {
+        final Account account = new Account(2, new LedgerJournal(ledger, NoOpBalanceJournal.S));
+        Mockito.when(accountsStorage.getAccountById(2)).thenReturn(Optional.of(account));
+        account.debit(1000);
+        for (String query : new String[] {"limit=18446744073709551615", "limit=1001", "limit=-1", "limit=abc",
+                "after=18446744073709551615", "after=-1"}) {
+            final HttpRequest request = HttpRequest
+                    .newBuilder(URI.create("http://localhost:8080/accounts/2/transactions?" + query))
+                    .GET()
+                    .build();
+            Assert.assertEquals(query, StatusCodes.BAD_REQUEST,
+                    httpClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    @Test
+    public void testGetBalances() throws IOException, InterruptedException {
+        final Account fromAccount = new Account(0);
+        final Account toAccount = new Account(1);
+        fromAccount.debit(1000);
+        new Transaction(fromAccount, toAccount, 300).execute();
+        Mockito.when(accountsStorage.getAllAccounts()).thenAnswer(invocation -> Stream.of(fromAccount, toAccount));
+        final HttpRequest balancesRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/admin/balances?balances=true"))
+                .GET()
+                .build();
+        final HttpResponse<String> resp = httpClient.send(balancesRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(StatusCodes.OK, resp.statusCode());
+        Assert.assertTrue(resp.body(), resp.body().matches("\\{\"epoch\":\\d+,\"accounts\":2,\"totalMoney\":1000,"
+                + "\"balances\":\\[\\{\"id\":0,\"totalMoney\":700,\"journalSequence\":0},"
+                + "\\{\"id\":1,\"totalMoney\":300,\"journalSequence\":0}]}"));
+    }
+
+    @Test
+    public void testGetBalancesOfManyAccounts() throws IOException, InterruptedException {
+        final Account[] accounts = new Account[10_000];
+        for (int i = 0; i < accounts.length; ++i) {
+            accounts[i] = new Account(i);
+            accounts[i].debit(i);
+        }
+        Mockito.when(accountsStorage.getAllAccounts()).thenAnswer(invocation -> Stream.of(accounts));
+        final HttpRequest balancesRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/admin/balances?balances=true"))
+                .GET()
+                .build();
+        final HttpResponse<String> resp = httpClient.send(balancesRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(StatusCodes.OK, resp.statusCode());
+        final String body = resp.body();
+        Assert.assertTrue(body.matches("\\{\"epoch\":\\d+,\"accounts\":10000,\"totalMoney\":49995000,"
+                + "\"balances\":\\[\\{\"id\":0,\"totalMoney\":0,\"journalSequence\":0},.*"
+                + "\\{\"id\":9999,\"totalMoney\":9999,\"journalSequence\":0}]}"));
+        Assert.assertEquals("Every balance should be written once",
+                accounts.length, body.split("\\{\"id\"").length - 1);
+    }
+
+    @Test
+    public void testDeleteAccount() throws IOException, InterruptedException {
+        Mockito.when(accountsStorage.getAccountById(4)).thenReturn(Optional.of(new Account(4)));
+        Mockito.when(accountsStorage.removeAccountById(4)).thenReturn(true);
+        Mockito.when(accountsStorage.getAccountById(5)).thenReturn(Optional.of(new Account(5)));
+        Mockito.when(accountsStorage.removeAccountById(5)).thenReturn(false);
+        Mockito.when(accountsStorage.getAccountById(6)).thenReturn(Optional.empty());
+        Assert.assertEquals(StatusCodes.NO_CONTENT, sendDelete(4).statusCode());
+        final HttpResponse<String> notEmptyResp = sendDelete(5);
+        Assert.assertEquals("Account with money should not be removed", StatusCodes.CONFLICT,
+                notEmptyResp.statusCode());
+        Assert.assertEquals("Account with id: 5 has non-zero balance", notEmptyResp.body());
+        Assert.assertEquals(StatusCodes.NOT_FOUND, sendDelete(6).statusCode());
+    }
+
+    @Test
+    public void testGetAllAccounts() throws IOException, InterruptedException {
+        final int accounts = 100_000;
+        /**
+         * Accounts are created while the response is written, so they could not be collected before
+         */
+        Mockito.when(accountsStorage.getAccountsFrom(Mockito.anyInt())).thenAnswer(invocation -> IntStream
+                .range(invocation.<Integer>getArgument(0), accounts).mapToObj(Account::new));
+        final HttpResponse<String> resp = sendGetAllAccounts("", ContentNegotiation.JSON);
+        Assert.assertEquals(StatusCodes.OK, resp.statusCode());
+        Assert.assertEquals(Optional.of(ContentNegotiation.NDJSON), resp.headers().firstValue("Content-Type"));
+        final String[] lines = resp.body().split("\n");
+        Assert.assertEquals(accounts, lines.length);
+        Assert.assertEquals("{\"id\":0,\"totalMoney\":0}", lines[0]);
+        Assert.assertEquals("{\"id\":99999,\"totalMoney\":0}", lines[accounts - 1]);
+
+        Assert.assertEquals("{\"id\":10,\"totalMoney\":0}\n{\"id\":11,\"totalMoney\":0}\n",
+                sendGetAllAccounts("?fromId=10&toId=12", ContentNegotiation.JSON).body());
+        Assert.assertEquals("", sendGetAllAccounts("?fromId=10&toId=10", ContentNegotiation.JSON).body());
+
+        final HttpResponse<byte[]> binaryResp = httpClient.send(HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts?fromId=99998"))
+                .header("Accept", ContentNegotiation.BINARY)
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        final ByteBuffer body = ByteBuffer.wrap(binaryResp.body());
+        Assert.assertEquals(2 * BinaryAccountSerializer.SERIALIZED_SIZE, body.remaining());
+        Assert.assertEquals(99998, body.getInt());
+        Assert.assertEquals(0, body.getLong());
+        Assert.assertEquals(99999, body.getInt());
+
+        Assert.assertEquals(StatusCodes.BAD_REQUEST,
+                sendGetAllAccounts("?fromId=10&toId=9", ContentNegotiation.JSON).statusCode());
+        Assert.assertEquals(StatusCodes.BAD_REQUEST,
+                sendGetAllAccounts("?fromId=abc", ContentNegotiation.JSON).statusCode());
+        Assert.assertEquals(StatusCodes.BAD_REQUEST,
+                sendGetAllAccounts("?toId=2147483649", ContentNegotiation.JSON).statusCode());
+    }
+
+    private static HttpResponse<String> sendGetAllAccounts(String query, String accept)
+            throws IOException, InterruptedException {
+        final HttpRequest request = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts" + query))
+                .header("Accept", accept)
+                .GET()
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testConditionalGetOfAccount() throws IOException, InterruptedException {
+        final Account account = new Account(7);
+        Mockito.when(accountsStorage.getAccountById(7)).thenReturn(Optional.of(account));
+        final AccountsController cachingController =
+                new AccountsController(accountsManager, JsonAccountSerializer.S, new AccountResponseCache(16));
+        final Undertow cachingUndertow = Undertow.builder()
+                .addHttpListener(8090, "localhost")
+                .setHandler(Handlers.routing()
+                        .get(AccountsController.GET_ACCOUNT_BY_ID, cachingController::getAccountById))
+                .build();
+        cachingUndertow.start();
+        try {
+            final HttpResponse<String> resp = sendConditionalGet(7, null);
+            Assert.assertEquals(StatusCodes.OK, resp.statusCode());
+            Assert.assertEquals("{\"id\":7,\"totalMoney\":0}", resp.body());
+            final String eTag = resp.headers().firstValue("ETag").orElseThrow();
+            Assert.assertEquals(eTag, sendConditionalGet(7, null).headers().firstValue("ETag").orElseThrow());
+
+            final HttpResponse<String> notModified = sendConditionalGet(7, eTag);
+            Assert.assertEquals(StatusCodes.NOT_MODIFIED, notModified.statusCode());
+            Assert.assertEquals("", notModified.body());
+            Assert.assertEquals(eTag, notModified.headers().firstValue("ETag").orElseThrow());
+
+            account.debit(100);
+            final HttpResponse<String> modified = sendConditionalGet(7, eTag);
+            Assert.assertEquals("Debit should change the version", StatusCodes.OK, modified.statusCode());
+            Assert.assertEquals("{\"id\":7,\"totalMoney\":100}", modified.body());
+            Assert.assertNotEquals(eTag, modified.headers().firstValue("ETag").orElseThrow());
+        } finally {
+            cachingUndertow.stop();
+        }
+    }
+
+    private static HttpResponse<String> sendConditionalGet(int accountId, String ifNoneMatch)
+            throws IOException, InterruptedException {
+        final HttpRequest.Builder builder = HttpRequest
+                .newBuilder(URI.create("http://localhost:8090/accounts/" + accountId))
+                .GET();
+        if (ifNoneMatch != null) {
+            builder.header("If-None-Match", ifNoneMatch);
+        }
+        return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> sendDelete(int accountId) throws IOException, InterruptedException {
+        final HttpRequest deleteRequest = HttpRequest
+                .newBuilder(URI.create("http://localhost:8080/accounts/" + accountId))
+                .DELETE()
+                .build();
+        return httpClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
     @After
     public void stopServer() {
         undertow.stop();
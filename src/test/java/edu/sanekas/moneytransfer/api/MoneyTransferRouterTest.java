@@ -0,0 +1,87 @@
+package edu.sanekas.moneytransfer.api;
+
+import edu.sanekas.moneytransfer.api.misc.ErrorMessages;
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.util.StatusCodes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+public class MoneyTransferRouterTest {
+    private static final int PORT = 8084;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private Undertow undertow;
+
+    @Before
+    public void startServer() {
+        final MoneyTransferRouter router = new MoneyTransferRouter(Handlers.routing()
+                .get("/metrics", exchange -> exchange.getResponseSender().send("metrics"))
+                .get(AccountsController.GET_ACCOUNT_BY_ID, exchange -> exchange.getResponseSender().send("template")))
+                .getAccount(respond("get"))
+                .deleteAccount(respond("delete"))
+                .debit(respond("debit"))
+                .withdraw(respond("withdraw"))
+                .transfer(respond("transfer"));
+        undertow = Undertow.builder()
+                .addHttpListener(PORT, "localhost")
+                .setHandler(router)
+                .build();
+        undertow.start();
+    }
+
+    @After
+    public void stopServer() {
+        undertow.stop();
+    }
+
+    @Test
+    public void testRoutes() throws Exception {
+        assertResponse(StatusCodes.OK, "get", "GET", "/accounts/1");
+        assertResponse(StatusCodes.OK, "delete", "DELETE", "/accounts/1");
+        assertResponse(StatusCodes.OK, "debit", "PUT", "/accounts/1/debit/100");
+        assertResponse(StatusCodes.OK, "withdraw", "PUT", "/accounts/1/withdraw/100");
+        assertResponse(StatusCodes.OK, "transfer", "POST", "/accounts/from/1/to/2/transfer/100");
+    }
+
+    @Test
+    public void testInvalidNumbersAreRejected() throws Exception {
+        assertResponse(StatusCodes.BAD_REQUEST, ErrorMessages.INVALID_ACCOUNT_ID, "GET", "/accounts/abc");
+        assertResponse(StatusCodes.BAD_REQUEST, ErrorMessages.INVALID_ACCOUNT_ID, "PUT", "/accounts/-1/debit/100");
+        assertResponse(StatusCodes.BAD_REQUEST, ErrorMessages.INVALID_AMOUNT, "PUT", "/accounts/1/withdraw/-1000");
+        assertResponse(StatusCodes.BAD_REQUEST, ErrorMessages.INVALID_ACCOUNT_ID,
+                "POST", "/accounts/from/1/to/2147483648/transfer/100");
+        assertResponse(StatusCodes.BAD_REQUEST, ErrorMessages.INVALID_AMOUNT,
+                "POST", "/accounts/from/1/to/2/transfer/1.5");
+    }
+
+    @Test
+    public void testOtherRequestsGoToFallback() throws Exception {
+        assertResponse(StatusCodes.OK, "metrics", "GET", "/metrics");
+        /** No handler for the route in the router */
+        assertResponse(StatusCodes.NOT_FOUND, "", "GET", "/accounts/1/transactions");
+        assertResponse(StatusCodes.METHOD_NOT_ALLOWED, "", "POST", "/accounts/1");
+        assertResponse(StatusCodes.NOT_FOUND, "", "PUT", "/accounts/1/debit/100/more");
+        assertResponse(StatusCodes.NOT_FOUND, "", "POST", "/accounts/from/1/to/2");
+    }
+
+    private void assertResponse(int statusCode, String body, String method, String path) throws Exception {
+        final HttpResponse<String> response = httpClient.send(HttpRequest
+                .newBuilder(URI.create("http://localhost:" + PORT + path))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(method + " " + path, statusCode, response.statusCode());
+        Assert.assertEquals(method + " " + path, body, response.body());
+    }
+
+    private static HttpHandler respond(String body) {
+        return exchange -> exchange.getResponseSender().send(body);
+    }
+}
@@ -0,0 +1,58 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class AccountResponseCacheTest {
+    @Test
+    public void testResponseIsCachedByVersionAndFormat() {
+        final AccountResponseCache cache = new AccountResponseCache(16);
+        final ByteBuffer body = ByteBuffer.wrap("{\"id\":1,\"totalMoney\":10}".getBytes(StandardCharsets.UTF_8));
+        final AccountResponseCache.Entry entry = cache.put(1, 5, false, body);
+        Assert.assertEquals("Body should not be consumed", 0, body.position());
+        Assert.assertSame(entry, cache.get(1, 5, false));
+        Assert.assertEquals(body, entry.getBody());
+        Assert.assertFalse("Entries should be kept on heap", entry.getBody().isDirect());
+        Assert.assertTrue(entry.getBody().isReadOnly());
+        Assert.assertEquals(AccountResponseCache.formatETag(5, false), entry.getETag());
+        Assert.assertNull("Newer version should be serialized", cache.get(1, 6, false));
+        Assert.assertNull("Binary response is cached separately", cache.get(1, 5, true));
+        Assert.assertNull(cache.get(2, 5, false));
+
+        cache.put(17, 1, false, body);
+        Assert.assertNull("Colliding account should evict the response", cache.get(1, 5, false));
+        Assert.assertNotNull(cache.get(17, 1, false));
+    }
+
+    @Test
+    public void testIfNoneMatch() {
+        final String eTag = AccountResponseCache.formatETag(42, false);
+        final String binaryETag = AccountResponseCache.formatETag(42, true);
+        Assert.assertNotEquals(eTag, binaryETag);
+        Assert.assertTrue(AccountResponseCache.matches(eTag, 42, false));
+        Assert.assertFalse(AccountResponseCache.matches(eTag, 43, false));
+        Assert.assertFalse(AccountResponseCache.matches(eTag, 4, false));
+        Assert.assertFalse("JSON response should not match binary one", AccountResponseCache.matches(eTag, 42, true));
+        Assert.assertTrue(AccountResponseCache.matches(binaryETag, 42, true));
+        Assert.assertFalse(AccountResponseCache.matches(binaryETag, 42, false));
+        Assert.assertTrue(AccountResponseCache.matches("*", 1, false));
+        Assert.assertTrue("Weak tags should be compared by value", AccountResponseCache.matches("W/" + eTag, 42, false));
+        Assert.assertTrue(AccountResponseCache.matches("\"other\", " + eTag, 42, false));
+        Assert.assertTrue(AccountResponseCache.matches(AccountResponseCache.formatETag(41, false) + "," + eTag,
+                42, false));
+        Assert.assertFalse(AccountResponseCache.matches("\"other\", \"42\"", 42, false));
+        Assert.assertFalse("Tags of another process should not match",
+                AccountResponseCache.matches("\"abc-42\"", 42, false));
+        Assert.assertFalse(AccountResponseCache.matches("", 42, false));
+        Assert.assertFalse(AccountResponseCache.matches("\"", 42, false));
+        Assert.assertFalse(AccountResponseCache.matches(eTag.substring(0, eTag.length() - 1), 42, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityShouldBePositive() {
+        new AccountResponseCache(0);
+    }
+}
@@ -0,0 +1,113 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import io.undertow.util.StatusCodes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class DispatchingHandlerTest {
+    private static final int PORT = 8083;
+
+    private final ExecutorService workerPool = DispatchingHandler.workerPool(1, 1);
+    private final CountDownLatch isReleased = new CountDownLatch(1);
+    private final CountDownLatch isBlocked = new CountDownLatch(1);
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private Undertow undertow;
+
+    @Before
+    public void startServer() {
+        undertow = Undertow.builder()
+                .addHttpListener(PORT, "localhost")
+                .setIoThreads(1)
+                .setHandler(Handlers.routing()
+                        .get("/blocking", DispatchingHandler.of(workerPool, exchange -> {
+                            isBlocked.countDown();
+                            isReleased.await();
+                            exchange.getResponseSender().send(Thread.currentThread().getName());
+                        }))
+                        .get("/lookup", exchange -> exchange.getResponseSender().send("found"))
+                        .post("/body", DispatchingHandler.of(workerPool, exchange ->
+                                exchange.getRequestReceiver().receiveFullString((bodyExchange, body) ->
+                                        DispatchingHandler.resume(bodyExchange, () -> bodyExchange.getResponseSender()
+                                                .send(Thread.currentThread().getName() + ":" + body))))))
+                .build();
+        undertow.start();
+    }
+
+    @After
+    public void stopServer() {
+        isReleased.countDown();
+        undertow.stop();
+        workerPool.shutdownNow();
+    }
+
+    @Test
+    public void testBlockedHandlerDoesNotStallIoThread() throws Exception {
+        final CompletableFuture<HttpResponse<String>> blocked = sendAsync("/blocking");
+        Assert.assertTrue(isBlocked.await(5, TimeUnit.SECONDS));
+
+        final HttpResponse<String> lookup = sendAsync("/lookup").get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(StatusCodes.OK, lookup.statusCode());
+        Assert.assertEquals("found", lookup.body());
+
+        isReleased.countDown();
+        final HttpResponse<String> response = blocked.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(StatusCodes.OK, response.statusCode());
+        Assert.assertTrue(response.body().startsWith("request-worker-"));
+    }
+
+    @Test
+    public void testRejectedWhenPoolIsSaturated() throws Exception {
+        final CompletableFuture<HttpResponse<String>> blocked = sendAsync("/blocking");
+        Assert.assertTrue(isBlocked.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<HttpResponse<String>> queued = sendAsync("/blocking");
+        waitUntilQueued();
+
+        Assert.assertEquals(StatusCodes.SERVICE_UNAVAILABLE,
+                sendAsync("/blocking").get(5, TimeUnit.SECONDS).statusCode());
+
+        isReleased.countDown();
+        Assert.assertEquals(StatusCodes.OK, blocked.get(5, TimeUnit.SECONDS).statusCode());
+        Assert.assertEquals(StatusCodes.OK, queued.get(5, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    public void testBodyCallbackIsResumedInExecutor() throws Exception {
+        final HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/body"))
+                .POST(HttpRequest.BodyPublishers.ofString("legs")).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(StatusCodes.OK, response.statusCode());
+        Assert.assertTrue(response.body().startsWith("request-worker-"));
+        Assert.assertTrue(response.body().endsWith(":legs"));
+    }
+
+    private void waitUntilQueued() throws InterruptedException {
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) workerPool;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getQueue().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertFalse(pool.getQueue().isEmpty());
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendAsync(String path) {
+        return httpClient.sendAsync(HttpRequest.newBuilder(uri(path)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://localhost:" + PORT + path);
+    }
+}
@@ -0,0 +1,100 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class IdempotencyCacheTest {
+    private static final String PATH = "/accounts/0/debit/100";
+    private static final IdempotencyCache.StoredResponse OK = new IdempotencyCache.StoredResponse(200, null, new byte[0]);
+
+    @Test
+    public void testFirstExecutionIsShared() {
+        final IdempotencyCache cache = new IdempotencyCache(10, 1, TimeUnit.HOURS);
+        final IdempotencyCache.Entry first = new IdempotencyCache.Entry("key", "POST", PATH);
+        Assert.assertNull("First request should execute", cache.putIfAbsent(first));
+        final IdempotencyCache.Entry duplicate = cache.putIfAbsent(new IdempotencyCache.Entry("key", "POST", PATH));
+        Assert.assertSame("Duplicate should get the first execution", first, duplicate);
+        Assert.assertFalse("Duplicate should wait while the first execution is in progress", duplicate.isDone());
+        cache.complete(first, OK);
+        Assert.assertSame(OK, duplicate.join());
+    }
+
+    @Test
+    public void testServerErrorIsNotStored() {
+        final IdempotencyCache cache = new IdempotencyCache(10, 1, TimeUnit.HOURS);
+        final IdempotencyCache.Entry first = new IdempotencyCache.Entry("key", "POST", PATH);
+        cache.putIfAbsent(first);
+        cache.complete(first, new IdempotencyCache.StoredResponse(500, null, new byte[0]));
+        Assert.assertNull("Retry after server error should execute again",
+                cache.putIfAbsent(new IdempotencyCache.Entry("key", "POST", PATH)));
+    }
+
+    @Test
+    public void testOldestKeysAreEvictedWhenFull() {
+        final IdempotencyCache cache = new IdempotencyCache(100, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 1000; ++i) {
+            final IdempotencyCache.Entry entry = new IdempotencyCache.Entry("key-" + i, "POST", PATH);
+            Assert.assertNull(cache.putIfAbsent(entry));
+            cache.complete(entry, OK);
+        }
+        Assert.assertEquals(100, cache.size());
+        Assert.assertNull("Oldest key should be evicted", 
+                cache.putIfAbsent(new IdempotencyCache.Entry("key-0", "POST", PATH)));
+        Assert.assertNotNull("Newest key should be kept", 
+                cache.putIfAbsent(new IdempotencyCache.Entry("key-999", "POST", PATH)));
+    }
+
+    @Test
+    public void testExpiredKeysAreReplaced() throws InterruptedException {
+        final IdempotencyCache cache = new IdempotencyCache(100, 10, TimeUnit.MILLISECONDS);
+        final IdempotencyCache.Entry first = new IdempotencyCache.Entry("key", "POST", PATH);
+        cache.putIfAbsent(first);
+        cache.complete(first, OK);
+        Thread.sleep(20);
+        Assert.assertNull("Expired key should execute again", 
+                cache.putIfAbsent(new IdempotencyCache.Entry("key", "POST", PATH)));
+    }
+
+    @Test
+    public void testKeysInProgressAreNotEvicted() {
+        final IdempotencyCache cache = new IdempotencyCache(2, 1, TimeUnit.HOURS);
+        final IdempotencyCache.Entry inProgress = new IdempotencyCache.Entry("key-0", "POST", PATH);
+        Assert.assertNull(cache.putIfAbsent(inProgress));
+        for (int i = 1; i < 10; ++i) {
+            final IdempotencyCache.Entry entry = new IdempotencyCache.Entry("key-" + i, "POST", PATH);
+            Assert.assertNull(cache.putIfAbsent(entry));
+            cache.complete(entry, OK);
+        }
+        Assert.assertSame("Duplicate of the request in progress should wait for it", inProgress,
+                cache.putIfAbsent(new IdempotencyCache.Entry("key-0", "POST", PATH)));
+        cache.complete(inProgress, OK);
+        cache.putIfAbsent(new IdempotencyCache.Entry("key-10", "POST", PATH));
+        Assert.assertEquals("Completed keys should be evicted again", 2, cache.size());
+    }
+
+    @Test
+    public void testKeysBehindRequestInProgressAreEvicted() {
+        final IdempotencyCache cache = new IdempotencyCache(10, 1, TimeUnit.HOURS);
+        final IdempotencyCache.Entry inProgress = new IdempotencyCache.Entry("key-0", "POST", PATH);
+        Assert.assertNull(cache.putIfAbsent(inProgress));
+        for (int i = 1; i < 1000; ++i) {
+            final IdempotencyCache.Entry entry = new IdempotencyCache.Entry("key-" + i, "POST", PATH);
+            Assert.assertNull(cache.putIfAbsent(entry));
+            cache.complete(entry, OK);
+        }
+        Assert.assertEquals("Cache should stay bounded", 10, cache.size());
+        Assert.assertSame(inProgress, cache.putIfAbsent(new IdempotencyCache.Entry("key-0", "POST", PATH)));
+    }
+
+    @Test
+    public void testRequestsAreComparedByMethodAndPath() {
+        final IdempotencyCache.Entry entry = new IdempotencyCache.Entry("key", "POST", "/accounts/Aa/debit/1");
+        Assert.assertEquals("Paths should have the same hash", "/accounts/Aa/debit/1".hashCode(),
+                "/accounts/BB/debit/1".hashCode());
+        Assert.assertTrue(entry.isSameRequest("POST", "/accounts/Aa/debit/1"));
+        Assert.assertFalse(entry.isSameRequest("POST", "/accounts/BB/debit/1"));
+        Assert.assertFalse(entry.isSameRequest("PUT", "/accounts/Aa/debit/1"));
+    }
+}
@@ -0,0 +1,36 @@
+package edu.sanekas.moneytransfer.api.misc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestPathTest {
+    @Test
+    public void testNumbersAreParsedBySegment() {
+        final String path = "/accounts/from/12/to/345/transfer/6789";
+        Assert.assertEquals(12, RequestPath.parseNumber(path, 2, Integer.MAX_VALUE));
+        Assert.assertEquals(345, RequestPath.parseNumber(path, 4, Integer.MAX_VALUE));
+        Assert.assertEquals(6789, RequestPath.parseNumber(path, 6, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testInvalidNumbers() {
+        Assert.assertEquals(RequestPath.INVALID, RequestPath.parseNumber("/accounts/abc", 1, Integer.MAX_VALUE));
+        Assert.assertEquals(RequestPath.INVALID, RequestPath.parseNumber("/accounts/0/debit/-1000", 3, Long.MAX_VALUE));
+        Assert.assertEquals(RequestPath.INVALID, RequestPath.parseNumber("/accounts/", 1, Integer.MAX_VALUE));
+        Assert.assertEquals(RequestPath.INVALID, RequestPath.parseNumber("/accounts/1", 2, Integer.MAX_VALUE));
+        Assert.assertEquals(RequestPath.INVALID, RequestPath.parseNumber("/accounts/1 ", 1, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testBoundaries() {
+        Assert.assertEquals(Integer.MAX_VALUE,
+                RequestPath.parseNumber("/accounts/2147483647", 1, Integer.MAX_VALUE));
+        Assert.assertEquals(RequestPath.INVALID,
+                RequestPath.parseNumber("/accounts/2147483648", 1, Integer.MAX_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE,
+                RequestPath.parseNumber("/accounts/0/debit/9223372036854775807", 3, Long.MAX_VALUE));
+        Assert.assertEquals(RequestPath.INVALID,
+                RequestPath.parseNumber("/accounts/0/debit/9223372036854775808", 3, Long.MAX_VALUE));
+        Assert.assertEquals(0, RequestPath.parseNumber("/accounts/000", 1, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,172 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import edu.sanekas.moneytransfer.Main;
+import edu.sanekas.moneytransfer.ServerConfig;
+import edu.sanekas.moneytransfer.executors.LockingFinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.RemovableInMemoryAccountsStorage;
+import io.undertow.Undertow;
+import io.undertow.util.StatusCodes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class ClusterTest {
+    private static final int ACCOUNTS_PER_NODE = 1000;
+    private static final int FST_PORT = 8087;
+    private static final int SND_PORT = 8088;
+    private static final int PROCESS_PORT = 8089;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @After
+    public void closeResources() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; --i) {
+            resources.get(i).close();
+        }
+    }
+
+    @Test
+    public void testRequestsOfAccountsOfAnotherNodeAreServedByIt() throws Exception {
+        final List<String> nodes = List.of("localhost:" + FST_PORT, "localhost:" + SND_PORT);
+        final AccountsStorage fstStorage = createStorage(0);
+        startNode(new Partitioning(0, nodes, ACCOUNTS_PER_NODE), fstStorage, FST_PORT);
+        final AccountsStorage sndStorage = createStorage(ACCOUNTS_PER_NODE);
+        startNode(new Partitioning(1, nodes, ACCOUNTS_PER_NODE), sndStorage, SND_PORT);
+
+        Assert.assertEquals(StatusCodes.CREATED, send("POST", FST_PORT, "/accounts").statusCode());
+        Assert.assertEquals(StatusCodes.CREATED, send("POST", SND_PORT, "/accounts").statusCode());
+        Assert.assertEquals(ACCOUNTS_PER_NODE, sndStorage.getAllAccounts().findFirst().orElseThrow().getId());
+
+        Assert.assertEquals(StatusCodes.OK, send("PUT", FST_PORT, "/accounts/1000/debit/100").statusCode());
+        Assert.assertEquals(100, sndStorage.getAccountById(ACCOUNTS_PER_NODE).orElseThrow().getTotalMoney());
+        final HttpResponse<String> response = send("GET", FST_PORT, "/accounts/1000");
+        Assert.assertEquals(StatusCodes.OK, response.statusCode());
+        Assert.assertTrue(response.body(), response.body().contains("\"totalMoney\":100"));
+        Assert.assertEquals(StatusCodes.NOT_FOUND, send("GET", SND_PORT, "/accounts/1").statusCode());
+    }
+
+    @Test
+    public void testTransferBetweenNodesKeepsTotalMoney() throws Exception {
+        final List<String> nodes = List.of("localhost:" + FST_PORT, "localhost:" + SND_PORT);
+        final AccountsStorage fstStorage = createStorage(0);
+        startNode(new Partitioning(0, nodes, ACCOUNTS_PER_NODE), fstStorage, FST_PORT);
+        final AccountsStorage sndStorage = createStorage(ACCOUNTS_PER_NODE);
+        final ClusterNode sndNode = startNode(new Partitioning(1, nodes, ACCOUNTS_PER_NODE), sndStorage, SND_PORT);
+        fstStorage.createAccount().debit(100);
+        sndStorage.createAccount().debit(100);
+
+        Assert.assertEquals("Transfer should be coordinated by the node money is taken from", StatusCodes.OK,
+                send("POST", FST_PORT, "/accounts/from/1000/to/0/transfer/30").statusCode());
+        Assert.assertEquals(StatusCodes.OK, send("POST", FST_PORT, "/accounts/from/0/to/1000/transfer/120")
+                .statusCode());
+        Assert.assertEquals(10, fstStorage.getAccountById(0).orElseThrow().getTotalMoney());
+        Assert.assertEquals(190, sndStorage.getAccountById(ACCOUNTS_PER_NODE).orElseThrow().getTotalMoney());
+        Assert.assertEquals(1, sndNode.getCoordinator().getCommittedTransfers());
+
+        Assert.assertEquals(StatusCodes.UNPROCESSABLE_ENTITY,
+                send("POST", FST_PORT, "/accounts/from/0/to/1000/transfer/11").statusCode());
+        Assert.assertEquals(StatusCodes.NOT_FOUND,
+                send("POST", FST_PORT, "/accounts/from/0/to/1001/transfer/10").statusCode());
+        Assert.assertEquals(StatusCodes.BAD_REQUEST,
+                send("POST", FST_PORT, "/accounts/from/0/to/1000/transfer/abc").statusCode());
+        Assert.assertEquals(10, fstStorage.getAccountById(0).orElseThrow().getTotalMoney());
+        Assert.assertEquals(190, sndStorage.getAccountById(ACCOUNTS_PER_NODE).orElseThrow().getTotalMoney());
+
+        final HttpResponse<String> response = send("GET", SND_PORT, "/admin/cluster");
+        Assert.assertEquals(StatusCodes.OK, response.statusCode());
+        Assert.assertTrue(response.body(), response.body().contains("\"committedTransfers\":1"));
+    }
+
+    @Test
+    public void testTransferToUnavailableNodeIsRefused() throws Exception {
+        final List<String> nodes = List.of("localhost:" + FST_PORT, "localhost:" + SND_PORT);
+        final AccountsStorage fstStorage = createStorage(0);
+        final ClusterNode fstNode = startNode(new Partitioning(0, nodes, ACCOUNTS_PER_NODE), fstStorage, FST_PORT);
+        fstStorage.createAccount().debit(100);
+
+        Assert.assertEquals(StatusCodes.SERVICE_UNAVAILABLE,
+                send("POST", FST_PORT, "/accounts/from/0/to/1000/transfer/10").statusCode());
+        Assert.assertEquals("Money should be returned", 100,
+                fstStorage.getAccountById(0).orElseThrow().getTotalMoney());
+        Assert.assertEquals(1, fstNode.getCoordinator().getAbortedTransfers());
+        Assert.assertEquals(StatusCodes.SERVICE_UNAVAILABLE, send("GET", FST_PORT, "/accounts/1000").statusCode());
+    }
+
+    @Test
+    public void testNodeProcessTakesPartInTransfers() throws Exception {
+        final List<String> nodes = List.of("localhost:" + FST_PORT, "localhost:" + PROCESS_PORT);
+        final AccountsStorage fstStorage = createStorage(0);
+        startNode(new Partitioning(0, nodes, ACCOUNTS_PER_NODE), fstStorage, FST_PORT);
+        fstStorage.createAccount().debit(100);
+        final Process process = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                "-Dmoneytransfer.port=" + PROCESS_PORT,
+                "-Dmoneytransfer.cluster.nodes=" + String.join(",", nodes),
+                "-Dmoneytransfer.cluster.node=1",
+                "-Dmoneytransfer.cluster.accountsPerNode=" + ACCOUNTS_PER_NODE,
+                Main.class.getName())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        resources.add(process::destroyForcibly);
+        awaitUntil(() -> {
+            try {
+                return send("POST", PROCESS_PORT, "/accounts").statusCode() == StatusCodes.CREATED;
+            } catch (Exception e) {
+                return false;
+            }
+        });
+
+        Assert.assertEquals(StatusCodes.OK, send("POST", FST_PORT, "/accounts/from/0/to/1000/transfer/60")
+                .statusCode());
+        Assert.assertEquals(StatusCodes.OK, send("POST", FST_PORT, "/accounts/from/1000/to/0/transfer/20")
+                .statusCode());
+        Assert.assertEquals(60, fstStorage.getAccountById(0).orElseThrow().getTotalMoney());
+        final HttpResponse<String> response = send("GET", FST_PORT, "/accounts/1000");
+        Assert.assertTrue(response.body(), response.body().contains("\"totalMoney\":40"));
+    }
+
+    private AccountsStorage createStorage(int firstAccountId) {
+        final RemovableInMemoryAccountsStorage storage = new RemovableInMemoryAccountsStorage(NoOpBalanceJournal.S,
+                firstAccountId, ACCOUNTS_PER_NODE);
+        resources.add(storage);
+        return storage;
+    }
+
+    private ClusterNode startNode(Partitioning partitioning, AccountsStorage storage, int port) throws Exception {
+        final ClusterNode node = ClusterNode.start(partitioning, storage, new TransferLog(null), 1000, 10,
+                TimeUnit.MILLISECONDS);
+        resources.add(node);
+        final Undertow undertow = Main.startServer(
+                new ServerConfig(port, storage, LockingFinanceOperationsExecutor.S).clusterNode(node));
+        resources.add(undertow::stop);
+        return node;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition is not met in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private HttpResponse<String> send(String method, int port, String path) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
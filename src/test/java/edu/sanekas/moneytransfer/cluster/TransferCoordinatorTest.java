@@ -0,0 +1,313 @@
+package edu.sanekas.moneytransfer.cluster;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.persistence.GroupCommitJournal;
+import edu.sanekas.moneytransfer.persistence.JournalReplayer;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class TransferCoordinatorTest {
+    private static final int ACCOUNTS_PER_NODE = 1000;
+
+    private final Partitioning partitioning = new Partitioning(0, List.of("localhost:1", "localhost:2"),
+            ACCOUNTS_PER_NODE);
+    private final List<AutoCloseable> participantResources = new ArrayList<>();
+    /**
+     * Journal, log and coordinator of the coordinator node, closed on its restart
+     */
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private Path journalPath;
+    private Path logPath;
+    private Path participantJournalPath;
+    private Path participantLogPath;
+    private AccountsStorage participantStorage;
+    private TransferParticipant participant;
+
+    @Before
+    public void createParticipant() throws IOException {
+        journalPath = Files.createTempFile("journal", ".bin");
+        logPath = Files.createTempFile("transfers", ".bin");
+        participantJournalPath = Files.createTempFile("journal", ".bin");
+        participantLogPath = Files.createTempFile("credits", ".bin");
+        final GroupCommitJournal participantJournal = openJournal(participantJournalPath);
+        participantResources.add(participantJournal);
+        participantStorage = new SegmentedInMemoryAccountsStorage(participantJournal, ACCOUNTS_PER_NODE,
+                ACCOUNTS_PER_NODE);
+        final TransferLog participantLog = openLog(participantLogPath);
+        participantResources.add(participantLog);
+        participant = new TransferParticipant(participantStorage, participantLog);
+        participantStorage.createAccount();
+        resources.clear();
+    }
+
+    @After
+    public void closeResources() throws Exception {
+        restart();
+        for (int i = participantResources.size() - 1; i >= 0; --i) {
+            participantResources.get(i).close();
+        }
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(logPath);
+        Files.deleteIfExists(participantJournalPath);
+        Files.deleteIfExists(participantLogPath);
+    }
+
+    @Test
+    public void testTransferMovesMoneyToParticipant() throws Exception {
+        final AccountsStorage storage = openStorage();
+        final TransferCoordinator coordinator = openCoordinator(storage, new LocalClient(0));
+        final Account account = storage.createAccount();
+        account.debit(100);
+
+        Assert.assertTrue(coordinator.transfer(account, ACCOUNTS_PER_NODE, 60));
+        Assert.assertFalse("Transfer should fail without enough money",
+                coordinator.transfer(account, ACCOUNTS_PER_NODE, 60));
+        Assert.assertEquals(40, account.getTotalMoney());
+        Assert.assertEquals(60, getParticipantMoney());
+        Assert.assertEquals(1, coordinator.getCommittedTransfers());
+        Assert.assertEquals(0, coordinator.getUnfinishedTransfers());
+    }
+
+    @Test
+    public void testMoneyIsReturnedIfParticipantDoesNotHaveAccount() throws Exception {
+        final AccountsStorage storage = openStorage();
+        final TransferCoordinator coordinator = openCoordinator(storage, new LocalClient(0));
+        final Account account = storage.createAccount();
+        account.debit(100);
+
+        try {
+            coordinator.transfer(account, ACCOUNTS_PER_NODE + 1, 60);
+            Assert.fail("Transfer to a missing account should fail");
+        } catch (NoSuchElementException e) {
+            Assert.assertNull(e.getMessage());
+        }
+        Assert.assertEquals(100, account.getTotalMoney());
+        Assert.assertEquals(1, coordinator.getAbortedTransfers());
+        Assert.assertEquals(0, coordinator.getUnfinishedTransfers());
+    }
+
+    @Test
+    public void testCreditIsRepeatedUntilParticipantAnswers() throws Exception {
+        final AccountsStorage storage = openStorage();
+        final LocalClient client = new LocalClient(3);
+        final TransferCoordinator coordinator = openCoordinator(storage, client);
+        final Account account = storage.createAccount();
+        account.debit(100);
+
+        Assert.assertTrue("Transfer is committed before the credit", coordinator.transfer(account,
+                ACCOUNTS_PER_NODE, 60));
+        Assert.assertEquals(1, coordinator.getUnfinishedTransfers());
+        awaitUntil(() -> coordinator.getUnfinishedTransfers() == 0);
+        Assert.assertEquals("Repeated credit should be applied once", 60, getParticipantMoney());
+        Assert.assertEquals(3, coordinator.getCreditRetries());
+    }
+
+    @Test
+    public void testCommittedTransferIsCreditedAfterRestart() throws Exception {
+        AccountsStorage storage = openStorage();
+        final TransferCoordinator coordinator = openCoordinator(storage, new LocalClient(Integer.MAX_VALUE));
+        final Account account = storage.createAccount();
+        account.debit(100);
+        Assert.assertTrue(coordinator.transfer(account, ACCOUNTS_PER_NODE, 60));
+        restart();
+
+        storage = openStorage();
+        final TransferCoordinator recoveredCoordinator = openCoordinator(storage, new LocalClient(0));
+        Assert.assertEquals(40, storage.getAccountById(0).orElseThrow().getTotalMoney());
+        awaitUntil(() -> recoveredCoordinator.getUnfinishedTransfers() == 0);
+        Assert.assertEquals("Repeated credit should be applied once", 60, getParticipantMoney());
+    }
+
+    @Test
+    public void testTransferWithoutCommitIsRefundedAfterRestart() throws Exception {
+        AccountsStorage storage = openStorage();
+        final TransferLog log = openLog(logPath);
+        final Account account = storage.createAccount();
+        account.debit(100);
+        /**
+         * Crash after the money is taken, before the participant is asked
+         */
+        final long sequence = account.transferOutJournaled(ACCOUNTS_PER_NODE, 60, accountSequence ->
+                log.appendDurable(1, TransferLog.BEGIN, 0, ACCOUNTS_PER_NODE, 60, accountSequence));
+        account.getJournal().awaitDurable(sequence);
+        /**
+         * Crash after BEGIN is logged, before the money is taken
+         */
+        final Account otherAccount = storage.createAccount();
+        otherAccount.debit(100);
+        try {
+            otherAccount.transferOutJournaled(ACCOUNTS_PER_NODE, 10, accountSequence -> {
+                log.appendDurable(2, TransferLog.BEGIN, 1, ACCOUNTS_PER_NODE, 10, accountSequence);
+                throw new IllegalStateException("Crash");
+            });
+            Assert.fail("Transfer should crash");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Crash", e.getMessage());
+        }
+        restart();
+
+        storage = openStorage();
+        TransferCoordinator coordinator = openCoordinator(storage, new LocalClient(0));
+        Assert.assertEquals(100, storage.getAccountById(0).orElseThrow().getTotalMoney());
+        Assert.assertEquals(100, storage.getAccountById(1).orElseThrow().getTotalMoney());
+        Assert.assertEquals(0, coordinator.getUnfinishedTransfers());
+        Assert.assertEquals(1, coordinator.getAbortedTransfers());
+        restart();
+
+        storage = openStorage();
+        coordinator = openCoordinator(storage, new LocalClient(0));
+        Assert.assertEquals("Refund should not be repeated", 100,
+                storage.getAccountById(0).orElseThrow().getTotalMoney());
+        Assert.assertEquals(100, storage.getAccountById(1).orElseThrow().getTotalMoney());
+        Assert.assertEquals(0, coordinator.getAbortedTransfers());
+        Assert.assertEquals(0, getParticipantMoney());
+    }
+
+    @Test
+    public void testParticipantCreditsOncePerTransfer() throws Exception {
+        Assert.assertTrue(participant.credit(1, 0, ACCOUNTS_PER_NODE, 10, 0));
+        Assert.assertTrue(participant.credit(1, 0, ACCOUNTS_PER_NODE, 10, 0));
+        Assert.assertTrue(participant.credit(2, 0, ACCOUNTS_PER_NODE, 10, 0));
+        Assert.assertFalse("Missing account should not be credited",
+                participant.credit(3, 0, ACCOUNTS_PER_NODE + 1, 10, 0));
+        Assert.assertEquals(20, getParticipantMoney());
+
+        Assert.assertTrue(participant.credit(4, 0, ACCOUNTS_PER_NODE, 10, 3));
+        Assert.assertEquals("Finished transfers should be forgotten", 2, participant.getRememberedCredits());
+
+        final TransferParticipant recoveredParticipant = new TransferParticipant(participantStorage,
+                openLog(participantLogPath));
+        recoveredParticipant.recover();
+        Assert.assertEquals("Forgotten credits should not be restored", 1,
+                recoveredParticipant.getRememberedCredits());
+        Assert.assertTrue(recoveredParticipant.credit(4, 0, ACCOUNTS_PER_NODE, 10, 3));
+        Assert.assertEquals("Recovered credit should not be repeated", 30, getParticipantMoney());
+    }
+
+    @Test
+    public void testFinishedTransfersAreCompacted() throws Exception {
+        AccountsStorage storage = openStorage();
+        final TransferCoordinator coordinator = openCoordinator(storage, new LocalClient(0));
+        final Account account = storage.createAccount();
+        account.debit(100);
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(coordinator.transfer(account, ACCOUNTS_PER_NODE, 10));
+        }
+        Assert.assertEquals("Credits of finished transfers should be forgotten", 1,
+                participant.getRememberedCredits());
+        restart();
+
+        openLog(logPath).compact();
+        Assert.assertEquals("Only the latest finished transfer should be kept", 3 * TransferLog.RECORD_SIZE,
+                Files.size(logPath));
+        restart();
+        final TransferLog participantLog = new TransferLog(participantLogPath);
+        participantResources.add(participantLog);
+        participantLog.compact();
+        Assert.assertEquals(TransferLog.RECORD_SIZE, Files.size(participantLogPath));
+        participant = new TransferParticipant(participantStorage, participantLog);
+        participant.recover();
+        Assert.assertEquals(1, participant.getRememberedCredits());
+
+        storage = openStorage();
+        final TransferCoordinator recoveredCoordinator = openCoordinator(storage, new LocalClient(0));
+        Assert.assertTrue("Transfer ids should not be reused", recoveredCoordinator.transfer(
+                storage.getAccountById(0).orElseThrow(), ACCOUNTS_PER_NODE, 10));
+        Assert.assertEquals(60, storage.getAccountById(0).orElseThrow().getTotalMoney());
+        Assert.assertEquals(40, getParticipantMoney());
+    }
+
+    /**
+     * Closes the coordinator node, everything it has logged durably is kept
+     */
+    private void restart() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; --i) {
+            resources.get(i).close();
+        }
+        resources.clear();
+    }
+
+    private long getParticipantMoney() {
+        return participantStorage.getAccountById(ACCOUNTS_PER_NODE).orElseThrow().getTotalMoney();
+    }
+
+    /**
+     * Restores balances of the coordinator node from its journal
+     */
+    private AccountsStorage openStorage() throws IOException {
+        final GroupCommitJournal journal = openJournal(journalPath);
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal, 0, ACCOUNTS_PER_NODE);
+        journal.recover(() -> 0, new JournalReplayer(storage));
+        return storage;
+    }
+
+    private TransferCoordinator openCoordinator(AccountsStorage storage, ClusterClient client) throws IOException {
+        final TransferCoordinator coordinator = new TransferCoordinator(partitioning, storage, openLog(logPath),
+                client, 10, TimeUnit.MILLISECONDS);
+        resources.add(coordinator);
+        coordinator.recover();
+        return coordinator;
+    }
+
+    private GroupCommitJournal openJournal(Path path) throws IOException {
+        final GroupCommitJournal journal = new GroupCommitJournal(path, 100, TimeUnit.MICROSECONDS, 64);
+        resources.add(journal);
+        return journal;
+    }
+
+    private TransferLog openLog(Path path) throws IOException {
+        final TransferLog log = new TransferLog(path);
+        resources.add(log);
+        return log;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition is not met in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Calls the participant in-process, answers of the first credits are lost
+     */
+    private class LocalClient extends ClusterClient {
+        private final AtomicInteger failingCredits;
+
+        LocalClient(int failingCredits) {
+            super(partitioning, 1, TimeUnit.SECONDS);
+            this.failingCredits = new AtomicInteger(failingCredits);
+        }
+
+        @Override
+        public boolean prepare(int node, int accountId) {
+            return participant.prepare(accountId);
+        }
+
+        @Override
+        public boolean credit(int node, long transferId, int fromAccountId, int toAccountId, long amount,
+                              long finishedBelow) throws IOException {
+            final boolean isCredited = participant.credit(transferId, fromAccountId, toAccountId, amount,
+                    finishedBelow);
+            if (failingCredits.getAndDecrement() > 0) {
+                throw new IOException("Answer of node " + node + " is lost");
+            }
+            return isCredited;
+        }
+    }
+}
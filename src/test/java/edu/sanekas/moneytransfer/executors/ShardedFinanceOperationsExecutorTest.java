@@ -0,0 +1,289 @@
+package edu.sanekas.moneytransfer.executors;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.persistence.GroupCommitJournal;
+import edu.sanekas.moneytransfer.persistence.JournalReplayer;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.RemovableInMemoryAccountsStorage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class ShardedFinanceOperationsExecutorTest {
+    private final ShardedFinanceOperationsExecutor executor = new ShardedFinanceOperationsExecutor(4, 16);
+
+    @After
+    public void closeExecutor() {
+        executor.close();
+    }
+
+    @Test
+    public void testDebitAndWithdraw() {
+        final Account account = new Account(0);
+        Assert.assertTrue("Debit should be successful", executor.debit(account, 1000));
+        Assert.assertTrue("Withdraw should be successful", executor.withdraw(account, 300));
+        Assert.assertFalse("Withdraw more than account has", executor.withdraw(account, 1000));
+        Assert.assertEquals(700, account.getTotalMoney());
+    }
+
+    @Test
+    public void testSameShardTransfer() {
+        final Account fromAcc = new Account(1);
+        final Account toAcc = new Account(5);
+        fromAcc.debit(1000);
+        Assert.assertTrue("Transfer should be successful", executor.transfer(fromAcc, toAcc, 400));
+        Assert.assertEquals(600, fromAcc.getTotalMoney());
+        Assert.assertEquals(400, toAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testCrossShardTransfer() {
+        final Account fromAcc = new Account(1);
+        final Account toAcc = new Account(2);
+        fromAcc.debit(1000);
+        Assert.assertTrue("Transfer should be successful", executor.transfer(fromAcc, toAcc, 1000));
+        Assert.assertFalse("Not enough money", executor.transfer(fromAcc, toAcc, 1));
+        Assert.assertEquals(0, fromAcc.getTotalMoney());
+        Assert.assertEquals(1000, toAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testTransfersAreJournaledByShards() {
+        final RecordingJournal journal = new RecordingJournal();
+        final Account fromAcc = new Account(1, journal);
+        final Account sameShardAcc = new Account(5, journal);
+        final Account otherShardAcc = new Account(2, journal);
+        final Account closedAcc = new Account(3, journal);
+        fromAcc.debit(1000);
+        Assert.assertTrue(closedAcc.closeIfEmpty());
+        Assert.assertTrue(executor.transfer(fromAcc, sameShardAcc, 100));
+        Assert.assertTrue(executor.transfer(fromAcc, otherShardAcc, 200));
+        Assert.assertFalse(executor.transfer(fromAcc, closedAcc, 300));
+        Assert.assertEquals(List.of(BalanceJournal.DEBIT, BalanceJournal.TRANSFER,
+                BalanceJournal.TRANSFER_OUT, BalanceJournal.TRANSFER_IN,
+                BalanceJournal.TRANSFER_OUT, BalanceJournal.TRANSFER_RETURN), journal.types);
+        Assert.assertEquals(700, fromAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testCloseKeepsMoneyOfOperationsNotApplied() throws Exception {
+        final Account fromAcc = new Account(1);
+        final Account toAcc = new Account(2);
+        fromAcc.debit(1000);
+        final ExecutorService es = Executors.newFixedThreadPool(3);
+        final List<Future<Boolean>> transfers = new ArrayList<>();
+        final Future<?> closing;
+        fromAcc.getWriteLock().lock();
+        try {
+            /**
+             * The first transfer keeps the shard busy, the second one waits in its queue.
+             * The shard of toAccount is stopped before the first transfer hands the money off to it.
+             */
+            for (int i = 0; i < 2; ++i) {
+                transfers.add(es.submit(() -> executor.transfer(fromAcc, toAcc, 100)));
+            }
+            Thread.sleep(100);
+            closing = es.submit(executor::close);
+            Thread.sleep(100);
+        } finally {
+            fromAcc.getWriteLock().unlock();
+        }
+        closing.get(10, TimeUnit.SECONDS);
+        int failed = 0;
+        for (Future<Boolean> transfer : transfers) {
+            try {
+                Assert.assertTrue("Handed off transfer should be applied", transfer.get(10, TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof CompletionException);
+                ++failed;
+            }
+        }
+        Assert.assertEquals("Queued transfer should be failed", 1, failed);
+        es.shutdown();
+        Assert.assertEquals(900, fromAcc.getTotalMoney());
+        Assert.assertEquals(100, toAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testOperationsRacingWithCloseNeverHang() throws Exception {
+        final Account[] accounts = IntStream.range(0, 8).mapToObj(Account::new).toArray(Account[]::new);
+        for (Account account : accounts) {
+            account.debit(1000);
+        }
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        final List<Future<Boolean>> transfers = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            transfers.add(es.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                return executor.transfer(accounts[random.nextInt(accounts.length)],
+                        accounts[random.nextInt(accounts.length)], random.nextInt(1, 100));
+            }));
+        }
+        executor.close();
+        for (Future<Boolean> transfer : transfers) {
+            try {
+                transfer.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException
+                        || e.getCause() instanceof CompletionException);
+            }
+        }
+        es.shutdown();
+        Assert.assertEquals("Money should be conserved", 8000,
+                Arrays.stream(accounts).mapToLong(Account::getTotalMoney).sum());
+    }
+
+    @Test
+    public void testRecoveryCompletesTransfersBetweenShards() throws Exception {
+        final Path journalPath = Files.createTempFile("journal", ".bin");
+        try {
+            try (GroupCommitJournal journal = openJournal(journalPath)) {
+                final AccountsStorage accountsStorage = new RemovableInMemoryAccountsStorage(journal);
+                final int firstAccountId = accountsStorage.createAccounts(4, 1000);
+                final Account fromAcc = accountsStorage.getAccountById(firstAccountId).get();
+                /**
+                 * Shard of fromAccount has taken the money, but the node stops before it is handed off
+                 */
+                Assert.assertTrue(executor.transfer(fromAcc, accountsStorage.getAccountById(1).get(), 100));
+                fromAcc.transferOutJournaled(2, 200, accountSequence -> { });
+                fromAcc.transferOutJournaled(3, 300, accountSequence -> { });
+                Assert.assertTrue(accountsStorage.getAccountById(3).get().withdraw(1000));
+                Assert.assertTrue(accountsStorage.removeAccountById(3));
+                journal.awaitDurable(journal.getLastSequence());
+            }
+            try (GroupCommitJournal journal = openJournal(journalPath)) {
+                final AccountsStorage accountsStorage = new RemovableInMemoryAccountsStorage(journal);
+                journal.recover(() -> 0, new JournalReplayer(accountsStorage));
+                final ShardHandoffRecovery recovery = new ShardHandoffRecovery(accountsStorage, accountId -> true);
+                journal.replay(0, recovery);
+                Assert.assertEquals(2, recovery.complete());
+                Assert.assertEquals(700, accountsStorage.getAccountById(0).get().getTotalMoney());
+                Assert.assertEquals(1100, accountsStorage.getAccountById(1).get().getTotalMoney());
+                Assert.assertEquals(1200, accountsStorage.getAccountById(2).get().getTotalMoney());
+            }
+            try (GroupCommitJournal journal = openJournal(journalPath)) {
+                final AccountsStorage accountsStorage = new RemovableInMemoryAccountsStorage(journal);
+                journal.recover(() -> 0, new JournalReplayer(accountsStorage));
+                final ShardHandoffRecovery recovery = new ShardHandoffRecovery(accountsStorage, accountId -> true);
+                journal.replay(0, recovery);
+                Assert.assertEquals("Completed transfers should not be repeated", 0, recovery.complete());
+                Assert.assertEquals(700, accountsStorage.getAccountById(0).get().getTotalMoney());
+            }
+        } finally {
+            Files.deleteIfExists(journalPath);
+        }
+    }
+
+    @Test
+    public void testTransferToClosedAccountKeepsMoney() {
+        final Account fromAcc = new Account(1);
+        final Account sameShardAcc = new Account(5);
+        final Account otherShardAcc = new Account(2);
+        fromAcc.debit(1000);
+        Assert.assertTrue(sameShardAcc.closeIfEmpty());
+        Assert.assertTrue(otherShardAcc.closeIfEmpty());
+        Assert.assertFalse("Closed account can't be credited", executor.transfer(fromAcc, sameShardAcc, 100));
+        Assert.assertFalse("Closed account can't be credited", executor.transfer(fromAcc, otherShardAcc, 100));
+        Assert.assertEquals(1000, fromAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testTransfersRacingWithRemovalConserveMoney() throws Exception {
+        final Account[] fromAccounts = IntStream.range(0, 4).mapToObj(Account::new).toArray(Account[]::new);
+        final Account toAcc = new Account(5);
+        for (Account account : fromAccounts) {
+            account.debit(1000);
+        }
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        final Future<?>[] transfers = new Future<?>[fromAccounts.length];
+        for (int i = 0; i < fromAccounts.length; ++i) {
+            final Account fromAcc = fromAccounts[i];
+            transfers[i] = es.submit(() -> {
+                for (int j = 0; j < 1000; ++j) {
+                    executor.transfer(fromAcc, toAcc, 1);
+                }
+            });
+        }
+        /**
+         * Empties and closes the account like removal does, while credits to it go on
+         */
+        long withdrawn = 0;
+        while (!toAcc.closeIfEmpty()) {
+            final long money = toAcc.getTotalMoney();
+            if (money > 0 && executor.withdraw(toAcc, money)) {
+                withdrawn += money;
+            }
+        }
+        for (Future<?> transfer : transfers) {
+            transfer.get(30, TimeUnit.SECONDS);
+        }
+        es.shutdown();
+        Assert.assertEquals("Closed account should stay empty", 0, toAcc.getTotalMoney());
+        Assert.assertEquals("Money should be conserved", 4000,
+                withdrawn + Arrays.stream(fromAccounts).mapToLong(Account::getTotalMoney).sum());
+    }
+
+    @Test
+    public void testTransferWithEqualAccount() {
+        final Account acc = new Account(0);
+        acc.debit(100);
+        Assert.assertFalse("Transaction between 1 account is invalid", executor.transfer(acc, acc, 100));
+    }
+
+    @Test
+    public void testConcurrentTransfersConserveMoney() throws InterruptedException {
+        final Account[] accounts = IntStream.range(0, 16).mapToObj(Account::new).toArray(Account[]::new);
+        for (Account account : accounts) {
+            account.debit(1000);
+        }
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 10_000; ++i) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                executor.transfer(accounts[random.nextInt(accounts.length)],
+                        accounts[random.nextInt(accounts.length)], random.nextInt(1, 300));
+            });
+        }
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals("Money should be conserved", 16_000,
+                Arrays.stream(accounts).mapToLong(Account::getTotalMoney).sum());
+    }
+
+    private static GroupCommitJournal openJournal(Path journalPath) throws IOException {
+        return new GroupCommitJournal(journalPath, 100, TimeUnit.MICROSECONDS, 64);
+    }
+
+    /**
+     * Remembers types of appended records
+     */
+    private static class RecordingJournal implements BalanceJournal {
+        private final List<Byte> types = new ArrayList<>();
+
+        @Override
+        public synchronized long append(byte type, int accountId, int counterpartyId, long amount) {
+            types.add(type);
+            return types.size();
+        }
+
+        @Override
+        public void awaitDurable(long sequence) {
+        }
+    }
+}
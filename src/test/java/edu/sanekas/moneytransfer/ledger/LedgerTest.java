@@ -0,0 +1,114 @@
+package edu.sanekas.moneytransfer.ledger;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class LedgerTest {
+    @Test
+    public void testAppend() {
+        final Ledger ledger = new Ledger();
+        Assert.assertEquals(1, ledger.append(Ledger.NO_ACCOUNT, 0, 1000));
+        Assert.assertEquals(2, ledger.append(0, 1, 300));
+        Assert.assertEquals(3, ledger.append(0, Ledger.NO_ACCOUNT, 50));
+        Assert.assertEquals(3, ledger.getLastSequence());
+        Assert.assertEquals(0, ledger.getFromAccountId(2));
+        Assert.assertEquals(1, ledger.getToAccountId(2));
+        Assert.assertEquals(300, ledger.getAmount(2));
+        Assert.assertEquals(Ledger.NO_ACCOUNT, ledger.getToAccountId(3));
+        Assert.assertTrue(ledger.getTimestamp(1) > 0);
+    }
+
+    @Test
+    public void testHistories() {
+        final Ledger ledger = new Ledger();
+        ledger.append(Ledger.NO_ACCOUNT, 0, 1000);
+        ledger.append(0, 1, 300);
+        ledger.append(0, Ledger.NO_ACCOUNT, 50);
+        final AccountHistory history = ledger.getHistory(0);
+        Assert.assertEquals(3, history.size());
+        Assert.assertEquals(1, ledger.getHistory(1).size());
+        Assert.assertEquals(2, ledger.getHistory(1).sequenceAt(0));
+        Assert.assertNull("Account without entries has no history", ledger.getHistory(2));
+        Assert.assertNull(ledger.getHistory(100_000));
+    }
+
+    @Test
+    public void testIndexAfter() {
+        final Ledger ledger = new Ledger();
+        for (int i = 0; i < 100; ++i) {
+            ledger.append(Ledger.NO_ACCOUNT, i % 2, 1);
+        }
+        final AccountHistory history = ledger.getHistory(1);
+        final int size = history.size();
+        Assert.assertEquals(50, size);
+        Assert.assertEquals(0, history.indexAfter(0, size));
+        Assert.assertEquals("Sequence 2 is the first entry of the account", 1, history.indexAfter(2, size));
+        Assert.assertEquals(1, history.indexAfter(3, size));
+        Assert.assertEquals(size, history.indexAfter(100, size));
+    }
+
+    @Test
+    public void testSegmentBoundary() {
+        final Ledger ledger = new Ledger();
+        final int entries = (1 << 16) + 10;
+        for (int i = 0; i < entries; ++i) {
+            ledger.append(i, Ledger.NO_ACCOUNT, i);
+        }
+        Assert.assertEquals(entries - 1, ledger.getAmount(entries));
+        Assert.assertEquals(entries - 1, ledger.getFromAccountId(ledger.getHistory(entries - 1).sequenceAt(0)));
+    }
+
+    @Test
+    public void testFullLedger() {
+        final Ledger ledger = new Ledger(2);
+        ledger.append(Ledger.NO_ACCOUNT, 0, 1000);
+        ledger.append(0, 1, 300);
+        try {
+            ledger.append(0, Ledger.NO_ACCOUNT, 50);
+            Assert.fail("Ledger should be full");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(2, ledger.getLastSequence());
+        }
+        Assert.assertEquals("Entries should be indexed", 2, ledger.getHistory(0).size());
+        Assert.assertEquals(1, ledger.getHistory(1).size());
+    }
+
+    @Test
+    public void testEntryIsAppendedAfterJournal() {
+        final Ledger ledger = new Ledger(2);
+        final Account account = new Account(0, new LedgerJournal(ledger, new BalanceJournal() {
+            @Override
+            public long append(byte type, int accountId, int counterpartyId, long amount) {
+                if (amount > 500) {
+                    throw new UncheckedIOException("Journal is not writable", new IOException("Disk is full"));
+                }
+                return NoOpBalanceJournal.S.append(type, accountId, counterpartyId, amount);
+            }
+
+            @Override
+            public void awaitDurable(long sequence) {
+            }
+        }));
+        try {
+            account.debit(1000);
+            Assert.fail("Debit should fail with the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("Failed mutation should have no entry", 0, ledger.getLastSequence());
+        }
+        Assert.assertTrue(account.debit(100));
+        Assert.assertTrue(account.debit(200));
+        try {
+            account.debit(300);
+            Assert.fail("Debit should fail with the full ledger");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Balance should not include mutation without entry", 300, account.getTotalMoney());
+        }
+        Assert.assertEquals(2, ledger.getHistory(0).size());
+    }
+}
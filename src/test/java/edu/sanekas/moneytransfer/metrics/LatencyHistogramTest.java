@@ -0,0 +1,44 @@
+package edu.sanekas.moneytransfer.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketBounds() {
+        final long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+            Assert.assertTrue("Bucket of " + value + " should contain it",
+                    LatencyHistogram.highestValueOf(bucket) >= value);
+            if (bucket > 0) {
+                Assert.assertTrue("Previous bucket of " + value + " should not contain it",
+                        LatencyHistogram.highestValueOf(bucket - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10_000; ++value) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(10_000, histogram.getCount());
+        Assert.assertEquals(10_000, histogram.getMax());
+        assertWithinPrecision(5_000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(9_900, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(9_990, histogram.getValueAtPercentile(99.9));
+        Assert.assertEquals(10_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        Assert.assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 33 / 32);
+    }
+}
@@ -0,0 +1,26 @@
+package edu.sanekas.moneytransfer.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+    @Test
+    public void testPrometheusFormat() {
+        final RouteMetrics routeMetrics = Metrics.S.route("/test/{id}");
+        Assert.assertSame("Route metrics should be registered once", routeMetrics, Metrics.S.route("/test/{id}"));
+        routeMetrics.record(1_000, 200);
+        routeMetrics.record(2_000, 404);
+        routeMetrics.record(3_000, 404);
+        final StringBuilder sb = new StringBuilder();
+        Metrics.S.write(sb);
+        final String metrics = sb.toString();
+        Assert.assertTrue(metrics, metrics.contains(
+                "moneytransfer_route_duration_seconds_count{route=\"/test/{id}\"} 3\n"));
+        Assert.assertTrue(metrics, metrics.contains(
+                "moneytransfer_route_duration_seconds{route=\"/test/{id}\",quantile=\"0.5\"} "));
+        Assert.assertTrue(metrics, metrics.contains(
+                "moneytransfer_route_failures_total{route=\"/test/{id}\",status=\"404\"} 2\n"));
+        Assert.assertFalse(metrics, metrics.contains("status=\"200\""));
+        Assert.assertTrue(metrics, metrics.contains("# TYPE moneytransfer_lock_wait_seconds summary\n"));
+    }
+}
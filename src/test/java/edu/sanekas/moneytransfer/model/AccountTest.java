@@ -3,6 +3,12 @@ package edu.sanekas.moneytransfer.model;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 public class AccountTest {
     @Test
     public void testCreateAccount() {
@@ -61,4 +67,146 @@ public class AccountTest {
         Assert.assertEquals("Account should have the same amount of money as before withdrawing",
                 amount, acc.getTotalMoney());
     }
+
+    @Test
+    public void testReadsDuringConcurrentDebits() throws Exception {
+        final Account acc = new Account(0);
+        final int debits = 100_000;
+        final ExecutorService es = Executors.newFixedThreadPool(2);
+        final Future<?> writer = es.submit(() -> {
+            for (int i = 0; i < debits; ++i) {
+                acc.debit(1);
+            }
+        });
+        final Future<Boolean> reader = es.submit(() -> {
+            long previous = 0;
+            while (!writer.isDone()) {
+                final long current = acc.getTotalMoney();
+                if (current < previous || current > debits) {
+                    return false;
+                }
+                previous = current;
+            }
+            return true;
+        });
+        Assert.assertTrue("Reader should observe only growing balance", reader.get());
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(debits, acc.getTotalMoney());
+    }
+
+    @Test
+    public void testHotAccountIsNeverOverdrawn() throws Exception {
+        final Account acc = new Account(0);
+        acc.enableCreditStripes();
+        Assert.assertTrue(acc.isHot());
+        final int debits = 50_000;
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        final Future<?>[] creditors = new Future<?>[2];
+        for (int i = 0; i < creditors.length; ++i) {
+            creditors[i] = es.submit(() -> {
+                for (int j = 0; j < debits; ++j) {
+                    acc.debit(1);
+                }
+            });
+        }
+        final Future<Long> withdrawer = es.submit(() -> {
+            long withdrawn = 0;
+            while (!creditors[0].isDone() || !creditors[1].isDone()) {
+                if (acc.withdraw(3)) {
+                    withdrawn += 3;
+                }
+                if (acc.getTotalMoney() < 0) {
+                    return -1L;
+                }
+            }
+            return withdrawn;
+        });
+        final long withdrawn = withdrawer.get();
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue("Hot account should never be overdrawn", withdrawn >= 0);
+        Assert.assertEquals(2L * debits - withdrawn, acc.getTotalMoney());
+    }
+
+    @Test
+    public void testWithdrawFoldsCreditsOfHotAccount() {
+        final Account acc = new Account(0);
+        acc.debit(10);
+        acc.enableCreditStripes();
+        acc.debit(20);
+        acc.debit(30);
+        Assert.assertEquals(60, acc.getTotalMoney());
+        Assert.assertFalse("Credits and balance are not enough", acc.withdraw(61));
+        Assert.assertTrue("Credits should be folded into the balance", acc.withdraw(55));
+        Assert.assertEquals(5, acc.getTotalMoney());
+        Assert.assertFalse("Hot account with money can't be closed", acc.closeIfEmpty());
+        Assert.assertTrue(acc.withdraw(5));
+        Assert.assertTrue(acc.closeIfEmpty());
+        Assert.assertFalse("Closed hot account can't be debited", acc.debit(1));
+        Assert.assertEquals(0, acc.getTotalMoney());
+    }
+
+    @Test
+    public void testVersionGrowsWithEveryChangeOfBalance() {
+        final Account acc = new Account(0);
+        final Account other = new Account(1);
+        long version = acc.getVersion();
+        Assert.assertTrue(acc.debit(100));
+        Assert.assertTrue(acc.getVersion() > version);
+        version = acc.getVersion();
+        Assert.assertFalse(acc.withdraw(101));
+        Assert.assertEquals("Failed withdraw doesn't change the balance", version, acc.getVersion());
+        Assert.assertTrue(acc.withdraw(1));
+        Assert.assertTrue(acc.getVersion() > version);
+        version = acc.getVersion();
+        final long otherVersion = other.getVersion();
+        Assert.assertTrue(new Transaction(acc, other, 10).execute());
+        Assert.assertTrue(acc.getVersion() > version);
+        Assert.assertTrue(other.getVersion() > otherVersion);
+    }
+
+    @Test
+    public void testVersionOfHotAccountGrowsWithStripedCredits() {
+        final Account acc = new Account(0);
+        acc.enableCreditStripes();
+        long version = acc.getVersion();
+        Assert.assertTrue(acc.debit(10));
+        Assert.assertTrue(acc.getVersion() > version);
+        version = acc.getVersion();
+        Assert.assertTrue("Credits should be folded into the balance", acc.withdraw(5));
+        Assert.assertTrue(acc.getVersion() > version);
+        version = acc.getVersion();
+        Assert.assertTrue(acc.debit(1));
+        Assert.assertTrue(acc.getVersion() > version);
+    }
+
+    @Test
+    public void testBalanceIsNotChangedIfJournalFails() {
+        final FailingBalanceJournal journal = new FailingBalanceJournal(1);
+        final Account acc = new Account(0, journal);
+        Assert.assertTrue(acc.debit(100));
+        final long version = acc.getVersion();
+        try {
+            acc.debit(10);
+            Assert.fail("Debit should fail with the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals(100, acc.getTotalMoney());
+        }
+        try {
+            acc.withdraw(10);
+            Assert.fail("Withdraw should fail with the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals(100, acc.getTotalMoney());
+        }
+        acc.enableCreditStripes();
+        try {
+            acc.debit(10);
+            Assert.fail("Debit of hot account should fail with the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals(100, acc.getTotalMoney());
+        }
+        Assert.assertTrue("Reverted changes also change the version", acc.getVersion() > version);
+        Assert.assertEquals(1, journal.getLastSequence());
+    }
 }
@@ -0,0 +1,239 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+public class BatchTransactionTest {
+    @Test
+    public void testAtomicBatch() {
+        final Account fstAcc = new Account(0);
+        final Account sndAcc = new Account(1);
+        final Account thrdAcc = new Account(2);
+        fstAcc.debit(1000);
+        final int failedLeg = new BatchTransaction()
+                .addLeg(fstAcc, sndAcc, 600)
+                .addLeg(sndAcc, thrdAcc, 500)
+                .addLeg(fstAcc, thrdAcc, 400)
+                .executeAtomically();
+        Assert.assertEquals("All legs should be applied", -1, failedLeg);
+        Assert.assertEquals(0, fstAcc.getTotalMoney());
+        Assert.assertEquals(100, sndAcc.getTotalMoney());
+        Assert.assertEquals(900, thrdAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testAtomicBatchRollback() {
+        final Account fstAcc = new Account(0);
+        final Account sndAcc = new Account(1);
+        fstAcc.debit(1000);
+        final int failedLeg = new BatchTransaction()
+                .addLeg(fstAcc, sndAcc, 600)
+                .addLeg(sndAcc, fstAcc, 100)
+                .addLeg(fstAcc, sndAcc, 600)
+                .executeAtomically();
+        Assert.assertEquals("Third leg should fail", 2, failedLeg);
+        Assert.assertEquals("FromAcc should be restored", 1000, fstAcc.getTotalMoney());
+        Assert.assertEquals("ToAcc should be restored", 0, sndAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testBatchWithIndependentLegs() {
+        final Account fstAcc = new Account(0);
+        final Account sndAcc = new Account(1);
+        fstAcc.debit(1000);
+        final boolean[] results = new BatchTransaction()
+                .addLeg(fstAcc, sndAcc, 600)
+                .addLeg(fstAcc, sndAcc, 600)
+                .addLeg(fstAcc, fstAcc, 100)
+                .addLeg(sndAcc, fstAcc, 0)
+                .execute();
+        Assert.assertArrayEquals(new boolean[]{true, false, false, false}, results);
+        Assert.assertEquals(400, fstAcc.getTotalMoney());
+        Assert.assertEquals(600, sndAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testConcurrentBatchesConserveMoney() throws InterruptedException {
+        final Account[] accounts = IntStream.range(0, 8).mapToObj(Account::new).toArray(Account[]::new);
+        for (Account account : accounts) {
+            account.debit(1000);
+        }
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 2_000; ++i) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final BatchTransaction batchTransaction = new BatchTransaction();
+                for (int leg = 0; leg < 4; ++leg) {
+                    batchTransaction.addLeg(accounts[random.nextInt(accounts.length)],
+                            accounts[random.nextInt(accounts.length)], random.nextInt(1, 500));
+                }
+                if (random.nextBoolean()) {
+                    batchTransaction.executeAtomically();
+                } else {
+                    new Transaction(accounts[random.nextInt(accounts.length)],
+                            accounts[random.nextInt(accounts.length)], random.nextInt(1, 500)).execute();
+                    batchTransaction.execute();
+                }
+            });
+        }
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals("Money should be conserved", 8_000,
+                Arrays.stream(accounts).mapToLong(Account::getTotalMoney).sum());
+    }
+
+    @Test
+    public void testBatchWithTimeoutSplitsFee() throws TimeoutException {
+        final Account payer = new Account(0);
+        final Account[] payees = IntStream.range(1, 4).mapToObj(Account::new).toArray(Account[]::new);
+        payer.debit(100);
+        final BatchTransaction batchTransaction = new BatchTransaction();
+        for (Account payee : payees) {
+            batchTransaction.addLeg(payer, payee, 30);
+        }
+        Assert.assertEquals(-1, batchTransaction.executeAtomically(100, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(10, payer.getTotalMoney());
+        for (Account payee : payees) {
+            Assert.assertEquals(30, payee.getTotalMoney());
+        }
+        Assert.assertEquals("The first leg should fail", 0,
+                batchTransaction.executeAtomically(100, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(10, payer.getTotalMoney());
+        Assert.assertEquals(30, payees[0].getTotalMoney());
+    }
+
+    @Test
+    public void testBatchGivesUpIfAccountIsBusy() {
+        final Account fstAcc = new Account(0);
+        final Account sndAcc = new Account(1);
+        fstAcc.debit(100);
+        final BatchTransaction batchTransaction = new BatchTransaction().addLeg(fstAcc, sndAcc, 10);
+        sndAcc.getWriteLock().lock();
+        try {
+            batchTransaction.executeAtomically(20, TimeUnit.MILLISECONDS);
+            Assert.fail("Batch should not wait for the busy account longer than the timeout");
+        } catch (TimeoutException e) {
+            Assert.assertEquals("Account 1 is busy", e.getMessage());
+        } finally {
+            sndAcc.getWriteLock().unlock();
+        }
+        Assert.assertTrue("Batch should not hold locks after timeout", fstAcc.getWriteLock().tryLock());
+        fstAcc.getWriteLock().unlock();
+        Assert.assertEquals(100, fstAcc.getTotalMoney());
+        Assert.assertEquals(0, sndAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testBatchWaitingForBusyAccountDoesNotHoldOthers() throws Exception {
+        final Account coldAcc = new Account(0);
+        final Account hotAcc = new Account(1);
+        coldAcc.debit(100);
+        hotAcc.getWriteLock().lock();
+        final ExecutorService es = Executors.newSingleThreadExecutor();
+        final Future<Integer> result = es.submit(() -> new BatchTransaction()
+                .addLeg(coldAcc, hotAcc, 10)
+                .executeAtomically(30, TimeUnit.SECONDS));
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!coldAcc.getWriteLock().tryLock()) {
+            Assert.assertTrue("Cold account should be free while the batch waits", System.nanoTime() < deadline);
+        }
+        try {
+            Assert.assertTrue("Cold account should be usable while the batch waits", coldAcc.withdrawUnderLock(5));
+        } finally {
+            coldAcc.getWriteLock().unlock();
+        }
+        hotAcc.getWriteLock().unlock();
+        Assert.assertEquals(-1, result.get(10, TimeUnit.SECONDS).intValue());
+        es.shutdown();
+        Assert.assertEquals(85, coldAcc.getTotalMoney());
+        Assert.assertEquals(10, hotAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testConcurrentBatchesWithTimeoutConserveMoney() throws InterruptedException {
+        final Account[] accounts = IntStream.range(0, 8).mapToObj(Account::new).toArray(Account[]::new);
+        for (Account account : accounts) {
+            account.debit(1000);
+        }
+        accounts[0].enableCreditStripes();
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 2_000; ++i) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final BatchTransaction batchTransaction = new BatchTransaction();
+                for (int leg = 0; leg < 4; ++leg) {
+                    batchTransaction.addLeg(accounts[random.nextInt(accounts.length)],
+                            accounts[random.nextInt(accounts.length)], random.nextInt(1, 500));
+                }
+                try {
+                    if (random.nextBoolean()) {
+                        batchTransaction.executeAtomically(random.nextInt(2), TimeUnit.MILLISECONDS);
+                    } else {
+                        new Transaction(accounts[random.nextInt(accounts.length)],
+                                accounts[random.nextInt(accounts.length)], random.nextInt(1, 500)).execute();
+                        batchTransaction.execute();
+                    }
+                } catch (TimeoutException e) {
+                    /**
+                     * Batch which is not applied doesn't move money
+                     */
+                }
+            });
+        }
+        es.shutdown();
+        Assert.assertTrue("Batches with and without timeout should not deadlock",
+                es.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals("Money should be conserved", 8_000,
+                Arrays.stream(accounts).mapToLong(Account::getTotalMoney).sum());
+    }
+
+    @Test
+    public void testAtomicBatchIsRevertedIfJournalFails() {
+        final FailingBalanceJournal journal = new FailingBalanceJournal(2);
+        final Account[] accounts = IntStream.range(0, 3).mapToObj(id -> new Account(id, journal))
+                .toArray(Account[]::new);
+        accounts[0].debit(100);
+        final BatchTransaction batchTransaction = new BatchTransaction()
+                .addLeg(accounts[0], accounts[1], 10)
+                .addLeg(accounts[0], accounts[2], 20)
+                .addLeg(accounts[1], accounts[2], 5);
+        try {
+            batchTransaction.executeAtomically();
+            Assert.fail("Batch should fail with the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("No leg should be applied", 100, accounts[0].getTotalMoney());
+            Assert.assertEquals(0, accounts[1].getTotalMoney());
+            Assert.assertEquals(0, accounts[2].getTotalMoney());
+        }
+    }
+
+    @Test
+    public void testBatchKeepsJournaledLegsIfJournalFails() {
+        final FailingBalanceJournal journal = new FailingBalanceJournal(2);
+        final Account[] accounts = IntStream.range(0, 3).mapToObj(id -> new Account(id, journal))
+                .toArray(Account[]::new);
+        accounts[0].debit(100);
+        final BatchTransaction batchTransaction = new BatchTransaction()
+                .addLeg(accounts[0], accounts[1], 10)
+                .addLeg(accounts[0], accounts[2], 20)
+                .addLeg(accounts[1], accounts[2], 5);
+        try {
+            batchTransaction.execute();
+            Assert.fail("Batch should fail with the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("Balances should match the journal", 90, accounts[0].getTotalMoney());
+            Assert.assertEquals(10, accounts[1].getTotalMoney());
+            Assert.assertEquals(0, accounts[2].getTotalMoney());
+        }
+    }
+}
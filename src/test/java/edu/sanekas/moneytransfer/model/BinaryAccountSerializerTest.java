@@ -0,0 +1,18 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class BinaryAccountSerializerTest {
+    @Test
+    public void testFixedWidthLayout() {
+        final Account account = new Account(Integer.MAX_VALUE);
+        account.debit(Long.MAX_VALUE);
+        final ByteBuffer serialized = BinaryAccountSerializer.S.serialize(account);
+        Assert.assertEquals(BinaryAccountSerializer.SERIALIZED_SIZE, serialized.remaining());
+        Assert.assertEquals(Integer.MAX_VALUE, serialized.getInt());
+        Assert.assertEquals(Long.MAX_VALUE, serialized.getLong());
+    }
+}
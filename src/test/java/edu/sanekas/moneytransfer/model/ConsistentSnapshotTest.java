@@ -0,0 +1,154 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ConsistentSnapshotTest {
+    @Test
+    public void testBalancesAsOfCut() {
+        final Account fromAcc = new Account(0);
+        final Account toAcc = new Account(1);
+        fromAcc.debit(100);
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            new Transaction(fromAcc, toAcc, 30).execute();
+            fromAcc.debit(5);
+            Assert.assertEquals("Mutations after the cut should be hidden", 100, snapshot.getTotalMoney(fromAcc));
+            Assert.assertEquals(0, snapshot.getTotalMoney(toAcc));
+        }
+        Assert.assertEquals(75, fromAcc.getTotalMoney());
+        Assert.assertEquals(30, toAcc.getTotalMoney());
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            Assert.assertEquals("Next cut should include all previous mutations", 75,
+                    snapshot.getTotalMoney(fromAcc));
+            Assert.assertEquals(30, snapshot.getTotalMoney(toAcc));
+        }
+    }
+
+    @Test
+    public void testCreditsOfHotAccountAsOfCut() {
+        final Account hotAcc = new Account(0);
+        final Account toAcc = new Account(1);
+        hotAcc.enableCreditStripes();
+        hotAcc.debit(100);
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            hotAcc.debit(20);
+            new Transaction(hotAcc, toAcc, 110).execute();
+            final long[] visited = new long[1];
+            snapshot.visitBalance(hotAcc, (account, totalMoney, journalSequence) -> visited[0] = totalMoney);
+            Assert.assertEquals("Credits and folding after the cut should be hidden", 100, visited[0]);
+            Assert.assertEquals(0, snapshot.getTotalMoney(toAcc));
+        }
+        Assert.assertEquals(10, hotAcc.getTotalMoney());
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            Assert.assertEquals(10, snapshot.getTotalMoney(hotAcc));
+            Assert.assertEquals(110, snapshot.getTotalMoney(toAcc));
+        }
+    }
+
+    @Test
+    public void testTransfersBetweenNodesOfHotAccountAsOfCut() {
+        final Account hotAcc = new Account(0);
+        hotAcc.enableCreditStripes();
+        hotAcc.debit(100);
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            hotAcc.debit(50);
+            Assert.assertNotEquals(Account.NOT_APPLIED, hotAcc.transferOutJournaled(1, 30, sequence -> { }));
+            Assert.assertEquals("Credits folded by the transfer should not be counted twice", 100,
+                    snapshot.getTotalMoney(hotAcc));
+        }
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            hotAcc.debit(20);
+            Assert.assertNotEquals(Account.NOT_APPLIED, hotAcc.transferInJournaled(1, 10, sequence -> { }));
+            Assert.assertEquals(120, snapshot.getTotalMoney(hotAcc));
+        }
+        Assert.assertEquals(150, hotAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testFoldingOfHotAccountIsHiddenFromCut() {
+        final Account hotAcc = new Account(0);
+        hotAcc.enableCreditStripes();
+        hotAcc.debit(100);
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            hotAcc.debit(50);
+            Assert.assertFalse(hotAcc.closeIfEmpty());
+            Assert.assertEquals("Credits folded by closing should not be counted twice", 100,
+                    snapshot.getTotalMoney(hotAcc));
+        }
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            hotAcc.debit(20);
+            hotAcc.replay(Long.MAX_VALUE - 1, 5);
+            Assert.assertEquals("Credits folded by replay should not be counted twice", 150,
+                    snapshot.getTotalMoney(hotAcc));
+        }
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+            hotAcc.debit(30);
+            hotAcc.restore(500, Long.MAX_VALUE);
+            Assert.assertEquals("Restored balance should be hidden", 175, snapshot.getTotalMoney(hotAcc));
+        }
+        Assert.assertEquals(500, hotAcc.getTotalMoney());
+    }
+
+    @Test
+    public void testTotalMoneyIsConservedUnderConcurrentTransfers() throws InterruptedException {
+        assertTotalMoneyIsConserved(0);
+    }
+
+    @Test
+    public void testTotalMoneyIsConservedWithHotAccounts() throws InterruptedException {
+        assertTotalMoneyIsConserved(8);
+    }
+
+    private static void assertTotalMoneyIsConserved(int hotAccounts) throws InterruptedException {
+        final int accountsCount = 64;
+        final long initialMoney = 1000;
+        final Account[] accounts = new Account[accountsCount];
+        for (int i = 0; i < accountsCount; ++i) {
+            accounts[i] = new Account(i);
+            if (i < hotAccounts) {
+                accounts[i].enableCreditStripes();
+            }
+            accounts[i].debit(initialMoney);
+        }
+        final AtomicBoolean isStopped = new AtomicBoolean();
+        final Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; ++i) {
+            final SplittableRandom random = new SplittableRandom(i);
+            writers[i] = new Thread(() -> {
+                while (!isStopped.get()) {
+                    final Account fromAcc = accounts[random.nextInt(accountsCount)];
+                    final Account toAcc = accounts[random.nextInt(accountsCount)];
+                    if (random.nextBoolean()) {
+                        new Transaction(fromAcc, toAcc, 1 + random.nextInt(100)).execute();
+                    } else {
+                        new BatchTransaction()
+                                .addLeg(fromAcc, toAcc, 1 + random.nextInt(100))
+                                .addLeg(toAcc, accounts[random.nextInt(accountsCount)], 1 + random.nextInt(100))
+                                .executeAtomically();
+                    }
+                }
+            });
+            writers[i].start();
+        }
+        try {
+            for (int i = 0; i < 500; ++i) {
+                try (ConsistentSnapshot snapshot = ConsistentSnapshot.open()) {
+                    final long totalMoney = Arrays.stream(accounts).parallel()
+                            .mapToLong(snapshot::getTotalMoney)
+                            .sum();
+                    Assert.assertEquals("Total money should be conserved at cut " + snapshot.getEpoch(),
+                            accountsCount * initialMoney, totalMoney);
+                }
+            }
+        } finally {
+            isStopped.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+}
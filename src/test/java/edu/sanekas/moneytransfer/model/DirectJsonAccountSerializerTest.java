@@ -0,0 +1,37 @@
+package edu.sanekas.moneytransfer.model;
+
+import org.apache.juneau.serializer.SerializeException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class DirectJsonAccountSerializerTest {
+    @Test
+    public void testSameOutputAsJuneau() throws SerializeException {
+        final long[] amounts = {0, 1, 9, 10, 99, 100, 999_999_999, 1_000_000_000, 123_456_789_012L,
+                999_999_999_999_999_999L, 1_000_000_000_000_000_000L, Long.MAX_VALUE};
+        final int[] ids = {0, 1, 10, 12_345, Integer.MAX_VALUE};
+        for (int id : ids) {
+            for (long amount : amounts) {
+                final Account account = new Account(id);
+                account.debit(amount);
+                Assert.assertEquals("Serialized account with id " + id + " and amount " + amount,
+                        JsonAccountSerializer.S.serialize(account), DirectJsonAccountSerializer.S.serialize(account));
+            }
+        }
+    }
+
+    @Test
+    public void testSerializeIntoDirectBuffer() {
+        final Account account = new Account(42);
+        account.debit(1000);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(DirectJsonAccountSerializer.MAX_SERIALIZED_SIZE);
+        buffer.put((byte) ' ');
+        DirectJsonAccountSerializer.S.serialize(account, buffer);
+        buffer.flip().position(1);
+        final byte[] serialized = new byte[buffer.remaining()];
+        buffer.get(serialized);
+        Assert.assertEquals("{\"id\":42,\"totalMoney\":1000}", new String(serialized));
+    }
+}
@@ -0,0 +1,33 @@
+package edu.sanekas.moneytransfer.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Journal which records the first appends and fails on the next ones, like a journal whose writer has failed
+ */
+class FailingBalanceJournal implements BalanceJournal {
+    private int remainingAppends;
+    private long sequence;
+
+    FailingBalanceJournal(int remainingAppends) {
+        this.remainingAppends = remainingAppends;
+    }
+
+    @Override
+    public synchronized long append(byte type, int accountId, int counterpartyId, long amount) {
+        if (remainingAppends == 0) {
+            throw new UncheckedIOException("Journal is not writable", new IOException("Disk is full"));
+        }
+        --remainingAppends;
+        return ++sequence;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+    }
+
+    synchronized long getLastSequence() {
+        return sequence;
+    }
+}
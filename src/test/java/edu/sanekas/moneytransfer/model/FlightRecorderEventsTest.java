@@ -0,0 +1,66 @@
+package edu.sanekas.moneytransfer.model;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class FlightRecorderEventsTest {
+    @Test
+    public void testBalanceAndTransferEvents() throws IOException {
+        final Account fromAccount = new Account(1);
+        final Account toAccount = new Account(0);
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("edu.sanekas.moneytransfer.Debit").withThreshold(Duration.ZERO);
+            recording.enable("edu.sanekas.moneytransfer.Withdraw").withThreshold(Duration.ZERO);
+            recording.enable("edu.sanekas.moneytransfer.Transfer").withThreshold(Duration.ZERO);
+            recording.start();
+            fromAccount.debit(1000);
+            fromAccount.withdraw(2000);
+            new Transaction(fromAccount, toAccount, 300).execute();
+            recording.stop();
+            final Path file = Files.createTempFile("moneytransfer", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file).stream()
+                        .filter(event -> event.getEventType().getName().startsWith("edu.sanekas.moneytransfer."))
+                        .collect(Collectors.toList());
+            } finally {
+                Files.delete(file);
+            }
+        }
+        Assert.assertEquals(3, events.size());
+
+        final RecordedEvent debit = findEvent(events, "edu.sanekas.moneytransfer.Debit");
+        Assert.assertEquals(1, debit.getInt("accountId"));
+        Assert.assertEquals(1000, debit.getLong("amount"));
+        Assert.assertTrue(debit.getBoolean("successful"));
+
+        final RecordedEvent withdraw = findEvent(events, "edu.sanekas.moneytransfer.Withdraw");
+        Assert.assertFalse("Withdrawing more than account has", withdraw.getBoolean("successful"));
+
+        final RecordedEvent transfer = findEvent(events, "edu.sanekas.moneytransfer.Transfer");
+        Assert.assertEquals(1, transfer.getInt("fromAccountId"));
+        Assert.assertEquals(0, transfer.getInt("toAccountId"));
+        Assert.assertEquals(300, transfer.getLong("amount"));
+        Assert.assertTrue(transfer.getBoolean("successful"));
+        Assert.assertTrue(transfer.getDuration("fromLockWait").toNanos() >= 0);
+        Assert.assertTrue(transfer.getDuration("toLockWait").toNanos() >= 0);
+    }
+
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Event " + name + " is not recorded"));
+    }
+}
@@ -3,6 +3,7 @@ package edu.sanekas.moneytransfer.model;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.UncheckedIOException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
@@ -96,4 +97,19 @@ public class TransactionTest {
         final boolean transactionResult = new Transaction(fromAcc, toAcc, 0).execute();
         Assert.assertFalse("Could not transsfer 0 money", transactionResult);
     }
+
+    @Test
+    public void testTransactionIsRevertedIfJournalFails() {
+        final FailingBalanceJournal journal = new FailingBalanceJournal(1);
+        final Account fromAcc = new Account(0, journal);
+        final Account toAcc = new Account(1, journal);
+        fromAcc.debit(1000);
+        try {
+            new Transaction(fromAcc, toAcc, 300).execute();
+            Assert.fail("Transaction should fail with the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("Balances should match the journal", 1000, fromAcc.getTotalMoney());
+            Assert.assertEquals(0, toAcc.getTotalMoney());
+        }
+    }
 }
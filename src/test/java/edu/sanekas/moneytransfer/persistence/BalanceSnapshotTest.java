@@ -0,0 +1,137 @@
+package edu.sanekas.moneytransfer.persistence;
+
+import edu.sanekas.moneytransfer.metrics.Metrics;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.Transaction;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.RemovableInMemoryAccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class BalanceSnapshotTest {
+    private Path journalPath;
+    private Path snapshotPath;
+
+    @Before
+    public void createFiles() throws IOException {
+        journalPath = Files.createTempFile("journal", ".bin");
+        snapshotPath = journalPath.resolveSibling(journalPath.getFileName() + ".snapshot");
+    }
+
+    @After
+    public void removeFiles() throws IOException {
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(snapshotPath);
+    }
+
+    @Test
+    public void testRestoreWithoutSnapshot() throws IOException {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage();
+        Assert.assertEquals(0, BalanceSnapshot.restore(snapshotPath, storage));
+        Assert.assertEquals(0, storage.getAllAccounts().count());
+    }
+
+    @Test
+    public void testSnapshotWithoutConcurrentOperations() throws Exception {
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal);
+            storage.createAccount().debit(100);
+            storage.createAccount();
+            Assert.assertEquals(3, new BalanceSnapshot(snapshotPath, storage, journal).write());
+        }
+        Assert.assertEquals("Snapshot should have header and 2 entries", 16 + 2 * 16, Files.size(snapshotPath));
+        final AccountsStorage restored = new SegmentedInMemoryAccountsStorage();
+        Assert.assertEquals(3, BalanceSnapshot.restore(snapshotPath, restored));
+        Assert.assertArrayEquals(new long[]{100, 0},
+                restored.getAllAccounts().mapToLong(Account::getTotalMoney).toArray());
+    }
+
+    @Test
+    public void testSnapshotDuringTransfers() throws Exception {
+        final long[] balances;
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal);
+            final Account[] accounts = new Account[64];
+            for (int i = 0; i < accounts.length; ++i) {
+                accounts[i] = storage.createAccount();
+                accounts[i].debit(1000);
+            }
+            final ExecutorService es = Executors.newFixedThreadPool(4);
+            for (int i = 0; i < 4_000; ++i) {
+                es.execute(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    new Transaction(accounts[random.nextInt(accounts.length)],
+                            accounts[random.nextInt(accounts.length)], random.nextInt(1, 300)).execute();
+                });
+            }
+            final BalanceSnapshot snapshot = new BalanceSnapshot(snapshotPath, storage, journal);
+            for (int i = 0; i < 5; ++i) {
+                snapshot.write();
+            }
+            es.shutdown();
+            Assert.assertTrue(es.awaitTermination(30, TimeUnit.SECONDS));
+            balances = storage.getAllAccounts().mapToLong(Account::getTotalMoney).toArray();
+        }
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage restored = new SegmentedInMemoryAccountsStorage(journal);
+            journal.recover(() -> BalanceSnapshot.restore(snapshotPath, restored), new JournalReplayer(restored));
+            Assert.assertArrayEquals("Snapshot and journal tail should restore balances",
+                    balances, restored.getAllAccounts().mapToLong(Account::getTotalMoney).toArray());
+            Assert.assertEquals("Money should be conserved", 64_000,
+                    restored.getAllAccounts().mapToLong(Account::getTotalMoney).sum());
+        }
+    }
+
+    @Test
+    public void testRecoveryOfRemovedAccounts() throws Exception {
+        try (GroupCommitJournal journal = openJournal();
+             RemovableInMemoryAccountsStorage storage = new RemovableInMemoryAccountsStorage(journal)) {
+            for (int i = 0; i < 5; ++i) {
+                storage.createAccount().debit(100 + i);
+            }
+            storage.getAccountById(1).orElseThrow().withdraw(101);
+            storage.getAccountById(4).orElseThrow().withdraw(104);
+            Assert.assertTrue(storage.removeAccountById(1));
+            Assert.assertTrue(storage.removeAccountById(4));
+            new BalanceSnapshot(snapshotPath, storage, journal).write();
+            storage.createAccount().debit(105);
+            storage.getAccountById(3).orElseThrow().withdraw(103);
+            Assert.assertTrue(storage.removeAccountById(3));
+        }
+        try (GroupCommitJournal journal = openJournal();
+             RemovableInMemoryAccountsStorage restored = new RemovableInMemoryAccountsStorage(journal)) {
+            journal.recover(() -> BalanceSnapshot.restore(snapshotPath, restored), new JournalReplayer(restored));
+            Assert.assertArrayEquals("Removed accounts should stay removed", new int[]{0, 2, 5},
+                    restored.getAllAccounts().mapToInt(Account::getId).toArray());
+            Assert.assertArrayEquals(new long[]{100, 102, 105},
+                    restored.getAllAccounts().mapToLong(Account::getTotalMoney).toArray());
+        }
+    }
+
+    private GroupCommitJournal openJournal() throws IOException {
+        return new GroupCommitJournal(journalPath, 100, TimeUnit.MICROSECONDS, 64);
+    }
+
+    @Test
+    public void testFailedPeriodicSnapshotIsCounted() throws Exception {
+        final long failures = Metrics.S.getSnapshotFailures();
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal);
+            storage.createAccount().debit(100);
+            new BalanceSnapshot(journalPath.resolve("snapshot"), storage, journal).run();
+        }
+        Assert.assertEquals("Snapshot in a directory which is a file should fail", failures + 1,
+                Metrics.S.getSnapshotFailures());
+    }
+}
@@ -0,0 +1,225 @@
+package edu.sanekas.moneytransfer.persistence;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.BatchTransaction;
+import edu.sanekas.moneytransfer.model.Transaction;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.SegmentedInMemoryAccountsStorage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitJournalTest {
+    private Path journalPath;
+
+    @Before
+    public void createJournalFile() throws IOException {
+        journalPath = Files.createTempFile("journal", ".bin");
+    }
+
+    @After
+    public void removeJournalFile() throws IOException {
+        Files.deleteIfExists(journalPath);
+    }
+
+    @Test
+    public void testAppendedRecordsAreDurable() throws Exception {
+        try (GroupCommitJournal journal = openJournal()) {
+            final long fstSequence = journal.append(BalanceJournal.CREATE, 0, 0, 0);
+            final long sndSequence = journal.append(BalanceJournal.DEBIT, 0, 0, 100);
+            journal.awaitDurable(sndSequence);
+            Assert.assertEquals(1, fstSequence);
+            Assert.assertEquals(2, sndSequence);
+            Assert.assertEquals(2, journal.getDurableSequence());
+        }
+        Assert.assertEquals(2 * GroupCommitJournal.RECORD_SIZE, Files.size(journalPath));
+        try (GroupCommitJournal journal = openJournal()) {
+            final List<long[]> records = new ArrayList<>();
+            journal.replay(0, (sequence, type, accountId, counterpartyId, amount) ->
+                    records.add(new long[]{sequence, type, accountId, counterpartyId, amount}));
+            Assert.assertEquals(2, records.size());
+            Assert.assertArrayEquals(new long[]{2, BalanceJournal.DEBIT, 0, 0, 100}, records.get(1));
+            Assert.assertEquals("Sequence should continue", 3, journal.append(BalanceJournal.CREATE, 1, 1, 0));
+        }
+    }
+
+    @Test
+    public void testIncompleteRecordIsDropped() throws Exception {
+        try (GroupCommitJournal journal = openJournal()) {
+            journal.awaitDurable(journal.append(BalanceJournal.CREATE, 0, 0, 0));
+        }
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 0, 0, 0, 0, 2, BalanceJournal.DEBIT}));
+        }
+        try (GroupCommitJournal journal = openJournal()) {
+            Assert.assertEquals(1, journal.getLastSequence());
+        }
+        Assert.assertEquals(GroupCommitJournal.RECORD_SIZE, Files.size(journalPath));
+    }
+
+    @Test
+    public void testReplayRestoresBalances() throws Exception {
+        final long[] balances;
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal);
+            final Account[] accounts = new Account[8];
+            for (int i = 0; i < accounts.length; ++i) {
+                accounts[i] = storage.createAccount();
+                accounts[i].debit(1000);
+            }
+            final ExecutorService es = Executors.newFixedThreadPool(4);
+            for (int i = 0; i < 1000; ++i) {
+                es.execute(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    final Account fromAccount = accounts[random.nextInt(accounts.length)];
+                    final Account toAccount = accounts[random.nextInt(accounts.length)];
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            fromAccount.withdraw(random.nextInt(1, 100));
+                            break;
+                        case 1:
+                            new BatchTransaction()
+                                    .addLeg(fromAccount, toAccount, random.nextInt(1, 100))
+                                    .addLeg(toAccount, fromAccount, random.nextInt(1, 100))
+                                    .executeAtomically();
+                            break;
+                        default:
+                            new Transaction(fromAccount, toAccount, random.nextInt(1, 300)).execute();
+                    }
+                });
+            }
+            es.shutdown();
+            Assert.assertTrue(es.awaitTermination(30, TimeUnit.SECONDS));
+            balances = storage.getAllAccounts().mapToLong(Account::getTotalMoney).toArray();
+        }
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage restored = new SegmentedInMemoryAccountsStorage(journal);
+            final long lastSequence = journal.getLastSequence();
+            journal.replay(0, new JournalReplayer(restored));
+            Assert.assertEquals("Replay should not append records", lastSequence, journal.getLastSequence());
+            Assert.assertArrayEquals(balances, restored.getAllAccounts().mapToLong(Account::getTotalMoney).toArray());
+        }
+    }
+
+    @Test
+    public void testReplayRestoresAccountsCreatedInBulk() throws Exception {
+        final long[] balances;
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(journal);
+            storage.createAccount().debit(1000);
+            Assert.assertEquals(1, storage.createAccounts(3, 500));
+            final long lastSequence = journal.getLastSequence();
+            Assert.assertEquals(4, storage.createAccounts(2, 0));
+            Assert.assertEquals("Accounts should be created by one record", lastSequence + 1,
+                    journal.getLastSequence());
+            final Account fstAccount = storage.getAccountById(1).orElseThrow();
+            Assert.assertTrue(new Transaction(fstAccount, storage.getAccountById(5).orElseThrow(), 200).execute());
+            Assert.assertTrue(fstAccount.withdraw(100));
+            balances = storage.getAllAccounts().mapToLong(Account::getTotalMoney).toArray();
+        }
+        Assert.assertArrayEquals(new long[]{1000, 200, 500, 500, 0, 200}, balances);
+        try (GroupCommitJournal journal = openJournal()) {
+            final AccountsStorage restored = new SegmentedInMemoryAccountsStorage(journal);
+            journal.replay(0, new JournalReplayer(restored));
+            Assert.assertArrayEquals(balances, restored.getAllAccounts().mapToLong(Account::getTotalMoney).toArray());
+            Assert.assertEquals(6, restored.createAccount().getId());
+        }
+    }
+
+    @Test
+    public void testRecordsOfAtomicBatchAreConsecutive() throws Exception {
+        try (GroupCommitJournal journal = new GroupCommitJournal(journalPath, 100, TimeUnit.MICROSECONDS, 4)) {
+            final ExecutorService es = Executors.newFixedThreadPool(4);
+            for (int i = 0; i < 200; ++i) {
+                final int legs = i % 10 + 1;
+                es.execute(() -> {
+                    if (legs % 2 == 0) {
+                        journal.append(BalanceJournal.DEBIT, 0, 0, 1);
+                    } else {
+                        journal.appendBatch(new int[legs], new int[legs], new long[legs]);
+                    }
+                });
+            }
+            es.shutdown();
+            Assert.assertTrue(es.awaitTermination(30, TimeUnit.SECONDS));
+            journal.awaitDurable(journal.getLastSequence());
+        }
+        try (GroupCommitJournal journal = openJournal()) {
+            final int[] transfersLeft = new int[1];
+            journal.replay(0, (sequence, type, accountId, counterpartyId, amount) -> {
+                if (transfersLeft[0] > 0) {
+                    Assert.assertEquals("Record " + sequence + " should be in batch", BalanceJournal.BATCH_TRANSFER,
+                            type);
+                    --transfersLeft[0];
+                } else if (type == BalanceJournal.BATCH) {
+                    transfersLeft[0] = counterpartyId;
+                } else {
+                    Assert.assertEquals(BalanceJournal.DEBIT, type);
+                }
+            });
+            Assert.assertEquals(0, transfersLeft[0]);
+        }
+    }
+
+    @Test
+    public void testIncompleteAtomicBatchIsDropped() throws Exception {
+        try (GroupCommitJournal journal = openJournal()) {
+            journal.append(BalanceJournal.CREATE, 0, 0, 0);
+            journal.awaitDurable(journal.appendBatch(new int[]{0, 0, 0}, new int[]{1, 1, 1}, new long[]{1, 2, 3}));
+        }
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+            channel.truncate(4 * GroupCommitJournal.RECORD_SIZE);
+        }
+        try (GroupCommitJournal journal = openJournal()) {
+            Assert.assertEquals("Batch without the last transfer should be dropped", 1, journal.getLastSequence());
+            Assert.assertEquals(2, journal.append(BalanceJournal.DEBIT, 0, 0, 100));
+        }
+        Assert.assertEquals(2 * GroupCommitJournal.RECORD_SIZE, Files.size(journalPath));
+    }
+
+    @Test
+    public void testBatchIsWrittenAfterAnotherLog() throws Exception {
+        final List<Long> sizesBeforeWrite = new ArrayList<>();
+        final long sequence;
+        try (GroupCommitJournal journal = new GroupCommitJournal(journalPath, 100, TimeUnit.MICROSECONDS, 64, () -> {
+            try {
+                sizesBeforeWrite.add(Files.size(journalPath));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })) {
+            sequence = journal.append(BalanceJournal.CREATE, 0, 0, 0);
+            journal.awaitDurable(sequence);
+        }
+        Assert.assertEquals(List.of(0L), sizesBeforeWrite);
+        try (GroupCommitJournal journal = new GroupCommitJournal(journalPath, 100, TimeUnit.MICROSECONDS, 64, () -> {
+            throw new UncheckedIOException(new IOException("Disk is full"));
+        })) {
+            journal.awaitDurable(journal.append(BalanceJournal.DEBIT, 0, 0, 100));
+            Assert.fail("Journal should fail with another log");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals("Disk is full", e.getCause().getMessage());
+        }
+        Assert.assertEquals("Batch should not be written", GroupCommitJournal.RECORD_SIZE, Files.size(journalPath));
+    }
+
+    private GroupCommitJournal openJournal() throws IOException {
+        return new GroupCommitJournal(journalPath, 100, TimeUnit.MICROSECONDS, 64);
+    }
+}
@@ -0,0 +1,312 @@
+package edu.sanekas.moneytransfer.replication;
+
+import edu.sanekas.moneytransfer.Main;
+import edu.sanekas.moneytransfer.ServerConfig;
+import edu.sanekas.moneytransfer.api.misc.ReplicaHandler;
+import edu.sanekas.moneytransfer.executors.LockingFinanceOperationsExecutor;
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import edu.sanekas.moneytransfer.model.Transaction;
+import edu.sanekas.moneytransfer.storages.AccountsStorage;
+import edu.sanekas.moneytransfer.storages.RemovableInMemoryAccountsStorage;
+import io.undertow.Undertow;
+import io.undertow.util.StatusCodes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+public class ReplicationTest {
+    private static final int ACCOUNTS = 16;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @After
+    public void closeResources() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; --i) {
+            resources.get(i).close();
+        }
+    }
+
+    @Test
+    public void testFollowerAppliesMutationsOfPrimary() throws Exception {
+        final ReplicationLog log = createLog(1024, false);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        final AccountsStorage followerStorage = createStorage(NoOpBalanceJournal.S);
+        final ReplicationNode follower = startFollower(followerStorage, primary);
+
+        createAccounts(primaryStorage);
+        mutate(primaryStorage, new SplittableRandom(1), 300);
+        Assert.assertTrue(primaryStorage.removeAccountById(primaryStorage.createAccount().getId()));
+
+        awaitCaughtUp(log, follower.getFollower());
+        assertSameBalances(primaryStorage, followerStorage);
+        Assert.assertEquals(0, follower.getFollower().getLagRecords());
+        Assert.assertEquals(0, follower.getFollower().getLagMillis());
+        Assert.assertEquals(log.getLastSequence(), log.getAckedSequence());
+    }
+
+    @Test
+    public void testFollowerCreatesAccountsInBulk() throws Exception {
+        final ReplicationLog log = createLog(1024, false);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        final AccountsStorage followerStorage = createStorage(NoOpBalanceJournal.S);
+        final ReplicationNode follower = startFollower(followerStorage, primary);
+
+        primaryStorage.createAccount().debit(1000);
+        primaryStorage.createAccounts(ACCOUNTS, 300);
+        Assert.assertTrue(primaryStorage.removeAccountById(primaryStorage.createAccounts(2, 0)));
+        mutate(primaryStorage, new SplittableRandom(4), 300);
+
+        awaitCaughtUp(log, follower.getFollower());
+        assertSameBalances(primaryStorage, followerStorage);
+    }
+
+    @Test
+    public void testLaggingFollowerGetsSnapshot() throws Exception {
+        final ReplicationLog log = createLog(256, false);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        createAccounts(primaryStorage);
+        primaryStorage.removeAccountById(primaryStorage.createAccount().getId());
+        primaryStorage.createAccount().debit(1000);
+        mutate(primaryStorage, new SplittableRandom(2), 1000);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread writer = new Thread(() -> {
+            final SplittableRandom random = new SplittableRandom(3);
+            while (running.get()) {
+                mutate(primaryStorage, random, 1);
+            }
+        });
+        writer.start();
+        final AccountsStorage followerStorage = createStorage(NoOpBalanceJournal.S);
+        final ReplicationNode follower = startFollower(followerStorage, primary);
+        awaitUntil(() -> follower.getFollower().getAppliedSequence() > 0);
+        running.set(false);
+        writer.join();
+
+        awaitCaughtUp(log, follower.getFollower());
+        assertSameBalances(primaryStorage, followerStorage);
+        Assert.assertTrue(primary.getServer().getSentSnapshots() > 0);
+    }
+
+    @Test
+    public void testSemiSyncWriteWaitsForFollower() throws Exception {
+        final ReplicationLog log = createLog(1024, true);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        final ReplicationNode follower = startFollower(createStorage(NoOpBalanceJournal.S), primary);
+        awaitUntil(() -> log.getFollowers() == 1);
+
+        final Account account = primaryStorage.createAccount();
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(account.debit(1));
+            Assert.assertEquals("Write should return when the follower has applied it",
+                    log.getLastSequence(), follower.getFollower().getAppliedSequence());
+        }
+        Assert.assertEquals(0, log.getAckTimeouts());
+    }
+
+    @Test
+    public void testSemiSyncWriteCompletesWithoutAckAfterTimeout() throws Exception {
+        final ReplicationLog log = new ReplicationLog(NoOpBalanceJournal.S, 1024, true, 200, TimeUnit.MILLISECONDS);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        final Account account = primaryStorage.createAccount();
+
+        final SocketChannel silentFollower = SocketChannel.open(
+                new InetSocketAddress("localhost", primary.getServer().getPort()));
+        resources.add(silentFollower);
+        silentFollower.write(ByteBuffer.allocate(Long.BYTES).putLong(0, 0));
+        awaitUntil(() -> log.getFollowers() == 1);
+
+        final long startTime = System.nanoTime();
+        Assert.assertTrue(account.debit(1));
+        Assert.assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(200));
+        Assert.assertEquals(1, log.getAckTimeouts());
+    }
+
+    @Test
+    public void testPromotedFollowerContinuesLog() throws Exception {
+        final ReplicationLog log = createLog(1024, false);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        final ReplicationLog followerLog = createLog(1024, false);
+        final AccountsStorage followerStorage = createStorage(followerLog);
+        final ReplicationNode follower = startFollower(followerStorage, followerLog, primary);
+        createAccounts(primaryStorage);
+        mutate(primaryStorage, new SplittableRandom(4), 100);
+        awaitCaughtUp(log, follower.getFollower());
+        final long lastSequence = log.getLastSequence();
+        primary.close();
+        awaitUntil(() -> follower.getFollower().getFailures() > 0);
+
+        follower.promote();
+        Assert.assertFalse(follower.isFollowing());
+        mutate(followerStorage, new SplittableRandom(5), 100);
+        Assert.assertEquals("Promoted follower should continue the log", lastSequence + 100,
+                followerLog.getLastSequence());
+
+        final AccountsStorage secondFollowerStorage = createStorage(NoOpBalanceJournal.S);
+        final ReplicationNode secondFollower = startFollower(secondFollowerStorage, follower);
+        awaitCaughtUp(followerLog, secondFollower.getFollower());
+        assertSameBalances(followerStorage, secondFollowerStorage);
+    }
+
+    @Test
+    public void testInterruptedCloseStopsFollower() throws Exception {
+        final ReplicationLog log = createLog(1024, false);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        final AccountsStorage followerStorage = createStorage(NoOpBalanceJournal.S);
+        final ReplicationNode follower = startFollower(followerStorage, primary);
+        createAccounts(primaryStorage);
+        awaitCaughtUp(log, follower.getFollower());
+
+        Thread.currentThread().interrupt();
+        follower.close();
+        Assert.assertTrue("Interrupt status should be restored", Thread.interrupted());
+        final long appliedSequence = follower.getFollower().getAppliedSequence();
+        mutate(primaryStorage, new SplittableRandom(6), 100);
+        Thread.sleep(200);
+        Assert.assertEquals("Closed follower should not apply records", appliedSequence,
+                follower.getFollower().getAppliedSequence());
+    }
+
+    @Test
+    public void testFollowerProcessServesReads() throws Exception {
+        final ReplicationLog log = createLog(1024, false);
+        final AccountsStorage primaryStorage = createStorage(log);
+        final ReplicationNode primary = startPrimary(log, primaryStorage);
+        final Undertow undertow = Main.startServer(
+                new ServerConfig(8085, primaryStorage, LockingFinanceOperationsExecutor.S).replicationNode(primary));
+        resources.add(undertow::stop);
+        final Process followerProcess = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                "-Dmoneytransfer.port=8086",
+                "-Dmoneytransfer.replication.role=follower",
+                "-Dmoneytransfer.replication.primary=localhost:" + primary.getServer().getPort(),
+                "-Dmoneytransfer.replication.port=0",
+                Main.class.getName())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        resources.add(followerProcess::destroyForcibly);
+
+        final HttpClient httpClient = HttpClient.newHttpClient();
+        Assert.assertEquals(StatusCodes.CREATED, send(httpClient, "POST", 8085, "/accounts").statusCode());
+        Assert.assertEquals(StatusCodes.OK, send(httpClient, "PUT", 8085, "/accounts/0/debit/100").statusCode());
+        awaitUntil(() -> {
+            try {
+                final HttpResponse<String> response = send(httpClient, "GET", 8086, "/accounts/0");
+                return response.statusCode() == StatusCodes.OK && response.body().contains("\"totalMoney\":100");
+            } catch (Exception e) {
+                return false;
+            }
+        });
+        final HttpResponse<String> response = send(httpClient, "GET", 8086, "/accounts/0");
+        Assert.assertEquals("0", response.headers().firstValue(ReplicaHandler.REPLICATION_LAG_RECORDS.toString())
+                .orElse(null));
+        Assert.assertEquals("Follower should reject writes", StatusCodes.SERVICE_UNAVAILABLE,
+                send(httpClient, "PUT", 8086, "/accounts/0/debit/100").statusCode());
+    }
+
+    private ReplicationLog createLog(int capacity, boolean isSemiSync) {
+        return new ReplicationLog(NoOpBalanceJournal.S, capacity, isSemiSync, 10, TimeUnit.SECONDS);
+    }
+
+    private AccountsStorage createStorage(BalanceJournal journal) {
+        final RemovableInMemoryAccountsStorage storage = new RemovableInMemoryAccountsStorage(journal);
+        resources.add(storage);
+        return storage;
+    }
+
+    private ReplicationNode startPrimary(ReplicationLog log, AccountsStorage storage) throws Exception {
+        final ReplicationNode node = ReplicationNode.primary(log, storage, 0, 0);
+        resources.add(node);
+        return node;
+    }
+
+    private ReplicationNode startFollower(AccountsStorage storage, ReplicationNode primary) throws Exception {
+        return startFollower(storage, createLog(1024, false), primary);
+    }
+
+    private ReplicationNode startFollower(AccountsStorage storage, ReplicationLog log, ReplicationNode primary)
+            throws Exception {
+        final ReplicationNode node = ReplicationNode.follower(log, storage, 0, "localhost",
+                primary.getServer().getPort());
+        resources.add(node);
+        return node;
+    }
+
+    private static void createAccounts(AccountsStorage storage) {
+        for (int i = 0; i < ACCOUNTS; ++i) {
+            storage.createAccount().debit(1000);
+        }
+    }
+
+    private static void mutate(AccountsStorage storage, SplittableRandom random, int operations) {
+        for (int i = 0; i < operations; ++i) {
+            final Account account = storage.getAccountById(random.nextInt(ACCOUNTS)).orElseThrow();
+            switch (random.nextInt(3)) {
+                case 0:
+                    account.debit(1 + random.nextInt(100));
+                    break;
+                case 1:
+                    if (!account.withdraw(1 + random.nextInt(100))) {
+                        account.debit(1);
+                    }
+                    break;
+                default:
+                    final Account toAccount = storage.getAccountById((account.getId() + 1) % ACCOUNTS).orElseThrow();
+                    if (!new Transaction(account, toAccount, 1 + random.nextInt(100)).execute()) {
+                        account.debit(1);
+                    }
+            }
+        }
+    }
+
+    private static void awaitCaughtUp(ReplicationLog log, Follower follower) throws InterruptedException {
+        awaitUntil(() -> follower.getAppliedSequence() == log.getLastSequence());
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition is not met in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void assertSameBalances(AccountsStorage expected, AccountsStorage actual) {
+        Assert.assertArrayEquals(expected.getAllAccounts().mapToInt(Account::getId).toArray(),
+                actual.getAllAccounts().mapToInt(Account::getId).toArray());
+        Assert.assertArrayEquals(expected.getAllAccounts().mapToLong(Account::getTotalMoney).toArray(),
+                actual.getAllAccounts().mapToLong(Account::getTotalMoney).toArray());
+    }
+
+    private static HttpResponse<String> send(HttpClient httpClient, String method, int port, String path)
+            throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
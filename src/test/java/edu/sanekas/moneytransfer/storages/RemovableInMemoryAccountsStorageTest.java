@@ -0,0 +1,116 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.Transaction;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RemovableInMemoryAccountsStorageTest {
+    private final RemovableInMemoryAccountsStorage storage = new RemovableInMemoryAccountsStorage();
+
+    @After
+    public void closeStorage() {
+        storage.close();
+    }
+
+    @Test
+    public void testNonExistedAccount() {
+        Assert.assertTrue("Non-existed account is found", storage.getAccountById(0).isEmpty());
+        Assert.assertTrue("Negative id is found", storage.getAccountById(-1).isEmpty());
+        Assert.assertFalse(storage.removeAccountById(0));
+    }
+
+    @Test
+    public void testCreateAndRemoveAccount() {
+        final Account account = storage.createAccount();
+        Assert.assertSame(account, storage.getAccountById(account.getId()).orElse(null));
+        Assert.assertTrue(storage.removeAccountById(account.getId()));
+        Assert.assertTrue("Removed account is found", storage.getAccountById(account.getId()).isEmpty());
+        Assert.assertFalse("Account is removed twice", storage.removeAccountById(account.getId()));
+        Assert.assertEquals("Ids should not be reused", account.getId() + 1, storage.createAccount().getId());
+    }
+
+    @Test
+    public void testAccountWithMoneyIsNotRemoved() {
+        final Account fromAccount = storage.createAccount();
+        final Account toAccount = storage.createAccount();
+        fromAccount.debit(100);
+        Assert.assertFalse("Account with money should not be removed", storage.removeAccountById(fromAccount.getId()));
+        Assert.assertTrue(storage.removeAccountById(toAccount.getId()));
+        Assert.assertFalse("Money should not be moved to removed account",
+                new Transaction(fromAccount, toAccount, 100).execute());
+        Assert.assertEquals(100, fromAccount.getTotalMoney());
+    }
+
+    @Test
+    public void testCreateAccountsInBulk() {
+        final Account account = storage.createAccount();
+        Assert.assertEquals(account.getId() + 1, storage.createAccounts(10_000, 7));
+        Assert.assertEquals(10_001, storage.size());
+        Assert.assertEquals(7, storage.getAccountById(10_000).map(Account::getTotalMoney).orElse(-1L).longValue());
+        Assert.assertTrue(storage.removeAccountById(account.getId()));
+        Assert.assertEquals("Ids should not be reused", 10_001, storage.createAccount().getId());
+    }
+
+    @Test
+    public void testRemovalAndCompaction() {
+        final int accountsForCreation = 100_000;
+        for (int i = 0; i < accountsForCreation; ++i) {
+            storage.createAccount();
+        }
+        for (int i = 0; i < accountsForCreation; ++i) {
+            if (i % 10 != 0) {
+                Assert.assertTrue(storage.removeAccountById(i));
+            }
+        }
+        storage.compact();
+        Assert.assertEquals(accountsForCreation / 10, storage.size());
+        for (int i = 0; i < accountsForCreation; ++i) {
+            Assert.assertEquals("Account " + i, i % 10 == 0, storage.getAccountById(i).isPresent());
+        }
+        Assert.assertEquals(accountsForCreation / 10, storage.getAllAccounts().count());
+        Assert.assertArrayEquals("Removed accounts should be skipped", new int[]{99980, 99990},
+                storage.getAccountsFrom(99971).mapToInt(Account::getId).toArray());
+    }
+
+    @Test
+    public void testReadsDuringConcurrentRemovalAndCompaction() throws InterruptedException {
+        final int keptAccounts = 1000;
+        for (int i = 0; i < keptAccounts; ++i) {
+            storage.createAccount();
+        }
+        final AtomicBoolean isStopped = new AtomicBoolean();
+        final AtomicInteger missedAccounts = new AtomicInteger();
+        final ExecutorService readers = Executors.newFixedThreadPool(2);
+        for (int i = 0; i < 2; ++i) {
+            readers.execute(() -> {
+                while (!isStopped.get()) {
+                    for (int id = 0; id < keptAccounts; ++id) {
+                        if (storage.getAccountById(id).isEmpty()) {
+                            missedAccounts.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < 200_000; ++i) {
+            final Account account = storage.createAccount();
+            Assert.assertTrue(storage.removeAccountById(account.getId()));
+            if (i % 10_000 == 0) {
+                storage.compact();
+            }
+        }
+        isStopped.set(true);
+        readers.shutdown();
+        Assert.assertTrue(readers.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals("Kept accounts should always be found", 0, missedAccounts.get());
+        Assert.assertEquals(keptAccounts, storage.size());
+    }
+}
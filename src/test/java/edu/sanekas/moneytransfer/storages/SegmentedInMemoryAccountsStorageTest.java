@@ -0,0 +1,142 @@
+package edu.sanekas.moneytransfer.storages;
+
+import edu.sanekas.moneytransfer.model.Account;
+import edu.sanekas.moneytransfer.model.BalanceJournal;
+import edu.sanekas.moneytransfer.model.NoOpBalanceJournal;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class SegmentedInMemoryAccountsStorageTest {
+
+    @Test
+    public void testNonExistedAccount() {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage();
+        Assert.assertTrue("Non-existed account is found", storage.getAccountById(0).isEmpty());
+        Assert.assertTrue("Negative id is found", storage.getAccountById(-1).isEmpty());
+    }
+
+    @Test
+    public void testCreateAccount() {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage();
+        final Account account = storage.createAccount();
+        final Optional<Account> foundAcc = storage.getAccountById(account.getId());
+        Assert.assertTrue("Account is not found", foundAcc.isPresent());
+        Assert.assertSame("Found another account", account, foundAcc.get());
+    }
+
+    @Test
+    public void testAccountsAcrossSegments() {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage();
+        final int accountsForCreation = 100_000;
+        for (int i = 0; i < accountsForCreation; ++i) {
+            Assert.assertEquals("Ids should be sequential", i, storage.createAccount().getId());
+        }
+        for (int i = 0; i < accountsForCreation; ++i) {
+            Assert.assertEquals(i, storage.getAccountById(i).map(Account::getId).orElse(-1).intValue());
+        }
+        Assert.assertEquals(accountsForCreation, storage.getAllAccounts().count());
+    }
+
+    @Test
+    public void testAccountsOfPartition() {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(NoOpBalanceJournal.S, 1000, 2);
+        Assert.assertEquals(1000, storage.createAccount().getId());
+        Assert.assertEquals(1001, storage.createAccount().getId());
+        Assert.assertTrue("Account of another partition is found", storage.getAccountById(0).isEmpty());
+        Assert.assertEquals(1001, storage.getAccountById(1001).map(Account::getId).orElse(-1).intValue());
+        try {
+            storage.createAccount();
+            Assert.fail("Accounts beyond the partition should not be created");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue("Account beyond the partition is found", storage.getAccountById(1002).isEmpty());
+        }
+        Assert.assertArrayEquals(new int[]{1000, 1001}, storage.getAccountsFrom(0).mapToInt(Account::getId).toArray());
+        Assert.assertArrayEquals(new int[]{1001}, storage.getAccountsFrom(1001).mapToInt(Account::getId).toArray());
+        Assert.assertEquals(0, storage.getAccountsFrom(Integer.MAX_VALUE).count());
+    }
+
+    @Test
+    public void testConcurrentAccountsCreation() throws InterruptedException {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage();
+        final ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        final int accountsForCreation = 50_000;
+        for (int i = 0; i < accountsForCreation; ++i) {
+            es.execute(storage::createAccount);
+        }
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(10, TimeUnit.SECONDS));
+        final long totalAccountsCreated = storage.getAllAccounts()
+                .mapToInt(Account::getId)
+                .distinct()
+                .count();
+        Assert.assertEquals(accountsForCreation, totalAccountsCreated);
+    }
+
+    @Test
+    public void testAccountsAreNotCreatedIfJournalFails() {
+        final List<Byte> records = new ArrayList<>();
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(new BalanceJournal() {
+            @Override
+            public long append(byte type, int accountId, int counterpartyId, long amount) {
+                if (type == BalanceJournal.CREATE_RANGE && counterpartyId > 10) {
+                    throw new UncheckedIOException("Journal is not writable", new IOException("Disk is full"));
+                }
+                records.add(type);
+                return records.size();
+            }
+
+            @Override
+            public void awaitDurable(long sequence) {
+            }
+        });
+        try {
+            storage.createAccounts(100, 25);
+            Assert.fail("Accounts should not be created without the journal");
+        } catch (UncheckedIOException e) {
+            Assert.assertEquals(0, storage.getAllAccounts().count());
+            Assert.assertTrue("Nothing should be journaled", records.isEmpty());
+        }
+        Assert.assertEquals(0, storage.createAccounts(10, 25));
+        Assert.assertEquals(List.of(BalanceJournal.CREATE_RANGE), records);
+        Assert.assertEquals(10, storage.createAccount().getId());
+        Assert.assertEquals(25, storage.getAccountById(9).map(Account::getTotalMoney).orElse(-1L).longValue());
+    }
+
+    @Test
+    public void testCreateAccountsInBulk() {
+        final AccountsStorage storage = new SegmentedInMemoryAccountsStorage(NoOpBalanceJournal.S, 1000, 50_000);
+        storage.createAccount();
+        Assert.assertEquals(1001, storage.createAccounts(40_000, 25));
+        Assert.assertEquals(40_001, storage.getAllAccounts().count());
+        Assert.assertEquals(25, storage.getAccountById(41_000).map(Account::getTotalMoney).orElse(-1L).longValue());
+        Assert.assertEquals(41_001, storage.createAccount().getId());
+        try {
+            storage.createAccounts(10_000, 0);
+            Assert.fail("Accounts beyond the partition should not be created");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Either all or none of the accounts should be created", 40_002,
+                    storage.getAllAccounts().count());
+        }
+        Assert.assertEquals(41_002, storage.createAccounts(9_998, 0));
+        try {
+            storage.createAccounts(0, 0);
+            Assert.fail("Count should be positive");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(50_000, storage.getAllAccounts().count());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveAccountById() {
+        new SegmentedInMemoryAccountsStorage().removeAccountById(0);
+    }
+}